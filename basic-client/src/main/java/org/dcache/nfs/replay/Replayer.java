@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.replay;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.net.HostAndPort;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.LatencyHistogram;
+import org.dcache.nfs.v3.NfsServerV3;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.slotid4;
+import org.dcache.nfs.v4.xdr.state_protect_how4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.oncrpc4j.rpc.OncRpcClient;
+import org.dcache.oncrpc4j.rpc.RpcAuthTypeUnix;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.rpc.RpcTransport;
+import org.dcache.oncrpc4j.rpc.net.IpProtocolType;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.dcache.oncrpc4j.xdr.XdrAble;
+import org.dcache.oncrpc4j.xdr.XdrDecodingStream;
+import org.dcache.oncrpc4j.xdr.XdrEncodingStream;
+
+/**
+ * Re-issues calls recorded by {@link CallRecorder} against an NFS server and
+ * reports the latency distributions.
+ *
+ * <p>Calls are grouped into streams by NFSv4.1 session or, if there is no session,
+ * by client address. Each stream is replayed in recorded order over its own
+ * connection, while streams are replayed concurrently. The calls are issued either
+ * with the recorded inter-arrival times or as fast as possible.
+ *
+ * <p>The replay target is expected to serve the same file system as the recorded
+ * server, as file handles are sent as recorded. For NFSv4.1 every stream gets its
+ * own client id and session. The SEQUENCE operation, open and lock owners and state
+ * ids are rewritten to the ones issued by the replay target. Session management
+ * compounds of the recording are not replayed.
+ *
+ * <p>NFSv4.0 state can't be re-established without replaying the recorded open
+ * owner sequence, thus NFSv4.0 compounds which create, use or release state are
+ * skipped. Compounds with anonymous or bypass state ids are replayed as recorded.
+ *
+ * <pre>
+ *   Replayer [-fast] [-uid id] [-gid id] &lt;call log&gt; &lt;host[:port]&gt;
+ * </pre>
+ */
+public class Replayer {
+
+    private static final int DEFAULT_PORT = 2049;
+
+    /**
+     * Max number of records read ahead per stream.
+     */
+    private static final int STREAM_QUEUE_SIZE = 1024;
+
+    /**
+     * Marker of the end of a stream.
+     */
+    private static final CallRecord END = new CallRecord(0, 0, 0, 0, 0, 0, "", null, null, new byte[0]);
+
+    private final InetSocketAddress server;
+    private final boolean originalSpeed;
+    private final int uid;
+    private final int gid;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Create a replayer.
+     *
+     * @param server the replay target.
+     * @param originalSpeed whether to keep recorded inter-arrival times.
+     * @param uid user id used for all calls.
+     * @param gid group id used for all calls.
+     */
+    public Replayer(InetSocketAddress server, boolean originalSpeed, int uid, int gid) {
+        this.server = server;
+        this.originalSpeed = originalSpeed;
+        this.uid = uid;
+        this.gid = gid;
+    }
+
+    /**
+     * Latency statistics of a single call kind.
+     */
+    private static class Stats {
+
+        private final LatencyHistogram replayed = new LatencyHistogram();
+        private final LatencyHistogram recorded = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder mismatches = new LongAdder();
+    }
+
+    /**
+     * Replay all records of the call log and wait for completion.
+     *
+     * @param log the call log to replay.
+     * @throws IOException if log can't be read.
+     * @throws InterruptedException if interrupted while waiting for completion.
+     */
+    public void replay(CallLogReader log) throws IOException, InterruptedException {
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Map<String, BlockingQueue<CallRecord>> streams = new HashMap<>();
+        long start = System.nanoTime();
+        long firstOffset = -1;
+
+        try {
+            CallRecord record;
+            while ((record = log.next()) != null) {
+                if (firstOffset < 0) {
+                    firstOffset = record.getOffset();
+                }
+
+                String key = streamOf(record);
+                BlockingQueue<CallRecord> queue = streams.get(key);
+                if (queue == null) {
+                    queue = new LinkedBlockingQueue<>(STREAM_QUEUE_SIZE);
+                    streams.put(key, queue);
+                    executor.execute(new Stream(key, queue, start, firstOffset));
+                }
+                queue.put(record);
+            }
+        } finally {
+            for (BlockingQueue<CallRecord> queue : streams.values()) {
+                queue.put(END);
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String streamOf(CallRecord record) {
+        if (record.getSession().length > 0) {
+            return BaseEncoding.base16().lowerCase().encode(record.getSession());
+        }
+        return record.getClient() + "/" + record.getProgram() + "." + record.getVersion();
+    }
+
+    private static String kindOf(CallRecord record, COMPOUND4args args) {
+        if (args == null) {
+            return "NFSv" + record.getVersion() + " " + NfsServerV3.procedureName(record.getProcedure());
+        }
+        for (nfs_argop4 op : args.argarray) {
+            switch (op.argop) {
+                case nfs_opnum4.OP_SEQUENCE:
+                case nfs_opnum4.OP_PUTFH:
+                case nfs_opnum4.OP_PUTROOTFH:
+                case nfs_opnum4.OP_SAVEFH:
+                case nfs_opnum4.OP_RESTOREFH:
+                case nfs_opnum4.OP_GETFH:
+                    continue;
+                default:
+                    return "NFSv4." + args.minorversion.value + " " + nfs_opnum4.toString(op.argop);
+            }
+        }
+        return "NFSv4." + args.minorversion.value + " " + (args.argarray.length == 0 ? "NULL" : nfs_opnum4.toString(args.argarray[0].argop));
+    }
+
+    private static boolean isSessionManagement(COMPOUND4args args) {
+        if (args.argarray.length == 0) {
+            return false;
+        }
+        switch (args.argarray[0].argop) {
+            case nfs_opnum4.OP_EXCHANGE_ID:
+            case nfs_opnum4.OP_CREATE_SESSION:
+            case nfs_opnum4.OP_DESTROY_SESSION:
+            case nfs_opnum4.OP_DESTROY_CLIENTID:
+            case nfs_opnum4.OP_BIND_CONN_TO_SESSION:
+                return true;
+            case nfs_opnum4.OP_SEQUENCE:
+                // replayer sends own RECLAIM_COMPLETE on session creation
+                return args.argarray.length == 2 && args.argarray[1].argop == nfs_opnum4.OP_RECLAIM_COMPLETE;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check whether an NFSv4.0 compound depends on state established by earlier
+     * calls of the recording.
+     */
+    private static boolean isStateful(COMPOUND4args args) {
+        for (nfs_argop4 op : args.argarray) {
+            switch (op.argop) {
+                case nfs_opnum4.OP_SETCLIENTID:
+                case nfs_opnum4.OP_SETCLIENTID_CONFIRM:
+                case nfs_opnum4.OP_RENEW:
+                case nfs_opnum4.OP_OPEN:
+                case nfs_opnum4.OP_OPEN_CONFIRM:
+                case nfs_opnum4.OP_OPEN_DOWNGRADE:
+                case nfs_opnum4.OP_CLOSE:
+                case nfs_opnum4.OP_LOCK:
+                case nfs_opnum4.OP_LOCKT:
+                case nfs_opnum4.OP_LOCKU:
+                case nfs_opnum4.OP_RELEASE_LOCKOWNER:
+                case nfs_opnum4.OP_DELEGPURGE:
+                case nfs_opnum4.OP_DELEGRETURN:
+                    return true;
+                case nfs_opnum4.OP_READ:
+                    if (!Stateids.isStateLess(op.opread.stateid)) {
+                        return true;
+                    }
+                    break;
+                case nfs_opnum4.OP_WRITE:
+                    if (!Stateids.isStateLess(op.opwrite.stateid)) {
+                        return true;
+                    }
+                    break;
+                case nfs_opnum4.OP_SETATTR:
+                    if (!Stateids.isStateLess(op.opsetattr.stateid)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    // no state involved
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replay of calls issued by a single client.
+     */
+    private class Stream implements Runnable {
+
+        private final String name;
+        private final BlockingQueue<CallRecord> queue;
+        private final long start;
+        private final long firstOffset;
+
+        private final Map<String, RpcCall> calls = new HashMap<>();
+        private final List<OncRpcClient> connections = new ArrayList<>();
+
+        /**
+         * Maps state ids of the recording to the ones issued by the replay target.
+         */
+        private final Map<stateid4, stateid4> stateids = new HashMap<>();
+
+        private clientid4 clientid;
+        private ClientSession session;
+
+        Stream(String name, BlockingQueue<CallRecord> queue, long start, long firstOffset) {
+            this.name = name;
+            this.queue = queue;
+            this.start = start;
+            this.firstOffset = firstOffset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                CallRecord record;
+                while ((record = queue.take()) != END) {
+                    if (originalSpeed) {
+                        long delay = start + (record.getOffset() - firstOffset) - System.nanoTime();
+                        if (delay > 0) {
+                            LockSupport.parkNanos(delay);
+                        }
+                    }
+                    try {
+                        replay(record);
+                    } catch (IOException | RuntimeException e) {
+                        failed.increment();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (OncRpcClient connection : connections) {
+                    try {
+                        connection.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        private void replay(CallRecord record) throws IOException {
+
+            RpcCall call = callFor(record.getProgram(), record.getVersion());
+
+            if (record.getProgram() != nfs4_prot.NFS4_PROGRAM) {
+                StatusReply reply = new StatusReply();
+                long t0 = System.nanoTime();
+                call.call(record.getProcedure(), new RawArgs(record.getArgs()), reply);
+                account(kindOf(record, null), record, System.nanoTime() - t0, reply.status);
+                return;
+            }
+
+            COMPOUND4args args = new COMPOUND4args();
+            try (Xdr xdr = new Xdr(record.getArgs())) {
+                xdr.beginDecoding();
+                args.xdrDecode(xdr);
+            }
+
+            if (args.minorversion.value > 0) {
+                if (isSessionManagement(args)) {
+                    skipped.increment();
+                    return;
+                }
+                if (session == null) {
+                    createSession(call, args.minorversion.value);
+                }
+                rewriteSession(args);
+                rewriteStateids(args);
+            } else if (isStateful(args)) {
+                skipped.increment();
+                return;
+            }
+
+            COMPOUND4res res = new COMPOUND4res();
+            ClientSession.SessionSlot slot = null;
+            if (args.minorversion.value > 0 && args.argarray.length > 0 && args.argarray[0].argop == nfs_opnum4.OP_SEQUENCE) {
+                slot = session.acquireSlot();
+                args.argarray[0].opsequence.sa_slotid = slot.getId();
+                args.argarray[0].opsequence.sa_sequenceid = slot.nextSequenceId();
+            }
+            long t0 = System.nanoTime();
+            try {
+                call.call(nfs4_prot.NFSPROC4_COMPOUND_4, args, res);
+            } finally {
+                if (slot != null) {
+                    session.releaseSlot(slot);
+                }
+            }
+            account(kindOf(record, args), record, System.nanoTime() - t0, res.status);
+
+            stateid4[] recorded = record.getStateids();
+            List<stateid4> issued = CallRecorder.stateidsOf(res);
+            for (int i = 0; i < Math.min(recorded.length, issued.size()); i++) {
+                stateids.put(recorded[i], issued.get(i));
+            }
+        }
+
+        private void account(String kind, CallRecord record, long latency, int status) {
+            Stats s = stats.computeIfAbsent(kind, k -> new Stats());
+            s.replayed.record(latency);
+            s.recorded.record(record.getDuration());
+            if (status != nfsstat.NFS_OK) {
+                s.errors.increment();
+            }
+            if (record.getStatus() != CallRecord.UNKNOWN_STATUS && record.getStatus() != status) {
+                s.mismatches.increment();
+            }
+        }
+
+        private RpcCall callFor(int program, int version) throws IOException {
+            String key = program + "." + version;
+            RpcCall call = calls.get(key);
+            if (call == null) {
+                OncRpcClient client = new OncRpcClient(server.getAddress(), IpProtocolType.TCP, server.getPort());
+                connections.add(client);
+                RpcTransport transport = client.connect();
+                call = new RpcCall(program, version,
+                        new RpcAuthTypeUnix(uid, gid, new int[]{gid}, (int) (System.currentTimeMillis() / 1000),
+                                InetAddress.getLocalHost().getHostName()),
+                        transport);
+                calls.put(key, call);
+            }
+            return call;
+        }
+
+        private void createSession(RpcCall call, int minorversion) throws IOException {
+
+            String owner = "replay-" + name + "-" + ProcessHandle.current().pid() + "@" + InetAddress.getLocalHost().getHostName();
+            COMPOUND4args args = new CompoundBuilder()
+                    .withMinorversion(minorversion)
+                    .withExchangeId("dcache.org", "nfs4j replayer", owner, nfs4_prot.EXCHGID4_FLAG_USE_NON_PNFS, state_protect_how4.SP4_NONE)
+                    .withTag("exchange_id")
+                    .build();
+            COMPOUND4res res = send(call, args);
+            clientid = res.resarray.get(0).opexchange_id.eir_resok4.eir_clientid;
+            sequenceid4 sequence = res.resarray.get(0).opexchange_id.eir_resok4.eir_sequenceid;
+
+            args = new CompoundBuilder()
+                    .withMinorversion(minorversion)
+                    .withCreatesession(clientid, sequence)
+                    .withTag("create_session")
+                    .build();
+            res = send(call, args);
+            sessionid4 sessionid = res.resarray.get(0).opcreate_session.csr_resok4.csr_sessionid;
+            int maxRequests = res.resarray.get(0).opcreate_session.csr_resok4.csr_fore_chan_attrs.ca_maxrequests.value;
+            session = new ClientSession(sessionid, maxRequests);
+
+            ClientSession.SessionSlot slot = session.acquireSlot();
+            try {
+                args = new CompoundBuilder()
+                        .withMinorversion(minorversion)
+                        .withSequence(false, sessionid, slot.nextSequenceId().value - 1, slot.getId().value, maxRequests - 1)
+                        .withReclaimComplete()
+                        .withTag("reclaim_complete")
+                        .build();
+                send(call, args);
+            } finally {
+                session.releaseSlot(slot);
+            }
+        }
+
+        private COMPOUND4res send(RpcCall call, COMPOUND4args args) throws IOException {
+            COMPOUND4res res = new COMPOUND4res();
+            call.call(nfs4_prot.NFSPROC4_COMPOUND_4, args, res);
+            nfsstat.throwIfNeeded(res.status);
+            return res;
+        }
+
+        private void rewriteSession(COMPOUND4args args) {
+            for (nfs_argop4 op : args.argarray) {
+                switch (op.argop) {
+                    case nfs_opnum4.OP_SEQUENCE:
+                        op.opsequence.sa_sessionid = session.sessionId();
+                        op.opsequence.sa_highest_slotid = new slotid4(session.maxRequests() - 1);
+                        break;
+                    case nfs_opnum4.OP_OPEN:
+                        op.opopen.owner.value.clientid = clientid;
+                        break;
+                    case nfs_opnum4.OP_LOCK:
+                        if (op.oplock.locker.new_lock_owner) {
+                            op.oplock.locker.open_owner.lock_owner.clientid = clientid;
+                        }
+                        break;
+                    default:
+                        // nothing to rewrite
+                }
+            }
+        }
+
+        private void rewriteStateids(COMPOUND4args args) {
+            for (nfs_argop4 op : args.argarray) {
+                switch (op.argop) {
+                    case nfs_opnum4.OP_READ:
+                        op.opread.stateid = mapped(op.opread.stateid);
+                        break;
+                    case nfs_opnum4.OP_WRITE:
+                        op.opwrite.stateid = mapped(op.opwrite.stateid);
+                        break;
+                    case nfs_opnum4.OP_SETATTR:
+                        op.opsetattr.stateid = mapped(op.opsetattr.stateid);
+                        break;
+                    case nfs_opnum4.OP_CLOSE:
+                        op.opclose.open_stateid = mapped(op.opclose.open_stateid);
+                        break;
+                    case nfs_opnum4.OP_OPEN_DOWNGRADE:
+                        op.opopen_downgrade.open_stateid = mapped(op.opopen_downgrade.open_stateid);
+                        break;
+                    case nfs_opnum4.OP_LOCK:
+                        if (op.oplock.locker.new_lock_owner) {
+                            op.oplock.locker.open_owner.open_stateid = mapped(op.oplock.locker.open_owner.open_stateid);
+                        } else {
+                            op.oplock.locker.lock_owner.lock_stateid = mapped(op.oplock.locker.lock_owner.lock_stateid);
+                        }
+                        break;
+                    case nfs_opnum4.OP_LOCKU:
+                        op.oplocku.lock_stateid = mapped(op.oplocku.lock_stateid);
+                        break;
+                    case nfs_opnum4.OP_LAYOUTGET:
+                        op.oplayoutget.loga_stateid = mapped(op.oplayoutget.loga_stateid);
+                        break;
+                    default:
+                        // no state id or not mappable
+                }
+            }
+        }
+
+        /**
+         * Get the state id of the replay target for a recorded one. As the sequence
+         * of the state id may differ from the recording, zero is used, which for
+         * NFSv4.1 matches the most recent one. Not valid for NFSv4.0, where stateful
+         * compounds are not replayed.
+         */
+        private stateid4 mapped(stateid4 stateid) {
+            stateid4 issued = stateids.get(stateid);
+            return issued == null ? stateid : new stateid4(issued.other, 0);
+        }
+    }
+
+    /**
+     * Pre-encoded call arguments.
+     */
+    private static class RawArgs implements XdrAble {
+
+        private final byte[] bytes;
+
+        RawArgs(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void xdrEncode(XdrEncodingStream xdr) throws IOException {
+            xdr.xdrEncodeOpaque(bytes, bytes.length);
+        }
+
+        @Override
+        public void xdrDecode(XdrDecodingStream xdr) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Decodes only the status of a reply, which for all NFSv3 procedures is the first
+     * field.
+     */
+    private static class StatusReply implements XdrAble {
+
+        private int status;
+
+        @Override
+        public void xdrEncode(XdrEncodingStream xdr) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void xdrDecode(XdrDecodingStream xdr) throws IOException {
+            status = xdr.xdrDecodeInt();
+        }
+    }
+
+    /**
+     * Print latency distributions of replayed calls, in microseconds.
+     *
+     * @param out stream to print to.
+     */
+    public void report(PrintStream out) {
+        out.printf("%-28s %9s %7s %8s %9s %9s %9s %9s %9s %9s%n",
+                "call", "count", "errors", "mismatch", "p50", "p90", "p99", "max", "rec p50", "rec p99");
+        new TreeMap<>(stats).forEach((kind, s) -> {
+            LatencyHistogram.Snapshot r = s.replayed.snapshot();
+            LatencyHistogram.Snapshot o = s.recorded.snapshot();
+            out.printf("%-28s %9d %7d %8d %9d %9d %9d %9d %9d %9d%n",
+                    kind, r.getCount(), s.errors.sum(), s.mismatches.sum(),
+                    micros(r.getValueAtPercentile(50)), micros(r.getValueAtPercentile(90)),
+                    micros(r.getValueAtPercentile(99)), micros(r.getMax()),
+                    micros(o.getValueAtPercentile(50)), micros(o.getValueAtPercentile(99)));
+        });
+        out.printf("skipped: %d, failed: %d%n", skipped.sum(), failed.sum());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        boolean fast = false;
+        int uid = 0;
+        int gid = 0;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            switch (args[i]) {
+                case "-fast":
+                    fast = true;
+                    break;
+                case "-uid":
+                    uid = Integer.parseInt(args[++i]);
+                    break;
+                case "-gid":
+                    gid = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    usage();
+            }
+        }
+        if (args.length - i != 2) {
+            usage();
+        }
+
+        Path log = Paths.get(args[i]);
+        HostAndPort hp = HostAndPort.fromString(args[i + 1]).withDefaultPort(DEFAULT_PORT);
+        Replayer replayer = new Replayer(new InetSocketAddress(hp.getHost(), hp.getPort()), !fast, uid, gid);
+
+        long start = System.nanoTime();
+        try (CallLogReader reader = new CallLogReader(log)) {
+            System.out.println("Replaying calls recorded at " + reader.getStartTime());
+            replayer.replay(reader);
+        }
+        System.out.printf("Replayed in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        replayer.report(System.out);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Replayer [-fast] [-uid id] [-gid id] <call log> <host[:port]>");
+        System.exit(1);
+    }
+}
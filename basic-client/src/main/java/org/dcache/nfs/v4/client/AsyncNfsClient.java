@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+
+/**
+ * Asynchronous NFSv4.1 client, which pipelines compound requests over all slots of a
+ * session on a single connection.
+ *
+ * <p>Compounds are submitted with {@link #send(COMPOUND4args)}, which never blocks. If a
+ * slot is available the request is sent immediately, otherwise it is queued until a
+ * reply frees a slot. Requests which fail with {@code NFS4ERR_DELAY},
+ * {@code NFS4ERR_GRACE} or {@code NFS4ERR_LAYOUTTRYLATER} release their slot and
+ * are re-submitted after a randomized exponential backoff.
+ */
+public class AsyncNfsClient {
+
+    /**
+     * Initial delay in milliseconds before a request is retried.
+     */
+    private static final long INITIAL_RETRY_DELAY = 50;
+
+    /**
+     * Maximal delay in milliseconds between retries.
+     */
+    private static final long MAX_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final nfs4_prot_NFS4_PROGRAM_Client _nfsClient;
+    private final ClientSession _clientSession;
+    private final ScheduledExecutorService _retryExecutor;
+
+    /**
+     * Requests waiting for a free session slot.
+     */
+    private final Queue<PendingCompound> _waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A submitted compound with its result.
+     */
+    private static class PendingCompound {
+
+        private final COMPOUND4args args;
+
+        /**
+         * Data of WRITE operations, as encoding consumes the buffers and retries must
+         * send them again.
+         */
+        private final ByteBuffer[] writeData;
+
+        private final CompletableFuture<COMPOUND4res> result = new CompletableFuture<>();
+
+        private int attempt;
+
+        PendingCompound(COMPOUND4args args) {
+            this.args = args;
+            this.writeData = new ByteBuffer[args.argarray.length];
+            for (int i = 0; i < args.argarray.length; i++) {
+                if (args.argarray[i].argop == nfs_opnum4.OP_WRITE) {
+                    writeData[i] = args.argarray[i].opwrite.data;
+                }
+            }
+        }
+
+        void restoreWriteData() {
+            for (int i = 0; i < writeData.length; i++) {
+                if (writeData[i] != null) {
+                    args.argarray[i].opwrite.data = writeData[i].duplicate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a new asynchronous client.
+     *
+     * @param nfsClient rpc client connected to the server.
+     * @param clientSession established session to use.
+     * @param retryExecutor executor used to schedule retries of delayed requests.
+     */
+    public AsyncNfsClient(nfs4_prot_NFS4_PROGRAM_Client nfsClient, ClientSession clientSession,
+            ScheduledExecutorService retryExecutor) {
+        _nfsClient = nfsClient;
+        _clientSession = clientSession;
+        _retryExecutor = retryExecutor;
+    }
+
+    /**
+     * Send compound request in the session. The SEQUENCE operation is added by the client
+     * and must not be included.
+     *
+     * @param compound4args compound to send.
+     * @return future which completes with the server's reply, or exceptionally with
+     * {@link ChimeraNFSException} if the compound failed or with {@link IOException}
+     * on communication error.
+     */
+    public CompletableFuture<COMPOUND4res> send(COMPOUND4args compound4args) {
+
+        PendingCompound pending = new PendingCompound(ClientSession.prependSequence(compound4args));
+        _waiting.add(pending);
+        dispatch();
+        return pending.result;
+    }
+
+    /**
+     * Get number of requests waiting for a free session slot.
+     *
+     * @return number of queued requests.
+     */
+    public int getQueued() {
+        return _waiting.size();
+    }
+
+    /**
+     * Send waiting requests as long as there are free session slots.
+     */
+    private void dispatch() {
+        while (!_waiting.isEmpty()) {
+            ClientSession.SessionSlot slot = _clientSession.pollSlot();
+            if (slot == null) {
+                // a completing request will pick up the queued ones
+                return;
+            }
+
+            PendingCompound pending = _waiting.poll();
+            if (pending == null || pending.result.isDone()) {
+                // another thread was faster or request was cancelled
+                _clientSession.releaseSlot(slot);
+                continue;
+            }
+            execute(pending, slot);
+        }
+    }
+
+    private void execute(PendingCompound pending, ClientSession.SessionSlot slot) {
+
+        pending.args.argarray[0] = _clientSession.sequence(slot);
+        pending.restoreWriteData();
+
+        CompletableFuture<COMPOUND4res> reply;
+        try {
+            reply = _nfsClient.NFSPROC4_COMPOUND_4_async(pending.args);
+        } catch (IOException e) {
+            _clientSession.releaseSlot(slot);
+            pending.result.completeExceptionally(e);
+            return;
+        }
+
+        reply.whenComplete((res, t) -> {
+            _clientSession.releaseSlot(slot);
+            if (t != null) {
+                pending.result.completeExceptionally(t);
+            } else if (canRetry(res.status)) {
+                retry(pending);
+            } else {
+                try {
+                    nfsstat.throwIfNeeded(res.status);
+                    pending.result.complete(res);
+                } catch (ChimeraNFSException e) {
+                    pending.result.completeExceptionally(e);
+                }
+            }
+            dispatch();
+        });
+    }
+
+    private void retry(PendingCompound pending) {
+        long delay = Math.min(MAX_RETRY_DELAY, INITIAL_RETRY_DELAY << Math.min(pending.attempt++, 16));
+        delay = ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+        _retryExecutor.schedule(() -> {
+            _waiting.add(pending);
+            dispatch();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean canRetry(int status) {
+        switch (status) {
+            case nfsstat.NFSERR_DELAY:
+            case nfsstat.NFSERR_LAYOUTTRYLATER:
+            case nfsstat.NFSERR_GRACE:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -60,6 +60,28 @@ public class FileIoDevice {
         return _ds_list[_stripe_indices[index]];
     }
 
+    /**
+     * Get number of entries in the stripe indices.
+     */
+    public int getStripeCount() {
+        return _stripe_indices.length;
+    }
+
+    /**
+     * Get index into the stripe indices for given file offset, as defined in rfc5661 13.4.
+     */
+    public int indexOf(long pattern_offset, int unit_size, long offset, int first_stripe_index) {
+        long suIndex = (offset - pattern_offset) / unit_size;
+        return (int) ((suIndex + first_stripe_index) % _stripe_indices.length);
+    }
+
+    /**
+     * Get data server address for given index into the stripe indices.
+     */
+    public InetSocketAddress ofIndex(int index) {
+        return _ds_list[_stripe_indices[index]];
+    }
+
     @Override
     public String toString() {
         return Arrays.toString(_ds_list);
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.client;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.v4.AttributeMap;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.fattr4_change;
+import org.dcache.nfs.v4.xdr.fattr4_type;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_ftype4;
+
+/**
+ * Client side cache of file handles and attributes.
+ *
+ * <p>Names are cached per directory together with the directory's change attribute
+ * observed when the name was looked up. An entry is used as long as the directory
+ * was validated within the name TTL and its change attribute did not change since
+ * the entry was added. Expired directories are revalidated with a single COMPOUND
+ * which fetches {@code FATTR4_CHANGE} of all of them. If revalidation fails, the
+ * expired directories are dropped and the path is looked up again. Components of a path which
+ * are not in the cache are looked up with a single COMPOUND as well.
+ *
+ * <p>Attributes are cached per file handle for the attribute TTL.
+ */
+public class NameCache {
+
+    /**
+     * Sends compounds in a session. The SEQUENCE operation is added by the sender.
+     */
+    @FunctionalInterface
+    public interface CompoundSender {
+
+        COMPOUND4res send(COMPOUND4args args) throws IOException;
+    }
+
+    /**
+     * Maximal number of path components looked up with a single compound.
+     */
+    private static final int MAX_LOOKUPS_PER_COMPOUND = 16;
+
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
+    private final CompoundSender _sender;
+    private final long _nameTtl;
+    private final long _attrTtl;
+
+    private final Cache<NameKey, NameEntry> _names;
+    private final Cache<ByteBuffer, DirState> _dirs;
+    private final Cache<ByteBuffer, CachedAttributes> _attrs;
+
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    private record NameKey(ByteBuffer dir, String name) {
+    }
+
+    private record NameEntry(nfs_fh4 fh, long dirChange) {
+    }
+
+    private record DirState(long change, long validated) {
+    }
+
+    private record CachedAttributes(AttributeMap attributes, long fetched) {
+    }
+
+    /**
+     * Create a new cache.
+     *
+     * @param sender sender used to talk to the server.
+     * @param nameTtl time after which a directory's change attribute must be revalidated.
+     * @param attrTtl time for which attributes are cached.
+     * @param maxSize maximal number of cached names and attributes.
+     */
+    public NameCache(CompoundSender sender, Duration nameTtl, Duration attrTtl, int maxSize) {
+        _sender = sender;
+        _nameTtl = nameTtl.toNanos();
+        _attrTtl = attrTtl.toNanos();
+        _names = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        _dirs = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        _attrs = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Resolve a path relative to the given directory into a file handle.
+     *
+     * @param dir file handle of the directory to start from.
+     * @param path path to resolve.
+     * @return file handle of the object.
+     * @throws IOException if lookup of a component fails.
+     */
+    public nfs_fh4 resolve(nfs_fh4 dir, String path) throws IOException {
+
+        List<String> components = PATH_SPLITTER.splitToList(path);
+        if (components.contains("..")) {
+            // parents are not cached, let the server walk the path
+            _misses.increment();
+            COMPOUND4res res = _sender.send(new CompoundBuilder()
+                    .withPutfh(dir)
+                    .withLookup(path)
+                    .withGetfh()
+                    .withTag("lookup")
+                    .build());
+            return res.resarray.get(res.resarray.size() - 1).opgetfh.resok4.object;
+        }
+
+        boolean revalidated = false;
+        while (true) {
+            nfs_fh4 fh = dir;
+            int i = 0;
+            List<nfs_fh4> expired = new ArrayList<>();
+            long now = System.nanoTime();
+
+            for (; i < components.size(); i++) {
+                DirState state = _dirs.getIfPresent(keyOf(fh));
+                NameEntry entry = _names.getIfPresent(new NameKey(keyOf(fh), components.get(i)));
+                if (state == null || entry == null || entry.dirChange() != state.change()) {
+                    break;
+                }
+                if (now - state.validated() > _nameTtl) {
+                    expired.add(fh);
+                }
+                fh = entry.fh();
+            }
+
+            if (!expired.isEmpty() && !revalidated) {
+                try {
+                    revalidate(expired);
+                } catch (ChimeraNFSException e) {
+                    // for instance, a stale directory; forget it and walk the path with LOOKUP
+                    expired.forEach(d -> _dirs.invalidate(keyOf(d)));
+                }
+                revalidated = true;
+                continue;
+            }
+
+            _hits.add(i);
+            if (i < components.size()) {
+                _misses.add(components.size() - i);
+                fh = lookup(fh, components.subList(i, components.size()));
+            }
+            return fh;
+        }
+    }
+
+    /**
+     * Get attributes of the object.
+     *
+     * @param fh file handle of the object.
+     * @param attrs attributes to get.
+     * @return attributes, which contain at least the requested ones.
+     * @throws IOException if attributes can't be fetched.
+     */
+    public AttributeMap getattr(nfs_fh4 fh, int... attrs) throws IOException {
+
+        ByteBuffer key = keyOf(fh);
+        long now = System.nanoTime();
+        CachedAttributes cached = _attrs.getIfPresent(key);
+        if (cached != null && now - cached.fetched() <= _attrTtl && containsAll(cached.attributes(), attrs)) {
+            _hits.increment();
+            return cached.attributes();
+        }
+
+        _misses.increment();
+        int[] request = new int[attrs.length + 1];
+        System.arraycopy(attrs, 0, request, 0, attrs.length);
+        request[attrs.length] = nfs4_prot.FATTR4_CHANGE;
+
+        COMPOUND4res res = _sender.send(new CompoundBuilder()
+                .withPutfh(fh)
+                .withGetattr(request)
+                .withTag("getattr")
+                .build());
+
+        AttributeMap attributes = new AttributeMap(res.resarray.get(2).opgetattr.resok4.obj_attributes);
+        _attrs.put(key, new CachedAttributes(attributes, now));
+
+        Optional<fattr4_change> change = attributes.get(nfs4_prot.FATTR4_CHANGE);
+        if (change.isPresent() && _dirs.getIfPresent(key) != null) {
+            _dirs.put(key, new DirState(change.get().value, now));
+        }
+        return attributes;
+    }
+
+    /**
+     * Invalidate cached names and attributes of a directory or file, which was
+     * modified by this client.
+     *
+     * @param fh file handle of the modified object.
+     */
+    public void invalidate(nfs_fh4 fh) {
+        ByteBuffer key = keyOf(fh);
+        _dirs.invalidate(key);
+        _attrs.invalidate(key);
+    }
+
+    /**
+     * Get number of path components and attributes served from the cache.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    /**
+     * Get number of path components and attributes fetched from the server.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    private void revalidate(List<nfs_fh4> dirs) throws IOException {
+
+        CompoundBuilder builder = new CompoundBuilder();
+        for (nfs_fh4 dir : dirs) {
+            builder.withPutfh(dir)
+                    .withGetattr(nfs4_prot.FATTR4_CHANGE);
+        }
+
+        COMPOUND4res res = _sender.send(builder.withTag("revalidate").build());
+        long now = System.nanoTime();
+
+        // skip SEQUENCE, then PUTFH + GETATTR per directory
+        for (int i = 0; i < dirs.size(); i++) {
+            AttributeMap attrs = new AttributeMap(res.resarray.get(2 + 2 * i).opgetattr.resok4.obj_attributes);
+            Optional<fattr4_change> change = attrs.get(nfs4_prot.FATTR4_CHANGE);
+            if (change.isPresent()) {
+                _dirs.put(keyOf(dirs.get(i)), new DirState(change.get().value, now));
+            } else {
+                _dirs.invalidate(keyOf(dirs.get(i)));
+            }
+        }
+    }
+
+    private nfs_fh4 lookup(nfs_fh4 dir, List<String> components) throws IOException {
+
+        nfs_fh4 fh = dir;
+        for (int from = 0; from < components.size(); from += MAX_LOOKUPS_PER_COMPOUND) {
+            fh = lookupBatch(fh, components.subList(from, Math.min(components.size(), from + MAX_LOOKUPS_PER_COMPOUND)));
+        }
+        return fh;
+    }
+
+    /**
+     * Lookup components with a single compound:
+     * PUTFH, GETATTR(change), followed by LOOKUP, GETFH, GETATTR(type, change) per component.
+     */
+    private nfs_fh4 lookupBatch(nfs_fh4 dir, List<String> components) throws IOException {
+
+        CompoundBuilder builder = new CompoundBuilder()
+                .withPutfh(dir)
+                .withGetattr(nfs4_prot.FATTR4_CHANGE);
+        for (String name : components) {
+            builder.withLookup(name)
+                    .withGetfh()
+                    .withGetattr(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_CHANGE);
+        }
+
+        COMPOUND4res res = _sender.send(builder.withTag("lookup").build());
+        long now = System.nanoTime();
+
+        nfs_fh4 parent = dir;
+        Optional<fattr4_change> parentChange = new AttributeMap(res.resarray.get(2).opgetattr.resok4.obj_attributes)
+                .get(nfs4_prot.FATTR4_CHANGE);
+
+        for (int i = 0; i < components.size(); i++) {
+            int idx = 3 + 3 * i;
+            nfs_fh4 fh = res.resarray.get(idx + 1).opgetfh.resok4.object;
+            AttributeMap attrs = new AttributeMap(res.resarray.get(idx + 2).opgetattr.resok4.obj_attributes);
+
+            if (parentChange.isPresent()) {
+                long change = parentChange.get().value;
+                ByteBuffer parentKey = keyOf(parent);
+                _dirs.put(parentKey, new DirState(change, now));
+                _names.put(new NameKey(parentKey, components.get(i)), new NameEntry(fh, change));
+            }
+
+            Optional<fattr4_type> type = attrs.get(nfs4_prot.FATTR4_TYPE);
+            parentChange = type.isPresent() && type.get().value == nfs_ftype4.NF4DIR
+                    ? attrs.get(nfs4_prot.FATTR4_CHANGE)
+                    : Optional.empty();
+            parent = fh;
+        }
+        return parent;
+    }
+
+    private static boolean containsAll(AttributeMap attributes, int... attrs) {
+        for (int attr : attrs) {
+            if (attributes.get(attr).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer keyOf(nfs_fh4 fh) {
+        return ByteBuffer.wrap(fh.value);
+    }
+}
@@ -24,6 +24,8 @@ import jakarta.annotation.Nonnull;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
 
 public class Nfs4Client implements AutoCloseable {
@@ -31,11 +33,26 @@ public class Nfs4Client implements AutoCloseable {
     private final NfsClient4Internal nfsClient;
 
     public Nfs4Client(@Nonnull String server, int port, @Nonnull String export) throws IOException {
+        this(server, port, export, NfsClient4Internal.DEFAULT_NAME_TTL, NfsClient4Internal.DEFAULT_ATTR_TTL);
+    }
+
+    /**
+     * Create a client with custom cache timeouts.
+     *
+     * @param server server host name.
+     * @param port server port.
+     * @param export path to mount.
+     * @param nameTtl time after which cached directory content is revalidated with the server.
+     * @param attrTtl time for which file attributes are cached.
+     * @throws IOException if mount fails.
+     */
+    public Nfs4Client(@Nonnull String server, int port, @Nonnull String export,
+            @Nonnull Duration nameTtl, @Nonnull Duration attrTtl) throws IOException {
         HostAndPort hp = HostAndPort.fromParts(server, port)
                 .requireBracketsForIPv6();
 
         InetSocketAddress serverAddress = new InetSocketAddress(hp.getHost(), hp.getPort());
-        this.nfsClient = new NfsClient4Internal(serverAddress);
+        this.nfsClient = new NfsClient4Internal(serverAddress, nameTtl, attrTtl);
         this.nfsClient.mount(export);
     }
 
@@ -54,6 +71,46 @@ public class Nfs4Client implements AutoCloseable {
         this.nfsClient.close(or.fh(), or.stateid());
     }
 
+    /**
+     * Create a new file with the content of the buffer. If the server supports
+     * pNFS, then data is written directly to the data servers.
+     *
+     * @param path path of the file to create.
+     * @param data data to write, from its position to its limit.
+     * @return number of bytes written.
+     * @throws IOException if write fails.
+     */
+    public long writeFile(String path, ByteBuffer data) throws IOException {
+        return this.nfsClient.pnfsWrite(path, data, true);
+    }
+
+    /**
+     * Overwrite content of an existing file, starting at offset zero, with the
+     * content of the buffer. If the server supports pNFS, then data is written
+     * directly to the data servers.
+     *
+     * @param path path of the file to write.
+     * @param data data to write, from its position to its limit.
+     * @return number of bytes written.
+     * @throws IOException if write fails.
+     */
+    public long overwriteFile(String path, ByteBuffer data) throws IOException {
+        return this.nfsClient.pnfsWrite(path, data, false);
+    }
+
+    /**
+     * Read content of the file into the buffer. If the server supports
+     * pNFS, then data is read directly from the data servers.
+     *
+     * @param path path of the file to read.
+     * @param data buffer to read into, starting at its position.
+     * @return number of bytes read.
+     * @throws IOException if read fails.
+     */
+    public long readFile(String path, ByteBuffer data) throws IOException {
+        return this.nfsClient.pnfsRead(path, data);
+    }
+
     @Override
     public void close() throws Exception {
         if (nfsClient != null) {
@@ -20,6 +20,7 @@
 package org.dcache.nfs.v4.client;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -42,7 +43,11 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
@@ -80,6 +85,36 @@ class NfsClient4Internal {
 
     private final ScheduledExecutorService _executorService = Executors.newScheduledThreadPool(1);
 
+    /**
+     * Default time after which cached directory content must be revalidated.
+     */
+    static final Duration DEFAULT_NAME_TTL = Duration.ofSeconds(30);
+
+    /**
+     * Default time for which attributes are cached.
+     */
+    static final Duration DEFAULT_ATTR_TTL = Duration.ofSeconds(3);
+
+    private static final int NAME_CACHE_SIZE = 65536;
+
+    private final NameCache _nameCache;
+
+    /**
+     * Asynchronous client over the session, created on first use.
+     */
+    private AsyncNfsClient _asyncClient;
+
+    /**
+     * Maximal number of bytes transferred by single pNFS read or write call.
+     */
+    private static final int PNFS_IO_CHUNK = 16 * 1024 * 1024;
+
+    private final PnfsIoEngine _pnfsIo = new PnfsIoEngine(
+            args -> asyncClient().send(args),
+            address -> _servers.getUnchecked(address).asyncClient()::send,
+            _knowDevices::get,
+            PnfsIoEngine.DEFAULT_MAX_IO_SIZE);
+
     /**
      * generate set of files and delete them after words
      *
@@ -155,8 +190,14 @@ class NfsClient4Internal {
 
     NfsClient4Internal(InetSocketAddress address) throws OncRpcException,
             IOException {
+        this(address, DEFAULT_NAME_TTL, DEFAULT_ATTR_TTL);
+    }
+
+    NfsClient4Internal(InetSocketAddress address, Duration nameTtl, Duration attrTtl) throws OncRpcException,
+            IOException {
         _nfsClient = new nfs4_prot_NFS4_PROGRAM_Client(address.getAddress(),
                 address.getPort(), IpProtocolType.TCP, 0, 0);
+        _nameCache = new NameCache(this::sendCompoundInSession, nameTtl, attrTtl, NAME_CACHE_SIZE);
 
         _servers.asMap().put(address, this);
     }
@@ -343,6 +384,7 @@ class NfsClient4Internal {
 
     private List<NfsDirectoryEntry> list(nfs_fh4 fh, String path) throws IOException {
         final List<NfsDirectoryEntry> result = new ArrayList<>();
+        final nfs_fh4 dir = _nameCache.resolve(path.charAt(0) == '/' ? _rootFh : fh, path);
 
         boolean done;
         long cookie = 0;
@@ -350,8 +392,7 @@ class NfsClient4Internal {
         do {
 
             COMPOUND4args args = new CompoundBuilder()
-                    .withPutfh(path.charAt(0) == '/' ? _rootFh : fh)
-                    .withLookup(path)
+                    .withPutfh(dir)
                     .withReaddir(cookie, verifier, 16384, 16384, STANDARD_ATTRIBUTES)
                     .withTag("readdir")
                     .build();
@@ -385,6 +426,7 @@ class NfsClient4Internal {
                 .withTag("mkdir")
                 .build();
         COMPOUND4res compound4res = sendCompoundInSession(args);
+        _nameCache.invalidate(_cwd);
     }
 
     private void get_fs_locations(String path) throws OncRpcException, IOException {
@@ -412,15 +454,7 @@ class NfsClient4Internal {
 
     private nfs_fh4 cwd(String path) throws OncRpcException, IOException {
 
-        COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(path.charAt(0) == '/' ? _rootFh : _cwd)
-                .withLookup(path)
-                .withGetfh()
-                .withTag("lookup (cwd)")
-                .build();
-        COMPOUND4res compound4res = sendCompoundInSession(args);
-
-        _cwd = compound4res.resarray.get(compound4res.resarray.size() - 1).opgetfh.resok4.object;
+        _cwd = _nameCache.resolve(path.charAt(0) == '/' ? _rootFh : _cwd, path);
         System.out.println("CWD fh = " + BaseEncoding.base16().lowerCase().encode(_cwd.value));
         return new nfs_fh4(_cwd.value);
     }
@@ -429,14 +463,7 @@ class NfsClient4Internal {
 
         Stat stat = new Stat();
 
-        COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(fh)
-                .withGetattr(nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TYPE)
-                .withTag("getattr (stat)")
-                .build();
-        COMPOUND4res compound4res = sendCompoundInSession(args);
-
-        AttributeMap attrs = new AttributeMap(compound4res.resarray.get(2).opgetattr.resok4.obj_attributes);
+        AttributeMap attrs = _nameCache.getattr(fh, nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TYPE);
 
         Optional<fattr4_size> size = attrs.get(nfs4_prot.FATTR4_SIZE);
         if (size.isPresent()) {
@@ -455,19 +482,22 @@ class NfsClient4Internal {
 
         if (pnfs && _isMDS) {
             StripeMap stripeMap = layoutget(or.fh(), or.stateid(), layoutiomode4.LAYOUTIOMODE4_READ);
-
-            List<Stripe> stripes = stripeMap.getStripe(0, 4096);
-            Stripe stripe = stripes.get(0);
-            deviceid4 device = stripe.getDeviceId();
-            FileIoDevice ioDevice = _knowDevices.get(device);
-            InetSocketAddress deviceAddr =
-                    ioDevice.of(stripe.getPatternOffset(), stripe.getUnit(),
-                            0, 4096, stripe.getFirstStripeIndex());
-            NfsClient4Internal dsClient = _servers.getUnchecked(deviceAddr);
-
-            dsClient.nfsRead(stripe.getFh(), or.stateid());
-
-            layoutreturn(or.fh(), 0, -1, new byte[0], stripeMap.getStateid());
+            try {
+                ByteBuffer data = ByteBuffer.allocate(PNFS_IO_CHUNK);
+                long offset = 0;
+                long start = System.currentTimeMillis();
+                while (true) {
+                    data.clear();
+                    int n = await(_pnfsIo.read(or.fh(), or.stateid(), stripeMap, offset, data));
+                    offset += n;
+                    if (n < data.capacity()) {
+                        break;
+                    }
+                }
+                System.out.println("Read " + offset + " bytes in " + (System.currentTimeMillis() - start) + " ms");
+            } finally {
+                layoutreturn(or.fh(), 0, -1, new byte[0], stripeMap.getStateid());
+            }
 
         } else {
             nfsRead(or.fh(), or.stateid());
@@ -485,8 +515,7 @@ class NfsClient4Internal {
     private void readatonce(String path) throws OncRpcException, IOException {
 
         COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(path.charAt(0) == '/' ? _rootFh : _cwd)
-                .withLookup(dirname(path))
+                .withPutfh(parentOf(path))
                 .withOpen(basename(path), _sequenceID.value, _clientIdByServer, nfs4_prot.OPEN4_SHARE_ACCESS_READ)
                 .withRead(4096, 0, Stateids.currentStateId())
                 .withClose(Stateids.currentStateId(), 1)
@@ -514,41 +543,20 @@ class NfsClient4Internal {
 
             StripeMap stripeMap = layoutget(or.fh(), or.stateid(), layoutiomode4.LAYOUTIOMODE4_RW);
             try (RandomAccessFile raf = new RandomAccessFile(source, "r")) {
-                byte[] data = new byte[4096];
+                ByteBuffer data = ByteBuffer.allocate(PNFS_IO_CHUNK);
                 long offset = 0;
                 while (true) {
 
-                    int n = raf.read(data);
+                    data.clear();
+                    int n = raf.getChannel().read(data);
                     if (n == -1) {
                         break;
                     }
 
-                    /* we got less than 4K wipe the tail */
-                    if (n < data.length) {
-                        byte[] b = new byte[n];
-                        System.arraycopy(data, 0, b, 0, n);
-                    }
-
-                    List<Stripe> stripes = stripeMap.getStripe(offset, 4096);
-                    Stripe stripe = stripes.get(0);
-                    deviceid4 device = stripe.getDeviceId();
-                    FileIoDevice ioDevice = _knowDevices.get(device);
-                    InetSocketAddress deviceAddr = ioDevice.of(
-                            stripe.getPatternOffset(), stripe.getUnit(),
-                            offset, data.length, stripe.getFirstStripeIndex());
-                    NfsClient4Internal dsClient = _servers.getUnchecked(deviceAddr);
-
-                    dsClient.nfsWrite(stripe.getFh(), data, offset, or.stateid());
-                    offset += n;
-
-                    // offset points to current file size
-                    if (stripe.isCommitThroughMDS()) {
-                        layoutCommit(stripe.getFh(), or.stateid(), 0, offset,
-                                OptionalLong.of(offset - 1), new byte[0]);
-                    }
+                    data.flip();
+                    offset += await(_pnfsIo.write(or.fh(), or.stateid(), stripeMap, offset, data));
                 }
 
-
             } catch (IOException ie) {
                 System.out.println("Write failed: " + ie.getMessage());
             } finally {
@@ -560,14 +568,84 @@ class NfsClient4Internal {
             nfsWrite(or.fh(), "hello world".getBytes(), 0, or.stateid());
         }
         close(or.fh(), or.stateid());
+        _nameCache.invalidate(or.fh());
+    }
+
+    /**
+     * Write content of the buffer into the file, starting at offset zero. If the
+     * server is a pNFS MDS, then data is written directly to the data servers.
+     *
+     * @param path path of the file to write.
+     * @param src data to write, from its position to its limit.
+     * @param create whether a new file must be created.
+     * @return number of bytes written.
+     */
+    long pnfsWrite(String path, ByteBuffer src, boolean create) throws OncRpcException, IOException {
+
+        OpenReply or = create ? create(path) : open(path, nfs4_prot.OPEN4_SHARE_ACCESS_BOTH);
+        StripeMap stripeMap = _isMDS ? layoutget(or.fh(), or.stateid(), layoutiomode4.LAYOUTIOMODE4_RW) : null;
+        long offset = 0;
+        try {
+            while (src.hasRemaining()) {
+                ByteBuffer chunk = src.slice();
+                chunk.limit(Math.min(chunk.remaining(), PNFS_IO_CHUNK));
+                int n = await(_pnfsIo.write(or.fh(), or.stateid(), stripeMap, offset, chunk));
+                src.position(src.position() + n);
+                offset += n;
+            }
+        } finally {
+            if (stripeMap != null) {
+                layoutreturn(or.fh(), 0, -1, new byte[0], stripeMap.getStateid());
+            }
+            _nameCache.invalidate(or.fh());
+            close(or.fh(), or.stateid());
+        }
+        return offset;
+    }
+
+    /**
+     * Read content of the file into the buffer. If the server is a pNFS MDS,
+     * then data is read directly from the data servers.
+     *
+     * @param path path of the file to read.
+     * @param dst buffer to read into, starting at its position.
+     * @return number of bytes read.
+     */
+    long pnfsRead(String path, ByteBuffer dst) throws OncRpcException, IOException {
+
+        OpenReply or = open(path);
+        StripeMap stripeMap = _isMDS ? layoutget(or.fh(), or.stateid(), layoutiomode4.LAYOUTIOMODE4_READ) : null;
+        long offset = 0;
+        try {
+            while (dst.hasRemaining()) {
+                ByteBuffer chunk = dst.slice();
+                chunk.limit(Math.min(chunk.remaining(), PNFS_IO_CHUNK));
+                int requested = chunk.remaining();
+                int n = await(_pnfsIo.read(or.fh(), or.stateid(), stripeMap, offset, chunk));
+                dst.position(dst.position() + n);
+                offset += n;
+                if (n < requested) {
+                    break;
+                }
+            }
+        } finally {
+            if (stripeMap != null) {
+                layoutreturn(or.fh(), 0, -1, new byte[0], stripeMap.getStateid());
+            }
+            close(or.fh(), or.stateid());
+        }
+        return offset;
     }
 
     private OpenReply open(String path) throws OncRpcException, IOException {
+        return open(path, nfs4_prot.OPEN4_SHARE_ACCESS_READ);
+    }
+
+    private OpenReply open(String path, int access) throws OncRpcException, IOException {
 
         COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(path.charAt(0) == '/' ? _rootFh : _cwd)
-                .withLookup(dirname(path))
-                .withOpen(basename(path), _sequenceID.value, _clientIdByServer, nfs4_prot.OPEN4_SHARE_ACCESS_READ)
+                .withPutfh(parentOf(path))
+                .withOpen(basename(path), _sequenceID.value, _clientIdByServer, access)
                 .withGetfh()
                 .withTag("open_read")
                 .build();
@@ -584,14 +662,15 @@ class NfsClient4Internal {
 
     OpenReply create(String path) throws OncRpcException, IOException {
 
+        nfs_fh4 parent = parentOf(path);
         COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(path.charAt(0) == '/' ? _rootFh : _cwd)
-                .withLookup(dirname(path))
+                .withPutfh(parent)
                 .withOpenCreate(basename(path), _sequenceID.value, _clientIdByServer, nfs4_prot.OPEN4_SHARE_ACCESS_BOTH)
                 .withGetfh()
                 .withTag("open_create")
                 .build();
         COMPOUND4res compound4res = sendCompoundInSession(args);
+        _nameCache.invalidate(parent);
 
         int opCount = compound4res.resarray.size();
         nfs_fh4 fh = compound4res.resarray.get(opCount - 1).opgetfh.resok4.object;
@@ -646,7 +725,7 @@ class NfsClient4Internal {
                     + ((fileDevice.nfl_util.value & nfs4_prot.NFL4_UFLG_COMMIT_THRU_MDS) == 0 ? "ds" : "mds"));
 
             deviceid4 deviceID = fileDevice.nfl_deviceid;
-            Stripe stripe = new Stripe(deviceID, fileDevice.nfl_fh_list[0],
+            Stripe stripe = new Stripe(deviceID, fileDevice.nfl_fh_list,
                     l.lo_length.value, l.lo_offset.value,
                     fileDevice.nfl_pattern_offset.value,
                     fileDevice.nfl_util.value,
@@ -695,6 +774,27 @@ class NfsClient4Internal {
         COMPOUND4res compound4res = sendCompoundInSession(args);
     }
 
+    /**
+     * Get asynchronous client which shares the session with this client.
+     */
+    private synchronized AsyncNfsClient asyncClient() {
+        if (_asyncClient == null) {
+            _asyncClient = new AsyncNfsClient(_nfsClient, _clientSession, _executorService);
+        }
+        return _asyncClient;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable t = PnfsIoEngine.unwrap(e);
+            Throwables.throwIfInstanceOf(t, IOException.class);
+            Throwables.throwIfUnchecked(t);
+            throw new IOException(t);
+        }
+    }
+
     private COMPOUND4res sendCompound(COMPOUND4args compound4args)
             throws OncRpcException, IOException {
 
@@ -712,17 +812,10 @@ class NfsClient4Internal {
         return compound4res;
     }
 
-    private COMPOUND4res sendCompoundInSession(COMPOUND4args compound4args)
+    private COMPOUND4res sendCompoundInSession(COMPOUND4args args)
             throws OncRpcException, IOException {
 
-        if (compound4args.argarray[0].argop == nfs_opnum4.OP_SEQUENCE) {
-            throw new IllegalArgumentException("The operation sequence should not be included");
-        }
-
-        nfs_argop4[] extendedOps = new nfs_argop4[compound4args.argarray.length + 1];
-        System.arraycopy(compound4args.argarray, 0, extendedOps, 1, compound4args.argarray.length);
-        compound4args.argarray = extendedOps;
-
+        COMPOUND4args compound4args = ClientSession.prependSequence(args);
         var slot = _clientSession.acquireSlot();
         try {
 
@@ -734,17 +827,7 @@ class NfsClient4Internal {
              */
             do {
 
-                nfs_argop4 op = new nfs_argop4();
-                op.argop = nfs_opnum4.OP_SEQUENCE;
-                op.opsequence = new SEQUENCE4args();
-                op.opsequence.sa_cachethis = false;
-
-                op.opsequence.sa_slotid = slot.getId();
-                op.opsequence.sa_highest_slotid = new slotid4(_clientSession.maxRequests() - 1);
-                op.opsequence.sa_sequenceid = slot.nextSequenceId();
-                op.opsequence.sa_sessionid = _clientSession.sessionId();
-
-                compound4args.argarray[0] = op;
+                compound4args.argarray[0] = _clientSession.sequence(slot);
 
                 compound4res = _nfsClient.NFSPROC4_COMPOUND_4(compound4args);
                 _lastUpdate = System.currentTimeMillis();
@@ -876,6 +959,7 @@ class NfsClient4Internal {
                 .build();
 
         COMPOUND4res compound4res = sendCompoundInSession(args);
+        _nameCache.invalidate(fh);
     }
 
     private void sequence() throws OncRpcException, IOException {
@@ -917,24 +1001,15 @@ class NfsClient4Internal {
                 .withTag("remove")
                 .build();
         COMPOUND4res compound4res = sendCompoundInSession(args);
+        _nameCache.invalidate(_cwd);
     }
 
     private void lookup(String path) throws OncRpcException, IOException {
 
-        COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(_cwd)
-                .withSavefh()
-                .withLookup(path)
-                .withGetfh()
-                .withGetattr(nfs4_prot.FATTR4_CHANGE,
-                        nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TIME_MODIFY)
-                .withRestorefh()
-                .withGetattr(nfs4_prot.FATTR4_CHANGE,
-                        nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TIME_MODIFY)
-                .withTag("lookup-sun")
-                .build();
-
-        COMPOUND4res compound4res = sendCompoundInSession(args);
+        nfs_fh4 fh = _nameCache.resolve(_cwd, path);
+        _nameCache.getattr(fh, nfs4_prot.FATTR4_CHANGE,
+                nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TIME_MODIFY);
+        System.out.println("fh = " + BaseEncoding.base16().lowerCase().encode(fh.value));
     }
 
     private void lookup(String fh, String path) throws OncRpcException, IOException {
@@ -952,17 +1027,8 @@ class NfsClient4Internal {
 
     private void getattr(String path) throws OncRpcException, IOException {
 
-        COMPOUND4args args = new CompoundBuilder()
-                .withPutfh(_cwd)
-                .withLookup(path)
-                .withGetattr(nfs4_prot.FATTR4_CHANGE,
-                        nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TIME_MODIFY, nfs4_prot.FATTR4_MODE)
-                .withTag("getattr")
-                .build();
-
-        COMPOUND4res compound4res = sendCompoundInSession(args);
-
-        AttributeMap attrs = new AttributeMap(compound4res.resarray.get(compound4res.resarray.size() - 1).opgetattr.resok4.obj_attributes);
+        AttributeMap attrs = _nameCache.getattr(_nameCache.resolve(_cwd, path), nfs4_prot.FATTR4_CHANGE,
+                nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_TIME_MODIFY, nfs4_prot.FATTR4_MODE);
 
         Optional<mode4> mode = attrs.get(nfs4_prot.FATTR4_MODE);
         if (mode.isPresent()) {
@@ -984,6 +1050,13 @@ class NfsClient4Internal {
         }
     }
 
+    /**
+     * Get file handle of the parent directory of the path.
+     */
+    private nfs_fh4 parentOf(String path) throws IOException {
+        return _nameCache.resolve(path.charAt(0) == '/' ? _rootFh : _cwd, dirname(path));
+    }
+
     private static String basename(String path) {
         File f = new File(path);
         return f.getName();
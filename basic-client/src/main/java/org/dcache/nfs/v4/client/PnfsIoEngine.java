@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import org.dcache.nfs.v4.AttributeMap;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.WRITE4resok;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.fattr4_size;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.stable_how4;
+import org.dcache.nfs.v4.xdr.stateid4;
+
+/**
+ * Client side pNFS I/O engine for the NFSv4.1 files layout.
+ *
+ * <p>A read or write request is split at stripe unit boundaries (and at most
+ * {@code maxIoSize} bytes) and every piece is sent to the data server which holds it
+ * as defined in rfc5661 13.4. All pieces are in flight concurrently, thus the
+ * bandwidth of all data servers in the layout is used. With an asynchronous sender
+ * per data server, like {@link AsyncNfsClient#send}, the requests are further
+ * pipelined over all slots of the data server's session.
+ *
+ * <p>If a piece fails on a data server it is sent again to the MDS. If the device or
+ * the data server can't be resolved, the remaining pieces of the request are sent to
+ * the MDS. Short writes are continued until the whole piece is written and unstable
+ * writes are committed. After a write which went
+ * through data servers a LAYOUTCOMMIT is sent to the MDS to publish the new file size.
+ *
+ * <p>A short read from a data server doesn't indicate end-of-file, as the data server
+ * might not store a hole of the file. In that case the file size is fetched from the
+ * MDS and the holes up to the end of file are filled with zeros.
+ */
+public class PnfsIoEngine {
+
+    /**
+     * Sends compounds in a session. The SEQUENCE operation is added by the sender.
+     */
+    @FunctionalInterface
+    public interface CompoundSender {
+
+        CompletableFuture<COMPOUND4res> send(COMPOUND4args args);
+    }
+
+    /**
+     * Default maximal number of bytes sent with a single READ or WRITE.
+     */
+    public static final int DEFAULT_MAX_IO_SIZE = 1024 * 1024;
+
+    private final CompoundSender _mds;
+    private final Function<InetSocketAddress, CompoundSender> _dataServers;
+    private final Function<deviceid4, FileIoDevice> _devices;
+    private final int _maxIoSize;
+
+    /**
+     * Create a new I/O engine.
+     *
+     * @param mds sender used for LAYOUTCOMMIT and for I/O to MDS.
+     * @param dataServers resolves data server address into sender of the data server's session.
+     * @param devices resolves device id into device address.
+     * @param maxIoSize maximal number of bytes sent with a single READ or WRITE.
+     */
+    public PnfsIoEngine(CompoundSender mds, Function<InetSocketAddress, CompoundSender> dataServers,
+            Function<deviceid4, FileIoDevice> devices, int maxIoSize) {
+        _mds = mds;
+        _dataServers = dataServers;
+        _devices = devices;
+        _maxIoSize = maxIoSize;
+    }
+
+    /**
+     * A piece of a request, which is served by a single server.
+     */
+    private static class Piece {
+
+        private final long offset;
+        private final ByteBuffer data;
+
+        /**
+         * Sender of data server and offset on data server, or {@code null} to use MDS.
+         */
+        private final CompoundSender dataServer;
+        private final nfs_fh4 dsFh;
+        private final long dsOffset;
+
+        Piece(long offset, ByteBuffer data, CompoundSender dataServer, nfs_fh4 dsFh, long dsOffset) {
+            this.offset = offset;
+            this.data = data;
+            this.dataServer = dataServer;
+            this.dsFh = dsFh;
+            this.dsOffset = dsOffset;
+        }
+    }
+
+    /**
+     * Read data into the buffer. The read is complete when the buffer is full or
+     * end-of-file is reached.
+     *
+     * @param fh file handle of the file on the MDS.
+     * @param stateid open, lock or delegation stateid.
+     * @param layout layout of the file, or {@code null} to read through the MDS.
+     * @param offset file offset to read from.
+     * @param dst buffer to read into, starting at its position.
+     * @return future number of bytes read, which is less than requested only at end-of-file.
+     */
+    public CompletableFuture<Integer> read(nfs_fh4 fh, stateid4 stateid, StripeMap layout, long offset, ByteBuffer dst) {
+
+        List<Piece> pieces = split(layout, offset, dst);
+        List<CompletableFuture<Integer>> results = new ArrayList<>(pieces.size());
+        AtomicBoolean shortDsRead = new AtomicBoolean();
+
+        for (Piece piece : pieces) {
+            CompletableFuture<Integer> result;
+            if (piece.dataServer == null) {
+                result = readFromMds(fh, stateid, piece);
+            } else {
+                result = readFromDs(stateid, piece)
+                        .thenApply(n -> {
+                            if (n < piece.data.remaining()) {
+                                shortDsRead.set(true);
+                            }
+                            return n;
+                        })
+                        .exceptionallyCompose(t -> readFromMds(fh, stateid, piece));
+            }
+            results.add(result);
+        }
+
+        int len = dst.remaining();
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenCompose(v -> {
+                    if (shortDsRead.get()) {
+                        return getSize(fh).thenApply(size -> fillHoles(pieces, results, offset, len, size));
+                    }
+
+                    // MDS knows the file size, stop at first short read
+                    int n = 0;
+                    for (int i = 0; i < pieces.size(); i++) {
+                        int count = results.get(i).join();
+                        n += count;
+                        if (count < pieces.get(i).data.remaining()) {
+                            break;
+                        }
+                    }
+                    return CompletableFuture.completedFuture(n);
+                })
+                .thenApply(n -> {
+                    dst.position(dst.position() + n);
+                    return n;
+                });
+    }
+
+    /**
+     * Zero-fill data not returned by servers up to the end of file.
+     *
+     * @return number of bytes read.
+     */
+    private static int fillHoles(List<Piece> pieces, List<CompletableFuture<Integer>> results,
+            long offset, int len, long size) {
+
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            int count = results.get(i).join();
+            int valid = (int) Math.max(0, Math.min(piece.data.remaining(), size - piece.offset));
+            ByteBuffer hole = piece.data.duplicate();
+            hole.position(hole.position() + Math.min(count, valid));
+            hole.limit(hole.position() + Math.max(0, valid - count));
+            while (hole.hasRemaining()) {
+                hole.put((byte) 0);
+            }
+        }
+        return (int) Math.max(0, Math.min(len, size - offset));
+    }
+
+    /**
+     * Write data from the buffer. All data is written with FILE_SYNC4.
+     *
+     * @param fh file handle of the file on the MDS.
+     * @param stateid open, lock or delegation stateid.
+     * @param layout layout of the file, or {@code null} to write through the MDS.
+     * @param offset file offset to write at.
+     * @param src data to write, from its position to its limit.
+     * @return future number of bytes written.
+     */
+    public CompletableFuture<Integer> write(nfs_fh4 fh, stateid4 stateid, StripeMap layout, long offset, ByteBuffer src) {
+
+        AtomicBoolean usedDs = new AtomicBoolean();
+        List<Piece> pieces = split(layout, offset, src);
+        List<CompletableFuture<Void>> results = new ArrayList<>(pieces.size());
+
+        for (Piece piece : pieces) {
+            CompletableFuture<Void> result;
+            if (piece.dataServer == null) {
+                result = writeTo(_mds, fh, piece.offset, piece, stateid);
+            } else {
+                result = writeTo(piece.dataServer, piece.dsFh, piece.dsOffset, piece, stateid)
+                        .thenRun(() -> usedDs.set(true))
+                        .exceptionallyCompose(t -> writeTo(_mds, fh, piece.offset, piece, stateid));
+            }
+            results.add(result);
+        }
+
+        int len = src.remaining();
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenCompose(v -> {
+                    if (!usedDs.get()) {
+                        return CompletableFuture.<COMPOUND4res>completedFuture(null);
+                    }
+                    return _mds.send(new CompoundBuilder()
+                            .withPutfh(fh)
+                            .withLayoutcommit(offset, len, false, layout.getStateid(),
+                                    OptionalLong.of(offset + len - 1), layouttype4.LAYOUT4_NFSV4_1_FILES, new byte[0])
+                            .withTag("pNFS layoutcommit")
+                            .build());
+                })
+                .thenApply(v -> {
+                    src.position(src.position() + len);
+                    return len;
+                });
+    }
+
+    /**
+     * Split the range of the buffer into pieces served by a single server.
+     */
+    private List<Piece> split(StripeMap layout, long offset, ByteBuffer buf) {
+
+        List<Piece> pieces = new ArrayList<>();
+        boolean useMds = layout == null;
+        int pos = buf.position();
+        int limit = buf.limit();
+
+        while (pos < limit) {
+            long fileOffset = offset + pos - buf.position();
+            int len = Math.min(limit - pos, _maxIoSize);
+
+            CompoundSender dataServer = null;
+            nfs_fh4 dsFh = null;
+            long dsOffset = fileOffset;
+
+            Stripe stripe = useMds ? null : layout.getStripeAt(fileOffset);
+            if (stripe != null) {
+                int unit = stripe.getStripeUnitSize();
+                long relativeOffset = fileOffset - stripe.getPatternOffset();
+                len = (int) Math.min(len, unit - relativeOffset % unit);
+                len = (int) Math.min(len, stripe.getLen() - (fileOffset - stripe.getOffset()));
+
+                try {
+                    FileIoDevice device = _devices.apply(stripe.getDeviceId());
+                    int index = device.indexOf(stripe.getPatternOffset(), unit, fileOffset, stripe.getFirstStripeIndex());
+                    dataServer = _dataServers.apply(device.ofIndex(index));
+                    dsFh = stripe.getFh(index);
+                    if (stripe.isDense()) {
+                        dsOffset = (relativeOffset / unit / device.getStripeCount()) * unit + relativeOffset % unit;
+                    }
+                } catch (RuntimeException e) {
+                    // unknown device or data server not available
+                    dataServer = null;
+                    useMds = true;
+                }
+            }
+
+            ByteBuffer slice = buf.duplicate();
+            slice.limit(pos + len).position(pos);
+            pieces.add(new Piece(fileOffset, slice.slice(), dataServer, dsFh, dsOffset));
+            pos += len;
+        }
+        return pieces;
+    }
+
+    private CompletableFuture<Integer> readFromDs(stateid4 stateid, Piece piece) {
+        return readFrom(piece.dataServer, piece.dsFh, piece.dsOffset, piece, stateid);
+    }
+
+    private CompletableFuture<Integer> readFromMds(nfs_fh4 fh, stateid4 stateid, Piece piece) {
+        return readFrom(_mds, fh, piece.offset, piece, stateid);
+    }
+
+    private static CompletableFuture<Integer> readFrom(CompoundSender sender, nfs_fh4 fh, long offset,
+            Piece piece, stateid4 stateid) {
+        return send(sender, new CompoundBuilder()
+                .withPutfh(fh)
+                .withRead(piece.data.remaining(), offset, stateid)
+                .withTag("pNFS read")
+                .build())
+                .thenApply(res -> {
+                    ByteBuffer data = res.resarray.get(2).opread.resok4.data;
+                    int n = Math.min(data.remaining(), piece.data.remaining());
+                    data.limit(data.position() + n);
+                    piece.data.duplicate().put(data);
+                    return n;
+                });
+    }
+
+    private static CompletableFuture<Void> writeTo(CompoundSender sender, nfs_fh4 fh, long offset,
+            Piece piece, stateid4 stateid) {
+        return writeFully(sender, fh, offset, piece.data.duplicate(), stateid);
+    }
+
+    /**
+     * Write all data of the buffer. Short writes are continued with the remaining
+     * data and writes which are not stable on the server are committed.
+     */
+    private static CompletableFuture<Void> writeFully(CompoundSender sender, nfs_fh4 fh, long offset,
+            ByteBuffer data, stateid4 stateid) {
+        int len = data.remaining();
+        return send(sender, new CompoundBuilder()
+                .withPutfh(fh)
+                .withWrite(offset, data.duplicate(), stateid)
+                .withTag("pNFS write")
+                .build())
+                .thenCompose(res -> {
+                    WRITE4resok resok = res.resarray.get(2).opwrite.resok4;
+                    int count = resok.count.value;
+                    if (count <= 0 || count > len) {
+                        return CompletableFuture.failedFuture(
+                                new IOException("Invalid write count " + count + " of " + len));
+                    }
+
+                    CompletableFuture<Void> stable = resok.committed == stable_how4.UNSTABLE4
+                            ? commit(sender, fh, offset, count)
+                            : CompletableFuture.completedFuture(null);
+
+                    if (count == len) {
+                        return stable;
+                    }
+
+                    ByteBuffer rest = data.duplicate();
+                    rest.position(rest.position() + count);
+                    return stable.thenCompose(v -> writeFully(sender, fh, offset + count, rest.slice(), stateid));
+                });
+    }
+
+    private static CompletableFuture<Void> commit(CompoundSender sender, nfs_fh4 fh, long offset, int count) {
+        return send(sender, new CompoundBuilder()
+                .withPutfh(fh)
+                .withCommit(offset, count)
+                .withTag("pNFS commit")
+                .build())
+                .thenAccept(res -> {});
+    }
+
+    /**
+     * Get file size from the MDS.
+     */
+    private CompletableFuture<Long> getSize(nfs_fh4 fh) {
+        return send(_mds, new CompoundBuilder()
+                .withPutfh(fh)
+                .withGetattr(nfs4_prot.FATTR4_SIZE)
+                .withTag("pNFS getattr")
+                .build())
+                .thenApply(res -> {
+                    try {
+                        AttributeMap attrs = new AttributeMap(res.resarray.get(2).opgetattr.resok4.obj_attributes);
+                        Optional<fattr4_size> size = attrs.get(nfs4_prot.FATTR4_SIZE);
+                        if (size.isEmpty()) {
+                            throw new IOException("MDS didn't return file size");
+                        }
+                        return size.get().value;
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Send compound and turn exceptions thrown by the sender into a failed future.
+     */
+    private static CompletableFuture<COMPOUND4res> send(CompoundSender sender, COMPOUND4args args) {
+        try {
+            return sender.send(args);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Unwrap the cause of the exception thrown by {@link CompletableFuture#join()}.
+     *
+     * @param e exception to unwrap.
+     * @return the cause of a {@link CompletionException} or the exception itself.
+     */
+    public static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
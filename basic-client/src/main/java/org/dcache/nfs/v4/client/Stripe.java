@@ -30,7 +30,7 @@ public class Stripe {
     private final long _offset;
     private final long _len;
     private final deviceid4 _deviceId;
-    private final nfs_fh4 _fh;
+    private final nfs_fh4[] _fhList;
     private final long _pattern_offset;
     private final int _unit;
     private final int _first_stripe_index;
@@ -52,6 +52,25 @@ public class Stripe {
                   long pattern_offset,
                   int unit, int first_stripe_index)
             throws IllegalArgumentException {
+        this(deviceId, new nfs_fh4[]{fh}, len, offset, pattern_offset, unit, first_stripe_index);
+    }
+
+    /**
+     * Construct new stripe unit with file handles per stripe index.
+     *
+     * @param deviceId
+     * @param fhList single file handle for all data servers or one file handle per stripe index.
+     * @param len
+     * @param offset
+     * @param pattern_offset
+     * @param unit
+     * @param first_stripe_index
+     * @throws IllegalArgumentException
+     */
+    public Stripe(deviceid4 deviceId, nfs_fh4[] fhList, long len, long offset,
+                  long pattern_offset,
+                  int unit, int first_stripe_index)
+            throws IllegalArgumentException {
 
         if( deviceId == null ) {
             throw new IllegalArgumentException("device id is null");
@@ -59,11 +78,11 @@ public class Stripe {
 
         _deviceId = deviceId;
 
-        if( fh == null ) {
+        if( fhList == null || fhList.length == 0 || fhList[0] == null ) {
             throw new IllegalArgumentException("NFS file hadle is null");
         }
 
-        this._fh = fh;
+        this._fhList = fhList;
 
         /*
          * handle special case: -1 is reserved value for entire file
@@ -87,6 +106,20 @@ public class Stripe {
         return _unit;
     }
 
+    /**
+     * @return the stripe unit size in bytes without layout flags.
+     */
+    public int getStripeUnitSize() {
+        return _unit & nfs4_prot.NFL4_UFLG_STRIPE_UNIT_SIZE_MASK;
+    }
+
+    /**
+     * @return true if data servers store the file densely packed.
+     */
+    public boolean isDense() {
+        return (_unit & nfs4_prot.NFL4_UFLG_DENSE) != 0;
+    }
+
     /**
      * @return the offset
      */
@@ -109,7 +142,18 @@ public class Stripe {
      * @return the _fh
      */
     public nfs_fh4 getFh() {
-        return _fh;
+        return _fhList[0];
+    }
+
+    /**
+     * Get file handle to use on the data server for given index into the
+     * stripe indices.
+     *
+     * @param index index into the stripe indices of the device.
+     * @return the file handle.
+     */
+    public nfs_fh4 getFh(int index) {
+        return _fhList.length == 1 ? _fhList[0] : _fhList[index];
     }
 
     public boolean isCommitThroughMDS() {
@@ -125,7 +169,7 @@ public class Stripe {
         int result = 1;
         result = prime * result
                 + ((_deviceId == null) ? 0 : _deviceId.hashCode());
-        result = prime * result + ((_fh == null) ? 0 : _fh.hashCode());
+        result = prime * result + _fhList[0].hashCode();
         result = prime * result + (int) (_len ^ (_len >>> 32));
         result = prime * result + (int) (_offset ^ (_offset >>> 32));
         return result;
@@ -154,9 +198,9 @@ public class Stripe {
                 .add("offset", _offset)
                 .add("length", _len)
                 .add("deviceId", _deviceId)
-                .add("fh", _fh)
+                .add("fh", _fhList[0])
                 .add("commit", ((_unit & nfs4_prot.NFL4_UFLG_COMMIT_THRU_MDS) == 0 ? "ds" : "mds"))
-                .add("blocksize", _unit & nfs4_prot.NFL4_UFLG_STRIPE_UNIT_SIZE_MASK)
+                .add("blocksize", getStripeUnitSize())
                 .toString();
     }
 }
@@ -20,8 +20,10 @@
 package org.dcache.nfs.v4.client;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import org.dcache.nfs.v4.xdr.stateid4;
 
 /**
@@ -36,9 +38,9 @@ public class StripeMap {
         _stateid = stateid;
     }
     /**
-     * List off all know stripes.
+     * All know stripes indexed by their offset.
      */
-    private final List<Stripe> _fileStripeLsit = new ArrayList<>();
+    private final NavigableMap<Long, Stripe> _fileStripes = new TreeMap<>();
 
     /**
      * Get list of stripes for the range.
@@ -48,9 +50,10 @@ public class StripeMap {
      */
     public List<Stripe> getStripe(long offset , long len) {
 
-        List<Stripe> ioStripe = new LinkedList<>();
+        List<Stripe> ioStripe = new ArrayList<>();
 
-        for(Stripe stripe: _fileStripeLsit) {
+        Long from = _fileStripes.floorKey(offset);
+        for(Stripe stripe: _fileStripes.tailMap(from == null ? offset : from, true).values()) {
 
             if( stripe.getOffset() + stripe.getLen() >= offset ) {
                 ioStripe.add(stripe);
@@ -64,8 +67,22 @@ public class StripeMap {
         return ioStripe;
     }
 
+    /**
+     * Get stripe which covers given offset.
+     * @param offset
+     * @return stripe or null if offset is not covered by any stripe.
+     */
+    public Stripe getStripeAt(long offset) {
+        Map.Entry<Long, Stripe> e = _fileStripes.floorEntry(offset);
+        if (e == null) {
+            return null;
+        }
+        Stripe stripe = e.getValue();
+        return offset - stripe.getOffset() < stripe.getLen() ? stripe : null;
+    }
+
     public void addStripe(Stripe stripe) {
-        _fileStripeLsit.add(stripe);
+        _fileStripes.put(stripe.getOffset(), stripe);
     }
 
     public stateid4 getStateid() {
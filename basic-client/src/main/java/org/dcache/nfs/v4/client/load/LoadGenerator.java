@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.client.load;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.net.HostAndPort;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.dcache.nfs.util.LatencyHistogram;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.stateid4;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A load generator to benchmark NFSv4.1 servers without kernel clients.
+ *
+ * <p>The generator simulates a number of clients, each with its own connection and
+ * client id. Each client creates a number of sessions, and each session is used by
+ * a number of worker threads. Every worker operates in its own directory.
+ *
+ * <p>Supported workloads:
+ * <ul>
+ *   <li>{@link Workload#SEQ_READ}, {@link Workload#RAND_READ},
+ *   {@link Workload#SEQ_WRITE}, {@link Workload#RAND_WRITE}: every worker reads or
+ *   writes its own file with the configured I/O size for the configured duration.
+ *   <li>{@link Workload#METADATA}: mdtest like create, stat, rename and unlink
+ *   phases, each worker handles the configured number of files per phase.
+ * </ul>
+ *
+ * For every phase the number of operations, ops/s, throughput and latency
+ * percentiles are reported.
+ */
+public class LoadGenerator {
+
+    /**
+     * Workloads supported by the load generator.
+     */
+    public enum Workload {
+        SEQ_READ,
+        RAND_READ,
+        SEQ_WRITE,
+        RAND_WRITE,
+        METADATA;
+
+        boolean isRead() {
+            return this == SEQ_READ || this == RAND_READ;
+        }
+
+        boolean isSequential() {
+            return this == SEQ_READ || this == SEQ_WRITE;
+        }
+    }
+
+    /**
+     * Creates connected clients.
+     */
+    @FunctionalInterface
+    interface ClientFactory {
+
+        VirtualClient newClient(String owner) throws IOException;
+    }
+
+    private final ClientFactory clientFactory;
+    private final Workload workload;
+    private final int clients;
+    private final int sessions;
+    private final int threads;
+    private final String path;
+    private final int ioSize;
+    private final long fileSize;
+    private final Duration duration;
+    private final int files;
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    private LoadGenerator(Builder builder) {
+        InetSocketAddress server = builder.server;
+        clientFactory = builder.clientFactory != null
+                ? builder.clientFactory
+                : owner -> new VirtualClient(server, owner);
+        workload = builder.workload;
+        clients = builder.clients;
+        sessions = builder.sessions;
+        threads = builder.threads;
+        path = builder.path;
+        ioSize = builder.ioSize;
+        fileSize = builder.fileSize;
+        duration = builder.duration;
+        files = builder.files;
+    }
+
+    /**
+     * Statistics of a single phase.
+     */
+    private static class Phase {
+
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private long elapsed;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+
+        /**
+         * Issue a request.
+         *
+         * @return number of transferred bytes.
+         */
+        long call() throws IOException;
+    }
+
+    /**
+     * A thread of load bound to a session.
+     */
+    private class Worker {
+
+        private final VirtualClient client;
+        private final ClientSession session;
+        private final String name;
+        private final ByteBuffer data;
+
+        private nfs_fh4 dir;
+        private nfs_fh4 file;
+        private stateid4 stateid;
+
+        Worker(VirtualClient client, ClientSession session, String name) {
+            this.client = client;
+            this.session = session;
+            this.name = name;
+            byte[] b = new byte[workload.isRead() || workload == Workload.METADATA ? 0 : ioSize];
+            ThreadLocalRandom.current().nextBytes(b);
+            this.data = ByteBuffer.wrap(b);
+        }
+
+        COMPOUND4res send(CompoundBuilder builder) throws IOException {
+            return client.sendInSession(session, builder.withTag(name).build());
+        }
+
+        void timed(Phase phase, Call call) {
+            long start = System.nanoTime();
+            try {
+                long n = call.call();
+                phase.latency.record(System.nanoTime() - start);
+                phase.bytes.add(n);
+            } catch (IOException e) {
+                phase.errors.increment();
+            }
+        }
+
+        void setUp(nfs_fh4 parent) throws IOException {
+            COMPOUND4res res = send(new CompoundBuilder()
+                    .withPutfh(parent)
+                    .withMakedir(name)
+                    .withGetfh());
+            dir = res.resarray.get(3).opgetfh.resok4.object;
+
+            if (workload != Workload.METADATA) {
+                res = send(new CompoundBuilder()
+                        .withPutfh(dir)
+                        .withOpenCreate("data", 0, client.getClientid(), nfs4_prot.OPEN4_SHARE_ACCESS_BOTH)
+                        .withGetfh());
+                stateid = res.resarray.get(2).opopen.resok4.stateid;
+                file = res.resarray.get(3).opgetfh.resok4.object;
+
+                if (workload.isRead()) {
+                    ByteBuffer b = ByteBuffer.allocate(ioSize);
+                    for (long offset = 0; offset < fileSize; offset += ioSize) {
+                        send(new CompoundBuilder()
+                                .withPutfh(file)
+                                .withWrite(offset, b.duplicate(), stateid));
+                    }
+                }
+            }
+        }
+
+        void tearDown(nfs_fh4 parent) throws IOException {
+            if (dir == null) {
+                // setUp failed before the directory was created
+                return;
+            }
+            if (file != null) {
+                send(new CompoundBuilder()
+                        .withPutfh(file)
+                        .withClose(stateid, 0));
+                send(new CompoundBuilder()
+                        .withPutfh(dir)
+                        .withRemove("data"));
+            }
+            send(new CompoundBuilder()
+                    .withPutfh(parent)
+                    .withRemove(name));
+        }
+
+        void io(Phase phase, long deadline) {
+            long blocks = Math.max(1, fileSize / ioSize);
+            long next = 0;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                long block = workload.isSequential() ? next++ % blocks : random.nextLong(blocks);
+                long offset = block * ioSize;
+                if (workload.isRead()) {
+                    timed(phase, () -> send(new CompoundBuilder()
+                            .withPutfh(file)
+                            .withRead(ioSize, offset, stateid))
+                            .resarray.get(2).opread.resok4.data.remaining());
+                } else {
+                    timed(phase, () -> send(new CompoundBuilder()
+                            .withPutfh(file)
+                            .withWrite(offset, data.duplicate(), stateid))
+                            .resarray.get(2).opwrite.resok4.count.value);
+                }
+            }
+        }
+
+        void create(Phase phase) {
+            for (int i = 0; i < files; i++) {
+                String f = "f" + i;
+                timed(phase, () -> {
+                    send(new CompoundBuilder()
+                            .withPutfh(dir)
+                            .withOpenCreate(f, 0, client.getClientid(), nfs4_prot.OPEN4_SHARE_ACCESS_BOTH)
+                            .withClose(Stateids.currentStateId(), 0));
+                    return 0;
+                });
+            }
+        }
+
+        void stat(Phase phase) {
+            for (int i = 0; i < files; i++) {
+                String f = "f" + i;
+                timed(phase, () -> {
+                    send(new CompoundBuilder()
+                            .withPutfh(dir)
+                            .withLookup(f)
+                            .withGetattr(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_SIZE, nfs4_prot.FATTR4_MODE,
+                                    nfs4_prot.FATTR4_CHANGE, nfs4_prot.FATTR4_TIME_MODIFY));
+                    return 0;
+                });
+            }
+        }
+
+        void rename(Phase phase) {
+            for (int i = 0; i < files; i++) {
+                String f = "f" + i;
+                timed(phase, () -> {
+                    send(new CompoundBuilder()
+                            .withPutfh(dir)
+                            .withSavefh()
+                            .withRename(f, f + ".r"));
+                    return 0;
+                });
+            }
+        }
+
+        void unlink(Phase phase) {
+            for (int i = 0; i < files; i++) {
+                String f = "f" + i + ".r";
+                timed(phase, () -> {
+                    send(new CompoundBuilder()
+                            .withPutfh(dir)
+                            .withRemove(f));
+                    return 0;
+                });
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+
+        void run(Worker worker) throws IOException;
+    }
+
+    /**
+     * Run the workload. Blocks until all phases are complete.
+     *
+     * @throws IOException if setup of clients, sessions or directories fails.
+     * @throws InterruptedException if interrupted while waiting for workers.
+     */
+    public void run() throws IOException, InterruptedException {
+
+        List<VirtualClient> virtualClients = new ArrayList<>(clients);
+        List<Worker> workers = new ArrayList<>(clients * sessions * threads);
+        ExecutorService executor = Executors.newFixedThreadPool(clients * sessions * threads);
+
+        try {
+            for (int c = 0; c < clients; c++) {
+                VirtualClient client = clientFactory.newClient("load-" + c);
+                virtualClients.add(client);
+                client.exchangeId();
+                for (int s = 0; s < sessions; s++) {
+                    ClientSession session = client.createSession();
+                    for (int t = 0; t < threads; t++) {
+                        workers.add(new Worker(client, session, "w" + c + "-" + s + "-" + t));
+                    }
+                }
+            }
+
+            Worker first = workers.get(0);
+            COMPOUND4res res = first.send(new CompoundBuilder()
+                    .withPutrootfh()
+                    .withLookup(path)
+                    .withGetfh());
+            nfs_fh4 base = res.resarray.get(res.resarray.size() - 1).opgetfh.resok4.object;
+
+            String runName = "nfs4j-load-" + ProcessHandle.current().pid() + "-" + System.currentTimeMillis();
+            res = first.send(new CompoundBuilder()
+                    .withPutfh(base)
+                    .withMakedir(runName)
+                    .withGetfh());
+            nfs_fh4 runDir = res.resarray.get(3).opgetfh.resok4.object;
+
+            try {
+                // workers which failed setUp clean up what they created as well
+                try {
+                    execute(executor, workers, w -> w.setUp(runDir));
+                    if (workload == Workload.METADATA) {
+                        phase(executor, workers, "create", w -> w.create(phases.get(phases.size() - 1)));
+                        phase(executor, workers, "stat", w -> w.stat(phases.get(phases.size() - 1)));
+                        phase(executor, workers, "rename", w -> w.rename(phases.get(phases.size() - 1)));
+                        phase(executor, workers, "unlink", w -> w.unlink(phases.get(phases.size() - 1)));
+                    } else {
+                        long deadline = System.nanoTime() + duration.toNanos();
+                        phase(executor, workers, workload.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                                w -> w.io(phases.get(phases.size() - 1), deadline));
+                    }
+                } finally {
+                    execute(executor, workers, w -> w.tearDown(runDir));
+                }
+            } finally {
+                first.send(new CompoundBuilder()
+                        .withPutfh(base)
+                        .withRemove(runName));
+            }
+        } finally {
+            executor.shutdown();
+            for (VirtualClient client : virtualClients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // best effort
+                }
+            }
+        }
+    }
+
+    private void phase(ExecutorService executor, List<Worker> workers, String name, Task task)
+            throws IOException, InterruptedException {
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        long start = System.nanoTime();
+        execute(executor, workers, task);
+        phase.elapsed = System.nanoTime() - start;
+    }
+
+    private static void execute(ExecutorService executor, List<Worker> workers, Task task)
+            throws IOException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            futures.add(executor.submit(() -> {
+                task.run(worker);
+                return null;
+            }));
+        }
+        IOException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Print results of all phases. Latencies are reported in microseconds.
+     *
+     * @param out stream to print to.
+     */
+    public void report(PrintStream out) {
+        out.printf("%-10s %10s %8s %11s %10s %8s %8s %8s %8s %8s%n",
+                "phase", "ops", "errors", "ops/s", "MiB/s", "p50", "p90", "p99", "p99.9", "max");
+        for (Phase phase : phases) {
+            LatencyHistogram.Snapshot s = phase.latency.snapshot();
+            double seconds = phase.elapsed / 1e9;
+            out.printf("%-10s %10d %8d %11.1f %10.1f %8d %8d %8d %8d %8d%n",
+                    phase.name, s.getCount(), phase.errors.sum(),
+                    s.getCount() / seconds, phase.bytes.sum() / seconds / (1024 * 1024),
+                    micros(s.getValueAtPercentile(50)), micros(s.getValueAtPercentile(90)),
+                    micros(s.getValueAtPercentile(99)), micros(s.getValueAtPercentile(99.9)),
+                    micros(s.getMax()));
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public static class Builder {
+
+        private InetSocketAddress server;
+        private ClientFactory clientFactory;
+        private Workload workload = Workload.METADATA;
+        private int clients = 1;
+        private int sessions = 1;
+        private int threads = 1;
+        private String path = "/";
+        private int ioSize = 128 * 1024;
+        private long fileSize = 64 * 1024 * 1024;
+        private Duration duration = Duration.ofSeconds(30);
+        private int files = 1000;
+
+        public Builder withServer(InetSocketAddress server) {
+            this.server = server;
+            return this;
+        }
+
+        /**
+         * @param clientFactory factory used instead of connecting to a server.
+         */
+        @VisibleForTesting
+        Builder withClientFactory(ClientFactory clientFactory) {
+            this.clientFactory = clientFactory;
+            return this;
+        }
+
+        public Builder withWorkload(Workload workload) {
+            this.workload = workload;
+            return this;
+        }
+
+        /**
+         * @param clients number of simulated clients, each with own connection and client id.
+         */
+        public Builder withClients(int clients) {
+            this.clients = clients;
+            return this;
+        }
+
+        /**
+         * @param sessions number of sessions per client.
+         */
+        public Builder withSessions(int sessions) {
+            this.sessions = sessions;
+            return this;
+        }
+
+        /**
+         * @param threads number of workers per session.
+         */
+        public Builder withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param path existing directory in which the test directory is created.
+         */
+        public Builder withPath(String path) {
+            this.path = path;
+            return this;
+        }
+
+        public Builder withIoSize(int ioSize) {
+            this.ioSize = ioSize;
+            return this;
+        }
+
+        public Builder withFileSize(long fileSize) {
+            this.fileSize = fileSize;
+            return this;
+        }
+
+        /**
+         * @param duration duration of data workloads.
+         */
+        public Builder withDuration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * @param files number of files per worker of metadata workload.
+         */
+        public Builder withFiles(int files) {
+            this.files = files;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            checkArgument(server != null || clientFactory != null, "Server is not set");
+            checkArgument(clients > 0 && sessions > 0 && threads > 0, "Number of clients, sessions and threads must be positive");
+            checkArgument(ioSize > 0 && fileSize >= ioSize, "File size must not be smaller than I/O size");
+            checkArgument(files > 0, "Number of files must be positive");
+            return new LoadGenerator(this);
+        }
+    }
+
+    /**
+     * Parse size with optional k, m or g suffix (powers of 1024).
+     */
+    static long parseSize(String s) {
+        String v = s.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        switch (v.charAt(v.length() - 1)) {
+            case 'k':
+                unit = 1024;
+                break;
+            case 'm':
+                unit = 1024 * 1024;
+                break;
+            case 'g':
+                unit = 1024 * 1024 * 1024;
+                break;
+            default:
+                return Long.parseLong(v);
+        }
+        return Long.parseLong(v.substring(0, v.length() - 1)) * unit;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Builder builder = new Builder();
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-"); i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "-clients":
+                        builder.withClients(Integer.parseInt(value));
+                        break;
+                    case "-sessions":
+                        builder.withSessions(Integer.parseInt(value));
+                        break;
+                    case "-threads":
+                        builder.withThreads(Integer.parseInt(value));
+                        break;
+                    case "-path":
+                        builder.withPath(value);
+                        break;
+                    case "-iosize":
+                        builder.withIoSize(Math.toIntExact(parseSize(value)));
+                        break;
+                    case "-filesize":
+                        builder.withFileSize(parseSize(value));
+                        break;
+                    case "-duration":
+                        builder.withDuration(Duration.ofSeconds(Long.parseLong(value)));
+                        break;
+                    case "-files":
+                        builder.withFiles(Integer.parseInt(value));
+                        break;
+                    default:
+                        usage();
+                }
+            }
+            if (args.length - i != 2) {
+                usage();
+            }
+            HostAndPort hp = HostAndPort.fromString(args[i]).withDefaultPort(2049);
+            builder.withServer(new InetSocketAddress(hp.getHost(), hp.getPort()));
+            builder.withWorkload(Workload.valueOf(args[i + 1].toUpperCase(Locale.ROOT).replace('-', '_')));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            usage();
+        }
+
+        LoadGenerator generator = builder.build();
+        generator.run();
+        generator.report(System.out);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LoadGenerator [-clients N] [-sessions M] [-threads T] [-path dir]"
+                + " [-iosize size] [-filesize size] [-duration sec] [-files K] <host[:port]>"
+                + " <seq-read|rand-read|seq-write|rand-write|metadata>");
+        System.exit(1);
+    }
+}
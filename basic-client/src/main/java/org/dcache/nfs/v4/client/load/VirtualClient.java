@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.client.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.client.nfs4_prot_NFS4_PROGRAM_Client;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.state_protect_how4;
+import org.dcache.oncrpc4j.rpc.net.IpProtocolType;
+
+/**
+ * A simulated NFSv4.1 client: a single connection and client id with any number
+ * of sessions. All sessions share the connection, requests of different sessions
+ * are issued concurrently.
+ */
+class VirtualClient implements AutoCloseable {
+
+    /**
+     * Sends compounds over the client's connection.
+     */
+    @FunctionalInterface
+    interface CompoundSender {
+
+        COMPOUND4res send(COMPOUND4args args) throws IOException;
+    }
+
+    private final CompoundSender sender;
+    private final Closeable connection;
+    private final String owner;
+    private final List<ClientSession> sessions = new ArrayList<>();
+
+    private clientid4 clientid;
+    private sequenceid4 sequence;
+
+    VirtualClient(InetSocketAddress server, String owner) throws IOException {
+        this(new nfs4_prot_NFS4_PROGRAM_Client(server.getAddress(), server.getPort(), IpProtocolType.TCP, 0, 0), owner);
+    }
+
+    private VirtualClient(nfs4_prot_NFS4_PROGRAM_Client rpc, String owner) throws IOException {
+        this(rpc::NFSPROC4_COMPOUND_4, rpc::close, owner);
+    }
+
+    VirtualClient(CompoundSender sender, Closeable connection, String owner) throws IOException {
+        this.sender = sender;
+        this.connection = connection;
+        this.owner = owner + "@" + InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Establish client id.
+     */
+    void exchangeId() throws IOException {
+        COMPOUND4args args = new CompoundBuilder()
+                .withExchangeId("dcache.org", "nfs4j load generator", owner, 0, state_protect_how4.SP4_NONE)
+                .withTag("exchange_id")
+                .build();
+        COMPOUND4res res = send(args);
+        clientid = res.resarray.get(0).opexchange_id.eir_resok4.eir_clientid;
+        sequence = res.resarray.get(0).opexchange_id.eir_resok4.eir_sequenceid;
+    }
+
+    /**
+     * Create a new session. The first session also completes reclaim of the client.
+     *
+     * @return created session.
+     */
+    ClientSession createSession() throws IOException {
+        COMPOUND4args args = new CompoundBuilder()
+                .withCreatesession(clientid, sequence)
+                .withTag("create_session")
+                .build();
+        COMPOUND4res res = send(args);
+        sequence = new sequenceid4(sequence.value + 1);
+
+        sessionid4 sessionid = res.resarray.get(0).opcreate_session.csr_resok4.csr_sessionid;
+        int maxRequests = res.resarray.get(0).opcreate_session.csr_resok4.csr_fore_chan_attrs.ca_maxrequests.value;
+        ClientSession session = new ClientSession(sessionid, maxRequests);
+
+        // register before first use, so that the session is destroyed on close even if it fails
+        sessions.add(session);
+        if (sessions.size() == 1) {
+            sendInSession(session, new CompoundBuilder()
+                    .withReclaimComplete()
+                    .withTag("reclaim_complete")
+                    .build());
+        }
+        return session;
+    }
+
+    clientid4 getClientid() {
+        return clientid;
+    }
+
+    private COMPOUND4res send(COMPOUND4args args) throws IOException {
+        COMPOUND4res res = sender.send(args);
+        nfsstat.throwIfNeeded(res.status);
+        return res;
+    }
+
+    /**
+     * Send a compound within a session. The SEQUENCE operation is added by this
+     * method.
+     *
+     * @param session the session to use.
+     * @param args compound without SEQUENCE operation.
+     * @return compound result.
+     * @throws IOException if request fails or any operation returns an error.
+     */
+    COMPOUND4res sendInSession(ClientSession session, COMPOUND4args args) throws IOException {
+
+        COMPOUND4args compound = ClientSession.prependSequence(args);
+        ClientSession.SessionSlot slot = session.acquireSlot();
+        try {
+            compound.argarray[0] = session.sequence(slot);
+            return send(compound);
+        } finally {
+            session.releaseSlot(slot);
+        }
+    }
+
+    /**
+     * Destroy all sessions and the client id, and close the connection. All of them
+     * are attempted even if some fail; the first failure is thrown.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (ClientSession session : sessions) {
+            error = attempt(error, new CompoundBuilder()
+                    .withDestroysession(session.sessionId())
+                    .withTag("destroy_session")
+                    .build());
+        }
+        sessions.clear();
+        if (clientid != null) {
+            error = attempt(error, new CompoundBuilder()
+                    .withDestroyclientid(clientid)
+                    .withTag("destroy_clientid")
+                    .build());
+            clientid = null;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            error = suppress(error, e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private IOException attempt(IOException error, COMPOUND4args args) {
+        try {
+            send(args);
+            return error;
+        } catch (IOException e) {
+            return suppress(error, e);
+        }
+    }
+
+    private static IOException suppress(IOException error, IOException e) {
+        if (error == null) {
+            return e;
+        }
+        error.addSuppressed(e);
+        return error;
+    }
+}
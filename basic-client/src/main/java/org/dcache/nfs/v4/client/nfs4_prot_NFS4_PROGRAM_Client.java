@@ -21,6 +21,7 @@ package org.dcache.nfs.v4.client;
 import java.io.IOException;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 import org.dcache.nfs.v4.xdr.COMPOUND4args;
 import org.dcache.nfs.v4.xdr.COMPOUND4res;
@@ -81,6 +82,19 @@ public class nfs4_prot_NFS4_PROGRAM_Client {
         return result$;
     }
 
+    /**
+     * Asynchronously call remote procedure NFSPROC4_COMPOUND_4. The calling thread is not
+     * blocked while waiting for the reply, thus multiple requests can be in flight on the
+     * same connection.
+     * @param arg1 parameter (of type COMPOUND4args) to the remote procedure call.
+     * @return future result from remote procedure call (of type COMPOUND4res).
+     * @throws IOException if an I/O error occurs.
+     */
+    public CompletableFuture<COMPOUND4res> NFSPROC4_COMPOUND_4_async(COMPOUND4args arg1)
+           throws IOException {
+        return client.call(nfs4_prot.NFSPROC4_COMPOUND_4, arg1, COMPOUND4res.class);
+    }
+
     public void close() throws IOException {
         rpcClient.close();
     }
@@ -0,0 +1,157 @@
+package org.dcache.nfs.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import org.dcache.nfs.ExportFile;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.MDSOperationExecutor;
+import org.dcache.nfs.v4.NFSServerV41;
+import org.dcache.nfs.v4.client.Nfs4Client;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.MemoryFileSystem;
+import org.dcache.oncrpc4j.rpc.OncRpcClient;
+import org.dcache.oncrpc4j.rpc.OncRpcProgram;
+import org.dcache.oncrpc4j.rpc.OncRpcSvc;
+import org.dcache.oncrpc4j.rpc.OncRpcSvcBuilder;
+import org.dcache.oncrpc4j.rpc.RpcAuthTypeUnix;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.rpc.net.IpProtocolType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplayerTest {
+
+    private static final String LOOPBACK = "127.0.0.1";
+
+    @TempDir
+    Path dir;
+
+    private Path log;
+    private CallRecorder recorder;
+    private OncRpcSvc recordedSvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        log = dir.resolve("calls.log");
+        recorder = new CallRecorder(log);
+        recordedSvc = startServer(new MemoryFileSystem(), recorder);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try {
+            recordedSvc.stop();
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    void shouldReplayRecordedCalls() throws Exception {
+        try (Nfs4Client client = new Nfs4Client(LOOPBACK, port(recordedSvc), "/")) {
+            client.mkDir("dir");
+            client.createFile("dir/file", "hello");
+        }
+        recorder.close();
+
+        MemoryFileSystem replayFs = new MemoryFileSystem();
+        String report = replay(replayFs);
+
+        assertThat(report).containsPattern("(?m)^NFSv4\\.1 OPEN\\s+1\\s+0\\s+0\\s");
+        assertThat(report).containsPattern("(?m)^NFSv4\\.1 WRITE\\s+1\\s+0\\s+0\\s");
+        assertThat(report).containsPattern("(?m)^NFSv4\\.1 CLOSE\\s+1\\s+0\\s+0\\s");
+        // errors and mismatch columns of all replayed calls
+        assertThat(report.lines()
+                .filter(l -> l.startsWith("NFSv"))
+                .map(l -> l.split("\\s+"))
+                .map(f -> f[3] + "/" + f[4]))
+                .containsOnly("0/0");
+        // session management is not replayed
+        assertThat(report).containsPattern("skipped: [1-9]\\d*, failed: 0");
+
+        Inode file = replayFs.lookup(replayFs.lookup(replayFs.getRootInode(), "dir"), "file");
+        assertThat(replayFs.getattr(file).getSize()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldSkipStatefulNfs40Calls() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(LOOPBACK, port(recordedSvc));
+        OncRpcClient client = new OncRpcClient(address.getAddress(), IpProtocolType.TCP, address.getPort());
+        try {
+            RpcCall call = new RpcCall(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4,
+                    new RpcAuthTypeUnix(0, 0, new int[]{0}, 0, "localhost"), client.connect());
+
+            call.call(nfs4_prot.NFSPROC4_COMPOUND_4, new CompoundBuilder()
+                    .withMinorversion(0)
+                    .withPutrootfh()
+                    .withGetattr(nfs4_prot.FATTR4_TYPE)
+                    .withTag("getattr")
+                    .build(), new COMPOUND4res());
+            call.call(nfs4_prot.NFSPROC4_COMPOUND_4, new CompoundBuilder()
+                    .withMinorversion(0)
+                    .withPutrootfh()
+                    .withOpenCreate("file", 1, new clientid4(1), nfs4_prot.OPEN4_SHARE_ACCESS_BOTH)
+                    .withTag("open")
+                    .build(), new COMPOUND4res());
+        } finally {
+            client.close();
+        }
+        recorder.close();
+
+        String report = replay(new MemoryFileSystem());
+
+        assertThat(report).containsPattern("(?m)^NFSv4\\.0 GETATTR\\s+1\\s");
+        assertThat(report).doesNotContain("NFSv4.0 OPEN");
+        assertThat(report).contains("skipped: 1, failed: 0");
+    }
+
+    private String replay(MemoryFileSystem fs) throws Exception {
+        OncRpcSvc svc = startServer(fs, null);
+        try (CallLogReader reader = new CallLogReader(log)) {
+            Replayer replayer = new Replayer(new InetSocketAddress(LOOPBACK, port(svc)), false, 0, 0);
+            replayer.replay(reader);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            replayer.report(new PrintStream(out, true));
+            return out.toString();
+        } finally {
+            svc.stop();
+        }
+    }
+
+    private static OncRpcSvc startServer(MemoryFileSystem fs, CallRecorder recorder) throws IOException {
+        NFSServerV41 nfs = new NFSServerV41.Builder()
+                .withVfs(fs)
+                .withOperationExecutor(new MDSOperationExecutor())
+                .withExportTable(new ExportFile(new StringReader("/ " + LOOPBACK + "(rw,no_root_squash)")))
+                .withCallRecorder(recorder)
+                .build();
+
+        OncRpcSvc svc = new OncRpcSvcBuilder()
+                .withBindAddress(LOOPBACK)
+                .withPort(0)
+                .withTCP()
+                .withoutAutoPublish()
+                .withWorkerThreadIoStrategy()
+                .withServiceName("replay-test")
+                .build();
+        svc.register(new OncRpcProgram(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4), nfs);
+        svc.start();
+        return svc;
+    }
+
+    private static int port(OncRpcSvc svc) {
+        return svc.getInetSocketAddress(IpProtocolType.TCP).getPort();
+    }
+}
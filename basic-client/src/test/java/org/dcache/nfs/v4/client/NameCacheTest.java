@@ -0,0 +1,353 @@
+package org.dcache.nfs.v4.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.status.StaleException;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.GETATTR4res;
+import org.dcache.nfs.v4.xdr.GETATTR4resok;
+import org.dcache.nfs.v4.xdr.GETFH4res;
+import org.dcache.nfs.v4.xdr.GETFH4resok;
+import org.dcache.nfs.v4.xdr.attrlist4;
+import org.dcache.nfs.v4.xdr.bitmap4;
+import org.dcache.nfs.v4.xdr.fattr4;
+import org.dcache.nfs.v4.xdr.fattr4_change;
+import org.dcache.nfs.v4.xdr.fattr4_type;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_ftype4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NameCacheTest {
+
+    private static final Duration LONG_TTL = Duration.ofHours(1);
+    private static final Duration SHORT_TTL = Duration.ofMillis(1);
+
+    private static final nfs_fh4 ROOT = new nfs_fh4(new byte[]{0});
+    private static final nfs_fh4 DIR = new nfs_fh4(new byte[]{1});
+    private static final nfs_fh4 OTHER_DIR = new nfs_fh4(new byte[]{2});
+    private static final nfs_fh4 FILE = new nfs_fh4(new byte[]{3});
+    private static final nfs_fh4 NEW_FILE = new nfs_fh4(new byte[]{4});
+    private static final nfs_fh4 NEW_DIR = new nfs_fh4(new byte[]{5});
+
+    /**
+     * A fake server with an in-memory namespace, which records tags of
+     * received compounds. The SEQUENCE reply is faked as the real sender does.
+     */
+    private static class FakeServer implements NameCache.CompoundSender {
+
+        private final Map<ByteBuffer, Map<String, nfs_fh4>> dirs = new HashMap<>();
+        private final Map<ByteBuffer, Long> changes = new HashMap<>();
+        private final List<String> tags = new ArrayList<>();
+        private final Set<ByteBuffer> stale = new HashSet<>();
+
+        void mkdir(nfs_fh4 dir) {
+            dirs.put(ByteBuffer.wrap(dir.value), new HashMap<>());
+            changes.put(ByteBuffer.wrap(dir.value), 1L);
+        }
+
+        void link(nfs_fh4 dir, String name, nfs_fh4 fh) {
+            dirs.get(ByteBuffer.wrap(dir.value)).put(name, fh);
+            changes.merge(ByteBuffer.wrap(dir.value), 1L, Long::sum);
+        }
+
+        void unlink(nfs_fh4 dir, String name) {
+            dirs.get(ByteBuffer.wrap(dir.value)).remove(name);
+            changes.merge(ByteBuffer.wrap(dir.value), 1L, Long::sum);
+        }
+
+        void rmdir(nfs_fh4 dir) {
+            dirs.remove(ByteBuffer.wrap(dir.value));
+            stale.add(ByteBuffer.wrap(dir.value));
+        }
+
+        List<String> tags() {
+            return tags;
+        }
+
+        @Override
+        public COMPOUND4res send(COMPOUND4args args) throws IOException {
+            tags.add(args.tag.toString());
+
+            COMPOUND4res res = new COMPOUND4res();
+            res.status = nfsstat.NFS_OK;
+            res.resarray = new ArrayList<>();
+            res.resarray.add(new nfs_resop4());
+
+            nfs_fh4 current = null;
+            for (nfs_argop4 op : args.argarray) {
+                switch (op.argop) {
+                    case nfs_opnum4.OP_PUTFH:
+                        current = op.opputfh.object;
+                        if (stale.contains(ByteBuffer.wrap(current.value))) {
+                            throw new StaleException();
+                        }
+                        res.resarray.add(new nfs_resop4());
+                        break;
+                    case nfs_opnum4.OP_LOOKUP:
+                        current = dirs.get(ByteBuffer.wrap(current.value)).get(op.oplookup.objname.toString());
+                        if (current == null) {
+                            throw new NoEntException();
+                        }
+                        res.resarray.add(new nfs_resop4());
+                        break;
+                    case nfs_opnum4.OP_GETFH:
+                        res.resarray.add(getfh(current));
+                        break;
+                    case nfs_opnum4.OP_GETATTR:
+                        res.resarray.add(getattr(current, op.opgetattr.attr_request));
+                        break;
+                    default:
+                        throw new AssertionError("unexpected operation: " + op.argop);
+                }
+            }
+            return res;
+        }
+
+        private nfs_resop4 getattr(nfs_fh4 fh, bitmap4 request) {
+            ByteBuffer key = ByteBuffer.wrap(fh.value);
+            boolean isDir = dirs.containsKey(key);
+            try (Xdr xdr = new Xdr(32)) {
+                xdr.beginEncoding();
+                bitmap4 mask = new bitmap4();
+                if (request.isSet(nfs4_prot.FATTR4_TYPE)) {
+                    mask.set(nfs4_prot.FATTR4_TYPE);
+                    new fattr4_type(isDir ? nfs_ftype4.NF4DIR : nfs_ftype4.NF4REG).xdrEncode(xdr);
+                }
+                if (request.isSet(nfs4_prot.FATTR4_CHANGE)) {
+                    mask.set(nfs4_prot.FATTR4_CHANGE);
+                    new fattr4_change(changes.getOrDefault(key, 1L)).xdrEncode(xdr);
+                }
+                xdr.endEncoding();
+
+                nfs_resop4 op = new nfs_resop4();
+                op.resop = nfs_opnum4.OP_GETATTR;
+                op.opgetattr = new GETATTR4res();
+                op.opgetattr.status = nfsstat.NFS_OK;
+                op.opgetattr.resok4 = new GETATTR4resok();
+                op.opgetattr.resok4.obj_attributes = new fattr4();
+                op.opgetattr.resok4.obj_attributes.attrmask = mask;
+                op.opgetattr.resok4.obj_attributes.attr_vals = new attrlist4(xdr.getBytes());
+                return op;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private static nfs_resop4 getfh(nfs_fh4 fh) {
+            nfs_resop4 op = new nfs_resop4();
+            op.resop = nfs_opnum4.OP_GETFH;
+            op.opgetfh = new GETFH4res();
+            op.opgetfh.status = nfsstat.NFS_OK;
+            op.opgetfh.resok4 = new GETFH4resok();
+            op.opgetfh.resok4.object = fh;
+            return op;
+        }
+    }
+
+    private FakeServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = new FakeServer();
+        server.mkdir(ROOT);
+        server.mkdir(DIR);
+        server.mkdir(OTHER_DIR);
+        server.link(ROOT, "dir", DIR);
+        server.link(ROOT, "other", OTHER_DIR);
+        server.link(DIR, "file", FILE);
+    }
+
+    @Test
+    void shouldLookupPathWithSingleCompound() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(FILE.value);
+        assertThat(server.tags()).containsExactly("lookup");
+        assertThat(cache.getMisses()).isEqualTo(2L);
+        assertThat(cache.getHits()).isEqualTo(0L);
+    }
+
+    @Test
+    void shouldResolveCachedPathWithoutServer() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(FILE.value);
+        assertThat(server.tags()).containsExactly("lookup");
+        assertThat(cache.getHits()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldLookupOnlyMissingComponents() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir");
+        cache.resolve(ROOT, "/dir/file");
+        assertThat(server.tags()).containsExactly("lookup", "lookup");
+        assertThat(cache.getHits()).isEqualTo(1L);
+        assertThat(cache.getMisses()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldFailOnMissingEntry() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        assertThatThrownBy(() -> cache.resolve(ROOT, "/dir/missing")).isInstanceOf(NoEntException.class);
+    }
+
+    @Test
+    void shouldRevalidateExpiredDirectory() throws Exception {
+        NameCache cache = new NameCache(server, SHORT_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        Thread.sleep(10);
+
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(FILE.value);
+        assertThat(server.tags()).containsExactly("lookup", "revalidate");
+        assertThat(cache.getHits()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldLookupAgainIfExpiredDirectoryChanged() throws Exception {
+        NameCache cache = new NameCache(server, SHORT_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        server.unlink(DIR, "file");
+        server.link(DIR, "file", NEW_FILE);
+        Thread.sleep(10);
+
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(NEW_FILE.value);
+        assertThat(server.tags()).containsExactly("lookup", "revalidate", "lookup");
+    }
+
+    @Test
+    void shouldLookupAgainIfRevalidationFails() throws Exception {
+        NameCache cache = new NameCache(server, SHORT_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        server.unlink(ROOT, "dir");
+        server.rmdir(DIR);
+        server.mkdir(NEW_DIR);
+        server.link(ROOT, "dir", NEW_DIR);
+        server.link(NEW_DIR, "file", NEW_FILE);
+        Thread.sleep(10);
+
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(NEW_FILE.value);
+        assertThat(server.tags()).containsExactly("lookup", "revalidate", "lookup");
+    }
+
+    @Test
+    void shouldUseCachedEntryWithinTtl() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        server.unlink(DIR, "file");
+
+        // changes by other clients are not visible until the directory expires
+        assertThat(cache.resolve(ROOT, "/dir/file").value).isEqualTo(FILE.value);
+        assertThat(server.tags()).containsExactly("lookup");
+    }
+
+    @Test
+    void shouldLookupAgainAfterRemove() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        server.unlink(DIR, "file");
+        cache.invalidate(DIR);
+
+        assertThatThrownBy(() -> cache.resolve(ROOT, "/dir/file")).isInstanceOf(NoEntException.class);
+        assertThat(server.tags()).containsExactly("lookup", "lookup");
+    }
+
+    @Test
+    void shouldLookupAgainAfterRename() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        server.unlink(DIR, "file");
+        server.link(OTHER_DIR, "file", FILE);
+        cache.invalidate(DIR);
+        cache.invalidate(OTHER_DIR);
+
+        assertThatThrownBy(() -> cache.resolve(ROOT, "/dir/file")).isInstanceOf(NoEntException.class);
+        assertThat(cache.resolve(ROOT, "/other/file").value).isEqualTo(FILE.value);
+    }
+
+    @Test
+    void shouldReuseEntriesOfIntermediateDirectory() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.resolve(ROOT, "/dir/file");
+        assertThat(cache.resolve(DIR, "file").value).isEqualTo(FILE.value);
+        assertThat(server.tags()).containsExactly("lookup");
+    }
+
+    @Test
+    void shouldCacheAttributes() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        assertThat(server.tags()).containsExactly("getattr");
+        assertThat(cache.getHits()).isEqualTo(1L);
+    }
+
+    @Test
+    void shouldFetchMissingAttributes() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.getattr(FILE, nfs4_prot.FATTR4_CHANGE);
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        assertThat(server.tags()).containsExactly("getattr", "getattr");
+    }
+
+    @Test
+    void shouldFetchExpiredAttributes() throws Exception {
+        NameCache cache = new NameCache(server, LONG_TTL, SHORT_TTL, 100);
+
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        Thread.sleep(10);
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        assertThat(server.tags()).containsExactly("getattr", "getattr");
+    }
+
+    @Test
+    void shouldFetchAttributesOfWrittenFile() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        cache.invalidate(FILE);
+        cache.getattr(FILE, nfs4_prot.FATTR4_TYPE);
+        assertThat(server.tags()).containsExactly("getattr", "getattr");
+    }
+
+    @Test
+    void shouldFetchAttributesOfInvalidatedDirectory() throws IOException {
+        NameCache cache = new NameCache(server, LONG_TTL, LONG_TTL, 100);
+
+        cache.getattr(DIR, nfs4_prot.FATTR4_TYPE);
+        cache.invalidate(DIR);
+        cache.getattr(DIR, nfs4_prot.FATTR4_TYPE);
+        assertThat(server.tags()).containsExactly("getattr", "getattr");
+    }
+}
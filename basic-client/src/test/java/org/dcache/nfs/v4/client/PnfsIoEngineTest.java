@@ -0,0 +1,306 @@
+package org.dcache.nfs.v4.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.xdr.COMMIT4res;
+import org.dcache.nfs.v4.xdr.COMMIT4resok;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.GETATTR4res;
+import org.dcache.nfs.v4.xdr.GETATTR4resok;
+import org.dcache.nfs.v4.xdr.READ4res;
+import org.dcache.nfs.v4.xdr.READ4resok;
+import org.dcache.nfs.v4.xdr.WRITE4res;
+import org.dcache.nfs.v4.xdr.WRITE4resok;
+import org.dcache.nfs.v4.xdr.attrlist4;
+import org.dcache.nfs.v4.xdr.bitmap4;
+import org.dcache.nfs.v4.xdr.count4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.fattr4;
+import org.dcache.nfs.v4.xdr.fattr4_size;
+import org.dcache.nfs.v4.xdr.multipath_list4;
+import org.dcache.nfs.v4.xdr.netaddr4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.nfsv4_1_file_layout_ds_addr4;
+import org.dcache.nfs.v4.xdr.stable_how4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PnfsIoEngineTest {
+
+    private static final int UNIT = 4096;
+
+    private static final InetSocketAddress DS0 = new InetSocketAddress("127.0.0.1", 2050);
+    private static final InetSocketAddress DS1 = new InetSocketAddress("127.0.0.1", 2051);
+
+    private static final nfs_fh4 MDS_FH = new nfs_fh4(new byte[]{0});
+    private static final nfs_fh4 DS_FH = new nfs_fh4(new byte[]{1});
+    private static final deviceid4 DEVICE = new deviceid4(new byte[nfs4_prot.NFS4_DEVICEID4_SIZE]);
+    private static final stateid4 STATEID = new stateid4(new byte[12], 0);
+
+    /**
+     * A fake server, which records received operations and replies with the
+     * configured handler.
+     */
+    private static class FakeServer implements PnfsIoEngine.CompoundSender {
+
+        private final List<nfs_argop4> ops = new ArrayList<>();
+        private Function<nfs_argop4, nfs_resop4> handler = FakeServer::fileSync;
+
+        @Override
+        public synchronized CompletableFuture<COMPOUND4res> send(COMPOUND4args args) {
+            nfs_argop4 op = args.argarray[1];
+            ops.add(op);
+            try {
+                return CompletableFuture.completedFuture(reply(handler.apply(op)));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        synchronized List<nfs_argop4> ops(int opnum) {
+            return ops.stream().filter(op -> op.argop == opnum).toList();
+        }
+
+        static nfs_resop4 fileSync(nfs_argop4 op) {
+            return op.argop == nfs_opnum4.OP_WRITE
+                    ? write(op.opwrite.data.remaining(), stable_how4.FILE_SYNC4)
+                    : new nfs_resop4();
+        }
+    }
+
+    private FakeServer mds;
+    private Map<InetSocketAddress, FakeServer> dataServers;
+
+    @BeforeEach
+    void setUp() {
+        mds = new FakeServer();
+        dataServers = new HashMap<>();
+        dataServers.put(DS0, new FakeServer());
+        dataServers.put(DS1, new FakeServer());
+    }
+
+    @Test
+    void shouldSplitWriteAtStripeUnitBoundaries() {
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        int n = engine.write(MDS_FH, STATEID, layout(UNIT), 2048, ByteBuffer.allocate(10000)).join();
+
+        assertThat(n).isEqualTo(10000);
+        assertThat(writes(dataServers.get(DS0))).containsExactly(2048L, 2048L, 8192L, 3856L);
+        assertThat(writes(dataServers.get(DS1))).containsExactly(4096L, 4096L);
+        assertThat(mds.ops(nfs_opnum4.OP_WRITE)).isEmpty();
+        assertThat(mds.ops(nfs_opnum4.OP_LAYOUTCOMMIT)).hasSize(1);
+    }
+
+    @Test
+    void shouldUseDenseOffsetsOnDataServers() {
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        engine.write(MDS_FH, STATEID, layout(UNIT | nfs4_prot.NFL4_UFLG_DENSE), 0, ByteBuffer.allocate(4 * UNIT)).join();
+
+        assertThat(writes(dataServers.get(DS0))).containsExactly(0L, (long) UNIT, (long) UNIT, (long) UNIT);
+        assertThat(writes(dataServers.get(DS1))).containsExactly(0L, (long) UNIT, (long) UNIT, (long) UNIT);
+    }
+
+    @Test
+    void shouldWriteThroughMdsIfDataServerFails() {
+        dataServers.get(DS1).handler = op -> {
+            throw new IllegalStateException("data server down");
+        };
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        int n = engine.write(MDS_FH, STATEID, layout(UNIT), 0, ByteBuffer.allocate(2 * UNIT)).join();
+
+        assertThat(n).isEqualTo(2 * UNIT);
+        assertThat(writes(dataServers.get(DS0))).containsExactly(0L, (long) UNIT);
+        assertThat(writes(mds)).containsExactly((long) UNIT, (long) UNIT);
+    }
+
+    @Test
+    void shouldWriteThroughMdsIfDeviceUnknown() {
+        PnfsIoEngine engine = newEngine(d -> {
+            throw new IllegalArgumentException("unknown device");
+        });
+
+        engine.write(MDS_FH, STATEID, layout(UNIT), 0, ByteBuffer.allocate(2 * UNIT)).join();
+
+        assertThat(writes(mds)).containsExactly(0L, (long) UNIT, (long) UNIT, (long) UNIT);
+        assertThat(mds.ops(nfs_opnum4.OP_LAYOUTCOMMIT)).isEmpty();
+    }
+
+    @Test
+    void shouldContinueShortWrite() {
+        dataServers.get(DS0).handler = op -> op.argop == nfs_opnum4.OP_WRITE
+                ? write(Math.min(1000, op.opwrite.data.remaining()), stable_how4.FILE_SYNC4)
+                : new nfs_resop4();
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        engine.write(MDS_FH, STATEID, layout(UNIT), 0, ByteBuffer.allocate(2500)).join();
+
+        assertThat(writes(dataServers.get(DS0))).containsExactly(0L, 2500L, 1000L, 1500L, 2000L, 500L);
+    }
+
+    @Test
+    void shouldCommitUnstableWrite() {
+        dataServers.get(DS0).handler = op -> op.argop == nfs_opnum4.OP_WRITE
+                ? write(op.opwrite.data.remaining(), stable_how4.UNSTABLE4)
+                : commit();
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        engine.write(MDS_FH, STATEID, layout(UNIT), 0, ByteBuffer.allocate(UNIT)).join();
+
+        List<nfs_argop4> commits = dataServers.get(DS0).ops(nfs_opnum4.OP_COMMIT);
+        assertThat(commits).hasSize(1);
+        assertThat(commits.get(0).opcommit.offset.value).isEqualTo(0L);
+        assertThat(commits.get(0).opcommit.count.value).isEqualTo(UNIT);
+    }
+
+    @Test
+    void shouldZeroFillHolesOnDataServers() {
+        byte[] data = new byte[UNIT];
+        data[0] = 1;
+        // DS0 holds first unit, DS1 doesn't store anything of the second unit
+        dataServers.get(DS0).handler = op -> read(data);
+        dataServers.get(DS1).handler = op -> read(new byte[0]);
+        mds.handler = op -> getattr(2 * UNIT - 100);
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        ByteBuffer dst = ByteBuffer.allocate(2 * UNIT);
+        dst.put(UNIT, (byte) 0x7f);
+        int n = engine.read(MDS_FH, STATEID, layout(UNIT), 0, dst).join();
+
+        assertThat(n).isEqualTo(2 * UNIT - 100);
+        assertThat(dst.position()).isEqualTo(2 * UNIT - 100);
+        assertThat(dst.get(0)).isEqualTo((byte) 1);
+        assertThat(dst.get(UNIT)).isEqualTo((byte) 0);
+    }
+
+    @Test
+    void shouldStopAtEndOfFileOnMds() {
+        mds.handler = op -> read(new byte[100]);
+        PnfsIoEngine engine = newEngine(d -> device());
+
+        int n = engine.read(MDS_FH, STATEID, null, 0, ByteBuffer.allocate(UNIT)).join();
+
+        assertThat(n).isEqualTo(100);
+        assertThat(mds.ops(nfs_opnum4.OP_GETATTR)).isEmpty();
+    }
+
+    private PnfsIoEngine newEngine(Function<deviceid4, FileIoDevice> devices) {
+        return new PnfsIoEngine(mds, dataServers::get, devices, PnfsIoEngine.DEFAULT_MAX_IO_SIZE);
+    }
+
+    /**
+     * Offsets and lengths of all writes received by the server.
+     */
+    private static List<Long> writes(FakeServer server) {
+        List<Long> writes = new ArrayList<>();
+        for (nfs_argop4 op : server.ops(nfs_opnum4.OP_WRITE)) {
+            writes.add(op.opwrite.offset.value);
+            writes.add((long) op.opwrite.data.remaining());
+        }
+        return writes;
+    }
+
+    private static StripeMap layout(int unit) {
+        StripeMap layout = new StripeMap(STATEID);
+        layout.addStripe(new Stripe(DEVICE, DS_FH, -1, 0, 0, unit, 0));
+        return layout;
+    }
+
+    private static FileIoDevice device() {
+        nfsv4_1_file_layout_ds_addr4 addr = new nfsv4_1_file_layout_ds_addr4();
+        addr.nflda_stripe_indices = new uint32_t[]{new uint32_t(0), new uint32_t(1)};
+        addr.nflda_multipath_ds_list = new multipath_list4[]{multipath(DS0), multipath(DS1)};
+        try {
+            return new FileIoDevice(addr);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static multipath_list4 multipath(InetSocketAddress address) {
+        multipath_list4 list = new multipath_list4();
+        list.value = new netaddr4[]{new netaddr4(address)};
+        return list;
+    }
+
+    private static COMPOUND4res reply(nfs_resop4 op) {
+        COMPOUND4res res = new COMPOUND4res();
+        res.status = nfsstat.NFS_OK;
+        res.resarray = List.of(new nfs_resop4(), new nfs_resop4(), op);
+        return res;
+    }
+
+    private static nfs_resop4 write(int count, int stable) {
+        nfs_resop4 op = new nfs_resop4();
+        op.resop = nfs_opnum4.OP_WRITE;
+        op.opwrite = new WRITE4res();
+        op.opwrite.status = nfsstat.NFS_OK;
+        op.opwrite.resok4 = new WRITE4resok();
+        op.opwrite.resok4.count = new count4(count);
+        op.opwrite.resok4.committed = stable;
+        op.opwrite.resok4.writeverf = verifier4.valueOf(0L);
+        return op;
+    }
+
+    private static nfs_resop4 commit() {
+        nfs_resop4 op = new nfs_resop4();
+        op.resop = nfs_opnum4.OP_COMMIT;
+        op.opcommit = new COMMIT4res();
+        op.opcommit.status = nfsstat.NFS_OK;
+        op.opcommit.resok4 = new COMMIT4resok();
+        op.opcommit.resok4.writeverf = verifier4.valueOf(0L);
+        return op;
+    }
+
+    private static nfs_resop4 read(byte[] data) {
+        nfs_resop4 op = new nfs_resop4();
+        op.resop = nfs_opnum4.OP_READ;
+        op.opread = new READ4res();
+        op.opread.status = nfsstat.NFS_OK;
+        op.opread.resok4 = new READ4resok();
+        op.opread.resok4.data = ByteBuffer.wrap(data);
+        op.opread.resok4.eof = true;
+        return op;
+    }
+
+    private static nfs_resop4 getattr(long size) {
+        try (Xdr xdr = new Xdr(32)) {
+            xdr.beginEncoding();
+            new fattr4_size(size).xdrEncode(xdr);
+            xdr.endEncoding();
+
+            nfs_resop4 op = new nfs_resop4();
+            op.resop = nfs_opnum4.OP_GETATTR;
+            op.opgetattr = new GETATTR4res();
+            op.opgetattr.status = nfsstat.NFS_OK;
+            op.opgetattr.resok4 = new GETATTR4resok();
+            op.opgetattr.resok4.obj_attributes = new fattr4();
+            op.opgetattr.resok4.obj_attributes.attrmask = bitmap4.of(nfs4_prot.FATTR4_SIZE);
+            op.opgetattr.resok4.obj_attributes.attr_vals = new attrlist4(xdr.getBytes());
+            return op;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
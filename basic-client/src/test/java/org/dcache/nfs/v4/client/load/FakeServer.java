@@ -0,0 +1,230 @@
+package org.dcache.nfs.v4.client.load;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.CREATE_SESSION4res;
+import org.dcache.nfs.v4.xdr.CREATE_SESSION4resok;
+import org.dcache.nfs.v4.xdr.EXCHANGE_ID4res;
+import org.dcache.nfs.v4.xdr.EXCHANGE_ID4resok;
+import org.dcache.nfs.v4.xdr.GETFH4res;
+import org.dcache.nfs.v4.xdr.GETFH4resok;
+import org.dcache.nfs.v4.xdr.OPEN4res;
+import org.dcache.nfs.v4.xdr.OPEN4resok;
+import org.dcache.nfs.v4.xdr.READ4res;
+import org.dcache.nfs.v4.xdr.READ4resok;
+import org.dcache.nfs.v4.xdr.WRITE4res;
+import org.dcache.nfs.v4.xdr.WRITE4resok;
+import org.dcache.nfs.v4.xdr.channel_attrs4;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.count4;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.stable_how4;
+import org.dcache.nfs.v4.xdr.stateid4;
+
+/**
+ * A fake NFSv4.1 server with an in-memory namespace, which supports operations used
+ * by the load generator and keeps track of client ids and sessions.
+ */
+class FakeServer implements VirtualClient.CompoundSender {
+
+    private final int maxRequests;
+
+    private final Map<ByteBuffer, Map<String, nfs_fh4>> dirs = new HashMap<>();
+    private final Set<Long> clientids = new HashSet<>();
+    private final Set<ByteBuffer> sessions = new HashSet<>();
+    private final List<Integer> sequenceids = new ArrayList<>();
+    private final Set<Integer> failing = new HashSet<>();
+
+    private final nfs_fh4 root;
+    private int next;
+
+    FakeServer(int maxRequests) {
+        this.maxRequests = maxRequests;
+        root = newDirectory();
+    }
+
+    /**
+     * Fail all following requests, which contain the given operation.
+     */
+    synchronized void failOn(int opnum) {
+        failing.add(opnum);
+    }
+
+    synchronized int clients() {
+        return clientids.size();
+    }
+
+    synchronized int sessions() {
+        return sessions.size();
+    }
+
+    synchronized List<Integer> sequenceids() {
+        return new ArrayList<>(sequenceids);
+    }
+
+    synchronized Map<String, nfs_fh4> rootEntries() {
+        return new HashMap<>(dirs.get(ByteBuffer.wrap(root.value)));
+    }
+
+    nfs_fh4 root() {
+        return root;
+    }
+
+    @Override
+    public synchronized COMPOUND4res send(COMPOUND4args args) {
+
+        COMPOUND4res res = new COMPOUND4res();
+        res.status = nfsstat.NFS_OK;
+        res.resarray = new ArrayList<>();
+
+        nfs_fh4 current = null;
+        nfs_fh4 saved = null;
+        for (nfs_argop4 op : args.argarray) {
+            if (failing.contains(op.argop)) {
+                res.status = nfsstat.NFSERR_IO;
+                return res;
+            }
+
+            nfs_resop4 result = new nfs_resop4();
+            result.resop = op.argop;
+            switch (op.argop) {
+                case nfs_opnum4.OP_EXCHANGE_ID:
+                    clientids.add((long) ++next);
+                    result.opexchange_id = new EXCHANGE_ID4res();
+                    result.opexchange_id.eir_status = nfsstat.NFS_OK;
+                    result.opexchange_id.eir_resok4 = new EXCHANGE_ID4resok();
+                    result.opexchange_id.eir_resok4.eir_clientid = new clientid4(next);
+                    result.opexchange_id.eir_resok4.eir_sequenceid = new sequenceid4(1);
+                    break;
+                case nfs_opnum4.OP_CREATE_SESSION:
+                    byte[] id = new byte[16];
+                    id[0] = (byte) ++next;
+                    sessions.add(ByteBuffer.wrap(id));
+                    result.opcreate_session = new CREATE_SESSION4res();
+                    result.opcreate_session.csr_status = nfsstat.NFS_OK;
+                    result.opcreate_session.csr_resok4 = new CREATE_SESSION4resok();
+                    result.opcreate_session.csr_resok4.csr_sessionid = new sessionid4(id);
+                    result.opcreate_session.csr_resok4.csr_fore_chan_attrs = new channel_attrs4();
+                    result.opcreate_session.csr_resok4.csr_fore_chan_attrs.ca_maxrequests = new count4(maxRequests);
+                    break;
+                case nfs_opnum4.OP_SEQUENCE:
+                    if (!sessions.contains(ByteBuffer.wrap(op.opsequence.sa_sessionid.value))) {
+                        res.status = nfsstat.NFSERR_BADSESSION;
+                        return res;
+                    }
+                    sequenceids.add(op.opsequence.sa_sequenceid.value);
+                    break;
+                case nfs_opnum4.OP_DESTROY_SESSION:
+                    sessions.remove(ByteBuffer.wrap(op.opdestroy_session.dsa_sessionid.value));
+                    break;
+                case nfs_opnum4.OP_DESTROY_CLIENTID:
+                    clientids.remove(op.opdestroy_clientid.dca_clientid.value);
+                    break;
+                case nfs_opnum4.OP_RECLAIM_COMPLETE:
+                case nfs_opnum4.OP_CLOSE:
+                case nfs_opnum4.OP_GETATTR:
+                    break;
+                case nfs_opnum4.OP_PUTROOTFH:
+                    current = root;
+                    break;
+                case nfs_opnum4.OP_PUTFH:
+                    current = op.opputfh.object;
+                    break;
+                case nfs_opnum4.OP_SAVEFH:
+                    saved = current;
+                    break;
+                case nfs_opnum4.OP_GETFH:
+                    result.opgetfh = new GETFH4res();
+                    result.opgetfh.status = nfsstat.NFS_OK;
+                    result.opgetfh.resok4 = new GETFH4resok();
+                    result.opgetfh.resok4.object = current;
+                    break;
+                case nfs_opnum4.OP_LOOKUP:
+                    current = entries(current).get(op.oplookup.objname.toString());
+                    if (current == null) {
+                        res.status = nfsstat.NFSERR_NOENT;
+                        return res;
+                    }
+                    break;
+                case nfs_opnum4.OP_CREATE:
+                    nfs_fh4 dir = newDirectory();
+                    entries(current).put(op.opcreate.objname.toString(), dir);
+                    current = dir;
+                    break;
+                case nfs_opnum4.OP_OPEN:
+                    current = entries(current).computeIfAbsent(op.opopen.claim.file.toString(), n -> newHandle());
+                    result.opopen = new OPEN4res();
+                    result.opopen.status = nfsstat.NFS_OK;
+                    result.opopen.resok4 = new OPEN4resok();
+                    result.opopen.resok4.stateid = new stateid4(new byte[12], 1);
+                    break;
+                case nfs_opnum4.OP_REMOVE:
+                    nfs_fh4 removed = entries(current).get(op.opremove.target.toString());
+                    if (removed == null) {
+                        res.status = nfsstat.NFSERR_NOENT;
+                        return res;
+                    }
+                    Map<String, nfs_fh4> children = dirs.get(ByteBuffer.wrap(removed.value));
+                    if (children != null && !children.isEmpty()) {
+                        res.status = nfsstat.NFSERR_NOTEMPTY;
+                        return res;
+                    }
+                    entries(current).remove(op.opremove.target.toString());
+                    dirs.remove(ByteBuffer.wrap(removed.value));
+                    break;
+                case nfs_opnum4.OP_RENAME:
+                    nfs_fh4 renamed = entries(saved).remove(op.oprename.oldname.toString());
+                    if (renamed == null) {
+                        res.status = nfsstat.NFSERR_NOENT;
+                        return res;
+                    }
+                    entries(current).put(op.oprename.newname.toString(), renamed);
+                    break;
+                case nfs_opnum4.OP_READ:
+                    result.opread = new READ4res();
+                    result.opread.status = nfsstat.NFS_OK;
+                    result.opread.resok4 = new READ4resok();
+                    result.opread.resok4.data = ByteBuffer.allocate(op.opread.count.value);
+                    break;
+                case nfs_opnum4.OP_WRITE:
+                    result.opwrite = new WRITE4res();
+                    result.opwrite.status = nfsstat.NFS_OK;
+                    result.opwrite.resok4 = new WRITE4resok();
+                    result.opwrite.resok4.count = new count4(op.opwrite.data.remaining());
+                    result.opwrite.resok4.committed = stable_how4.FILE_SYNC4;
+                    break;
+                default:
+                    throw new AssertionError("unexpected operation: " + op.argop);
+            }
+            res.resarray.add(result);
+        }
+        return res;
+    }
+
+    private Map<String, nfs_fh4> entries(nfs_fh4 dir) {
+        return dirs.get(ByteBuffer.wrap(dir.value));
+    }
+
+    private nfs_fh4 newHandle() {
+        return new nfs_fh4(new byte[]{(byte) (++next >> 8), (byte) next});
+    }
+
+    private nfs_fh4 newDirectory() {
+        nfs_fh4 fh = newHandle();
+        dirs.put(ByteBuffer.wrap(fh.value), new HashMap<>());
+        return fh;
+    }
+}
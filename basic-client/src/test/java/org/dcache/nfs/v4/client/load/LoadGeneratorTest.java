@@ -0,0 +1,88 @@
+package org.dcache.nfs.v4.client.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoadGeneratorTest {
+
+    private FakeServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = new FakeServer(4);
+    }
+
+    private LoadGenerator.Builder newGenerator() {
+        return new LoadGenerator.Builder()
+                .withClientFactory(owner -> new VirtualClient(server, () -> {}, owner))
+                .withClients(2)
+                .withSessions(2)
+                .withThreads(2);
+    }
+
+    @Test
+    void shouldRunMetadataWorkload() throws Exception {
+        LoadGenerator generator = newGenerator()
+                .withWorkload(LoadGenerator.Workload.METADATA)
+                .withFiles(5)
+                .build();
+
+        generator.run();
+
+        // 2 clients x 2 sessions x 2 threads x 5 files, no errors
+        String report = report(generator);
+        assertThat(report).containsPattern("(?m)^create\\s+40\\s+0\\s");
+        assertThat(report).containsPattern("(?m)^stat\\s+40\\s+0\\s");
+        assertThat(report).containsPattern("(?m)^rename\\s+40\\s+0\\s");
+        assertThat(report).containsPattern("(?m)^unlink\\s+40\\s+0\\s");
+        assertCleanedUp();
+    }
+
+    @Test
+    void shouldRunWriteWorkload() throws Exception {
+        LoadGenerator generator = newGenerator()
+                .withWorkload(LoadGenerator.Workload.SEQ_WRITE)
+                .withIoSize(4096)
+                .withFileSize(16384)
+                .withDuration(Duration.ofMillis(100))
+                .build();
+
+        generator.run();
+
+        assertThat(report(generator)).containsPattern("(?m)^seq-write\\s+[1-9]\\d*\\s+0\\s");
+        assertCleanedUp();
+    }
+
+    @Test
+    void shouldCleanUpIfSetUpFails() {
+        LoadGenerator generator = newGenerator()
+                .withWorkload(LoadGenerator.Workload.SEQ_WRITE)
+                .withIoSize(4096)
+                .withFileSize(16384)
+                .build();
+        server.failOn(nfs_opnum4.OP_OPEN);
+
+        assertThatThrownBy(generator::run).isInstanceOf(IOException.class);
+        assertCleanedUp();
+    }
+
+    private void assertCleanedUp() {
+        assertThat(server.rootEntries()).isEmpty();
+        assertThat(server.sessions()).isEqualTo(0);
+        assertThat(server.clients()).isEqualTo(0);
+    }
+
+    private static String report(LoadGenerator generator) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.report(new PrintStream(out, true));
+        return out.toString();
+    }
+}
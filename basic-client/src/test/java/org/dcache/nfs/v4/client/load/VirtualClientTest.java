@@ -0,0 +1,111 @@
+package org.dcache.nfs.v4.client.load;
+
+import java.io.IOException;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VirtualClientTest {
+
+    private FakeServer server;
+    private boolean closed;
+
+    @BeforeEach
+    void setUp() {
+        server = new FakeServer(1);
+        closed = false;
+    }
+
+    private VirtualClient newClient() throws IOException {
+        return new VirtualClient(server, () -> closed = true, "test");
+    }
+
+    @Test
+    void shouldPrependSequence() throws IOException {
+        try (VirtualClient client = newClient()) {
+            client.exchangeId();
+            ClientSession session = client.createSession();
+
+            COMPOUND4res res = client.sendInSession(session, new CompoundBuilder()
+                    .withPutrootfh()
+                    .withGetfh()
+                    .withTag("getfh")
+                    .build());
+            assertThat(res.resarray.get(2).opgetfh.resok4.object.value).isEqualTo(server.root().value);
+        }
+    }
+
+    @Test
+    void shouldAdvanceSequenceOfSlot() throws IOException {
+        try (VirtualClient client = newClient()) {
+            client.exchangeId();
+            ClientSession session = client.createSession();
+
+            client.sendInSession(session, new CompoundBuilder().withPutrootfh().withTag("putrootfh").build());
+            client.sendInSession(session, new CompoundBuilder().withPutrootfh().withTag("putrootfh").build());
+
+            // the first request is RECLAIM_COMPLETE
+            assertThat(server.sequenceids()).containsExactly(1, 2, 3);
+        }
+    }
+
+    @Test
+    void shouldReleaseSlotOnError() throws IOException {
+        try (VirtualClient client = newClient()) {
+            client.exchangeId();
+            ClientSession session = client.createSession();
+            server.failOn(nfs_opnum4.OP_LOOKUP);
+
+            assertThatThrownBy(() -> client.sendInSession(session, new CompoundBuilder()
+                    .withPutrootfh()
+                    .withLookup("foo")
+                    .withTag("lookup")
+                    .build())).isInstanceOf(IOException.class);
+            assertThat(session.pollSlot()).isNotNull();
+        }
+    }
+
+    @Test
+    void shouldDestroySessionsAndClientOnClose() throws IOException {
+        VirtualClient client = newClient();
+        client.exchangeId();
+        client.createSession();
+        client.createSession();
+        assertThat(server.sessions()).isEqualTo(2);
+
+        client.close();
+        assertThat(server.sessions()).isEqualTo(0);
+        assertThat(server.clients()).isEqualTo(0);
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    void shouldDestroySessionIfReclaimCompleteFails() throws IOException {
+        VirtualClient client = newClient();
+        client.exchangeId();
+        server.failOn(nfs_opnum4.OP_RECLAIM_COMPLETE);
+
+        assertThatThrownBy(client::createSession).isInstanceOf(IOException.class);
+        client.close();
+        assertThat(server.sessions()).isEqualTo(0);
+        assertThat(server.clients()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldCloseEverythingIfDestroyFails() throws IOException {
+        VirtualClient client = newClient();
+        client.exchangeId();
+        client.createSession();
+        server.failOn(nfs_opnum4.OP_DESTROY_SESSION);
+
+        assertThatThrownBy(client::close).isInstanceOf(IOException.class);
+        assertThat(server.clients()).isEqualTo(0);
+        assertThat(closed).isTrue();
+    }
+}
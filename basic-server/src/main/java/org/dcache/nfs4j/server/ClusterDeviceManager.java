@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs4j.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.status.BadStateidException;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.status.UnknownLayoutTypeException;
+import org.dcache.nfs.util.Opaque;
+import org.dcache.nfs.v4.CompoundContext;
+import org.dcache.nfs.v4.DeviceHealthRegistry;
+import org.dcache.nfs.v4.FlexFileLayoutDriver;
+import org.dcache.nfs.v4.Layout;
+import org.dcache.nfs.v4.LayoutDriver;
+import org.dcache.nfs.v4.LoadAwareDeviceSelector;
+import org.dcache.nfs.v4.NFS4Client;
+import org.dcache.nfs.v4.NFS4State;
+import org.dcache.nfs.v4.NFSv41DeviceManager;
+import org.dcache.nfs.v4.NfsV41FileLayoutDriver;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.StripingPattern;
+import org.dcache.nfs.v4.xdr.GETDEVICEINFO4args;
+import org.dcache.nfs.v4.xdr.GETDEVICELIST4args;
+import org.dcache.nfs.v4.xdr.LAYOUTCOMMIT4args;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.LAYOUTGET4args;
+import org.dcache.nfs.v4.xdr.LAYOUTRETURN4args;
+import org.dcache.nfs.v4.xdr.LAYOUTSTATS4args;
+import org.dcache.nfs.v4.xdr.device_addr4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layout4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.layoutreturn_type4;
+import org.dcache.nfs.v4.xdr.length4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.offset4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.nfs.v4.xdr.utf8str_mixed;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference {@link NFSv41DeviceManager} which hands out layouts over a fixed set
+ * of data servers. NFSv4.1 file layouts stripe every file over all data servers
+ * in the order defined by the {@link StripingPattern}, while flex file layouts
+ * place the whole file on the first data server of the pattern.
+ *
+ * <p>For each distinct striping pattern a separate file layout device is
+ * published. Flex file layout uses a device per data server.
+ *
+ * <p>A file is placed when the first layout is requested and keeps its
+ * placement until {@link #release} is called, as the content of a file is only
+ * available on the data servers it was written to. Data servers, whose flex file
+ * layout device is degraded in the {@link DeviceHealthRegistry} of the metadata
+ * server, are left out when a file is placed, unless all of them are degraded.
+ * The remaining data servers are ordered by the {@link LoadAwareDeviceSelector},
+ * which is fed by LAYOUTSTATS, LAYOUTERROR and flex file layout returns.
+ */
+public class ClusterDeviceManager implements NFSv41DeviceManager {
+
+    private static final Logger _log = LoggerFactory.getLogger(ClusterDeviceManager.class);
+
+    private final InetSocketAddress[] _dataServers;
+    private final int _stripeUnit;
+    private final StripingPattern<InetSocketAddress> _stripingPattern;
+    private final Map<layouttype4, LayoutDriver> _layoutDrivers = new EnumMap<>(layouttype4.class);
+
+    /**
+     * Known devices by id.
+     */
+    private final Map<deviceid4, device_addr4> _devices = new ConcurrentHashMap<>();
+
+    /**
+     * File layout devices by striping pattern.
+     */
+    private final Map<List<Integer>, deviceid4> _fileDevices = new ConcurrentHashMap<>();
+
+    /**
+     * Flex file layout device of each data server.
+     */
+    private final deviceid4[] _flexFileDevices;
+
+    /**
+     * Index of data server by its flex file layout device.
+     */
+    private final Map<deviceid4, Integer> _flexFileDeviceIndex = new HashMap<>();
+
+    /**
+     * Striping pattern of each placed file.
+     */
+    private final Map<Opaque, uint32_t[]> _placements = new ConcurrentHashMap<>();
+
+    private final LoadAwareDeviceSelector _deviceSelector = new LoadAwareDeviceSelector(Duration.ofMinutes(1));
+
+    private final AtomicInteger _nextDeviceId = new AtomicInteger();
+
+    /**
+     * Create device manager.
+     *
+     * @param dataServers addresses of data servers.
+     * @param stripeUnit stripe unit size in bytes.
+     * @param stripingPattern pattern used to place files on data servers.
+     * @param layoutTypes layout types to offer.
+     */
+    public ClusterDeviceManager(InetSocketAddress[] dataServers, int stripeUnit,
+            StripingPattern<InetSocketAddress> stripingPattern, Set<layouttype4> layoutTypes) {
+
+        if (dataServers.length == 0) {
+            throw new IllegalArgumentException("At least one data server required");
+        }
+
+        _dataServers = dataServers.clone();
+        _stripeUnit = stripeUnit;
+        _stripingPattern = stripingPattern;
+
+        for (layouttype4 layoutType : layoutTypes) {
+            switch (layoutType) {
+                case LAYOUT4_NFSV4_1_FILES:
+                    _layoutDrivers.put(layoutType, new NfsV41FileLayoutDriver());
+                    break;
+                case LAYOUT4_FLEX_FILES:
+                    _layoutDrivers.put(layoutType, new FlexFileLayoutDriver(4, 1, 0, stripeUnit,
+                            new utf8str_mixed("0"), new utf8str_mixed("0"),
+                            (c, r) -> _log.debug("flex file layout return: {}", r), _deviceSelector));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported layout type: " + layoutType);
+            }
+        }
+
+        _flexFileDevices = new deviceid4[dataServers.length];
+        if (_layoutDrivers.containsKey(layouttype4.LAYOUT4_FLEX_FILES)) {
+            LayoutDriver driver = _layoutDrivers.get(layouttype4.LAYOUT4_FLEX_FILES);
+            for (int i = 0; i < dataServers.length; i++) {
+                try {
+                    _flexFileDevices[i] = newDevice(layouttype4.LAYOUT4_FLEX_FILES,
+                            driver.getDeviceAddress(dataServers[i]));
+                    _flexFileDeviceIndex.put(_flexFileDevices[i], i);
+                } catch (ChimeraNFSException e) {
+                    throw new IllegalArgumentException("Can't encode address of " + dataServers[i], e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Layout layoutGet(CompoundContext context, LAYOUTGET4args args) throws IOException {
+
+        layouttype4 layoutType = layouttype4.valueOf(args.loga_layout_type);
+        LayoutDriver driver = getLayoutDriver(layoutType);
+
+        Inode inode = context.currentInode();
+        NFS4Client client = context.getSession().getClient();
+        stateid4 stateid = Stateids.getCurrentStateidIfNeeded(context, args.loga_stateid);
+        NFS4State openState = client.state(stateid).getOpenState();
+
+        // layout state is disposed together with the open state
+        NFS4State layoutState = client.createState(openState.getStateOwner(), openState);
+
+        uint32_t[] pattern = place(inode.getFileId(), context.getStateHandler().getDeviceHealth());
+        deviceid4 deviceid;
+        if (layoutType == layouttype4.LAYOUT4_NFSV4_1_FILES) {
+            deviceid = fileDevice(pattern);
+        } else {
+            deviceid = _flexFileDevices[pattern[0].value];
+        }
+
+        layout4 segment = new layout4();
+        segment.lo_offset = new offset4(0);
+        segment.lo_length = new length4(nfs4_prot.NFS4_UINT64_MAX);
+        segment.lo_iomode = args.loga_iomode;
+        segment.lo_content = driver.getLayoutContent(layoutState.stateid(), _stripeUnit,
+                new nfs_fh4(inode.toNfsHandle()), deviceid);
+
+        return new Layout(true, layoutState.stateid(), new layout4[]{segment});
+    }
+
+    /**
+     * Get striping pattern of a file. A file, which is not placed yet, is placed
+     * over data servers, which are not degraded.
+     *
+     * @param fileId file identifier.
+     * @param health health of devices.
+     * @return indices into data servers.
+     */
+    @VisibleForTesting
+    uint32_t[] place(byte[] fileId, DeviceHealthRegistry health) {
+        return _placements.computeIfAbsent(new Opaque(fileId), k -> newPlacement(fileId, health));
+    }
+
+    /**
+     * Forget the placement of a removed file.
+     *
+     * @param fileId file identifier.
+     */
+    public void release(byte[] fileId) {
+        if (_placements.remove(new Opaque(fileId)) != null) {
+            _stripingPattern.release(fileId);
+        }
+    }
+
+    private uint32_t[] newPlacement(byte[] fileId, DeviceHealthRegistry health) {
+
+        int[] available = availableDataServers(health);
+        InetSocketAddress[] candidates = new InetSocketAddress[available.length];
+        for (int i = 0; i < available.length; i++) {
+            candidates[i] = _dataServers[available[i]];
+        }
+
+        uint32_t[] pattern = _stripingPattern.getPattern(fileId, candidates);
+        uint32_t[] indices = new uint32_t[pattern.length];
+        for (int i = 0; i < pattern.length; i++) {
+            indices[i] = new uint32_t(available[pattern[i].value]);
+        }
+        return indices;
+    }
+
+    /**
+     * Get indices of data servers, which are not degraded, least loaded first.
+     * The health and load are tracked by the flex file layout device of a data
+     * server.
+     */
+    private int[] availableDataServers(DeviceHealthRegistry health) {
+        if (_flexFileDeviceIndex.isEmpty()) {
+            return IntStream.range(0, _dataServers.length).toArray();
+        }
+        return Arrays.stream(_deviceSelector.order(health.filter(_flexFileDevices)))
+                .mapToInt(_flexFileDeviceIndex::get)
+                .toArray();
+    }
+
+    /**
+     * Get flex file layout device of a data server.
+     *
+     * @param index index of the data server.
+     * @return device id, or {@code null} if flex file layout is not offered.
+     */
+    @VisibleForTesting
+    deviceid4 getDataServerDevice(int index) {
+        return _flexFileDevices[index];
+    }
+
+    /**
+     * Get selector, which tracks the load of flex file layout devices.
+     */
+    public LoadAwareDeviceSelector getDeviceSelector() {
+        return _deviceSelector;
+    }
+
+    @Override
+    public device_addr4 getDeviceInfo(CompoundContext context, GETDEVICEINFO4args args) throws IOException {
+
+        device_addr4 addr = _devices.get(args.gdia_device_id);
+        if (addr == null || addr.da_layout_type != args.gdia_layout_type) {
+            throw new NoEntException("Unknown device id: " + args.gdia_device_id);
+        }
+        return addr;
+    }
+
+    @Override
+    public List<deviceid4> getDeviceList(CompoundContext context, GETDEVICELIST4args args) throws IOException {
+
+        List<deviceid4> ids = new ArrayList<>();
+        _devices.forEach((id, addr) -> {
+            if (addr.da_layout_type == args.gdla_layout_type) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    @Override
+    public void layoutReturn(CompoundContext context, LAYOUTRETURN4args args) throws IOException {
+
+        if (args.lora_layoutreturn.lr_returntype != layoutreturn_type4.LAYOUTRETURN4_FILE) {
+            return;
+        }
+
+        LayoutDriver driver = getLayoutDriver(layouttype4.valueOf(args.lora_layout_type));
+        driver.acceptLayoutReturnData(context, args.lora_layoutreturn.lr_layout.lrf_body);
+
+        stateid4 stateid = Stateids.getCurrentStateidIfNeeded(context, args.lora_layoutreturn.lr_layout.lrf_stateid);
+        try {
+            context.getSession().getClient().releaseState(stateid);
+        } catch (BadStateidException e) {
+            // already released together with the open state
+            _log.debug("layout state {} already released", stateid);
+        }
+    }
+
+    @Override
+    public OptionalLong layoutCommit(CompoundContext context, LAYOUTCOMMIT4args args) throws IOException {
+
+        if (!args.loca_last_write_offset.no_newoffset) {
+            return OptionalLong.empty();
+        }
+
+        Inode inode = context.currentInode();
+        long newSize = args.loca_last_write_offset.no_offset.value + 1;
+
+        // data servers might have updated the size already
+        if (context.getFs().getattr(inode).getSize() >= newSize) {
+            return OptionalLong.empty();
+        }
+
+        Stat stat = new Stat();
+        stat.setSize(newSize);
+        context.getFs().setattr(inode, stat);
+        return OptionalLong.of(newSize);
+    }
+
+    @Override
+    public void layoutStats(CompoundContext contex, LAYOUTSTATS4args args) throws IOException {
+        _deviceSelector.layoutStats(args);
+    }
+
+    @Override
+    public void layoutError(CompoundContext contex, LAYOUTERROR4args args) throws IOException {
+        // device health is updated by OperationLAYOUTERROR
+        _deviceSelector.layoutError(args);
+    }
+
+    @Override
+    public Set<layouttype4> getLayoutTypes() {
+        return EnumSet.copyOf(_layoutDrivers.keySet());
+    }
+
+    private LayoutDriver getLayoutDriver(layouttype4 layoutType) throws UnknownLayoutTypeException {
+        LayoutDriver driver = _layoutDrivers.get(layoutType);
+        if (driver == null) {
+            throw new UnknownLayoutTypeException("Layout type (" + layoutType + ") not supported");
+        }
+        return driver;
+    }
+
+    private deviceid4 fileDevice(uint32_t[] pattern) {
+        List<Integer> key = Arrays.stream(pattern).map(i -> i.value).toList();
+        return _fileDevices.computeIfAbsent(key, k -> {
+            NfsV41FileLayoutDriver driver = (NfsV41FileLayoutDriver) _layoutDrivers.get(layouttype4.LAYOUT4_NFSV4_1_FILES);
+            return newDevice(layouttype4.LAYOUT4_NFSV4_1_FILES, driver.getDeviceAddress(pattern, _dataServers));
+        });
+    }
+
+    private deviceid4 newDevice(layouttype4 layoutType, device_addr4 addr) {
+        byte[] id = ByteBuffer.allocate(nfs4_prot.NFS4_DEVICEID4_SIZE)
+                .putInt(layoutType.getValue())
+                .putInt(_nextDeviceId.incrementAndGet())
+                .array();
+        deviceid4 deviceid = new deviceid4(id);
+        _devices.put(deviceid, addr);
+        return deviceid;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs4j.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.dcache.nfs.ExportFile;
+import org.dcache.nfs.FsExport;
+import org.dcache.nfs.status.StaleException;
+import org.dcache.nfs.v4.MDSOperationExecutor;
+import org.dcache.nfs.v4.NFSServerV41;
+import org.dcache.nfs.v4.StripingPatterns;
+import org.dcache.nfs.v4.ds.CommitScheduler;
+import org.dcache.nfs.v4.ds.DSOperationExecutor;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.vfs.ForwardingFileSystem;
+import org.dcache.nfs.vfs.FsCache;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.MemoryFileSystem;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.dcache.oncrpc4j.rpc.OncRpcProgram;
+import org.dcache.oncrpc4j.rpc.OncRpcSvc;
+import org.dcache.oncrpc4j.rpc.OncRpcSvcBuilder;
+import org.dcache.oncrpc4j.rpc.net.IpProtocolType;
+
+/**
+ * An embedded pNFS cluster which runs a metadata server and a number of data
+ * servers inside a single JVM. All servers are bound to ephemeral ports on the
+ * loopback interface. The namespace is kept in memory, while file content is
+ * stored by data servers in per-server directories.
+ *
+ * <p>The cluster is intended for integration tests and benchmarks of pNFS
+ * clients:
+ * <pre>
+ * try (PnfsTestCluster cluster = new PnfsTestCluster.Builder()
+ *         .withDataServers(4)
+ *         .build()) {
+ *     InetSocketAddress mds = cluster.getMdsAddress();
+ *     ...
+ * }
+ * </pre>
+ */
+public class PnfsTestCluster implements Closeable {
+
+    private static final String LOOPBACK = "127.0.0.1";
+
+    private final MemoryFileSystem fs;
+    private final ClusterDeviceManager deviceManager;
+    private final OncRpcSvc mdsSvc;
+    private final List<OncRpcSvc> dsSvcs = new ArrayList<>();
+    private final List<NFSServerV41> dataServers = new ArrayList<>();
+    private final List<FsCache> dsCaches = new ArrayList<>();
+    private final List<CommitScheduler> dsCommitSchedulers = new ArrayList<>();
+    private final InetSocketAddress[] dsAddresses;
+    private final NFSServerV41 mds;
+    private final Path base;
+
+    /**
+     * Whether the base directory is created by this cluster and must be removed on close.
+     */
+    private final boolean ownBase;
+
+    private PnfsTestCluster(Builder builder) throws IOException {
+
+        ownBase = builder.base == null;
+        base = ownBase ? Files.createTempDirectory("pnfs-cluster") : builder.base;
+
+        String layoutTypes = builder.layoutTypes.stream()
+                .map(t -> t.name().substring("LAYOUT4_".length()).toLowerCase())
+                .collect(Collectors.joining(":"));
+        ExportFile exportFile = new ExportFile(new StringReader(
+                "/ " + LOOPBACK + "(rw,all_root,pnfs,lt=" + layoutTypes + ")"));
+
+        fs = new MemoryFileSystem();
+        VirtualFileSystem dsFs = new GrowOnlyFileSystem(fs);
+
+        try {
+            dsAddresses = new InetSocketAddress[builder.dataServers];
+            for (int i = 0; i < builder.dataServers; i++) {
+                Path dir = Files.createDirectories(base.resolve("ds-" + i));
+
+                FsCache fsCache = new FsCache();
+                fsCache.setBase(dir.toFile());
+                fsCache.setMaxSize(builder.openFiles);
+                fsCache.setLastAccess(builder.openFileIdle);
+                fsCache.setName("pnfs-cluster-ds-" + i);
+                fsCache.init();
+                dsCaches.add(fsCache);
+
+                CommitScheduler commitScheduler = new CommitScheduler("pnfs-cluster-ds-" + i + "-commit", fsCache::get);
+                dsCommitSchedulers.add(commitScheduler);
+
+                NFSServerV41 ds = new NFSServerV41.Builder()
+                        .withVfs(dsFs)
+                        .withOperationExecutor(new DSOperationExecutor(fsCache, commitScheduler))
+                        .withExportTable(exportFile)
+                        .build();
+                dataServers.add(ds);
+
+                OncRpcSvc svc = newService("pnfs-cluster-ds-" + i);
+                svc.register(new OncRpcProgram(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4), ds);
+                dsSvcs.add(svc);
+                svc.start();
+                dsAddresses[i] = svc.getInetSocketAddress(IpProtocolType.TCP);
+            }
+
+            deviceManager = new ClusterDeviceManager(dsAddresses, builder.stripeUnit,
+                    StripingPatterns.forPlacement(builder.placement, ds -> 1.0),
+                    builder.layoutTypes);
+
+            mds = new NFSServerV41.Builder()
+                    .withVfs(new TruncatingFileSystem(new PlacementReleasingFileSystem(fs, deviceManager), dsCaches))
+                    .withOperationExecutor(new MDSOperationExecutor())
+                    .withDeviceManager(deviceManager)
+                    .withExportTable(exportFile)
+                    .build();
+
+            mdsSvc = newService("pnfs-cluster-mds");
+            mdsSvc.register(new OncRpcProgram(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4), mds);
+            mdsSvc.start();
+        } catch (IOException | RuntimeException e) {
+            try {
+                stopDataServers();
+            } finally {
+                deleteBase();
+            }
+            throw e;
+        }
+    }
+
+    private static OncRpcSvc newService(String name) {
+        return new OncRpcSvcBuilder()
+                .withBindAddress(LOOPBACK)
+                .withPort(0)
+                .withTCP()
+                .withoutAutoPublish()
+                .withWorkerThreadIoStrategy()
+                .withServiceName(name)
+                .build();
+    }
+
+    /**
+     * Get address of the metadata server.
+     */
+    public InetSocketAddress getMdsAddress() {
+        return mdsSvc.getInetSocketAddress(IpProtocolType.TCP);
+    }
+
+    /**
+     * Get addresses of the data servers.
+     */
+    public InetSocketAddress[] getDataServerAddresses() {
+        return dsAddresses.clone();
+    }
+
+    /**
+     * Get the namespace shared by metadata and data servers.
+     */
+    public MemoryFileSystem getFileSystem() {
+        return fs;
+    }
+
+    /**
+     * Get device manager of the metadata server.
+     */
+    public ClusterDeviceManager getDeviceManager() {
+        return deviceManager;
+    }
+
+    /**
+     * Get directory where data servers store file content. A temporary directory
+     * created by the cluster is removed on {@link #close()}.
+     */
+    public Path getBase() {
+        return base;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mdsSvc.stop();
+            mds.getStateHandler().shutdown();
+        } finally {
+            try {
+                stopDataServers();
+            } finally {
+                deleteBase();
+            }
+        }
+    }
+
+    private void stopDataServers() throws IOException {
+        for (OncRpcSvc svc : dsSvcs) {
+            svc.stop();
+        }
+        for (NFSServerV41 ds : dataServers) {
+            ds.getStateHandler().shutdown();
+        }
+        dsCommitSchedulers.forEach(CommitScheduler::close);
+        dsCaches.forEach(FsCache::close);
+    }
+
+    private void deleteBase() throws IOException {
+        if (!ownBase) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(base)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * File system used by data servers. Each data server updates file size on
+     * stable writes with the size of its own portion of the file, which is
+     * smaller than the real file size if the file is striped. Thus, data servers
+     * are only allowed to grow the file; the final size is set by the client
+     * with LAYOUTCOMMIT on the metadata server.
+     */
+    private static class GrowOnlyFileSystem extends ForwardingFileSystem {
+
+        private final VirtualFileSystem inner;
+
+        GrowOnlyFileSystem(VirtualFileSystem inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        protected VirtualFileSystem delegate() {
+            return inner;
+        }
+
+        @Override
+        public synchronized void setattr(Inode inode, Stat stat) throws IOException {
+            if (stat.isDefined(Stat.StatAttribute.SIZE) && inner.getattr(inode).getSize() >= stat.getSize()) {
+                return;
+            }
+            inner.setattr(inode, stat);
+        }
+    }
+
+    /**
+     * File system used by the metadata server. Releases the placement of a file
+     * on data servers when the last link to the file is removed.
+     */
+    private static class PlacementReleasingFileSystem extends ForwardingFileSystem {
+
+        private final VirtualFileSystem inner;
+        private final ClusterDeviceManager deviceManager;
+
+        PlacementReleasingFileSystem(VirtualFileSystem inner, ClusterDeviceManager deviceManager) {
+            this.inner = inner;
+            this.deviceManager = deviceManager;
+        }
+
+        @Override
+        protected VirtualFileSystem delegate() {
+            return inner;
+        }
+
+        @Override
+        public void remove(Inode parent, String path) throws IOException {
+            Inode inode = inner.lookup(parent, path);
+            inner.remove(parent, path);
+            try {
+                inner.getattr(inode);
+            } catch (StaleException e) {
+                deviceManager.release(inode.getFileId());
+            }
+        }
+    }
+
+    /**
+     * File system used by the metadata server. Truncates file content on data
+     * servers when the file size is reduced. Data servers store file content
+     * at file offsets, thus each data server's portion is truncated to the new
+     * file size.
+     */
+    private static class TruncatingFileSystem extends ForwardingFileSystem {
+
+        private final VirtualFileSystem inner;
+        private final List<FsCache> dsCaches;
+
+        TruncatingFileSystem(VirtualFileSystem inner, List<FsCache> dsCaches) {
+            this.inner = inner;
+            this.dsCaches = dsCaches;
+        }
+
+        @Override
+        protected VirtualFileSystem delegate() {
+            return inner;
+        }
+
+        @Override
+        public void setattr(Inode inode, Stat stat) throws IOException {
+            inner.setattr(inode, stat);
+            if (stat.isDefined(Stat.StatAttribute.SIZE)) {
+                for (FsCache dsCache : dsCaches) {
+                    dsCache.truncate(inode, stat.getSize());
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private int dataServers = 2;
+        private int stripeUnit = 1024 * 1024;
+        private Set<layouttype4> layoutTypes = EnumSet.of(layouttype4.LAYOUT4_NFSV4_1_FILES,
+                layouttype4.LAYOUT4_FLEX_FILES);
+        private FsExport.Placement placement = FsExport.Placement.ROUND_ROBIN;
+        private Path base;
+        private int openFiles = 1024;
+        private int openFileIdle = 60;
+
+        /**
+         * Set number of data servers. Default is two.
+         */
+        public Builder withDataServers(int dataServers) {
+            if (dataServers <= 0) {
+                throw new IllegalArgumentException("at least one data server required: " + dataServers);
+            }
+            this.dataServers = dataServers;
+            return this;
+        }
+
+        /**
+         * Set stripe unit size in bytes. Default is 1MB.
+         */
+        public Builder withStripeUnit(int stripeUnit) {
+            if (stripeUnit <= 0) {
+                throw new IllegalArgumentException("stripe unit must be positive: " + stripeUnit);
+            }
+            this.stripeUnit = stripeUnit;
+            return this;
+        }
+
+        /**
+         * Set layout types offered by the metadata server. Default are NFSv4.1
+         * file and flex file layouts.
+         */
+        public Builder withLayoutTypes(layouttype4... layoutTypes) {
+            if (layoutTypes.length == 0) {
+                throw new IllegalArgumentException("at least one layout type required");
+            }
+            this.layoutTypes = EnumSet.of(layoutTypes[0], layoutTypes);
+            return this;
+        }
+
+        /**
+         * Set placement strategy used to distribute files over data servers.
+         */
+        public Builder withPlacement(FsExport.Placement placement) {
+            this.placement = placement;
+            return this;
+        }
+
+        /**
+         * Set directory where data servers store file content. By default
+         * a new temporary directory is created, which is removed when the
+         * cluster is closed. A provided directory is kept.
+         */
+        public Builder withBase(Path base) {
+            this.base = base;
+            return this;
+        }
+
+        /**
+         * Set max number of files kept open by each data server and time in
+         * seconds after which idle file is closed.
+         */
+        public Builder withOpenFiles(int openFiles, int idleSeconds) {
+            this.openFiles = openFiles;
+            this.openFileIdle = idleSeconds;
+            return this;
+        }
+
+        public PnfsTestCluster build() throws IOException {
+            return new PnfsTestCluster(this);
+        }
+    }
+}
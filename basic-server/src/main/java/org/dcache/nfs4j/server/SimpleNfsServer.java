@@ -1,10 +1,12 @@
 package org.dcache.nfs4j.server;
 
 import org.dcache.nfs.ExportFile;
+import org.dcache.nfs.replay.CallRecorder;
 import org.dcache.nfs.v3.MountServer;
 import org.dcache.nfs.v3.NfsServerV3;
 import org.dcache.nfs.v3.xdr.mount_prot;
 import org.dcache.nfs.v3.xdr.nfs3_prot;
+import org.dcache.nfs.v4.InstrumentedOperationExecutor;
 import org.dcache.nfs.v4.MDSOperationExecutor;
 import org.dcache.nfs.v4.NFSServerV41;
 import org.dcache.nfs.v4.xdr.nfs4_prot;
@@ -26,13 +28,20 @@ public class SimpleNfsServer implements Closeable {
     private final Path root;
     private final int port;
     private final String name;
+    private final CallRecorder recorder;
+    private final InstrumentedOperationExecutor operationStatistics;
 
     public SimpleNfsServer(Path root) {
         this(0, 2049, root, null, null);
     }
 
     public SimpleNfsServer(int nfsVers, int port, Path root, ExportFile exportFile, String name) {
+        this(nfsVers, port, root, exportFile, name, null);
+    }
+
+    public SimpleNfsServer(int nfsVers, int port, Path root, ExportFile exportFile, String name, Path callLog) {
         try {
+            recorder = callLog == null ? null : new CallRecorder(callLog);
             NfsServerV3 nfs3 = null;
             NFSServerV41 nfs4 = null;
             boolean startNfsV3 = ((nfsVers == 0) || (nfsVers == 3));
@@ -64,16 +73,18 @@ public class SimpleNfsServer implements Closeable {
                     .withServiceName(this.name)
                     .build();
 
+            operationStatistics = startNfsV4 ? new InstrumentedOperationExecutor(this.name, new MDSOperationExecutor()) : null;
             if (startNfsV4) {
                 nfs4 = new NFSServerV41.Builder()
                         .withVfs(vfs)
-                        .withOperationExecutor(new MDSOperationExecutor())
+                        .withOperationExecutor(operationStatistics)
                         .withExportTable(exportFile)
+                        .withCallRecorder(recorder)
                         .build();
             }
 
             if (startNfsV3) {
-                nfs3 = new NfsServerV3(exportFile, vfs);
+                nfs3 = new NfsServerV3(exportFile, vfs, null, recorder);
             }
 
             MountServer mountd = new MountServer(exportFile, vfs);
@@ -97,6 +108,12 @@ public class SimpleNfsServer implements Closeable {
     @Override
     public void close() throws IOException {
         nfsSvc.stop();
+        if (operationStatistics != null) {
+            operationStatistics.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
     }
 
     public Path getRoot() {
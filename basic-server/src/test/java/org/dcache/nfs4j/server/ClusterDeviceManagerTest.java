@@ -0,0 +1,115 @@
+package org.dcache.nfs4j.server;
+
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.DeviceHealthRegistry;
+import org.dcache.nfs.v4.RoundRobinStripingPattern;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.device_error4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+public class ClusterDeviceManagerTest {
+
+    private final InetSocketAddress[] dataServers = {
+        new InetSocketAddress("127.0.0.1", 2050),
+        new InetSocketAddress("127.0.0.1", 2051),
+        new InetSocketAddress("127.0.0.1", 2052)
+    };
+
+    private ClusterDeviceManager deviceManager;
+    private DeviceHealthRegistry health;
+
+    @Before
+    public void setUp() {
+        deviceManager = new ClusterDeviceManager(dataServers, 4096, new RoundRobinStripingPattern<>(),
+                EnumSet.of(layouttype4.LAYOUT4_NFSV4_1_FILES, layouttype4.LAYOUT4_FLEX_FILES));
+        health = new DeviceHealthRegistry();
+    }
+
+    @Test
+    public void testAllDataServersUsed() {
+        assertEquals(Set.of(0, 1, 2), indices(deviceManager.place(new byte[]{1}, health)));
+    }
+
+    @Test
+    public void testDegradedDataServerLeftOut() {
+        health.reportError(deviceManager.getDataServerDevice(1), nfsstat.NFSERR_IO);
+
+        Set<Integer> placement = indices(deviceManager.place(new byte[]{1}, health));
+        assertEquals(2, placement.size());
+        assertFalse(placement.contains(1));
+    }
+
+    @Test
+    public void testAllDataServersUsedIfAllDegraded() {
+        for (int i = 0; i < dataServers.length; i++) {
+            health.reportError(deviceManager.getDataServerDevice(i), nfsstat.NFSERR_IO);
+        }
+
+        assertEquals(Set.of(0, 1, 2), indices(deviceManager.place(new byte[]{1}, health)));
+    }
+
+    @Test
+    public void testFileErrorDoesNotDegrade() {
+        health.reportError(deviceManager.getDataServerDevice(1), nfsstat.NFSERR_STALE);
+
+        assertEquals(Set.of(0, 1, 2), indices(deviceManager.place(new byte[]{1}, health)));
+    }
+
+    @Test
+    public void testPlacementIsSticky() {
+        uint32_t[] pattern = deviceManager.place(new byte[]{1}, health);
+        health.reportError(deviceManager.getDataServerDevice(pattern[0].value), nfsstat.NFSERR_IO);
+
+        assertArrayEquals(pattern, deviceManager.place(new byte[]{1}, health));
+    }
+
+    @Test
+    public void testReleasedFilePlacedAgain() {
+        uint32_t[] pattern = deviceManager.place(new byte[]{1}, health);
+        health.reportError(deviceManager.getDataServerDevice(pattern[0].value), nfsstat.NFSERR_IO);
+        deviceManager.release(new byte[]{1});
+
+        assertFalse(indices(deviceManager.place(new byte[]{1}, health)).contains(pattern[0].value));
+    }
+
+    @Test
+    public void testLeastLoadedDataServerFirst() throws Exception {
+        deviceManager.layoutError(null, error(deviceManager.getDataServerDevice(0)));
+
+        uint32_t[] pattern = deviceManager.place(new byte[]{1}, health);
+        assertEquals(3, pattern.length);
+        assertNotEquals(0, pattern[0].value);
+    }
+
+    private static LAYOUTERROR4args error(deviceid4 deviceid) {
+        LAYOUTERROR4args args = new LAYOUTERROR4args();
+        args.lea_errors = new device_error4[1];
+        args.lea_errors[0] = new device_error4();
+        args.lea_errors[0].de_deviceid = deviceid;
+        args.lea_errors[0].de_status = nfsstat.NFSERR_IO;
+        args.lea_errors[0].de_opnum = nfs_opnum4.OP_READ;
+        return args;
+    }
+
+    private static Set<Integer> indices(uint32_t[] pattern) {
+        Set<Integer> indices = new HashSet<>();
+        for (uint32_t i : pattern) {
+            indices.add(i.value);
+        }
+        return indices;
+    }
+}
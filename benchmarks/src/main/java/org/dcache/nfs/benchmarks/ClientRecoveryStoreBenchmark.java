@@ -0,0 +1,100 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.dcache.nfs.v4.BerkeleyDBClientStore;
+import org.dcache.nfs.v4.ClientRecoveryStore;
+import org.dcache.nfs.v4.JournalClientStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare client record throughput of {@link ClientRecoveryStore} implementations
+ * during a mount storm, e.g. many concurrent EXCHANGE_IDs.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class ClientRecoveryStoreBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class StoreHolder {
+
+        @Param({"berkeleydb", "journal"})
+        private String store;
+
+        private Path dir;
+        private ClientRecoveryStore clientStore;
+
+        @Setup
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("nfs-client-store");
+            switch (store) {
+                case "berkeleydb":
+                    clientStore = new BerkeleyDBClientStore(dir.toFile());
+                    break;
+                case "journal":
+                    clientStore = new JournalClientStore(dir);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown store: " + store);
+            }
+            clientStore.reclaimComplete();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            clientStore.close();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder())
+                        .forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(64)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public byte[] addClient(StoreHolder storeHolder) {
+        byte[] owner = new byte[32];
+        ThreadLocalRandom.current().nextBytes(owner);
+        storeHolder.clientStore.addClient(owner);
+        return owner;
+    }
+
+    @Benchmark
+    @Threads(64)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public byte[] addRemoveClient(StoreHolder storeHolder) {
+        byte[] owner = new byte[32];
+        ThreadLocalRandom.current().nextBytes(owner);
+        storeHolder.clientStore.addClient(owner);
+        storeHolder.clientStore.removeClient(owner);
+        return owner;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ClientRecoveryStoreBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,349 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.security.auth.Subject;
+import org.dcache.nfs.ExportFile;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.UnixSubjects;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.MDSOperationExecutor;
+import org.dcache.nfs.v4.NFSServerV41;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.entry4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.nfs.vfs.DirectoryStream;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.MemoryFileSystem;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * End-to-end benchmark of {@link NFSServerV41#NFSPROC4_COMPOUND_4} with realistic
+ * NFSv4.1 compounds against an in-memory file system. No network and no XDR
+ * encoding is involved, thus the results reflect the cost of the server core.
+ * Run with the GC profiler to get the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class CompoundBenchmark {
+
+    private static final int SMALL_IO = 4096;
+    private static final int LARGE_IO = 1024 * 1024;
+    private static final int DIR_SIZE = 10_000;
+    private static final String DEEP_PATH = "a/b/c/d/e/f/g/h";
+    private static final Subject OWNER = UnixSubjects.toSubject(0, 0);
+
+    @State(Scope.Benchmark)
+    public static class ServerHolder {
+
+        private NFSServerV41 server;
+        private final AtomicInteger clients = new AtomicInteger();
+
+        @Setup
+        public void setUp() throws IOException {
+
+            MemoryFileSystem vfs = new MemoryFileSystem();
+            Inode root = vfs.getRootInode();
+
+            Inode data = vfs.mkdir(root, "data", OWNER, 0755);
+            createFile(vfs, data, "small", SMALL_IO);
+            createFile(vfs, data, "large", LARGE_IO);
+
+            Inode big = vfs.mkdir(root, "big", OWNER, 0755);
+            for (int i = 0; i < DIR_SIZE; i++) {
+                createFile(vfs, big, "file-" + i, 0);
+            }
+
+            Inode dir = root;
+            for (String name : DEEP_PATH.split("/")) {
+                dir = vfs.mkdir(dir, name, OWNER, 0755);
+            }
+
+            server = new NFSServerV41.Builder()
+                    .withVfs(vfs)
+                    .withOperationExecutor(new MDSOperationExecutor())
+                    .withExportTable(new ExportFile(new StringReader("/ *(rw,no_root_squash)")))
+                    .build();
+        }
+
+        private static void createFile(VirtualFileSystem vfs, Inode parent, String name, int size) throws IOException {
+            Inode inode = vfs.create(parent, Stat.Type.REGULAR, name, OWNER, 0644);
+            byte[] data = new byte[size];
+            Arrays.fill(data, (byte) 'x');
+            vfs.write(inode, ByteBuffer.wrap(data), 0, VirtualFileSystem.StabilityLevel.FILE_SYNC);
+        }
+    }
+
+    /**
+     * An NFSv4.1 client with its own session. Each benchmark thread uses a
+     * dedicated client, thus slot 0 of the session is never shared.
+     */
+    @State(Scope.Thread)
+    public static class ClientHolder {
+
+        private NFSServerV41 server;
+        private RpcCall call;
+        private sessionid4 sessionid;
+        private int sequence;
+
+        private nfs_fh4 dataFh;
+        private nfs_fh4 bigFh;
+        private nfs_fh4 smallFh;
+        private nfs_fh4 largeFh;
+        private nfs_fh4 privateFh;
+        private stateid4 privateStateid;
+
+        private COMPOUND4args getattr;
+        private COMPOUND4args openClose;
+        private COMPOUND4args lookupChain;
+        private COMPOUND4args read4k;
+        private COMPOUND4args read1m;
+        private COMPOUND4args write4k;
+        private COMPOUND4args write1m;
+
+        @Setup
+        public void setUp(ServerHolder holder) throws IOException {
+            server = holder.server;
+            int id = holder.clients.incrementAndGet();
+            call = LocalRpcCalls.newRpcCall(id);
+
+            COMPOUND4res res = execute(new CompoundBuilder()
+                    .withExchangeId("dcache.org", "benchmark", "client-" + id,
+                            nfs4_prot.EXCHGID4_FLAG_USE_NON_PNFS, 0)
+                    .withTag("exchange_id")
+                    .build());
+            clientid4 clientid = res.resarray.get(0).opexchange_id.eir_resok4.eir_clientid;
+            sequenceid4 clientSequence = res.resarray.get(0).opexchange_id.eir_resok4.eir_sequenceid;
+
+            res = execute(new CompoundBuilder()
+                    .withCreatesession(clientid, clientSequence)
+                    .withTag("create_session")
+                    .build());
+            sessionid = res.resarray.get(0).opcreate_session.csr_resok4.csr_sessionid;
+
+            executeInSession(new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withReclaimComplete()
+                    .withTag("reclaim_complete")
+                    .build());
+
+            dataFh = lookup("data");
+            bigFh = lookup("big");
+            smallFh = lookup("data/small");
+            largeFh = lookup("data/large");
+
+            res = executeInSession(new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutfh(dataFh)
+                    .withOpenCreate("private-" + id, 0, clientid, nfs4_prot.OPEN4_SHARE_ACCESS_BOTH)
+                    .withGetfh()
+                    .withTag("open_create")
+                    .build());
+            privateStateid = res.resarray.get(2).opopen.resok4.stateid;
+            privateFh = res.resarray.get(3).opgetfh.resok4.object;
+
+            getattr = new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutfh(smallFh)
+                    .withGetattr(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_CHANGE, nfs4_prot.FATTR4_SIZE,
+                            nfs4_prot.FATTR4_FILEID, nfs4_prot.FATTR4_MODE, nfs4_prot.FATTR4_NUMLINKS,
+                            nfs4_prot.FATTR4_OWNER, nfs4_prot.FATTR4_OWNER_GROUP,
+                            nfs4_prot.FATTR4_TIME_ACCESS, nfs4_prot.FATTR4_TIME_METADATA,
+                            nfs4_prot.FATTR4_TIME_MODIFY)
+                    .withTag("getattr")
+                    .build();
+
+            openClose = new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutfh(dataFh)
+                    .withOpen("small", 0, clientid, nfs4_prot.OPEN4_SHARE_ACCESS_READ)
+                    .withGetfh()
+                    .withGetattr(nfs4_prot.FATTR4_CHANGE, nfs4_prot.FATTR4_SIZE)
+                    .withClose(Stateids.currentStateId(), 0)
+                    .withTag("open_close")
+                    .build();
+
+            lookupChain = new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutrootfh()
+                    .withLookup(DEEP_PATH)
+                    .withGetfh()
+                    .withGetattr(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_CHANGE)
+                    .withTag("lookup")
+                    .build();
+
+            read4k = readArgs(smallFh, SMALL_IO);
+            read1m = readArgs(largeFh, LARGE_IO);
+            write4k = writeArgs(SMALL_IO);
+            write1m = writeArgs(LARGE_IO);
+        }
+
+        private nfs_fh4 lookup(String path) throws IOException {
+            COMPOUND4res res = executeInSession(new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutrootfh()
+                    .withLookup(path)
+                    .withGetfh()
+                    .withTag("lookup")
+                    .build());
+            return res.resarray.get(res.resarray.size() - 1).opgetfh.resok4.object;
+        }
+
+        private COMPOUND4args readArgs(nfs_fh4 fh, int count) {
+            return new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutfh(fh)
+                    .withRead(count, 0, Stateids.ZeroStateId())
+                    .withTag("read")
+                    .build();
+        }
+
+        private COMPOUND4args writeArgs(int count) {
+            return new CompoundBuilder()
+                    .withSequence(false, sessionid, 0, 0, 0)
+                    .withPutfh(privateFh)
+                    .withWrite(0, new byte[count], privateStateid)
+                    .withTag("write")
+                    .build();
+        }
+
+        /**
+         * Execute a compound which starts with SEQUENCE. The sequence id is
+         * updated in place, so that the same arguments can be used again.
+         */
+        COMPOUND4res executeInSession(COMPOUND4args args) throws IOException {
+            args.argarray[0].opsequence.sa_sequenceid.value = ++sequence;
+            return execute(args);
+        }
+
+        COMPOUND4res execute(COMPOUND4args args) throws IOException {
+            COMPOUND4res res = server.NFSPROC4_COMPOUND_4(call, args);
+            if (res.status != nfsstat.NFS_OK) {
+                throw new IOException("Compound [" + args.tag + "] failed: " + nfsstat.toString(res.status));
+            }
+            return res;
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res sequencePutfhGetattr(ClientHolder client) throws IOException {
+        return client.executeInSession(client.getattr);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res openClose(ClientHolder client) throws IOException {
+        return client.executeInSession(client.openClose);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res lookupChain(ClientHolder client) throws IOException {
+        return client.executeInSession(client.lookupChain);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res read4k(ClientHolder client) throws IOException {
+        return client.executeInSession(client.read4k);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res read1m(ClientHolder client) throws IOException {
+        return client.executeInSession(client.read1m);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res write4k(ClientHolder client) throws IOException {
+        client.write4k.argarray[2].opwrite.data.rewind();
+        return client.executeInSession(client.write4k);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res write1m(ClientHolder client) throws IOException {
+        client.write1m.argarray[2].opwrite.data.rewind();
+        return client.executeInSession(client.write1m);
+    }
+
+    /**
+     * List the whole large directory, as {@code ls -l} would do.
+     */
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public int readdirLarge(ClientHolder client) throws IOException {
+        int entries = 0;
+        long cookie = 0;
+        verifier4 verifier = new verifier4(DirectoryStream.ZERO_VERIFIER);
+        while (true) {
+            COMPOUND4res res = client.executeInSession(new CompoundBuilder()
+                    .withSequence(false, client.sessionid, 0, 0, 0)
+                    .withPutfh(client.bigFh)
+                    .withReaddir(cookie, verifier, 8192, 32768,
+                            nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_FILEID, nfs4_prot.FATTR4_SIZE,
+                            nfs4_prot.FATTR4_MODE, nfs4_prot.FATTR4_TIME_MODIFY)
+                    .withTag("readdir")
+                    .build());
+
+            nfs_resop4 readdir = res.resarray.get(2);
+            verifier = readdir.opreaddir.resok4.cookieverf;
+            for (entry4 e = readdir.opreaddir.resok4.reply.entries; e != null; e = e.nextentry) {
+                cookie = e.cookie.value;
+                entries++;
+            }
+
+            if (readdir.opreaddir.resok4.reply.eof) {
+                return entries;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CompoundBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -7,15 +7,18 @@ import org.dcache.nfs.v4.NFSv4StateHandler;
 import org.dcache.nfs.v4.StateOwner;
 import org.dcache.nfs.v4.xdr.nfs4_prot;
 import org.dcache.nfs.v4.xdr.seqid4;
+import org.dcache.nfs.v4.xdr.stateid4;
 import org.dcache.nfs.v4.xdr.verifier4;
 import org.dcache.nfs.vfs.Inode;
 import org.dcache.oncrpc4j.util.Bytes;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.results.format.ResultFormatType;
@@ -61,6 +64,66 @@ public class FileTrackerBenchmark {
     }
 
 
+    /*
+     * A single file which is kept open by many clients, e.g. shared job input.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedFileHolder {
+
+        @Param({"1", "1000", "10000"})
+        private int openers;
+
+        private FileTracker fileTracker;
+        private NFSv4StateHandler sh;
+        private Inode inode;
+
+        @Setup
+        public void setUp() throws Exception {
+            fileTracker = new FileTracker();
+            sh = new NFSv4StateHandler();
+            inode = generateFileHandle();
+
+            for (int i = 0; i < openers; i++) {
+                NFS4Client client = createClient(sh);
+                StateOwner stateOwner = client.getOrCreateOwner(("opener" + i).getBytes(StandardCharsets.UTF_8), new seqid4(0));
+                fileTracker.addOpen(client, stateOwner, inode, OPEN4_SHARE_ACCESS_READ, 0);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            sh.shutdown();
+        }
+    }
+
+    /*
+     * Per thread client, which opens and closes the shared file.
+     */
+    @State(Scope.Thread)
+    public static class OpenerHolder {
+
+        private NFS4Client client;
+        private StateOwner stateOwner;
+
+        @Setup
+        public void setUp(SharedFileHolder sharedFileHolder) throws Exception {
+            client = createClient(sharedFileHolder.sh);
+            stateOwner = client.getOrCreateOwner(Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        }
+    }
+
+    @Benchmark
+    @Threads(48)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public stateid4 manyOpenersOneFile(SharedFileHolder sharedFileHolder, OpenerHolder openerHolder) throws Exception {
+
+        stateid4 stateid = sharedFileHolder.fileTracker.addOpen(openerHolder.client, openerHolder.stateOwner,
+                sharedFileHolder.inode, OPEN4_SHARE_ACCESS_READ, 0);
+        // the open state's dispose listener removes the open from file tracker
+        openerHolder.client.releaseState(stateid);
+        return stateid;
+    }
+
     @Benchmark
     @Threads(48)
     @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
@@ -0,0 +1,56 @@
+package org.dcache.nfs.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.oncrpc4j.rpc.RpcAuthTypeUnix;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.rpc.RpcTransport;
+
+/**
+ * RPC calls for benchmarks, which invoke {@code NFSServerV41} in-process without
+ * a network connection.
+ */
+final class LocalRpcCalls {
+
+    private LocalRpcCalls() {
+    }
+
+    /**
+     * Create an NFSv4 RPC call as received from a dedicated client connection.
+     * Calls with different ids come from different client ports.
+     *
+     * @param id client id.
+     * @return RPC call with root credentials.
+     */
+    static RpcCall newRpcCall(int id) {
+        InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), 2049);
+        InetSocketAddress remote = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1024 + id);
+
+        RpcTransport transport = (RpcTransport) Proxy.newProxyInstance(
+                RpcTransport.class.getClassLoader(),
+                new Class<?>[]{RpcTransport.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLocalSocketAddress":
+                            return local;
+                        case "getRemoteSocketAddress":
+                            return remote;
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "transport[" + remote + "]";
+                        default:
+                            return null;
+                    }
+                });
+
+        return new RpcCall(nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4,
+                new RpcAuthTypeUnix(0, 0, new int[]{0}, 0, "localhost"), transport);
+    }
+}
@@ -0,0 +1,94 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.InstrumentedOperationExecutor;
+import org.dcache.nfs.v4.OperationExecutor;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.oncrpc4j.rpc.OncRpcException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the overhead of {@link InstrumentedOperationExecutor} compared to
+ * the wrapped executor.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class OperationExecutorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ExecutorHolder {
+
+        private OperationExecutor plain;
+        private InstrumentedOperationExecutor instrumented;
+        private nfs_argop4 getattr;
+        private nfs_argop4 lookup;
+
+        @Setup
+        public void setUp() {
+            // minimal executor to expose the cost of the instrumentation
+            plain = (context, args) -> {
+                nfs_resop4 res = nfs_resop4.resopFor(args.argop);
+                res.setStatus(args.argop == nfs_opnum4.OP_LOOKUP ? nfsstat.NFSERR_NOENT : nfsstat.NFS_OK);
+                return res;
+            };
+            instrumented = new InstrumentedOperationExecutor("benchmark", plain);
+
+            getattr = new nfs_argop4();
+            getattr.argop = nfs_opnum4.OP_GETATTR;
+
+            lookup = new nfs_argop4();
+            lookup.argop = nfs_opnum4.OP_LOOKUP;
+        }
+
+        @TearDown
+        public void tearDown() {
+            instrumented.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public nfs_resop4 plainExecutor(ExecutorHolder holder) throws IOException, OncRpcException {
+        return holder.plain.execute(null, holder.getattr);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public nfs_resop4 instrumentedExecutor(ExecutorHolder holder) throws IOException, OncRpcException {
+        return holder.instrumented.execute(null, holder.getattr);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public nfs_resop4 instrumentedExecutorWithError(ExecutorHolder holder) throws IOException, OncRpcException {
+        return holder.instrumented.execute(null, holder.lookup);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(OperationExecutorBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
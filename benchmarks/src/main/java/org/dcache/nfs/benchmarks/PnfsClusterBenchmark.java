@@ -0,0 +1,118 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.dcache.nfs.FsExport;
+import org.dcache.nfs.v4.client.Nfs4Client;
+import org.dcache.nfs4j.server.PnfsTestCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * End-to-end pNFS benchmark. Starts an embedded {@link PnfsTestCluster} with a
+ * metadata server and a number of data servers on loopback and drives it with
+ * {@link Nfs4Client}. Unlike {@link PnfsIoBenchmark}, every operation goes
+ * through the network stack and includes OPEN, LAYOUTGET, LAYOUTCOMMIT,
+ * LAYOUTRETURN and CLOSE on the metadata server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PnfsClusterBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final String FILE = "/data";
+
+    @Param({"1", "2", "4"})
+    private int dataServers;
+
+    @Param({"65536", "1048576"})
+    private int stripeUnit;
+
+    @Param({"ROUND_ROBIN", "ROTATED"})
+    private FsExport.Placement placement;
+
+    private Path base;
+    private PnfsTestCluster cluster;
+    private Nfs4Client client;
+
+    private ByteBuffer writeData;
+    private ByteBuffer readData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        base = Files.createTempDirectory("pnfs-cluster-benchmark");
+        cluster = new PnfsTestCluster.Builder()
+                .withDataServers(dataServers)
+                .withStripeUnit(stripeUnit)
+                .withPlacement(placement)
+                .withBase(base)
+                .build();
+
+        InetSocketAddress mds = cluster.getMdsAddress();
+        client = new Nfs4Client(mds.getHostString(), mds.getPort(), "/");
+
+        writeData = ByteBuffer.allocate(FILE_SIZE);
+        readData = ByteBuffer.allocate(FILE_SIZE);
+
+        // the file must exist for read and overwrite
+        client.writeFile(FILE, writeData);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try {
+            client.close();
+        } finally {
+            cluster.close();
+            try (Stream<Path> files = Files.walk(base)) {
+                files.sorted(Comparator.reverseOrder())
+                        .forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public long write() throws IOException {
+        writeData.clear();
+        return client.overwriteFile(FILE, writeData);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public long read() throws IOException {
+        readData.clear();
+        return client.readFile(FILE, readData);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PnfsClusterBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,255 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.security.auth.Subject;
+import org.dcache.nfs.ExportFile;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.UnixSubjects;
+import org.dcache.nfs.v4.ClientSession;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.NFSServerV41;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.client.FileIoDevice;
+import org.dcache.nfs.v4.client.PnfsIoEngine;
+import org.dcache.nfs.v4.client.Stripe;
+import org.dcache.nfs.v4.client.StripeMap;
+import org.dcache.nfs.v4.ds.DSOperationExecutor;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.clientid4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.multipath_list4;
+import org.dcache.nfs.v4.xdr.netaddr4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfsv4_1_file_layout_ds_addr4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.nfs.vfs.FsCache;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.MemoryFileSystem;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark of the client side striped pNFS I/O engine against in-process data
+ * servers, each backed by {@link DSOperationExecutor}. Each data server executes
+ * requests on a shared thread pool to simulate independent servers. The MDS is a
+ * stub, which only acknowledges LAYOUTCOMMIT.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PnfsIoBenchmark {
+
+    private static final int IO_SIZE = 8 * 1024 * 1024;
+    private static final Subject OWNER = UnixSubjects.toSubject(0, 0);
+
+    @Param({"1", "2", "4"})
+    private int dataServers;
+
+    @Param({"65536", "1048576"})
+    private int stripeUnit;
+
+    private ExecutorService executor;
+    private Path base;
+    private final List<FsCache> caches = new ArrayList<>();
+
+    private PnfsIoEngine engine;
+    private StripeMap layout;
+    private final nfs_fh4 mdsFh = new nfs_fh4(new byte[]{1});
+    private final stateid4 stateid = Stateids.ZeroStateId();
+
+    private ByteBuffer writeData;
+    private ByteBuffer readData;
+
+    /**
+     * An in-process data server with a client session.
+     */
+    private static class DataServer {
+
+        private final NFSServerV41 server;
+        private final RpcCall call;
+        private final ExecutorService executor;
+        private final ClientSession session;
+        private final nfs_fh4 fh;
+
+        DataServer(int id, FsCache cache, ExecutorService executor) throws IOException {
+
+            MemoryFileSystem vfs = new MemoryFileSystem();
+            Inode inode = vfs.create(vfs.getRootInode(), Stat.Type.REGULAR, "data", OWNER, 0644);
+            fh = new nfs_fh4(inode.toNfsHandle());
+
+            this.server = new NFSServerV41.Builder()
+                    .withVfs(vfs)
+                    .withOperationExecutor(new DSOperationExecutor(cache))
+                    .withExportTable(new ExportFile(new StringReader("/ *(rw,no_root_squash)")))
+                    .build();
+            this.call = LocalRpcCalls.newRpcCall(id);
+            this.executor = executor;
+
+            COMPOUND4res res = execute(new CompoundBuilder()
+                    .withExchangeId("dcache.org", "benchmark", "pnfs-client",
+                            nfs4_prot.EXCHGID4_FLAG_USE_PNFS_DS, 0)
+                    .withTag("exchange_id")
+                    .build());
+            clientid4 clientid = res.resarray.get(0).opexchange_id.eir_resok4.eir_clientid;
+            sequenceid4 sequence = res.resarray.get(0).opexchange_id.eir_resok4.eir_sequenceid;
+
+            res = execute(new CompoundBuilder()
+                    .withCreatesession(clientid, sequence)
+                    .withTag("create_session")
+                    .build());
+            sessionid4 sessionid = res.resarray.get(0).opcreate_session.csr_resok4.csr_sessionid;
+            int maxRequests = res.resarray.get(0).opcreate_session.csr_resok4.csr_fore_chan_attrs.ca_maxrequests.value;
+            session = new ClientSession(sessionid, maxRequests);
+
+            send(new CompoundBuilder()
+                    .withReclaimComplete()
+                    .withTag("reclaim_complete")
+                    .build()).join();
+        }
+
+        CompletableFuture<COMPOUND4res> send(COMPOUND4args args) {
+            COMPOUND4args compound = ClientSession.prependSequence(args);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    ClientSession.SessionSlot slot = session.acquireSlot();
+                    try {
+                        compound.argarray[0] = session.sequence(slot);
+                        return execute(compound);
+                    } finally {
+                        session.releaseSlot(slot);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+
+        COMPOUND4res execute(COMPOUND4args args) throws IOException {
+            COMPOUND4res res = server.NFSPROC4_COMPOUND_4(call, args);
+            nfsstat.throwIfNeeded(res.status);
+            return res;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        executor = Executors.newFixedThreadPool(4 * dataServers);
+        base = Files.createTempDirectory("pnfs-io-benchmark");
+
+        Map<InetSocketAddress, PnfsIoEngine.CompoundSender> senders = new HashMap<>();
+        nfs_fh4[] fhs = new nfs_fh4[dataServers];
+
+        nfsv4_1_file_layout_ds_addr4 deviceAddr = new nfsv4_1_file_layout_ds_addr4();
+        deviceAddr.nflda_stripe_indices = new uint32_t[dataServers];
+        deviceAddr.nflda_multipath_ds_list = new multipath_list4[dataServers];
+
+        for (int i = 0; i < dataServers; i++) {
+            Path dir = Files.createDirectory(base.resolve("ds-" + i));
+            FsCache cache = new FsCache();
+            cache.setBase(dir.toFile());
+            cache.setMaxSize(1024);
+            cache.setLastAccess(3600);
+            cache.setName("pnfs-io-benchmark-ds-" + i);
+            cache.init();
+            caches.add(cache);
+
+            DataServer ds = new DataServer(i, cache, executor);
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 20490 + i);
+            senders.put(address, ds::send);
+            fhs[i] = ds.fh;
+
+            deviceAddr.nflda_stripe_indices[i] = new uint32_t(i);
+            deviceAddr.nflda_multipath_ds_list[i] = new multipath_list4(new netaddr4[]{new netaddr4(address)});
+        }
+
+        FileIoDevice device = new FileIoDevice(deviceAddr);
+        deviceid4 deviceid = new deviceid4(new byte[nfs4_prot.NFS4_DEVICEID4_SIZE]);
+
+        layout = new StripeMap(stateid);
+        layout.addStripe(new Stripe(deviceid, fhs, -1, 0, 0, stripeUnit, 0));
+
+        engine = new PnfsIoEngine(
+                args -> CompletableFuture.completedFuture(new COMPOUND4res()),
+                senders::get,
+                id -> device,
+                PnfsIoEngine.DEFAULT_MAX_IO_SIZE);
+
+        writeData = ByteBuffer.allocate(IO_SIZE);
+        readData = ByteBuffer.allocate(IO_SIZE);
+
+        // the file must exist for read
+        engine.write(mdsFh, stateid, layout, 0, writeData).join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        caches.forEach(FsCache::close);
+        try (Stream<Path> files = Files.walk(base)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public int write() {
+        writeData.clear();
+        return engine.write(mdsFh, stateid, layout, 0, writeData).join();
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public int read() {
+        readData.clear();
+        return engine.read(mdsFh, stateid, layout, 0, readData).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PnfsIoBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,102 @@
+package org.dcache.nfs.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.dcache.nfs.FsExport;
+import org.dcache.nfs.v4.StripingPattern;
+import org.dcache.nfs.v4.StripingPatterns;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Simulation of small file placement with different placement strategies.
+ * Each invocation creates a file, which is placed on the data server selected
+ * for its first stripe, and removes the oldest file once {@code liveFiles} are
+ * stored. At the end of each iteration the load skew of the live files across
+ * data servers is printed as max/mean and stddev/mean.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class StripingPatternBenchmark {
+
+    @Param({"ROUND_ROBIN", "ROTATED", "WEIGHTED", "BOUNDED_LOAD"})
+    private FsExport.Placement placement;
+
+    @Param({"4", "16", "64"})
+    private int dataServers;
+
+    @Param({"10000"})
+    private int liveFiles;
+
+    private StripingPattern<String> pattern;
+    private String[] servers;
+    private long[] load;
+    private int[] placedOn;
+    private long fileId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        servers = new String[dataServers];
+        for (int i = 0; i < dataServers; i++) {
+            servers[i] = "ds-" + i;
+        }
+        pattern = StripingPatterns.forPlacement(placement, ds -> 1.0);
+        load = new long[dataServers];
+        placedOn = new int[liveFiles];
+        Arrays.fill(placedOn, -1);
+        fileId = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printSkew() {
+        double mean = Arrays.stream(load).average().orElse(0);
+        long max = Arrays.stream(load).max().orElse(0);
+        double variance = Arrays.stream(load).mapToDouble(l -> (l - mean) * (l - mean)).sum() / load.length;
+
+        System.out.printf("%n%s, %d data servers: max/mean = %.3f, stddev/mean = %.3f%n",
+                placement, dataServers, max / mean, Math.sqrt(variance) / mean);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public int placeFile() {
+        int slot = (int) (fileId % liveFiles);
+        int old = placedOn[slot];
+        if (old >= 0) {
+            load[old]--;
+            pattern.release(toFileId(fileId - liveFiles));
+        }
+
+        byte[] id = toFileId(fileId++);
+        int ds = pattern.getPattern(id, servers)[0].value;
+        placedOn[slot] = ds;
+        load[ds]++;
+        return ds;
+    }
+
+    private static byte[] toFileId(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StripingPatternBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,436 @@
+package org.dcache.nfs.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v3.Utils;
+import org.dcache.nfs.v3.xdr.READDIRPLUS3res;
+import org.dcache.nfs.v3.xdr.READDIRPLUS3resok;
+import org.dcache.nfs.v3.xdr.cookie3;
+import org.dcache.nfs.v3.xdr.cookieverf3;
+import org.dcache.nfs.v3.xdr.dirlistplus3;
+import org.dcache.nfs.v3.xdr.entryplus3;
+import org.dcache.nfs.v3.xdr.fattr3;
+import org.dcache.nfs.v3.xdr.fileid3;
+import org.dcache.nfs.v3.xdr.filename3;
+import org.dcache.nfs.v3.xdr.nfs_fh3;
+import org.dcache.nfs.v3.xdr.post_op_attr;
+import org.dcache.nfs.v3.xdr.post_op_fh3;
+import org.dcache.nfs.v3.xdr.uint64;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.GETATTR4resok;
+import org.dcache.nfs.v4.xdr.READDIR4resok;
+import org.dcache.nfs.v4.xdr.SEQUENCE4resok;
+import org.dcache.nfs.v4.xdr.attrlist4;
+import org.dcache.nfs.v4.xdr.bitmap4;
+import org.dcache.nfs.v4.xdr.component4;
+import org.dcache.nfs.v4.xdr.dirlist4;
+import org.dcache.nfs.v4.xdr.entry4;
+import org.dcache.nfs.v4.xdr.fattr4;
+import org.dcache.nfs.v4.xdr.fattr4_change;
+import org.dcache.nfs.v4.xdr.fattr4_fileid;
+import org.dcache.nfs.v4.xdr.fattr4_mode;
+import org.dcache.nfs.v4.xdr.fattr4_numlinks;
+import org.dcache.nfs.v4.xdr.fattr4_owner;
+import org.dcache.nfs.v4.xdr.fattr4_owner_group;
+import org.dcache.nfs.v4.xdr.fattr4_size;
+import org.dcache.nfs.v4.xdr.fattr4_time_access;
+import org.dcache.nfs.v4.xdr.fattr4_time_metadata;
+import org.dcache.nfs.v4.xdr.fattr4_time_modify;
+import org.dcache.nfs.v4.xdr.fattr4_type;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_cookie4;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_ftype4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.sequenceid4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.slotid4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.nfs.v4.xdr.utf8str_cs;
+import org.dcache.nfs.v4.xdr.utf8str_mixed;
+import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.dcache.oncrpc4j.xdr.XdrAble;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Round-trip of the hottest protocol structures through the generated XDR classes.
+ * Encoding reuses a per-thread buffer, decoding starts from pre-encoded bytes. The
+ * sizes mimic typical traffic: a 4K WRITE, GETATTR with attributes requested by
+ * the Linux client and directory listings with 256 entries.
+ */
+@BenchmarkMode(Mode.Throughput)
+public class XdrBenchmark {
+
+    private static final int DIR_ENTRIES = 256;
+
+    @State(Scope.Thread)
+    public static class XdrHolder {
+
+        private Xdr xdr;
+        private Stat stat;
+
+        private COMPOUND4args getattrArgs;
+        private COMPOUND4args writeArgs;
+        private COMPOUND4res getattrRes;
+        private COMPOUND4res readdirRes;
+        private XdrAble[] attributes;
+        private fattr3 fattr3;
+        private READDIRPLUS3res readdirplusRes;
+
+        private byte[] getattrArgsBytes;
+        private byte[] writeArgsBytes;
+        private byte[] getattrResBytes;
+        private byte[] readdirResBytes;
+        private byte[] attributesBytes;
+        private byte[] fattr3Bytes;
+        private byte[] readdirplusResBytes;
+
+        @Setup
+        public void setUp() throws IOException {
+
+            xdr = new Xdr(64 * 1024);
+
+            long now = System.currentTimeMillis();
+            stat = new Stat();
+            stat.setMode(0100644);
+            stat.setNlink(1);
+            stat.setUid(1000);
+            stat.setGid(1000);
+            stat.setDev(17);
+            stat.setRdev(17);
+            stat.setIno(4711);
+            stat.setSize(1024 * 1024);
+            stat.setATime(now);
+            stat.setMTime(now);
+            stat.setCTime(now);
+            stat.setGeneration(1);
+
+            sessionid4 sessionid = new sessionid4(new byte[nfs4_prot.NFS4_SESSIONID_SIZE]);
+            nfs_fh4 fh = new nfs_fh4(new byte[32]);
+
+            getattrArgs = new CompoundBuilder()
+                    .withSequence(false, sessionid, 1, 0, 0)
+                    .withPutfh(fh)
+                    .withGetattr(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_CHANGE, nfs4_prot.FATTR4_SIZE,
+                            nfs4_prot.FATTR4_FILEID, nfs4_prot.FATTR4_MODE, nfs4_prot.FATTR4_NUMLINKS,
+                            nfs4_prot.FATTR4_OWNER, nfs4_prot.FATTR4_OWNER_GROUP,
+                            nfs4_prot.FATTR4_TIME_ACCESS, nfs4_prot.FATTR4_TIME_METADATA,
+                            nfs4_prot.FATTR4_TIME_MODIFY)
+                    .withTag("getattr")
+                    .build();
+
+            writeArgs = new CompoundBuilder()
+                    .withSequence(false, sessionid, 1, 0, 0)
+                    .withPutfh(fh)
+                    .withWrite(0, new byte[4096], Stateids.ZeroStateId())
+                    .withTag("write")
+                    .build();
+
+            attributes = attributes(stat, "user@dcache.org", "group@dcache.org");
+
+            getattrRes = new COMPOUND4res();
+            getattrRes.status = nfsstat.NFS_OK;
+            getattrRes.tag = new utf8str_cs("getattr");
+            getattrRes.resarray = new ArrayList<>();
+            getattrRes.resarray.add(sequenceRes(sessionid));
+            getattrRes.resarray.add(nfs_resop4.resopFor(nfs_opnum4.OP_PUTFH));
+            nfs_resop4 getattr = nfs_resop4.resopFor(nfs_opnum4.OP_GETATTR);
+            getattr.opgetattr.resok4 = new GETATTR4resok();
+            getattr.opgetattr.resok4.obj_attributes = fattr(attributes);
+            getattrRes.resarray.add(getattr);
+
+            readdirRes = new COMPOUND4res();
+            readdirRes.status = nfsstat.NFS_OK;
+            readdirRes.tag = new utf8str_cs("readdir");
+            readdirRes.resarray = new ArrayList<>();
+            readdirRes.resarray.add(sequenceRes(sessionid));
+            readdirRes.resarray.add(nfs_resop4.resopFor(nfs_opnum4.OP_PUTFH));
+            nfs_resop4 readdir = nfs_resop4.resopFor(nfs_opnum4.OP_READDIR);
+            readdir.opreaddir.resok4 = new READDIR4resok();
+            readdir.opreaddir.resok4.cookieverf = new verifier4(new byte[nfs4_prot.NFS4_VERIFIER_SIZE]);
+            readdir.opreaddir.resok4.reply = new dirlist4();
+            readdir.opreaddir.resok4.reply.eof = true;
+            entry4 last = null;
+            for (int i = 0; i < DIR_ENTRIES; i++) {
+                entry4 e = new entry4();
+                e.cookie = new nfs_cookie4(i + 3);
+                e.name = new component4("file-" + i);
+                e.attrs = fattr(attributes);
+                if (last == null) {
+                    readdir.opreaddir.resok4.reply.entries = e;
+                } else {
+                    last.nextentry = e;
+                }
+                last = e;
+            }
+            readdirRes.resarray.add(readdir);
+
+            fattr3 = new fattr3();
+            Utils.fill_attributes(stat, fattr3);
+
+            readdirplusRes = new READDIRPLUS3res();
+            readdirplusRes.status = nfsstat.NFS_OK;
+            readdirplusRes.resok = new READDIRPLUS3resok();
+            readdirplusRes.resok.dir_attributes = new post_op_attr();
+            readdirplusRes.resok.dir_attributes.attributes_follow = true;
+            readdirplusRes.resok.dir_attributes.attributes = fattr3;
+            readdirplusRes.resok.cookieverf = new cookieverf3(new byte[nfs4_prot.NFS4_VERIFIER_SIZE]);
+            readdirplusRes.resok.reply = new dirlistplus3();
+            readdirplusRes.resok.reply.eof = true;
+            entryplus3 lastPlus = null;
+            for (int i = 0; i < DIR_ENTRIES; i++) {
+                entryplus3 e = new entryplus3();
+                e.fileid = new fileid3(new uint64(i));
+                e.name = new filename3("file-" + i);
+                e.cookie = new cookie3(new uint64(i + 3));
+                e.name_handle = new post_op_fh3();
+                e.name_handle.handle_follows = true;
+                e.name_handle.handle = new nfs_fh3();
+                e.name_handle.handle.data = new byte[32];
+                e.name_attributes = new post_op_attr();
+                e.name_attributes.attributes_follow = true;
+                e.name_attributes.attributes = fattr3;
+                if (lastPlus == null) {
+                    readdirplusRes.resok.reply.entries = e;
+                } else {
+                    lastPlus.nextentry = e;
+                }
+                lastPlus = e;
+            }
+
+            getattrArgsBytes = encode(getattrArgs);
+            writeArgsBytes = encode(writeArgs);
+            getattrResBytes = encode(getattrRes);
+            readdirResBytes = encode(readdirRes);
+            attributesBytes = encode(attributes);
+            fattr3Bytes = encode(fattr3);
+            readdirplusResBytes = encode(readdirplusRes);
+        }
+
+        private static nfs_resop4 sequenceRes(sessionid4 sessionid) {
+            nfs_resop4 sequence = nfs_resop4.resopFor(nfs_opnum4.OP_SEQUENCE);
+            sequence.opsequence.sr_resok4 = new SEQUENCE4resok();
+            sequence.opsequence.sr_resok4.sr_sessionid = sessionid;
+            sequence.opsequence.sr_resok4.sr_sequenceid = new sequenceid4(1);
+            sequence.opsequence.sr_resok4.sr_slotid = new slotid4(0);
+            sequence.opsequence.sr_resok4.sr_highest_slotid = new slotid4(0);
+            sequence.opsequence.sr_resok4.sr_target_highest_slotid = new slotid4(63);
+            sequence.opsequence.sr_resok4.sr_status_flags = new uint32_t(0);
+            return sequence;
+        }
+
+        private static fattr4 fattr(XdrAble... attrs) throws IOException {
+            fattr4 fattr = new fattr4();
+            fattr.attrmask = bitmap4.of(nfs4_prot.FATTR4_TYPE, nfs4_prot.FATTR4_CHANGE, nfs4_prot.FATTR4_SIZE,
+                    nfs4_prot.FATTR4_FILEID, nfs4_prot.FATTR4_MODE, nfs4_prot.FATTR4_NUMLINKS,
+                    nfs4_prot.FATTR4_OWNER, nfs4_prot.FATTR4_OWNER_GROUP,
+                    nfs4_prot.FATTR4_TIME_ACCESS, nfs4_prot.FATTR4_TIME_METADATA,
+                    nfs4_prot.FATTR4_TIME_MODIFY);
+            fattr.attr_vals = new attrlist4(encode(attrs));
+            return fattr;
+        }
+
+        private static byte[] encode(XdrAble... objects) throws IOException {
+            try (Xdr xdr = new Xdr(1024)) {
+                xdr.beginEncoding();
+                for (XdrAble o : objects) {
+                    o.xdrEncode(xdr);
+                }
+                xdr.endEncoding();
+                return xdr.getBytes();
+            }
+        }
+    }
+
+    /**
+     * Attributes in the order as requested by GETATTR and READDIR.
+     */
+    private static XdrAble[] attributes(Stat stat, String owner, String group) {
+        return new XdrAble[]{
+            new fattr4_type(nfs_ftype4.NF4REG),
+            new fattr4_change(stat.getGeneration()),
+            new fattr4_size(stat.getSize()),
+            new fattr4_fileid(stat.getIno()),
+            new fattr4_mode(stat.getMode() & 07777),
+            new fattr4_numlinks(stat.getNlink()),
+            new fattr4_owner(new utf8str_mixed(owner)),
+            new fattr4_owner_group(new utf8str_mixed(group)),
+            new fattr4_time_access(stat.getATime()),
+            new fattr4_time_metadata(stat.getCTime()),
+            new fattr4_time_modify(stat.getMTime())
+        };
+    }
+
+    private static Xdr encode(Xdr xdr, XdrAble o) throws IOException {
+        xdr.beginEncoding();
+        o.xdrEncode(xdr);
+        xdr.endEncoding();
+        return xdr;
+    }
+
+    private static Xdr decoder(byte[] bytes) {
+        Xdr xdr = new Xdr(bytes);
+        xdr.beginDecoding();
+        return xdr;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeGetattrArgs(XdrHolder holder) throws IOException {
+        return encode(holder.xdr, holder.getattrArgs);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4args decodeGetattrArgs(XdrHolder holder) throws IOException {
+        COMPOUND4args args = new COMPOUND4args();
+        args.xdrDecode(decoder(holder.getattrArgsBytes));
+        return args;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeWriteArgs(XdrHolder holder) throws IOException {
+        holder.writeArgs.argarray[2].opwrite.data.rewind();
+        return encode(holder.xdr, holder.writeArgs);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4args decodeWriteArgs(XdrHolder holder) throws IOException {
+        COMPOUND4args args = new COMPOUND4args();
+        args.xdrDecode(decoder(holder.writeArgsBytes));
+        return args;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeGetattrRes(XdrHolder holder) throws IOException {
+        return encode(holder.xdr, holder.getattrRes);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res decodeGetattrRes(XdrHolder holder) throws IOException {
+        COMPOUND4res res = new COMPOUND4res();
+        res.xdrDecode(decoder(holder.getattrResBytes));
+        return res;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeReaddirRes(XdrHolder holder) throws IOException {
+        return encode(holder.xdr, holder.readdirRes);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public COMPOUND4res decodeReaddirRes(XdrHolder holder) throws IOException {
+        COMPOUND4res res = new COMPOUND4res();
+        res.xdrDecode(decoder(holder.readdirResBytes));
+        return res;
+    }
+
+    /**
+     * Build an attribute blob from {@link Stat}, as GETATTR and READDIR do for
+     * every object.
+     */
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public byte[] encodeAttributes(XdrHolder holder) throws IOException {
+        try (Xdr xdr = new Xdr(1024)) {
+            xdr.beginEncoding();
+            for (XdrAble attr : attributes(holder.stat, "user@dcache.org", "group@dcache.org")) {
+                attr.xdrEncode(xdr);
+            }
+            xdr.endEncoding();
+            return xdr.getBytes();
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public XdrAble[] decodeAttributes(XdrHolder holder) throws IOException {
+        Xdr xdr = decoder(holder.attributesBytes);
+        XdrAble[] attrs = new XdrAble[]{
+            new fattr4_type(), new fattr4_change(), new fattr4_size(), new fattr4_fileid(),
+            new fattr4_mode(), new fattr4_numlinks(), new fattr4_owner(), new fattr4_owner_group(),
+            new fattr4_time_access(), new fattr4_time_metadata(), new fattr4_time_modify()
+        };
+        for (XdrAble attr : attrs) {
+            attr.xdrDecode(xdr);
+        }
+        return attrs;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeFattr3(XdrHolder holder) throws IOException {
+        fattr3 attr = new fattr3();
+        Utils.fill_attributes(holder.stat, attr);
+        return encode(holder.xdr, attr);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public fattr3 decodeFattr3(XdrHolder holder) throws IOException {
+        return new fattr3(decoder(holder.fattr3Bytes));
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public Xdr encodeReaddirplus3Res(XdrHolder holder) throws IOException {
+        return encode(holder.xdr, holder.readdirplusRes);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public READDIRPLUS3res decodeReaddirplus3Res(XdrHolder holder) throws IOException {
+        return new READDIRPLUS3res(decoder(holder.readdirplusResBytes));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(XdrBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -283,6 +283,12 @@ public class ExportFile implements ExportTable {
                             continue;
                         }
 
+                        if (option.startsWith("placement=")) {
+                            String placement = option.substring(10);
+                            exportBuilder.withPlacement(FsExport.Placement.valueOf(placement.toUpperCase()));
+                            continue;
+                        }
+
                         if (option.equals("secure")) {
                             exportBuilder.withPrivilegedClientPort();
                             continue;
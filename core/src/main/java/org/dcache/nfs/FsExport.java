@@ -61,6 +61,28 @@ public class FsExport {
         KRB5P
     }
 
+    /**
+     * Placement strategy of files on data servers.
+     */
+    public enum Placement {
+        /**
+         * All files start on the first data server.
+         */
+        ROUND_ROBIN,
+        /**
+         * First data server is derived from the file id.
+         */
+        ROTATED,
+        /**
+         * Data servers are selected proportional to their weight.
+         */
+        WEIGHTED,
+        /**
+         * Consistent hashing of the file id with bounded load per data server.
+         */
+        BOUNDED_LOAD
+    }
+
     private final String _path;
     private final InetAddressMatcher _clientMatcher;
     private final Root _isTrusted;
@@ -76,6 +98,7 @@ public class FsExport {
     private final boolean _withPnfs;
     private final List<layouttype4> _layoutTypes;
     private final boolean _requirePrivilegedClientPort;
+    private final Placement _placement;
 
     /**
      * NFS clients may be specified in a number of ways:<br>
@@ -129,6 +152,7 @@ public class FsExport {
         _index = getExportIndex(_path);
         _layoutTypes = List.copyOf(builder.getLayoutTypes());
         _requirePrivilegedClientPort = builder.isPrivilegedClientPortRequired();
+        _placement = builder.getPlacement();
     }
 
     public static int getExportIndex(String path) {
@@ -176,6 +200,9 @@ public class FsExport {
 		.collect(Collectors.joining(":", ",lt=", ""))
 	    );
 	}
+        if (_placement != Placement.ROUND_ROBIN) {
+            sb.append(",placement=").append(_placement.name().toLowerCase());
+        }
         sb.append(',')
             .append("anonuid=")
             .append(_anonUid);
@@ -256,6 +283,15 @@ public class FsExport {
 	return _layoutTypes;
     }
 
+    /**
+     * Get placement strategy of files on data servers used by this export entry.
+     *
+     * @return placement strategy.
+     */
+    public Placement getPlacement() {
+        return _placement;
+    }
+
     /**
      * Returns the given {@code path} without redundant elements.
      *
@@ -283,6 +319,7 @@ public class FsExport {
         hash = 83 * hash + this._index;
         hash = 83 * hash + (this._withPnfs ? 1 : 0);
         hash = 83 * hash + Objects.hashCode(this._layoutTypes);
+        hash = 83 * hash + Objects.hashCode(this._placement);
         return hash;
     }
 
@@ -340,6 +377,9 @@ public class FsExport {
         if (!Objects.equals(this._layoutTypes, other._layoutTypes)) {
             return false;
         }
+        if (this._placement != other._placement) {
+            return false;
+        }
         return true;
     }
 
@@ -359,6 +399,7 @@ public class FsExport {
         private boolean _withPnfs = true;
 	private final List<layouttype4> _layoutTypes = new ArrayList<>();
         private boolean _requirePrivilegedClientPort;
+        private Placement _placement = Placement.ROUND_ROBIN;
 
         public FsExportBuilder forClient(String client) {
             checkArgument(isValidHostSpecifier(client), "bad host specifier: " + client);
@@ -461,6 +502,11 @@ public class FsExport {
 	    return this;
 	}
 
+        public FsExportBuilder withPlacement(Placement placement) {
+            _placement = placement;
+            return this;
+        }
+
         public String getClient() {
             return _client;
         }
@@ -509,6 +555,10 @@ public class FsExport {
 	    return _layoutTypes;
 	}
 
+        public Placement getPlacement() {
+            return _placement;
+        }
+
         public FsExport build(String path) throws UnknownHostException {
             return new FsExport(path, this);
         }
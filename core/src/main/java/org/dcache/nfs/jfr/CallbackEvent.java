@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A callback RPC sent to an NFSv4 client.
+ */
+@Name("org.dcache.nfs.Callback")
+@Label("NFSv4 Callback")
+@Category({"NFS", "NFSv4"})
+@Description("A callback RPC sent to an NFSv4 client")
+public final class CallbackEvent extends Event {
+
+    @Label("Callback")
+    public String callback;
+
+    @Label("Client")
+    public String client;
+
+    @Label("Status")
+    @Description("The status returned by the client, empty if the call failed")
+    public String status;
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.jfr;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import jdk.jfr.Configuration;
+
+/**
+ * Access to the JFR settings profile which enables nfs4j events.
+ *
+ * <p>The profile is shipped as {@code org/dcache/nfs/jfr/nfs4j.jfc} and can be
+ * extracted and used together with the JDK provided profiles:
+ * <pre>
+ *     java -XX:StartFlightRecording:settings=default,settings=nfs4j.jfc ...
+ * </pre>
+ * or used for in-process recordings:
+ * <pre>
+ *     try (Recording recording = new Recording(NfsJfrSettings.getConfiguration())) {
+ *         recording.start();
+ *         ...
+ *     }
+ * </pre>
+ */
+public final class NfsJfrSettings {
+
+    /**
+     * Classpath location of the settings profile.
+     */
+    public static final String PROFILE = "org/dcache/nfs/jfr/nfs4j.jfc";
+
+    private NfsJfrSettings() {
+    }
+
+    /**
+     * Get JFR configuration which enables nfs4j events.
+     *
+     * @return nfs4j JFR configuration.
+     * @throws IOException if profile can't be read.
+     * @throws ParseException if profile is malformed.
+     */
+    public static Configuration getConfiguration() throws IOException, ParseException {
+        try (Reader reader = new InputStreamReader(
+                NfsJfrSettings.class.getClassLoader().getResourceAsStream(PROFILE), StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+}
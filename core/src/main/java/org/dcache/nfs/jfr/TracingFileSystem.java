@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.jfr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import javax.security.auth.Subject;
+import org.dcache.nfs.v4.xdr.nfsace4;
+import org.dcache.nfs.vfs.DirectoryStream;
+import org.dcache.nfs.vfs.ForwardingFileSystem;
+import org.dcache.nfs.vfs.FsStat;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+
+/**
+ * A file system which emits a {@link VfsCallEvent} for every call into the backing
+ * file system. When the event is disabled, only the cheap
+ * {@link jdk.jfr.Event#shouldCommit()} check is performed.
+ *
+ * <p>Optionally, the duration of every call is reported to a {@link CallListener},
+ * for instance, to a {@link org.dcache.nfs.v4.CompoundTracer}, thus a single
+ * decorator feeds both JFR and the listener.
+ *
+ * <pre>
+ *     VirtualFileSystem vfs = new TracingFileSystem(new MyFileSystem());
+ * </pre>
+ */
+public class TracingFileSystem extends ForwardingFileSystem {
+
+    /**
+     * Receiver of completed file system calls. Called in the thread which made the call.
+     */
+    @FunctionalInterface
+    public interface CallListener {
+
+        /**
+         * Invoked when a call into the backing file system completes.
+         *
+         * @param method name of the called method.
+         * @param duration duration of the call in nanoseconds.
+         * @param failed true, if the call has thrown an exception.
+         */
+        void vfsCall(String method, long duration, boolean failed);
+    }
+
+    private final VirtualFileSystem delegate;
+    private final CallListener listener;
+
+    public TracingFileSystem(VirtualFileSystem delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Create a file system which additionally reports every call to the given listener.
+     *
+     * @param delegate the backing file system.
+     * @param listener the listener of calls, or null.
+     */
+    public TracingFileSystem(VirtualFileSystem delegate, CallListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    protected VirtualFileSystem delegate() {
+        return delegate;
+    }
+
+    private void commit(VfsCallEvent event, long start, String method, Inode inode, boolean failed) {
+        if (listener != null) {
+            listener.vfsCall(method, System.nanoTime() - start, failed);
+        }
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.inode = inode == null ? null : inode.toString();
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+    @Override
+    public int access(Subject subject, Inode inode, int mode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate().access(subject, inode, mode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "access", inode, failed);
+        }
+    }
+
+    @Override
+    public Inode create(Inode parent, Stat.Type type, String path, Subject subject, int mode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().create(parent, type, path, subject, mode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "create", parent, failed);
+        }
+    }
+
+    @Override
+    public FsStat getFsStat() throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            FsStat result = delegate().getFsStat();
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "getFsStat", null, failed);
+        }
+    }
+
+    @Override
+    public Inode getRootInode() throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().getRootInode();
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "getRootInode", null, failed);
+        }
+    }
+
+    @Override
+    public Inode lookup(Inode parent, String path) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().lookup(parent, path);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "lookup", parent, failed);
+        }
+    }
+
+    @Override
+    public Inode link(Inode parent, Inode link, String path, Subject subject) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().link(parent, link, path, subject);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "link", parent, failed);
+        }
+    }
+
+    @Override
+    public DirectoryStream list(Inode inode, byte[] verifier, long cookie) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            DirectoryStream result = delegate().list(inode, verifier, cookie);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "list", inode, failed);
+        }
+    }
+
+    @Override
+    public Inode mkdir(Inode parent, String path, Subject subject, int mode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().mkdir(parent, path, subject, mode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "mkdir", parent, failed);
+        }
+    }
+
+    @Override
+    public boolean move(Inode src, String oldName, Inode dest, String newName) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = delegate().move(src, oldName, dest, newName);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "move", src, failed);
+        }
+    }
+
+    @Override
+    public Inode parentOf(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().parentOf(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "parentOf", inode, failed);
+        }
+    }
+
+    @Override
+    public int read(Inode inode, byte[] data, long offset, int count) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate().read(inode, data, offset, count);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "read", inode, failed);
+        }
+    }
+
+    @Override
+    public int read(Inode inode, ByteBuffer data, long offset) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate().read(inode, data, offset);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "read", inode, failed);
+        }
+    }
+
+    @Override
+    public String readlink(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            String result = delegate().readlink(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "readlink", inode, failed);
+        }
+    }
+
+    @Override
+    public void remove(Inode parent, String path) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().remove(parent, path);
+            failed = false;
+        } finally {
+            commit(event, start, "remove", parent, failed);
+        }
+    }
+
+    @Override
+    public Inode symlink(Inode parent, String path, String link, Subject subject, int mode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Inode result = delegate().symlink(parent, path, link, subject, mode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "symlink", parent, failed);
+        }
+    }
+
+    @Override
+    public WriteResult write(Inode inode, byte[] data, long offset, int count, StabilityLevel stabilityLevel) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            WriteResult result = delegate().write(inode, data, offset, count, stabilityLevel);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "write", inode, failed);
+        }
+    }
+
+    @Override
+    public WriteResult write(Inode inode, ByteBuffer data, long offset, StabilityLevel stabilityLevel) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            WriteResult result = delegate().write(inode, data, offset, stabilityLevel);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "write", inode, failed);
+        }
+    }
+
+    @Override
+    public void commit(Inode inode, long offset, int count) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().commit(inode, offset, count);
+            failed = false;
+        } finally {
+            commit(event, start, "commit", inode, failed);
+        }
+    }
+
+    @Override
+    public Stat getattr(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Stat result = delegate().getattr(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "getattr", inode, failed);
+        }
+    }
+
+    @Override
+    public void setattr(Inode inode, Stat stat) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().setattr(inode, stat);
+            failed = false;
+        } finally {
+            commit(event, start, "setattr", inode, failed);
+        }
+    }
+
+    @Override
+    public nfsace4[] getAcl(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            nfsace4[] result = delegate().getAcl(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "getAcl", inode, failed);
+        }
+    }
+
+    @Override
+    public void setAcl(Inode inode, nfsace4[] acl) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().setAcl(inode, acl);
+            failed = false;
+        } finally {
+            commit(event, start, "setAcl", inode, failed);
+        }
+    }
+
+    @Override
+    public boolean hasIOLayout(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = delegate().hasIOLayout(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "hasIOLayout", inode, failed);
+        }
+    }
+
+    @Override
+    public byte[] directoryVerifier(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            byte[] result = delegate().directoryVerifier(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "directoryVerifier", inode, failed);
+        }
+    }
+
+    @Override
+    public byte[] getXattr(Inode inode, String attr) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            byte[] result = delegate().getXattr(inode, attr);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "getXattr", inode, failed);
+        }
+    }
+
+    @Override
+    public void setXattr(Inode inode, String attr, byte[] value, SetXattrMode mode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().setXattr(inode, attr, value, mode);
+            failed = false;
+        } finally {
+            commit(event, start, "setXattr", inode, failed);
+        }
+    }
+
+    @Override
+    public String[] listXattrs(Inode inode) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            String[] result = delegate().listXattrs(inode);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "listXattrs", inode, failed);
+        }
+    }
+
+    @Override
+    public void removeXattr(Inode inode, String attr) throws IOException {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate().removeXattr(inode, attr);
+            failed = false;
+        } finally {
+            commit(event, start, "removeXattr", inode, failed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Long> copyFileRange(Inode src, long srcPos, Inode dst, long dstPos, long len) {
+        VfsCallEvent event = new VfsCallEvent();
+        event.begin();
+        long start = listener == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            CompletableFuture<Long> result = delegate().copyFileRange(src, srcPos, dst, dstPos, len);
+            failed = false;
+            return result;
+        } finally {
+            commit(event, start, "copyFileRange", src, failed);
+        }
+    }
+}
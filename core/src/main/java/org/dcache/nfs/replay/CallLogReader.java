@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+import org.dcache.nfs.v4.xdr.stateid4;
+
+/**
+ * Reader of call logs written by {@link CallRecorder}.
+ */
+public class CallLogReader implements Closeable {
+
+    /**
+     * Size of the {@code other} field of a state id.
+     */
+    private static final int STATEID_OTHER_SIZE = 12;
+
+    private final DataInputStream in;
+    private final Instant startTime;
+
+    /**
+     * Open a log file. Files with names ending with {@code .gz} are decompressed.
+     *
+     * @param path the log file.
+     * @throws IOException if file can't be opened or is not a call log.
+     */
+    public CallLogReader(Path path) throws IOException {
+        this(open(path));
+    }
+
+    /**
+     * Read call log from the given stream.
+     *
+     * @param in the stream to read from.
+     * @throws IOException if stream doesn't contain a call log.
+     */
+    public CallLogReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (this.in.readInt() != CallRecorder.MAGIC) {
+            throw new IOException("Not a call log");
+        }
+        int version = this.in.readInt();
+        if (version != CallRecorder.FORMAT_VERSION) {
+            throw new IOException("Unsupported call log version: " + version);
+        }
+        startTime = Instant.ofEpochMilli(this.in.readLong());
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream is = Files.newInputStream(path);
+        return path.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(is, 64 * 1024) : is;
+    }
+
+    /**
+     * @return the time when recording has started.
+     */
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Read next record.
+     *
+     * @return next record or {@code null} if end of the log is reached.
+     * @throws IOException if log can't be read or is truncated.
+     */
+    public CallRecord next() throws IOException {
+        long offset;
+        try {
+            offset = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        long duration = in.readLong();
+        int program = in.readInt();
+        int version = in.readInt();
+        int procedure = in.readInt();
+        int status = in.readInt();
+        String client = in.readUTF();
+
+        byte[] session = new byte[in.readUnsignedShort()];
+        in.readFully(session);
+
+        stateid4[] stateids = new stateid4[in.readUnsignedShort()];
+        for (int i = 0; i < stateids.length; i++) {
+            int seqid = in.readInt();
+            byte[] other = new byte[STATEID_OTHER_SIZE];
+            in.readFully(other);
+            stateids[i] = new stateid4(other, seqid);
+        }
+
+        byte[] args = new byte[in.readInt()];
+        in.readFully(args);
+
+        return new CallRecord(offset, duration, program, version, procedure, status, client, session, stateids, args);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.replay;
+
+import org.dcache.nfs.v4.xdr.stateid4;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A single recorded ONC RPC call.
+ *
+ * <p>The call arguments are kept in their XDR encoded form, as they have been
+ * decoded by the server. For NFSv4 compounds, the state ids returned by the server
+ * are kept as well, which allows the replaying client to map state ids of the
+ * recording to the state ids issued by the replay target.
+ *
+ * @see CallRecorder
+ * @see CallLogReader
+ */
+public class CallRecord {
+
+    /**
+     * Status value used when the result of a call is not known.
+     */
+    public static final int UNKNOWN_STATUS = -1;
+
+    private static final byte[] NO_SESSION = new byte[0];
+    private static final stateid4[] NO_STATEIDS = new stateid4[0];
+
+    private final long offset;
+    private final long duration;
+    private final int program;
+    private final int version;
+    private final int procedure;
+    private final int status;
+    private final String client;
+    private final byte[] session;
+    private final stateid4[] stateids;
+    private final byte[] args;
+
+    /**
+     * Create a new record.
+     *
+     * @param offset arrival time in nanoseconds, relative to the start of the recording.
+     * @param duration processing time in nanoseconds.
+     * @param program RPC program number.
+     * @param version RPC program version.
+     * @param procedure RPC procedure number.
+     * @param status result status of the call or {@link #UNKNOWN_STATUS}.
+     * @param client address of the client.
+     * @param session NFSv4.1 session id or {@code null}.
+     * @param stateids state ids returned by the server or {@code null}.
+     * @param args XDR encoded call arguments.
+     */
+    public CallRecord(long offset, long duration, int program, int version, int procedure, int status,
+            String client, byte[] session, stateid4[] stateids, byte[] args) {
+        this.offset = offset;
+        this.duration = duration;
+        this.program = program;
+        this.version = version;
+        this.procedure = procedure;
+        this.status = status;
+        this.client = requireNonNull(client);
+        this.session = session == null ? NO_SESSION : session;
+        this.stateids = stateids == null ? NO_STATEIDS : stateids;
+        this.args = requireNonNull(args);
+    }
+
+    /**
+     * @return arrival time in nanoseconds, relative to the start of the recording.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return processing time of the call on the server in nanoseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getProgram() {
+        return program;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getProcedure() {
+        return procedure;
+    }
+
+    /**
+     * @return result status of the call or {@link #UNKNOWN_STATUS}.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return address of the client which has issued the call.
+     */
+    public String getClient() {
+        return client;
+    }
+
+    /**
+     * @return NFSv4.1 session id, or an empty array, if call is not bound to a session.
+     */
+    public byte[] getSession() {
+        return session;
+    }
+
+    /**
+     * @return state ids returned to the client by the call.
+     */
+    public stateid4[] getStateids() {
+        return stateids;
+    }
+
+    /**
+     * @return XDR encoded arguments of the call.
+     */
+    public byte[] getArgs() {
+        return args;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.dcache.oncrpc4j.xdr.XdrAble;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Recorder of decoded NFS requests.
+ *
+ * <p>Each recorded call is written into a compact binary log together with its
+ * arrival time, processing time, client address and, for NFSv4.1, the session id.
+ * The log can be read back with {@link CallLogReader} and re-issued against a server
+ * to reproduce the recorded workload.
+ *
+ * <p>The log is written by a background thread, thus request processing threads only
+ * pay for XDR encoding of the arguments. If the writer can't keep up, records are
+ * dropped rather than slowing down the server, see {@link #getDropped()}.
+ *
+ * <p>Log format, all values are big-endian:
+ * <pre>
+ *   header: int magic, int version, long start time in milliseconds since epoch
+ *   record: long offset, long duration, int program, int version, int procedure,
+ *           int status, UTF client, short session length, session bytes,
+ *           short number of state ids, state ids (int seqid, 12 bytes other),
+ *           int args length, args bytes
+ * </pre>
+ * If the name of the log file ends with {@code .gz}, the log is compressed.
+ */
+public class CallRecorder implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallRecorder.class);
+
+    static final int MAGIC = 0x4e46534a; // NFSJ
+    static final int FORMAT_VERSION = 1;
+
+    public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    /**
+     * Marker to terminate the writer thread.
+     */
+    private static final CallRecord EOF = new CallRecord(0, 0, 0, 0, 0, 0, "", null, null, new byte[0]);
+
+    private final DataOutputStream out;
+    private final BlockingQueue<CallRecord> queue;
+    private final Thread writer;
+    private final long start = System.nanoTime();
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a recorder which writes into the given file. An existing file is
+     * overwritten.
+     *
+     * @param path the log file.
+     * @throws IOException if file can't be created.
+     */
+    public CallRecorder(Path path) throws IOException {
+        this(open(path), DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Create a recorder which writes into the given stream.
+     *
+     * @param out output stream to write to.
+     * @param queueSize max number of records waiting to be written.
+     * @throws IOException if log header can't be written.
+     */
+    public CallRecorder(OutputStream out, int queueSize) throws IOException {
+        checkArgument(queueSize > 0, "Queue size must be positive");
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(FORMAT_VERSION);
+        this.out.writeLong(System.currentTimeMillis());
+        queue = new ArrayBlockingQueue<>(queueSize);
+        writer = new Thread(this::drain, "nfs-call-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static OutputStream open(Path path) throws IOException {
+        OutputStream os = Files.newOutputStream(path);
+        return path.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(os, 64 * 1024) : os;
+    }
+
+    /**
+     * Encode the arguments of a compound. Must be called before the compound is
+     * executed, as execution may consume the data buffers of WRITE operations.
+     *
+     * @param args compound to encode.
+     * @return encoded arguments or {@code null} if encoding has failed.
+     */
+    public byte[] encode(COMPOUND4args args) {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (nfs_argop4 op : args.argarray) {
+            if (op.argop == nfs_opnum4.OP_WRITE) {
+                buffers.add(op.opwrite.data);
+                positions.add(op.opwrite.data.position());
+            }
+        }
+        try {
+            return encode((XdrAble) args);
+        } finally {
+            for (int i = 0; i < buffers.size(); i++) {
+                buffers.get(i).position(positions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Encode the arguments of a call.
+     *
+     * @param args arguments to encode.
+     * @return encoded arguments or {@code null} if encoding has failed.
+     */
+    public byte[] encode(XdrAble args) {
+        try (Xdr xdr = new Xdr(1024)) {
+            xdr.beginEncoding();
+            args.xdrEncode(xdr);
+            xdr.endEncoding();
+            return xdr.getBytes();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to encode call arguments: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Record processed NFSv4 compound.
+     *
+     * @param call the RPC call.
+     * @param startTime arrival time as returned by {@link System#nanoTime()}.
+     * @param encodedArgs arguments as returned by {@link #encode(COMPOUND4args)}.
+     * @param args decoded arguments.
+     * @param res compound result.
+     */
+    public void recordCompound(RpcCall call, long startTime, byte[] encodedArgs, COMPOUND4args args, COMPOUND4res res) {
+        if (encodedArgs == null) {
+            return;
+        }
+
+        byte[] session = null;
+        if (args.argarray.length > 0 && args.argarray[0].argop == nfs_opnum4.OP_SEQUENCE) {
+            session = args.argarray[0].opsequence.sa_sessionid.value;
+        }
+
+        record(call, startTime, nfs4_prot.NFS4_PROGRAM, nfs4_prot.NFS_V4, nfs4_prot.NFSPROC4_COMPOUND_4,
+                res.status, session, stateidsOf(res).toArray(stateid4[]::new), encodedArgs);
+    }
+
+    /**
+     * Get state ids returned by successful OPEN, LOCK, OPEN_DOWNGRADE and LAYOUTGET
+     * operations of a compound, in the order of operations.
+     *
+     * @param res compound result.
+     * @return list of returned state ids.
+     */
+    public static List<stateid4> stateidsOf(COMPOUND4res res) {
+        List<stateid4> stateids = new ArrayList<>();
+        if (res.resarray != null) {
+            for (nfs_resop4 op : res.resarray) {
+                stateid4 stateid = stateidOf(op);
+                if (stateid != null) {
+                    stateids.add(stateid);
+                }
+            }
+        }
+        return stateids;
+    }
+
+    private static stateid4 stateidOf(nfs_resop4 op) {
+        if (op.getStatus() != nfsstat.NFS_OK) {
+            return null;
+        }
+        switch (op.resop) {
+            case nfs_opnum4.OP_OPEN:
+                return op.opopen.resok4.stateid;
+            case nfs_opnum4.OP_LOCK:
+                return op.oplock.resok4.lock_stateid;
+            case nfs_opnum4.OP_OPEN_DOWNGRADE:
+                return op.opopen_downgrade.resok4.open_stateid;
+            case nfs_opnum4.OP_LAYOUTGET:
+                return op.oplayoutget.logr_resok4.logr_stateid;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Record processed RPC call.
+     *
+     * @param call the RPC call.
+     * @param startTime arrival time as returned by {@link System#nanoTime()}.
+     * @param status result status of the call or {@link CallRecord#UNKNOWN_STATUS}.
+     * @param session NFSv4.1 session id or {@code null}.
+     * @param stateids state ids returned by the call or {@code null}.
+     * @param encodedArgs encoded arguments of the call.
+     */
+    public void record(RpcCall call, long startTime, int status, byte[] session, stateid4[] stateids, byte[] encodedArgs) {
+        record(call, startTime, call.getProgram(), call.getProgramVersion(), call.getProcedure(),
+                status, session, stateids, encodedArgs);
+    }
+
+    private void record(RpcCall call, long startTime, int program, int version, int procedure,
+            int status, byte[] session, stateid4[] stateids, byte[] encodedArgs) {
+        if (closed || encodedArgs == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        CallRecord record = new CallRecord(startTime - start, now - startTime, program, version, procedure,
+                status, String.valueOf(call.getTransport().getRemoteSocketAddress()), session, stateids, encodedArgs);
+        if (queue.offer(record)) {
+            recorded.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return number of records accepted for writing.
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**
+     * @return number of records dropped due to a full queue.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                CallRecord record = queue.take();
+                if (record == EOF) {
+                    break;
+                }
+                write(record);
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.error("Failed to write call log, recording stopped: {}", e.getMessage());
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    private void write(CallRecord record) throws IOException {
+        out.writeLong(record.getOffset());
+        out.writeLong(record.getDuration());
+        out.writeInt(record.getProgram());
+        out.writeInt(record.getVersion());
+        out.writeInt(record.getProcedure());
+        out.writeInt(record.getStatus());
+        out.writeUTF(record.getClient());
+        out.writeShort(record.getSession().length);
+        out.write(record.getSession());
+        out.writeShort(record.getStateids().length);
+        for (stateid4 stateid : record.getStateids()) {
+            out.writeInt(stateid.seqid);
+            out.write(stateid.other);
+        }
+        out.writeInt(record.getArgs().length);
+        out.write(record.getArgs());
+    }
+
+    /**
+     * Stop recording. Records already accepted are written before the log is
+     * closed.
+     *
+     * @throws IOException if log can't be flushed or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                queue.put(EOF);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while closing call log");
+            }
+        }
+        out.close();
+    }
+}
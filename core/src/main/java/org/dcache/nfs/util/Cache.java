@@ -28,7 +28,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.StampedLock;
 
 import org.slf4j.Logger;
@@ -59,7 +59,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 public class Cache<K, V> {
 
     private static final Logger _log = LoggerFactory.getLogger(Cache.class);
-    private final Clock _timeSource;
+    private final LeaseClock _timeSource;
 
     /**
      * The name of this cache.
@@ -104,9 +104,9 @@ public class Cache<K, V> {
     private final CacheMXBean<V> _mxBean;
 
     /**
-     * Last cleanup time
+     * Last cleanup time in {@link LeaseClock} nanoseconds.
      */
-    private final AtomicReference<Instant> _lastClean;
+    private final AtomicLong _lastClean;
 
     /**
      * Create new cache instance with default {@link CacheEventListener} and
@@ -133,7 +133,7 @@ public class Cache<K, V> {
      */
     public Cache(final String name, int size, Duration entryLifeTime, Duration entryIdleTime,
             CacheEventListener<K, V> eventListener) {
-        this(name, size, entryLifeTime, entryIdleTime, eventListener, Clock.systemDefaultZone());
+        this(name, size, entryLifeTime, entryIdleTime, eventListener, LeaseClock.coarse());
     }
 
     /**
@@ -149,6 +149,21 @@ public class Cache<K, V> {
      */
     public Cache(final String name, int size, Duration entryLifeTime, Duration entryIdleTime,
             CacheEventListener<K, V> eventListener, Clock clock) {
+        this(name, size, entryLifeTime, entryIdleTime, eventListener, LeaseClock.of(clock));
+    }
+
+    /**
+     * Create new cache instance.
+     *
+     * @param name Unique id for this cache.
+     * @param size maximal number of elements.
+     * @param entryLifeTime maximal time that an entry allowed to stay in the cache after creation.
+     * @param entryIdleTime maximal time that an entry allowed to stay in the cache after last access.
+     * @param eventListener {@link CacheEventListener}
+     * @param clock {@link LeaseClock} used to check entries expiry.
+     */
+    public Cache(final String name, int size, Duration entryLifeTime, Duration entryIdleTime,
+            CacheEventListener<K, V> eventListener, LeaseClock clock) {
 
         checkArgument(entryLifeTime.compareTo(entryIdleTime) >= 0, "Entry life time cant be smaller that idle time");
 
@@ -160,7 +175,7 @@ public class Cache<K, V> {
         _eventListener = eventListener;
         _mxBean = new CacheMXBeanImpl<>(this);
         _timeSource = clock;
-        _lastClean = new AtomicReference<>(_timeSource.instant());
+        _lastClean = new AtomicLong(_timeSource.nanoTime());
     }
 
     /**
@@ -231,7 +246,7 @@ public class Cache<K, V> {
                 return null;
             }
 
-            valid = element.validAt(_timeSource.instant());
+            valid = element.validAt(_timeSource.nanoTime());
             v = element.getObject();
 
             if ( !valid ) {
@@ -279,7 +294,7 @@ public class Cache<K, V> {
         try {
             CacheElement<V> element = _storage.remove(k);
             if( element == null ) return null;
-            valid = element.validAt(_timeSource.instant());
+            valid = element.validAt(_timeSource.nanoTime());
             v = element.getObject();
         } finally {
             _accessLock.unlock(stamp);
@@ -349,7 +364,7 @@ public class Cache<K, V> {
 
         long stamp = _accessLock.writeLock();
         try {
-            Instant now = _timeSource.instant();
+            long now = _timeSource.nanoTime();
             Iterator<Map.Entry<K, CacheElement<V>>> entries = _storage.entrySet().iterator();
             while (entries.hasNext()) {
                 Map.Entry<K, CacheElement<V>> entry = entries.next();
@@ -387,7 +402,21 @@ public class Cache<K, V> {
         return entries;
     }
 
+    /**
+     * Get time of the last cleanup according to the clock of this cache.
+     *
+     * @return time of the last cleanup.
+     */
     public Instant lastClean() {
-        return _lastClean.get();
+        return _timeSource.instant().minusNanos(sinceLastClean().toNanos());
+    }
+
+    /**
+     * Get time elapsed since the last cleanup according to the clock of this cache.
+     *
+     * @return time since the last cleanup.
+     */
+    Duration sinceLastClean() {
+        return Duration.ofNanos(_timeSource.nanoTime() - _lastClean.get());
     }
 }
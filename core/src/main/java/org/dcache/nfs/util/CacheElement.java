@@ -19,9 +19,7 @@
  */
 package org.dcache.nfs.util;
 
-import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
 
 /**
  * CacheElement wrapper.
@@ -35,34 +33,34 @@ public class CacheElement<V> {
      * Maximum amount of time that the cache entry is allowed to be cached.
      * After expiration of this time cache entry invalidated.
      */
-    private final Duration _maxLifeTime;
+    private final long _maxLifeTime;
     /**
      * Maximum amount of time that the cache entry is allowed to be cached since last use. After expiration of this
      * time cache entry is invalidated.
      */
-    private final Duration _idleTime;
+    private final long _idleTime;
     /**
-     * Element creation time.
+     * Element creation time in {@link LeaseClock} nanoseconds.
      */
-    private final Instant _creationTime;
+    private final long _creationTime;
     /**
-     * Elements last access time.
+     * Elements last access time in {@link LeaseClock} nanoseconds.
      */
-    private Instant _lastAccessTime;
+    private long _lastAccessTime;
     /**
      * internal object.
      */
     private final V _inner;
 
-    private final Clock _clock;
+    private final LeaseClock _clock;
 
-    CacheElement(V inner, Clock clock, Duration maxLifeTime, Duration idleTime) {
+    CacheElement(V inner, LeaseClock clock, Duration maxLifeTime, Duration idleTime) {
         _clock = clock;
-        _creationTime = _clock.instant();
+        _creationTime = _clock.nanoTime();
         _lastAccessTime = _creationTime;
         _inner = inner;
-        _maxLifeTime = maxLifeTime;
-        _idleTime = idleTime;
+        _maxLifeTime = LeaseClock.toNanos(maxLifeTime);
+        _idleTime = LeaseClock.toNanos(idleTime);
     }
 
     /**
@@ -72,7 +70,7 @@ public class CacheElement<V> {
      * @return internal object.
      */
     public V getObject() {
-        _lastAccessTime = _clock.instant();
+        _lastAccessTime = _clock.nanoTime();
         return _inner;
     }
 
@@ -89,19 +87,20 @@ public class CacheElement<V> {
     /**
      * Check the entry's validity at the specified point in time.
      *
-     * @param instant point in time at which entry validity is checked.
+     * @param nanoTime point in time, as returned by {@link LeaseClock#nanoTime()},
+     *      at which entry validity is checked.
      * @return true if entry still valid and false otherwise.
      */
-    public boolean validAt(Instant instant) {
-        return Duration.between(_lastAccessTime, instant).compareTo(_idleTime) <= 0 &&
-              Duration.between(_creationTime, instant).compareTo(_maxLifeTime) <= 0;
+    public boolean validAt(long nanoTime) {
+        return nanoTime - _lastAccessTime <= _idleTime &&
+              nanoTime - _creationTime <= _maxLifeTime;
     }
 
     @Override
     public String toString() {
-        Instant now = _clock.instant();
-        return String.format("Element: [%s], created: %s, last access: %s, life time %s, idle: %s, max idle: %s",
-            _inner.toString(), _creationTime, _lastAccessTime,
-            _maxLifeTime, Duration.between(_lastAccessTime, now), _idleTime);
+        long now = _clock.nanoTime();
+        return String.format("Element: [%s], age: %s, life time %s, idle: %s, max idle: %s",
+            _inner.toString(), Duration.ofNanos(now - _creationTime),
+            Duration.ofNanos(_maxLifeTime), Duration.ofNanos(now - _lastAccessTime), Duration.ofNanos(_idleTime));
     }
 }
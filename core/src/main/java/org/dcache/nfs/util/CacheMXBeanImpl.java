@@ -19,8 +19,6 @@
  */
 package org.dcache.nfs.util;
 import java.lang.management.ManagementFactory;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.List;
 import javax.management.*;
 import org.slf4j.Logger;
@@ -87,7 +85,7 @@ public class CacheMXBeanImpl<K,V> implements CacheMXBean<V> {
 
     @Override
     public long getLastClean() {
-        return Duration.between(Instant.now(), _cache.lastClean()).toMillis();
+        return _cache.sinceLastClean().negated().toMillis();
     }
 }
 
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Metrics of a Guava cache which are not covered by {@link com.google.common.cache.CacheStats}:
+ * latency distribution of loads, removals by {@link RemovalCause} and the estimated
+ * memory footprint.
+ *
+ * <p>The loader must be wrapped with {@link #timed(CacheLoader)} and this object has to
+ * be registered as cache's removal listener. An optional removal listener can be
+ * chained, which will be notified after the removal is accounted.
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+public class CacheMetrics<K, V> implements RemovalListener<K, V> {
+
+    /**
+     * Max number of entries inspected to estimate the size of a cache.
+     */
+    private static final int SIZE_SAMPLES = 64;
+
+    private final EnumMap<RemovalCause, LongAdder> _removals = new EnumMap<>(RemovalCause.class);
+    private final LatencyHistogram _loadLatency = new LatencyHistogram();
+    private final ToLongBiFunction<? super K, ? super V> _sizeOf;
+    private final RemovalListener<K, V> _next;
+
+    /**
+     * Create cache metrics.
+     *
+     * @param sizeOf function which estimates the number of bytes used by a single entry.
+     */
+    public CacheMetrics(ToLongBiFunction<? super K, ? super V> sizeOf) {
+        this(sizeOf, null);
+    }
+
+    /**
+     * Create cache metrics which forward removal notifications to the given listener.
+     *
+     * @param sizeOf function which estimates the number of bytes used by a single entry.
+     * @param next removal listener to notify, or {@code null}.
+     */
+    public CacheMetrics(ToLongBiFunction<? super K, ? super V> sizeOf, RemovalListener<K, V> next) {
+        _sizeOf = sizeOf;
+        _next = next;
+        for (RemovalCause cause : RemovalCause.values()) {
+            _removals.put(cause, new LongAdder());
+        }
+    }
+
+    /**
+     * Wrap the given loader to record load latency.
+     *
+     * @param loader the loader to wrap.
+     * @return timed loader.
+     */
+    public CacheLoader<K, V> timed(CacheLoader<K, V> loader) {
+        return new CacheLoader<>() {
+            @Override
+            public V load(K key) throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return loader.load(key);
+                } finally {
+                    recordLoad(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Record the latency of a load which is not performed by a {@link CacheLoader},
+     * for instance {@code Cache#get(key, callable)}.
+     *
+     * @param nanos load time in nanoseconds.
+     */
+    public void recordLoad(long nanos) {
+        _loadLatency.record(nanos);
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<K, V> notification) {
+        _removals.get(notification.getCause()).increment();
+        if (_next != null) {
+            _next.onRemoval(notification);
+        }
+    }
+
+    /**
+     * Get number of removed entries by cause.
+     *
+     * @return map of removal cause to number of removed entries.
+     */
+    public Map<String, Long> getRemovals() {
+        Map<String, Long> removals = new LinkedHashMap<>();
+        _removals.forEach((cause, count) -> removals.put(cause.name(), count.sum()));
+        return removals;
+    }
+
+    /**
+     * Get number of removed entries with the given cause.
+     *
+     * @param cause the removal cause.
+     * @return number of removed entries.
+     */
+    public long getRemovals(RemovalCause cause) {
+        return _removals.get(cause).sum();
+    }
+
+    /**
+     * Get a snapshot of load latencies in nanoseconds.
+     *
+     * @return load latency snapshot.
+     */
+    public LatencyHistogram.Snapshot getLoadLatency() {
+        return _loadLatency.snapshot();
+    }
+
+    /**
+     * Estimate the number of bytes used by the entries of the given cache. The average
+     * entry size is obtained from a small sample of entries and extrapolated to the
+     * whole cache.
+     *
+     * @param cache the cache to inspect.
+     * @return estimated size in bytes.
+     */
+    public long estimateSize(Cache<K, V> cache) {
+        long size = cache.size();
+        if (size == 0) {
+            return 0;
+        }
+
+        long sampled = 0;
+        long bytes = 0;
+        Iterator<Map.Entry<K, V>> i = cache.asMap().entrySet().iterator();
+        while (i.hasNext() && sampled < SIZE_SAMPLES) {
+            Map.Entry<K, V> e = i.next();
+            bytes += _sizeOf.applyAsLong(e.getKey(), e.getValue());
+            sampled++;
+        }
+        return sampled == 0 ? 0 : bytes * size / sampled;
+    }
+
+    /**
+     * Reset load latency and removal counters.
+     */
+    public void reset() {
+        _loadLatency.reset();
+        _removals.values().forEach(LongAdder::reset);
+    }
+}
@@ -19,8 +19,16 @@
  */
 package org.dcache.nfs.util;
 
+import java.util.Map;
+
 public interface GuavaCacheMXBean {
 
+    /**
+     * Get the name under which this cache is registered.
+     * @return cache instance name.
+     */
+    public String getName();
+
     public long getRequestCount();
 
     public long getHitCount();
@@ -50,4 +58,28 @@ public interface GuavaCacheMXBean {
     public void cleanUp();
 
     public void invalidateAll();
+
+    /**
+     * Get number of removed entries by cause, like SIZE, EXPIRED or COLLECTED.
+     * @return map of removal cause to number of removed entries.
+     */
+    public Map<String, Long> getEvictionsByCause();
+
+    /**
+     * Get distribution of load latency in nanoseconds.
+     * @return human readable load latency summary.
+     */
+    public String getLoadLatency();
+
+    /**
+     * Get 99th percentile of load latency in nanoseconds.
+     * @return 99th percentile of load latency.
+     */
+    public long getLoadLatencyPercentile99();
+
+    /**
+     * Get the estimated memory footprint of cached entries in bytes.
+     * @return estimated size in bytes or -1, if unknown.
+     */
+    public long getEstimatedSizeInBytes();
 }
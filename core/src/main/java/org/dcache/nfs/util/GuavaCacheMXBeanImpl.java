@@ -19,34 +19,39 @@
  */
 package org.dcache.nfs.util;
 
-import java.lang.management.ManagementFactory;
-import javax.management.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import javax.management.ObjectName;
 
 /**
- * A JMX wrapper for google's Guava Cache
+ * A JMX wrapper for google's Guava Cache.
+ *
+ * <p>Each instance is registered under its own name. If the requested name is already
+ * taken, for example by a second {@link org.dcache.nfs.vfs.VfsCache}, a numeric suffix
+ * is appended, so that all instances are visible.
  */
-public class GuavaCacheMXBeanImpl implements GuavaCacheMXBean {
-
-    private final static Logger _log = LoggerFactory.getLogger(GuavaCacheMXBeanImpl.class);
+public class GuavaCacheMXBeanImpl implements GuavaCacheMXBean, Closeable {
 
     private final com.google.common.cache.Cache _cache;
+    private final CacheMetrics _metrics;
+    private final ObjectName _mxBeanName;
+    private final String _name;
 
     public GuavaCacheMXBeanImpl(String cname, com.google.common.cache.Cache cache) {
+        this(cname, cache, null);
+    }
+
+    public GuavaCacheMXBeanImpl(String cname, com.google.common.cache.Cache cache, CacheMetrics metrics) {
         _cache = cache;
-        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
-        try {
-            String name = String.format("%s:type=Cache,name=%s",
-                    _cache.getClass().getPackage().getName(), cname);
-            ObjectName mxBeanName = new ObjectName(name);
-            if (!server.isRegistered(mxBeanName)) {
-                server.registerMBean(this, new ObjectName(name));
-            }
-        } catch (MalformedObjectNameException | InstanceAlreadyExistsException
-                | MBeanRegistrationException | NotCompliantMBeanException ex) {
-            _log.warn("Failed to create JMX bean: {}", ex.getMessage());
-        }
+        _metrics = metrics;
+        _mxBeanName = MXBeans.register(this, cache.getClass().getPackage().getName(), "Cache", cname);
+        _name = _mxBeanName == null ? cname : _mxBeanName.getKeyProperty("name");
+    }
+
+    @Override
+    public String getName() {
+        return _name;
     }
 
     @Override
@@ -124,4 +129,29 @@ public class GuavaCacheMXBeanImpl implements GuavaCacheMXBean {
         _cache.invalidateAll();
     }
 
+    @Override
+    public Map<String, Long> getEvictionsByCause() {
+        return _metrics == null ? Collections.emptyMap() : _metrics.getRemovals();
+    }
+
+    @Override
+    public String getLoadLatency() {
+        return _metrics == null ? "" : _metrics.getLoadLatency().toString();
+    }
+
+    @Override
+    public long getLoadLatencyPercentile99() {
+        return _metrics == null ? 0 : _metrics.getLoadLatency().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getEstimatedSizeInBytes() {
+        return _metrics == null ? -1 : _metrics.estimateSize(_cache);
+    }
+
+    @Override
+    public void close() {
+        MXBeans.unregister(_mxBeanName);
+    }
+
 }
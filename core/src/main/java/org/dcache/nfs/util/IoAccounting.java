@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.management.ObjectName;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Accounting of I/O per client address and per export.
+ *
+ * <p>For every client and export the number of bytes read and written, the number
+ * of operations and the cumulative service time are tracked. Counters are
+ * {@link LongAdder}s, thus updates by concurrent requests don't contend. To keep
+ * memory bounded, clients without activity for longer than the idle timeout are
+ * evicted, and, if the number of tracked clients reaches the limit, the least
+ * recently active clients are dropped. Clients are kept in a Guava cache, thus
+ * the eviction order is approximate. Exports are never evicted, as their number
+ * is bounded by the export table.
+ */
+public class IoAccounting implements IoAccountingMXBean, Closeable {
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(15);
+    public static final int DEFAULT_MAX_CLIENTS = 16384;
+
+    /**
+     * Metric used to rank clients and exports.
+     */
+    public enum Metric {
+        BYTES_READ {
+            @Override
+            long of(UsageSnapshot usage) {
+                return usage.bytesRead();
+            }
+        },
+        BYTES_WRITTEN {
+            @Override
+            long of(UsageSnapshot usage) {
+                return usage.bytesWritten();
+            }
+        },
+        BYTES {
+            @Override
+            long of(UsageSnapshot usage) {
+                return usage.bytesRead() + usage.bytesWritten();
+            }
+        },
+        OPS {
+            @Override
+            long of(UsageSnapshot usage) {
+                return usage.ops();
+            }
+        },
+        SERVICE_TIME {
+            @Override
+            long of(UsageSnapshot usage) {
+                return usage.serviceTime();
+            }
+        };
+
+        abstract long of(UsageSnapshot usage);
+    }
+
+    /**
+     * Live counters of a single client or export.
+     */
+    public static class Usage {
+
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder ops = new LongAdder();
+        private final LongAdder serviceTime = new LongAdder();
+
+        /**
+         * Account a request.
+         *
+         * @param read number of bytes read.
+         * @param written number of bytes written.
+         * @param nops number of served operations.
+         * @param nanos service time in nanoseconds.
+         */
+        public void record(long read, long written, long nops, long nanos) {
+            if (read > 0) {
+                bytesRead.add(read);
+            }
+            if (written > 0) {
+                bytesWritten.add(written);
+            }
+            if (nops > 0) {
+                ops.add(nops);
+            }
+            if (nanos > 0) {
+                serviceTime.add(nanos);
+            }
+        }
+
+        private UsageSnapshot snapshot(String name) {
+            return new UsageSnapshot(name, bytesRead.sum(), bytesWritten.sum(), ops.sum(), serviceTime.sum());
+        }
+    }
+
+    /**
+     * Point-in-time copy of usage counters.
+     *
+     * @param name client address or export index.
+     * @param bytesRead number of bytes read.
+     * @param bytesWritten number of bytes written.
+     * @param ops number of served operations.
+     * @param serviceTime cumulative service time in nanoseconds.
+     */
+    public record UsageSnapshot(String name, long bytesRead, long bytesWritten, long ops, long serviceTime) {
+
+        @Override
+        public String toString() {
+            return String.format("%s: read=%d, written=%d, ops=%d, time=%dms",
+                    name, bytesRead, bytesWritten, ops, TimeUnit.NANOSECONDS.toMillis(serviceTime));
+        }
+    }
+
+    private final LoadingCache<InetAddress, Usage> clients;
+    private final ConcurrentMap<Integer, Usage> exports = new ConcurrentHashMap<>();
+
+    private final long idleTimeout;
+
+    private final LongAdder evicted = new LongAdder();
+
+    private final ObjectName mxBeanName;
+
+    public IoAccounting(String name) {
+        this(name, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_CLIENTS, LeaseClock.coarse());
+    }
+
+    /**
+     * Create a new accounting.
+     *
+     * @param name the name used to register the JMX bean.
+     * @param idleTimeout time after which inactive clients are evicted.
+     * @param maxClients maximal number of tracked clients.
+     * @param clock time source to detect inactive clients.
+     */
+    public IoAccounting(String name, Duration idleTimeout, int maxClients, LeaseClock clock) {
+        checkArgument(maxClients > 0, "Number of clients must be positive");
+        checkArgument(!idleTimeout.isNegative() && !idleTimeout.isZero(), "Idle timeout must be positive");
+        this.idleTimeout = LeaseClock.toNanos(idleTimeout);
+        clients = CacheBuilder.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(this.idleTimeout, TimeUnit.NANOSECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return clock.nanoTime();
+                    }
+                })
+                .removalListener(n -> {
+                    if (n.wasEvicted()) {
+                        evicted.increment();
+                    }
+                })
+                .build(CacheLoader.from(a -> new Usage()));
+        mxBeanName = MXBeans.register(this, getClass().getPackage().getName(), "IoAccounting", name);
+    }
+
+    /**
+     * Get usage counters of the given client. The client is marked as active.
+     *
+     * @param address client's address.
+     * @return client's usage counters.
+     */
+    public Usage client(InetAddress address) {
+        return clients.getUnchecked(address);
+    }
+
+    /**
+     * Get usage counters of the export with the given index.
+     *
+     * @param index export index.
+     * @return export's usage counters.
+     */
+    public Usage export(int index) {
+        Usage usage = exports.get(index);
+        if (usage == null) {
+            usage = exports.computeIfAbsent(index, i -> new Usage());
+        }
+        return usage;
+    }
+
+    /**
+     * Get clients with the highest usage by the given metric.
+     *
+     * @param metric metric to rank clients.
+     * @param n maximal number of returned clients.
+     * @return usage snapshot of top {@code n} clients in descending order.
+     */
+    public List<UsageSnapshot> topClients(Metric metric, int n) {
+        return top(clients.asMap(), metric, n);
+    }
+
+    /**
+     * Get exports with the highest usage by the given metric.
+     *
+     * @param metric metric to rank exports.
+     * @param n maximal number of returned exports.
+     * @return usage snapshot of top {@code n} exports in descending order.
+     */
+    public List<UsageSnapshot> topExports(Metric metric, int n) {
+        return top(exports, metric, n);
+    }
+
+    private static <K> List<UsageSnapshot> top(Map<K, Usage> usages, Metric metric, int n) {
+        return usages.entrySet().stream()
+                .map(e -> e.getValue().snapshot(nameOf(e.getKey())))
+                .sorted(Comparator.comparingLong(metric::of).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    private static String nameOf(Object key) {
+        return key instanceof InetAddress ? ((InetAddress) key).getHostAddress() : key.toString();
+    }
+
+    @Override
+    public String[] topClients(String metric, int n) {
+        return topClients(Metric.valueOf(metric), n).stream()
+                .map(UsageSnapshot::toString)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] topExports(String metric, int n) {
+        return topExports(Metric.valueOf(metric), n).stream()
+                .map(UsageSnapshot::toString)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public int getClientCount() {
+        clients.cleanUp();
+        return (int) clients.size();
+    }
+
+    @Override
+    public long getEvictedClients() {
+        return evicted.sum();
+    }
+
+    @Override
+    public long getIdleTimeout() {
+        return TimeUnit.NANOSECONDS.toSeconds(idleTimeout);
+    }
+
+    /**
+     * Unregister JMX bean of this accounting.
+     */
+    @Override
+    public void close() {
+        MXBeans.unregister(mxBeanName);
+    }
+}
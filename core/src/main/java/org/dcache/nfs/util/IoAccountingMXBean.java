@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+/**
+ * JMX interface of {@link IoAccounting}.
+ */
+public interface IoAccountingMXBean {
+
+    /**
+     * @return number of currently tracked clients.
+     */
+    int getClientCount();
+
+    /**
+     * @return number of clients evicted due to inactivity or size limit.
+     */
+    long getEvictedClients();
+
+    /**
+     * @return time in seconds after which an inactive client is evicted.
+     */
+    long getIdleTimeout();
+
+    /**
+     * Get clients with the highest usage.
+     *
+     * @param metric one of {@link IoAccounting.Metric} names.
+     * @param n maximal number of returned clients.
+     * @return usage of top {@code n} clients.
+     */
+    String[] topClients(String metric, int n);
+
+    /**
+     * Get exports with the highest usage.
+     *
+     * @param metric one of {@link IoAccounting.Metric} names.
+     * @param n maximal number of returned exports.
+     * @return usage of top {@code n} exports.
+     */
+    String[] topExports(String metric, int n);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A monotonic time source used for lease and cache entry expiry checks.
+ *
+ * The returned values are nanoseconds relative to an arbitrary origin and, like
+ * {@link System#nanoTime()}, are meaningful only when compared with other values
+ * from the same source. The default instance returned by {@link #coarse()} is
+ * updated by a single ticker thread, thus reading the time costs a volatile read
+ * and neither allocates nor enters the kernel.
+ */
+public abstract class LeaseClock {
+
+    /**
+     * Returns the current value of this time source in nanoseconds.
+     *
+     * @return the current time in nanoseconds.
+     */
+    public abstract long nanoTime();
+
+    /**
+     * Returns the wall-clock time which corresponds to the current value of this
+     * time source. Used to convert values of this time source into points in time.
+     *
+     * @return the current instant.
+     */
+    public Instant instant() {
+        return Instant.now();
+    }
+
+    /**
+     * Returns the shared coarse time source, which has a resolution of
+     * ten milliseconds.
+     *
+     * @return the shared coarse time source.
+     */
+    public static LeaseClock coarse() {
+        return CoarseLeaseClock.INSTANCE;
+    }
+
+    /**
+     * Returns a time source which follows the given {@link Clock}. Mainly useful
+     * for tests, which need to control the passage of time.
+     *
+     * @param clock the clock to follow.
+     * @return time source backed by the given clock.
+     */
+    public static LeaseClock of(Clock clock) {
+        requireNonNull(clock);
+        return new LeaseClock() {
+            @Override
+            public long nanoTime() {
+                return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+            }
+
+            @Override
+            public Instant instant() {
+                return clock.instant();
+            }
+        };
+    }
+
+    /**
+     * Converts the given duration into nanoseconds. Durations which can't be
+     * represented as a long value, like {@code Duration.ofSeconds(Long.MAX_VALUE)},
+     * are capped to {@link Long#MAX_VALUE}.
+     *
+     * @param duration the duration to convert.
+     * @return the duration in nanoseconds.
+     */
+    public static long toNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Time source updated periodically by a single daemon thread.
+     */
+    private static class CoarseLeaseClock extends LeaseClock implements Runnable {
+
+        private static final long TICK_MILLIS = 10;
+
+        private static final CoarseLeaseClock INSTANCE = new CoarseLeaseClock();
+
+        private volatile long _now = System.nanoTime();
+
+        private CoarseLeaseClock() {
+            Thread ticker = new Thread(this, "nfs-lease-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        @Override
+        public long nanoTime() {
+            return _now;
+        }
+
+        @Override
+        public void run() {
+            long tick = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+            while (true) {
+                LockSupport.parkNanos(tick);
+                _now = System.nanoTime();
+            }
+        }
+    }
+}
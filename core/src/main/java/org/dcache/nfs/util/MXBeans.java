@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A collection of utility methods to publish JMX beans in the platform MBean server.
+ */
+public class MXBeans {
+
+    private static final Logger _log = LoggerFactory.getLogger(MXBeans.class);
+
+    private MXBeans() {}
+
+    /**
+     * Register {@code bean} as {@code domain:type=type,name=name}. If the name is
+     * already taken, for example by a second server in the same JVM, a numeric
+     * suffix is appended, so that all instances are visible.
+     *
+     * @param bean bean to register.
+     * @param domain JMX domain.
+     * @param type bean type.
+     * @param name requested instance name.
+     * @return name under which the bean is registered, or {@code null} if registration failed.
+     */
+    public static ObjectName register(Object bean, String domain, String type, String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 1;; i++) {
+                String instanceName = i == 1 ? name : name + "-" + i;
+                ObjectName objectName = new ObjectName(
+                        String.format("%s:type=%s,name=%s", domain, type, instanceName));
+                if (server.isRegistered(objectName)) {
+                    continue;
+                }
+                try {
+                    server.registerMBean(bean, objectName);
+                    return objectName;
+                } catch (InstanceAlreadyExistsException e) {
+                    // registered concurrently, try next name
+                }
+            }
+        } catch (MalformedObjectNameException | MBeanRegistrationException
+                | NotCompliantMBeanException ex) {
+            _log.warn("Failed to register JMX bean: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Unregister bean registered with {@link #register}.
+     *
+     * @param objectName name of the bean, or {@code null} if bean is not registered.
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException | MBeanRegistrationException e) {
+            _log.warn("Failed to unregister JMX bean: {}", e.getMessage());
+        }
+    }
+}
@@ -22,6 +22,10 @@ package org.dcache.nfs.v3;
 import org.dcache.nfs.ExportTable;
 import org.dcache.nfs.nfsstat;
 import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.jfr.ProcedureEvent;
+import org.dcache.nfs.replay.CallRecord;
+import org.dcache.nfs.replay.CallRecorder;
+import org.dcache.nfs.util.IoAccounting;
 import org.dcache.nfs.util.UnixSubjects;
 import org.dcache.nfs.v3.xdr.LOOKUP3res;
 import org.dcache.nfs.v3.xdr.WRITE3resfail;
@@ -125,6 +129,7 @@ import org.dcache.nfs.v3.xdr.CREATE3resfail;
 import org.dcache.nfs.v3.xdr.FSINFO3resfail;
 import org.dcache.nfs.v3.xdr.ACCESS3res;
 import org.dcache.nfs.v3.xdr.COMMIT3resok;
+import java.io.IOException;
 import java.util.Iterator;
 
 import org.dcache.nfs.v3.xdr.COMMIT3resfail;
@@ -137,6 +142,8 @@ import org.dcache.nfs.vfs.VirtualFileSystem;
 import org.dcache.nfs.vfs.Stat;
 import org.dcache.nfs.status.*;
 import org.dcache.oncrpc4j.util.Bytes;
+import org.dcache.oncrpc4j.xdr.XdrAble;
+import org.dcache.oncrpc4j.rpc.OncRpcException;
 import org.dcache.oncrpc4j.rpc.RpcCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -177,9 +184,157 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     private final writeverf3 writeVerifier = generateInstanceWriteVerifier();
 
+    /**
+     * Per client and per export I/O accounting, or null, if disabled.
+     */
+    private final IoAccounting _ioAccounting;
+
+    /**
+     * Recorder of processed calls, or null, if disabled.
+     */
+    private final CallRecorder _recorder;
+
+    /**
+     * Arguments of the call in progress, captured for the recorder.
+     */
+    private final ThreadLocal<XdrAble> _capturedArgs = new ThreadLocal<>();
+
     public NfsServerV3(ExportTable exports, VirtualFileSystem fs) {
+        this(exports, fs, null);
+    }
+
+    /**
+     * Create NFSv3 server with I/O accounting. All procedures are accounted per
+     * client, while per export only READ and WRITE are accounted, as only they
+     * are the subject of data transfer.
+     *
+     * @param exports export table.
+     * @param fs the file system to serve.
+     * @param ioAccounting per client and per export I/O accounting.
+     */
+    public NfsServerV3(ExportTable exports, VirtualFileSystem fs, IoAccounting ioAccounting) {
+        this(exports, fs, ioAccounting, null);
+    }
+
+    /**
+     * Create NFSv3 server which records all processed calls. As the result of a
+     * call is not visible to the dispatcher, the calls are recorded with
+     * {@link CallRecord#UNKNOWN_STATUS}.
+     *
+     * @param exports export table.
+     * @param fs the file system to serve.
+     * @param ioAccounting per client and per export I/O accounting, or null.
+     * @param recorder recorder of processed calls, or null.
+     */
+    public NfsServerV3(ExportTable exports, VirtualFileSystem fs, IoAccounting ioAccounting, CallRecorder recorder) {
         _vfs = fs;
         _exports = exports;
+        _ioAccounting = ioAccounting;
+        _recorder = recorder;
+    }
+
+    @Override
+    public void dispatchOncRpcCall(RpcCall call) throws OncRpcException, IOException {
+
+        ProcedureEvent event = new ProcedureEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            super.dispatchOncRpcCall(call);
+        } finally {
+            if (_ioAccounting != null) {
+                _ioAccounting.client(call.getTransport().getRemoteSocketAddress().getAddress())
+                        .record(0, 0, 1, System.nanoTime() - start);
+            }
+            if (event.shouldCommit()) {
+                event.procedure = procedureName(call.getProcedure());
+                event.client = String.valueOf(call.getTransport().getRemoteSocketAddress());
+                event.commit();
+            }
+            if (_recorder != null) {
+                XdrAble args = _capturedArgs.get();
+                if (args != null) {
+                    _capturedArgs.remove();
+                    _recorder.record(call, start, CallRecord.UNKNOWN_STATUS, null, null, _recorder.encode(args));
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep the arguments of the call in progress for the recorder. The v3 arguments
+     * are not modified by processing, thus can be encoded after the call.
+     */
+    private void capture(XdrAble args) {
+        if (_recorder != null) {
+            _capturedArgs.set(args);
+        }
+    }
+
+    /**
+     * Get the name of an NFSv3 procedure.
+     *
+     * @param procedure procedure number.
+     * @return name of the procedure.
+     */
+    public static String procedureName(int procedure) {
+        switch (procedure) {
+            case nfs3_prot.NFSPROC3_NULL_3:
+                return "NULL";
+            case nfs3_prot.NFSPROC3_GETATTR_3:
+                return "GETATTR";
+            case nfs3_prot.NFSPROC3_SETATTR_3:
+                return "SETATTR";
+            case nfs3_prot.NFSPROC3_LOOKUP_3:
+                return "LOOKUP";
+            case nfs3_prot.NFSPROC3_ACCESS_3:
+                return "ACCESS";
+            case nfs3_prot.NFSPROC3_READLINK_3:
+                return "READLINK";
+            case nfs3_prot.NFSPROC3_READ_3:
+                return "READ";
+            case nfs3_prot.NFSPROC3_WRITE_3:
+                return "WRITE";
+            case nfs3_prot.NFSPROC3_CREATE_3:
+                return "CREATE";
+            case nfs3_prot.NFSPROC3_MKDIR_3:
+                return "MKDIR";
+            case nfs3_prot.NFSPROC3_SYMLINK_3:
+                return "SYMLINK";
+            case nfs3_prot.NFSPROC3_MKNOD_3:
+                return "MKNOD";
+            case nfs3_prot.NFSPROC3_REMOVE_3:
+                return "REMOVE";
+            case nfs3_prot.NFSPROC3_RMDIR_3:
+                return "RMDIR";
+            case nfs3_prot.NFSPROC3_RENAME_3:
+                return "RENAME";
+            case nfs3_prot.NFSPROC3_LINK_3:
+                return "LINK";
+            case nfs3_prot.NFSPROC3_READDIR_3:
+                return "READDIR";
+            case nfs3_prot.NFSPROC3_READDIRPLUS_3:
+                return "READDIRPLUS";
+            case nfs3_prot.NFSPROC3_FSSTAT_3:
+                return "FSSTAT";
+            case nfs3_prot.NFSPROC3_FSINFO_3:
+                return "FSINFO";
+            case nfs3_prot.NFSPROC3_PATHCONF_3:
+                return "PATHCONF";
+            case nfs3_prot.NFSPROC3_COMMIT_3:
+                return "COMMIT";
+            default:
+                return "UNKNOWN(" + procedure + ")";
+        }
+    }
+
+    private void accountIo(RpcCall call, Inode inode, long read, long written, long start) {
+        if (_ioAccounting != null) {
+            _ioAccounting.client(call.getTransport().getRemoteSocketAddress().getAddress())
+                    .record(read, written, 0, 0);
+            _ioAccounting.export(inode.exportIndex())
+                    .record(read, written, 1, System.nanoTime() - start);
+        }
     }
 
     private static writeverf3 generateInstanceWriteVerifier() {
@@ -191,6 +346,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public ACCESS3res NFSPROC3_ACCESS_3(RpcCall call$, ACCESS3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         ACCESS3res res = new ACCESS3res();
@@ -230,6 +386,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public COMMIT3res NFSPROC3_COMMIT_3(RpcCall call$, COMMIT3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         COMMIT3res res = new COMMIT3res();
@@ -270,6 +427,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public CREATE3res NFSPROC3_CREATE_3(RpcCall call$, CREATE3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request CREATE3 uid: {}", call$.getCredential());
@@ -362,6 +520,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public FSINFO3res NFSPROC3_FSINFO_3(RpcCall call$, FSINFO3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request FSINFO from: {}", call$.getCredential());
@@ -419,6 +578,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public FSSTAT3res NFSPROC3_FSSTAT_3(RpcCall call$, FSSTAT3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         FSSTAT3res res = new FSSTAT3res();
@@ -460,6 +620,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public GETATTR3res NFSPROC3_GETATTR_3(RpcCall call$, GETATTR3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request GETTATTR3 uid: {}", call$.getCredential());
@@ -488,6 +649,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public LINK3res NFSPROC3_LINK_3(RpcCall call$, LINK3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request LINK3 uid: {}", call$.getCredential());
@@ -543,6 +705,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public LOOKUP3res NFSPROC3_LOOKUP_3(RpcCall call$, LOOKUP3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         LOOKUP3res res = new LOOKUP3res();
@@ -591,6 +754,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public MKDIR3res NFSPROC3_MKDIR_3(RpcCall call$, MKDIR3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request MKDIR3 uid: {}", call$.getCredential());
@@ -660,6 +824,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public MKNOD3res NFSPROC3_MKNOD_3(RpcCall call$, MKNOD3args arg1) {
+        capture(arg1);
 
         MKNOD3res res = new MKNOD3res();
         res.status = nfsstat.NFSERR_NOTSUPP;
@@ -675,6 +840,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public PATHCONF3res NFSPROC3_PATHCONF_3(RpcCall call$, PATHCONF3args arg1) {
+        capture(arg1);
 
         PATHCONF3res res = new PATHCONF3res();
 
@@ -704,6 +870,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
      */
     @Override
     public READDIRPLUS3res NFSPROC3_READDIRPLUS_3(RpcCall call$, READDIRPLUS3args arg1) {
+        capture(arg1);
 
         final VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request READDIRPLUS3 uid: {}", call$.getCredential());
@@ -812,6 +979,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public READDIR3res NFSPROC3_READDIR_3(RpcCall call$, READDIR3args arg1) {
+        capture(arg1);
 
         final VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request READDIR3 uid: {}", call$.getCredential());
@@ -905,6 +1073,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public READLINK3res NFSPROC3_READLINK_3(RpcCall call$, READLINK3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         READLINK3res res = new READLINK3res();
@@ -941,9 +1110,11 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public READ3res NFSPROC3_READ_3(RpcCall call$, READ3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         READ3res res = new READ3res();
+        long start = System.nanoTime();
 
         try {
             Inode inode = new Inode(arg1.file.data);
@@ -978,6 +1149,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
             res.resok.file_attributes.attributes_follow = true;
             res.resok.file_attributes.attributes = new fattr3();
             Utils.fill_attributes(inodeStat, res.resok.file_attributes.attributes);
+            accountIo(call$, inode, res.resok.count.value.value, 0, start);
         } catch (ChimeraNFSException hne) {
             res.status = hne.getStatus();
             res.resfail = new READ3resfail();
@@ -995,6 +1167,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public REMOVE3res NFSPROC3_REMOVE_3(RpcCall call$, REMOVE3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request REMOVE3 uid: {}", call$.getCredential());
@@ -1049,6 +1222,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public RENAME3res NFSPROC3_RENAME_3(RpcCall call$, RENAME3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request RENAME3 uid: {}", call$.getCredential());
@@ -1106,6 +1280,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public RMDIR3res NFSPROC3_RMDIR_3(RpcCall call$, RMDIR3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request RMDIR3 uid: {}", call$.getCredential());
@@ -1157,6 +1332,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public SETATTR3res NFSPROC3_SETATTR_3(RpcCall call$, SETATTR3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request SETATTR3 uid: {}", call$.getCredential());
@@ -1196,6 +1372,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public SYMLINK3res NFSPROC3_SYMLINK_3(RpcCall call$, SYMLINK3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         _log.debug("NFS Request SYMLINK3 uid: {}", call$.getCredential());
@@ -1261,9 +1438,11 @@ public class NfsServerV3 extends nfs3_protServerStub {
 
     @Override
     public WRITE3res NFSPROC3_WRITE_3(RpcCall call$, WRITE3args arg1) {
+        capture(arg1);
 
         VirtualFileSystem fs = new PseudoFs(_vfs, call$, _exports);
         WRITE3res res = new WRITE3res();
+        long start = System.nanoTime();
 
         try {
             Inode inode = new Inode(arg1.file.data);
@@ -1290,6 +1469,7 @@ public class NfsServerV3 extends nfs3_protServerStub {
             res.resok.file_wcc.before.attributes_follow = false;
             res.resok.committed = ret.getStabilityLevel().toStableHow();
             res.resok.verf = writeVerifier;
+            accountIo(call$, inode, 0, ret.getBytesWritten(), start);
         } catch (ChimeraNFSException hne) {
             res.status = hne.getStatus();
             res.resfail = new WRITE3resfail();
@@ -21,6 +21,7 @@ package org.dcache.nfs.v4;
 
 import java.io.IOException;
 import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.jfr.OperationEvent;
 import org.dcache.nfs.nfsstat;
 import org.dcache.nfs.status.BadSessionException;
 import org.dcache.nfs.status.BadStateidException;
@@ -54,6 +55,8 @@ public abstract class AbstractOperationExecutor implements OperationExecutor {
         AbstractNFSv4Operation op = getOperation(args);
         nfs_resop4 opResult = nfs_resop4.resopFor(args.argop);
 
+        OperationEvent event = new OperationEvent();
+        event.begin();
         try {
             op.process(context, opResult);
         } catch (NfsIoException | ResourceException | ServerFaultException e) {
@@ -71,6 +74,12 @@ public abstract class AbstractOperationExecutor implements OperationExecutor {
         } catch (OncRpcException e) {
             opResult.setStatus(nfsstat.NFSERR_BADXDR);
             LOGGER.warn("Bad xdr: {}: ", e.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                event.operation = nfs_opnum4.toString(args.argop);
+                event.status = nfsstat.toString(opResult.getStatus());
+                event.commit();
+            }
         }
         return opResult;
     }
@@ -28,6 +28,7 @@ import org.dcache.nfs.status.InvalException;
 import org.dcache.nfs.v4.xdr.bitmap4;
 import org.dcache.nfs.v4.xdr.fattr4;
 import org.dcache.nfs.v4.xdr.fattr4_acl;
+import org.dcache.nfs.v4.xdr.fattr4_change;
 import org.dcache.nfs.v4.xdr.fattr4_fs_layout_types;
 import org.dcache.nfs.v4.xdr.fattr4_fs_locations;
 import org.dcache.nfs.v4.xdr.fattr4_lease_time;
@@ -114,6 +115,12 @@ public class AttributeMap {
             case nfs4_prot.FATTR4_SIZE:
                 attr = new fattr4_size();
                 break;
+            case nfs4_prot.FATTR4_CHANGE:
+                attr = new fattr4_change();
+                break;
+            case nfs4_prot.FATTR4_TIME_MODIFY:
+                attr = new nfstime4();
+                break;
             case nfs4_prot.FATTR4_ACL:
                 attr = new fattr4_acl();
                 break;
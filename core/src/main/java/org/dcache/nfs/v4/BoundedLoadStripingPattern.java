@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.dcache.nfs.util.Opaque;
+import org.dcache.nfs.v4.xdr.uint32_t;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Striping pattern based on consistent hashing with bounded loads. Each data
+ * server is placed on a hash ring multiple times. A file is placed on the
+ * first data server clockwise from the hash of the file id, which holds less
+ * than {@code ceil(loadFactor * average)} files. Thus, no data server gets more
+ * than {@code loadFactor} times the average number of files, while a change of
+ * data servers relocates only a small fraction of files.
+ *
+ * <p>The pattern keeps track of the files placed on each data server. A file is
+ * placed once, on the first request of its pattern, and subsequent requests
+ * return the same pattern as long as the set of data servers is unchanged.
+ * Removed files should be reported with {@link #release}.
+ */
+public class BoundedLoadStripingPattern<T> implements StripingPattern<T> {
+
+    private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+
+    /**
+     * Default number of ring positions for each data server.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    private final double loadFactor;
+    private final int virtualNodes;
+
+    /**
+     * Number of files placed on a data server.
+     */
+    private final Map<T, Long> loads = new HashMap<>();
+
+    /**
+     * Placement of each known file.
+     */
+    private final Map<Opaque, Placement<T>> placements = new HashMap<>();
+
+    /**
+     * Data servers used to build the current ring.
+     */
+    private List<T> ringMembers = List.of();
+
+    /**
+     * Hash ring of data server indices.
+     */
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+
+    /**
+     * Create striping pattern with given load factor.
+     *
+     * @param loadFactor maximal allowed load of a data server relative to average, must be greater than one.
+     */
+    public BoundedLoadStripingPattern(double loadFactor) {
+        this(loadFactor, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Create striping pattern with given load factor.
+     *
+     * @param loadFactor maximal allowed load of a data server relative to average, must be greater than one.
+     * @param virtualNodes number of ring positions for each data server.
+     */
+    public BoundedLoadStripingPattern(double loadFactor, int virtualNodes) {
+        checkArgument(loadFactor > 1.0, "load factor must be greater than one");
+        checkArgument(virtualNodes > 0, "number of virtual nodes must be positive");
+        this.loadFactor = loadFactor;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Get pattern without placing a file. The data server load is not updated.
+     */
+    @Override
+    public synchronized uint32_t[] getPattern(T[] data) {
+        checkArgument(data.length > 0, "at least one data server required");
+        updateRing(data);
+        return place(new byte[0], data);
+    }
+
+    @Override
+    public synchronized uint32_t[] getPattern(byte[] fileId, T[] data) {
+
+        checkArgument(data.length > 0, "at least one data server required");
+        updateRing(data);
+
+        Opaque key = new Opaque(fileId.clone());
+        Placement<T> placement = placements.get(key);
+        if (placement != null) {
+            if (placement.members.equals(ringMembers)) {
+                return placement.pattern.clone();
+            }
+            // data servers have changed, place the file again
+            decrementLoad(placement.primary);
+        }
+
+        uint32_t[] stripeIndices = place(fileId, data);
+        T primary = data[stripeIndices[0].value];
+        loads.merge(primary, 1L, Long::sum);
+        placements.put(key, new Placement<>(ringMembers, primary, stripeIndices));
+        return stripeIndices.clone();
+    }
+
+    /**
+     * Notify that the file is removed and release its slot on the data server.
+     *
+     * @param fileId file identifier.
+     */
+    @Override
+    public synchronized void release(byte[] fileId) {
+        Placement<T> placement = placements.remove(new Opaque(fileId));
+        if (placement != null) {
+            decrementLoad(placement.primary);
+        }
+    }
+
+    /**
+     * Walk the ring clockwise from the hash of the file id; the first data
+     * server below capacity takes the first stripe.
+     */
+    private uint32_t[] place(byte[] fileId, T[] data) {
+
+        long total = 0;
+        for (T ds : data) {
+            total += loads.getOrDefault(ds, 0L);
+        }
+        long capacity = (long) Math.ceil(loadFactor * (total + 1) / data.length);
+
+        uint32_t[] stripeIndices = new uint32_t[data.length];
+        boolean[] used = new boolean[data.length];
+        int n = 0;
+
+        boolean placed = false;
+        int start = HASH.hashBytes(fileId).asInt();
+        for (int idx : Iterables.concat(ring.tailMap(start, true).values(), ring.headMap(start, false).values())) {
+            if (n == data.length) {
+                break;
+            }
+            if (used[idx]) {
+                continue;
+            }
+            if (!placed) {
+                if (loads.getOrDefault(data[idx], 0L) >= capacity) {
+                    continue;
+                }
+                placed = true;
+            }
+            used[idx] = true;
+            stripeIndices[n++] = new uint32_t(idx);
+        }
+
+        // data servers skipped due to capacity or not reached on the ring
+        for (int i = 0; i < data.length && n < data.length; i++) {
+            if (!used[i]) {
+                stripeIndices[n++] = new uint32_t(i);
+            }
+        }
+
+        return stripeIndices;
+    }
+
+    private void decrementLoad(T ds) {
+        loads.computeIfPresent(ds, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    /**
+     * Get number of files placed on the given data server.
+     *
+     * @param ds data server
+     * @return number of files placed on the data server.
+     */
+    public synchronized long getLoad(T ds) {
+        return loads.getOrDefault(ds, 0L);
+    }
+
+    private void updateRing(T[] data) {
+        List<T> members = Arrays.asList(data);
+        if (members.equals(ringMembers)) {
+            return;
+        }
+
+        ring.clear();
+        for (int i = 0; i < data.length; i++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int position = HASH.newHasher()
+                        .putInt(data[i].hashCode())
+                        .putInt(v)
+                        .hash()
+                        .asInt();
+                ring.putIfAbsent(position, i);
+            }
+        }
+        ringMembers = List.copyOf(members);
+    }
+
+    private static class Placement<T> {
+
+        private final List<T> members;
+        private final T primary;
+        private final uint32_t[] pattern;
+
+        Placement(List<T> members, T primary, uint32_t[] pattern) {
+            this.members = members;
+            this.primary = primary;
+            this.pattern = pattern;
+        }
+    }
+}
@@ -22,15 +22,28 @@ package org.dcache.nfs.v4;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import java.io.Closeable;
 import java.util.concurrent.TimeUnit;
 import org.dcache.nfs.status.BadOwnerException;
+import org.dcache.nfs.util.CacheMetrics;
+import org.dcache.nfs.util.GuavaCacheMXBeanImpl;
 
 /**
  * {@link NfsIdMapping} implementation which caches results from defined source.
  *
  * @since 0.0.4
  */
-public class CachingIdmap implements NfsIdMapping {
+public class CachingIdmap implements NfsIdMapping, Closeable {
+
+    /**
+     * Rough estimate of an {@link Integer} footprint in bytes.
+     */
+    private static final long INTEGER_SIZE = 16;
+
+    /**
+     * Rough estimate of a {@link String} footprint in bytes, excluding characters.
+     */
+    private static final long STRING_SIZE = 40;
 
     /**
      * Inner {@link NfsIdMapping} used as source by this CachingIdmap.
@@ -48,6 +61,8 @@ public class CachingIdmap implements NfsIdMapping {
     private final LoadingCache<Integer, String> _userNameByIdCache;
     private final LoadingCache<Integer, String> _groupNameByIdCache;
 
+    private final GuavaCacheMXBeanImpl[] _mxBeans;
+
     /**
      * Construct caching {@link NfsIdMapping}.
      *
@@ -56,31 +71,77 @@ public class CachingIdmap implements NfsIdMapping {
      * @param timeout in seconds to cache successful results.
      */
     public CachingIdmap(NfsIdMapping idmapd, int size, long timeout) {
+        this(idmapd, size, timeout, "idmap");
+    }
+
+    /**
+     * Construct caching {@link NfsIdMapping} which publishes cache metrics under the given name.
+     *
+     * @param idmapd used as source.
+     * @param size maximal number to cache.
+     * @param timeout in seconds to cache successful results.
+     * @param name the name used to publish cache metrics.
+     */
+    public CachingIdmap(NfsIdMapping idmapd, int size, long timeout, String name) {
         _inner = idmapd;
 
+        CacheMetrics<String, Integer> uidByNameMetrics = new CacheMetrics<>(CachingIdmap::sizeOf);
+        CacheMetrics<String, Integer> gidByNameMetrics = new CacheMetrics<>(CachingIdmap::sizeOf);
+        CacheMetrics<Integer, String> userNameByIdMetrics = new CacheMetrics<>((k, v) -> sizeOf(v, k));
+        CacheMetrics<Integer, String> groupNameByIdMetrics = new CacheMetrics<>((k, v) -> sizeOf(v, k));
+
         _uidByNameCache = CacheBuilder.newBuilder().
                 expireAfterWrite(timeout, TimeUnit.SECONDS).
                 softValues().
                 maximumSize(size).
-                build( new ForwardUidMapping());
+                recordStats().
+                removalListener(uidByNameMetrics).
+                build(uidByNameMetrics.timed(new ForwardUidMapping()));
 
         _gidByNameCache  = CacheBuilder.newBuilder().
                 expireAfterWrite(timeout, TimeUnit.SECONDS).
                 softValues().
                 maximumSize(size).
-                build( new ForwardGidMapping());
+                recordStats().
+                removalListener(gidByNameMetrics).
+                build(gidByNameMetrics.timed(new ForwardGidMapping()));
 
          _userNameByIdCache = CacheBuilder.newBuilder().
                 expireAfterWrite(timeout, TimeUnit.SECONDS).
                 softValues().
                 maximumSize(size).
-                build(new ReverseUidMapping());
+                recordStats().
+                removalListener(userNameByIdMetrics).
+                build(userNameByIdMetrics.timed(new ReverseUidMapping()));
 
         _groupNameByIdCache = CacheBuilder.newBuilder().
                 expireAfterWrite(timeout, TimeUnit.SECONDS).
                 softValues().
                 maximumSize(size).
-                build(new ReverseGidMapping());
+                recordStats().
+                removalListener(groupNameByIdMetrics).
+                build(groupNameByIdMetrics.timed(new ReverseGidMapping()));
+
+        _mxBeans = new GuavaCacheMXBeanImpl[] {
+            new GuavaCacheMXBeanImpl(name + "-uid-by-name", _uidByNameCache, uidByNameMetrics),
+            new GuavaCacheMXBeanImpl(name + "-gid-by-name", _gidByNameCache, gidByNameMetrics),
+            new GuavaCacheMXBeanImpl(name + "-user-by-id", _userNameByIdCache, userNameByIdMetrics),
+            new GuavaCacheMXBeanImpl(name + "-group-by-id", _groupNameByIdCache, groupNameByIdMetrics)
+        };
+    }
+
+    /**
+     * Unregister cache metrics of this instance.
+     */
+    @Override
+    public void close() {
+        for (GuavaCacheMXBeanImpl mxBean : _mxBeans) {
+            mxBean.close();
+        }
+    }
+
+    private static long sizeOf(String principal, Integer id) {
+        return STRING_SIZE + 2L * principal.length() + INTEGER_SIZE;
     }
 
     @Override
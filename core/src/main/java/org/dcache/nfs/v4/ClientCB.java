@@ -22,6 +22,7 @@ package org.dcache.nfs.v4;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import org.dcache.nfs.jfr.CallbackEvent;
 import org.dcache.nfs.nfsstat;
 import org.dcache.nfs.v4.xdr.CB_COMPOUND4args;
 import org.dcache.nfs.v4.xdr.CB_COMPOUND4res;
@@ -144,7 +145,43 @@ public class ClientCB {
     }
 
     public void cbPing() throws OncRpcException, IOException, TimeoutException {
-        _rpc.call(nfs4_prot.CB_NULL_1, XdrVoid.XDR_VOID, XdrVoid.XDR_VOID, 1, TimeUnit.SECONDS);
+        CallbackEvent event = new CallbackEvent();
+        event.begin();
+        boolean ok = false;
+        try {
+            _rpc.call(nfs4_prot.CB_NULL_1, XdrVoid.XDR_VOID, XdrVoid.XDR_VOID, 1, TimeUnit.SECONDS);
+            ok = true;
+        } finally {
+            commit(event, "cb_null", ok ? nfsstat.toString(nfsstat.NFS_OK) : "");
+        }
+    }
+
+    /**
+     * Send callback compound to the client.
+     *
+     * @param tag the compound's tag.
+     * @param args compound arguments.
+     * @param res compound results.
+     */
+    private void callCompound(String tag, XdrAble args, CB_COMPOUND4res res) throws OncRpcException, IOException {
+        CallbackEvent event = new CallbackEvent();
+        event.begin();
+        boolean ok = false;
+        try {
+            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, res);
+            ok = true;
+        } finally {
+            commit(event, tag, ok ? nfsstat.toString(res.status) : "");
+        }
+    }
+
+    private void commit(CallbackEvent event, String callback, String status) {
+        if (event.shouldCommit()) {
+            event.callback = callback;
+            event.client = toString();
+            event.status = status;
+            event.commit();
+        }
     }
 
     private XdrAble generateCompound(ClientSession.SessionSlot sessionSlot, String tag, nfs_cb_argop4...cbOperations) {
@@ -191,8 +228,8 @@ public class ClientCB {
 
         var slot = _clientSession.acquireSlot();
         try {
-            XdrAble args = generateCompound(slot,"cb_layout_recall_fs", opArgs);
-            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, new CB_COMPOUND4res());
+            XdrAble args = generateCompound(slot, "cb_layout_recall_fs", opArgs);
+            callCompound("cb_layout_recall_fs", args, new CB_COMPOUND4res());
         } finally {
             _clientSession.releaseSlot(slot);
         }
@@ -221,8 +258,8 @@ public class ClientCB {
 
         var slot = _clientSession.acquireSlot();
         try {
-            XdrAble args = generateCompound(slot,"cb_recall_delegation", opArgs);
-            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, new CB_COMPOUND4res());
+            XdrAble args = generateCompound(slot, "cb_recall_delegation", opArgs);
+            callCompound("cb_recall_delegation", args, new CB_COMPOUND4res());
         } finally {
             _clientSession.releaseSlot(slot);
         }
@@ -237,17 +274,35 @@ public class ClientCB {
      * @throws IOException if an I/O error occurs
      */
     public void cbLayoutRecallFile(nfs_fh4 fh, stateid4 stateid) throws OncRpcException, IOException {
+        cbLayoutRecallFile(fh, stateid, layouttype4.LAYOUT4_NFSV4_1_FILES.getValue(),
+                layoutiomode4.LAYOUTIOMODE4_ANY, 0L, nfs4_prot.NFS4_UINT64_MAX);
+    }
+
+    /**
+     * Recall pNFS layout of a given type, iomode and byte range from the client.
+     *
+     * @param fh file handle of the file
+     * @param stateid stateid of the layout
+     * @param layoutType type of the layout
+     * @param iomode iomode of the layout
+     * @param offset offset of the recalled range
+     * @param length length of the recalled range
+     * @throws OncRpcException if an RPC error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    public void cbLayoutRecallFile(nfs_fh4 fh, stateid4 stateid, int layoutType, int iomode, long offset, long length)
+            throws OncRpcException, IOException {
 
         CB_LAYOUTRECALL4args cbLayoutrecall = new CB_LAYOUTRECALL4args();
         cbLayoutrecall.clora_changed = true;
-        cbLayoutrecall.clora_type = layouttype4.LAYOUT4_NFSV4_1_FILES.getValue();
-        cbLayoutrecall.clora_iomode = layoutiomode4.LAYOUTIOMODE4_ANY;
+        cbLayoutrecall.clora_type = layoutType;
+        cbLayoutrecall.clora_iomode = iomode;
         cbLayoutrecall.clora_recall = new layoutrecall4();
         cbLayoutrecall.clora_recall.lor_recalltype = layoutrecall_type4.LAYOUTRECALL4_FILE;
         cbLayoutrecall.clora_recall.lor_layout = new layoutrecall_file4();
         cbLayoutrecall.clora_recall.lor_layout.lor_fh = fh;
-        cbLayoutrecall.clora_recall.lor_layout.lor_offset = new offset4(0L);
-        cbLayoutrecall.clora_recall.lor_layout.lor_length = new length4(nfs4_prot.NFS4_UINT64_MAX);
+        cbLayoutrecall.clora_recall.lor_layout.lor_offset = new offset4(offset);
+        cbLayoutrecall.clora_recall.lor_layout.lor_length = new length4(length);
         cbLayoutrecall.clora_recall.lor_layout.lor_stateid = stateid;
 
         nfs_cb_argop4 opArgs = new nfs_cb_argop4();
@@ -256,10 +311,10 @@ public class ClientCB {
 
         var slot = _clientSession.acquireSlot();
         try{
-            XdrAble args = generateCompound(slot,"cb_layout_recall_file", opArgs);
+            XdrAble args = generateCompound(slot, "cb_layout_recall_file", opArgs);
 
             CB_COMPOUND4res res = new CB_COMPOUND4res();
-            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, res);
+            callCompound("cb_layout_recall_file", args, res);
             nfsstat.throwIfNeeded(res.status);
         } finally {
             _clientSession.releaseSlot(slot);
@@ -301,10 +356,10 @@ public class ClientCB {
 
         var slot = _clientSession.acquireSlot();
         try{
-            XdrAble args = generateCompound(slot,"cb_delete_device", opArgs);
+            XdrAble args = generateCompound(slot, "cb_delete_device", opArgs);
 
             CB_COMPOUND4res res = new CB_COMPOUND4res();
-            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, res);
+            callCompound("cb_delete_device", args, res);
             nfsstat.throwIfNeeded(res.status);
         } finally {
             _clientSession.releaseSlot(slot);
@@ -335,10 +390,10 @@ public class ClientCB {
 
         var slot = _clientSession.acquireSlot();
         try{
-            XdrAble args = generateCompound(slot,"cb_offload", opArgs);
+            XdrAble args = generateCompound(slot, "cb_offload", opArgs);
 
             CB_COMPOUND4res res = new CB_COMPOUND4res();
-            _rpc.call(nfs4_prot.CB_COMPOUND_1, args, res);
+            callCompound("cb_offload", args, res);
             nfsstat.throwIfNeeded(res.status);
         } finally {
             _clientSession.releaseSlot(slot);
@@ -80,4 +80,41 @@ public interface ClientRecoveryStore extends Closeable {
      */
     void reclaimComplete();
 
+    /**
+     * Add a record that {@code client} holds a state (open, lock) on file
+     * identified by {@code fileId}. Stores that keep such records are able
+     * to tell which files need reclaim after server reboot and allow new states
+     * on other files during grace period.
+     *
+     * <p>The method is called while holding a per-file lock, which keeps records
+     * of a file in order. Thus, implementations should not block on I/O.
+     *
+     * @param client client's unique identifier.
+     * @param fileId file's unique identifier.
+     */
+    default void addState(byte[] client, byte[] fileId) {
+    }
+
+    /**
+     * Remove a record that {@code client} holds a state on file identified
+     * by {@code fileId}. Like {@link #addState}, this method should not block
+     * on I/O.
+     *
+     * @param client client's unique identifier.
+     * @param fileId file's unique identifier.
+     */
+    default void removeState(byte[] client, byte[] fileId) {
+    }
+
+    /**
+     * Checks this client store for a pending reclaim of states on file identified
+     * by {@code fileId}. Stores which don't keep per-file records must assume that
+     * any file might be reclaimed as long as the store is waiting for reclaim.
+     *
+     * @param fileId file's unique identifier.
+     * @return true if store expects reclaims of states on the given file.
+     */
+    default boolean waitingForReclaim(byte[] fileId) {
+        return waitingForReclaim();
+    }
 }
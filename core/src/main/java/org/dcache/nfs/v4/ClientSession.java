@@ -23,6 +23,10 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.SEQUENCE4args;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
 import org.dcache.nfs.v4.xdr.sequenceid4;
 import org.dcache.nfs.v4.xdr.sessionid4;
 import org.dcache.nfs.v4.xdr.slotid4;
@@ -106,6 +110,14 @@ public class ClientSession {
         }
     }
 
+    /**
+     * Get available session slot without waiting.
+     * @return session slot or {@code null} if all slots are in use.
+     */
+    public SessionSlot pollSlot() {
+        return unusedSessionSlots.poll();
+    }
+
     /**
      * Return session slot into pool of available slots.
      */
@@ -113,6 +125,48 @@ public class ClientSession {
         unusedSessionSlots.offer(slot);
     }
 
+    /**
+     * Create SEQUENCE operation for a request sent with the given slot of this session.
+     * Each call advances the sequence id of the slot.
+     *
+     * @param slot slot acquired from this session.
+     * @return SEQUENCE operation.
+     */
+    public nfs_argop4 sequence(SessionSlot slot) {
+
+        nfs_argop4 op = new nfs_argop4();
+        op.argop = nfs_opnum4.OP_SEQUENCE;
+        op.opsequence = new SEQUENCE4args();
+        op.opsequence.sa_cachethis = false;
+        op.opsequence.sa_slotid = slot.getId();
+        op.opsequence.sa_highest_slotid = new slotid4(maxRequests - 1);
+        op.opsequence.sa_sequenceid = slot.nextSequenceId();
+        op.opsequence.sa_sessionid = id;
+        return op;
+    }
+
+    /**
+     * Create a copy of the compound with a free first operation, which must be set
+     * to {@link #sequence(SessionSlot)} every time the compound is sent.
+     *
+     * @param args compound without SEQUENCE operation.
+     * @return compound with space for SEQUENCE operation.
+     * @throws IllegalArgumentException if compound already starts with SEQUENCE.
+     */
+    public static COMPOUND4args prependSequence(COMPOUND4args args) {
+
+        if (args.argarray.length > 0 && args.argarray[0].argop == nfs_opnum4.OP_SEQUENCE) {
+            throw new IllegalArgumentException("The operation sequence should not be included");
+        }
+
+        COMPOUND4args compound = new COMPOUND4args();
+        compound.tag = args.tag;
+        compound.minorversion = args.minorversion;
+        compound.argarray = new nfs_argop4[args.argarray.length + 1];
+        System.arraycopy(args.argarray, 0, compound.argarray, 1, args.argarray.length);
+        return compound;
+    }
+
     /**
      * Get the session id.
      * @return session id.
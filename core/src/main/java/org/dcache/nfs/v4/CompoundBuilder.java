@@ -67,6 +67,7 @@ import org.dcache.nfs.v4.xdr.COMPOUND4args;
 import org.dcache.nfs.v4.xdr.fattr4_size;
 import org.dcache.nfs.v4.xdr.bitmap4;
 import org.dcache.nfs.v4.xdr.REMOVE4args;
+import org.dcache.nfs.v4.xdr.RENAME4args;
 import org.dcache.nfs.v4.xdr.component4;
 import org.dcache.nfs.v4.xdr.LAYOUTGET4args;
 import org.dcache.nfs.v4.xdr.OPEN4args;
@@ -93,6 +94,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.OptionalLong;
+import org.dcache.nfs.v4.xdr.COMMIT4args;
 import org.dcache.nfs.v4.xdr.GETXATTR4args;
 import org.dcache.nfs.v4.xdr.LAYOUTCOMMIT4args;
 import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
@@ -340,6 +342,23 @@ public class CompoundBuilder {
         return this;
     }
 
+    /**
+     * Rename an entry of the saved filehandle into the current filehandle, as
+     * defined by RENAME operation.
+     */
+    public CompoundBuilder withRename(String oldName, String newName) {
+        RENAME4args args = new RENAME4args();
+
+        args.oldname = new component4(oldName);
+        args.newname = new component4(newName);
+        nfs_argop4 op = new nfs_argop4();
+
+        op.argop = nfs_opnum4.OP_RENAME;
+        op.oprename = args;
+        ops.add(op);
+        return this;
+    }
+
     public CompoundBuilder withWrite(long offset, byte[] data, stateid4 stateid) {
         ByteBuffer buf = ByteBuffer.wrap(data);
         return withWrite(offset, buf, stateid);
@@ -374,6 +393,18 @@ public class CompoundBuilder {
         return this;
     }
 
+    public CompoundBuilder withCommit(long offset, int count) {
+        COMMIT4args args = new COMMIT4args();
+        args.offset = new offset4(offset);
+        args.count = new count4(count);
+
+        nfs_argop4 op = new nfs_argop4();
+        op.argop = nfs_opnum4.OP_COMMIT;
+        op.opcommit = args;
+        ops.add(op);
+        return this;
+    }
+
     public CompoundBuilder withGetdevicelist(layouttype4 layoutType) {
         nfs_argop4 op = new nfs_argop4();
         op.argop = nfs_opnum4.OP_GETDEVICELIST;
@@ -163,6 +163,15 @@ public class CompoundContext {
         return _currentInode;
     }
 
+    /**
+     * Check whether the current file handle is set.
+     *
+     * @return true if current file handle is set.
+     */
+    public boolean hasCurrentInode() {
+        return _currentInode != null;
+    }
+
     /**
      * Set current file handle.
      *
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+
+/**
+ * Capture of a slow compound request.
+ *
+ * @param time the point in time when the request has completed.
+ * @param tag the compound's tag.
+ * @param client client's address.
+ * @param session the session id, or null, if compound has no SEQUENCE.
+ * @param slot the session slot, or -1, if compound has no SEQUENCE.
+ * @param sequence the slot's sequence, or -1, if compound has no SEQUENCE.
+ * @param status the compound's status.
+ * @param duration total compound processing time in nanoseconds.
+ * @param ops executed operations.
+ */
+public record CompoundTrace(Instant time, String tag, String client, String session, int slot, int sequence,
+        int status, long duration, List<OpTrace> ops) {
+
+    /**
+     * A single operation of a captured compound.
+     *
+     * @param opnum the operation number.
+     * @param status the operation status.
+     * @param duration operation processing time in nanoseconds.
+     * @param vfsTime time spent in {@link org.dcache.nfs.vfs.VirtualFileSystem} calls in nanoseconds.
+     */
+    public record OpTrace(int opnum, int status, long duration, long vfsTime) {
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s, %dus, vfs %dus)", nfs_opnum4.toString(opnum), nfsstat.toString(status),
+                    TimeUnit.NANOSECONDS.toMicros(duration), TimeUnit.NANOSECONDS.toMicros(vfsTime));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%s] client: %s, session: %s, slot: %d, seq: %d, status: %s, time: %dms: %s",
+                time, tag, client, session, slot, sequence, nfsstat.toString(status),
+                TimeUnit.NANOSECONDS.toMillis(duration),
+                ops.stream().map(OpTrace::toString).collect(Collectors.joining(", ")));
+    }
+}
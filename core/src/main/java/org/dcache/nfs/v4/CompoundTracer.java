@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.ObjectName;
+import org.dcache.nfs.jfr.TracingFileSystem;
+import org.dcache.nfs.util.MXBeans;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.SEQUENCE4args;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Tracer of slow compound requests.
+ *
+ * <p>The tracer records duration and status of every operation of a compound as well
+ * as the time spent inside {@link VirtualFileSystem} calls made by the operation.
+ * Compounds which take longer than the threshold are captured into a fixed size
+ * ring buffer, which can be inspected over JMX. The per-request bookkeeping uses
+ * a per-thread scratch area and allocates only when a slow compound is captured.
+ * Tracing is enabled with {@link NFSServerV41.Builder#withCompoundTracer}.
+ *
+ * <p>To get the time spent in the file system, the tracer must observe the file
+ * system calls, see {@link TracingFileSystem}.
+ */
+public class CompoundTracer implements CompoundTracerMXBean, TracingFileSystem.CallListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompoundTracer.class);
+
+    public static final Duration DEFAULT_THRESHOLD = Duration.ofSeconds(1);
+    public static final int DEFAULT_CAPACITY = 128;
+
+    /**
+     * Per thread bookkeeping of the compound in progress.
+     */
+    private static class Scratch {
+
+        private boolean active;
+        private long start;
+
+        private boolean opActive;
+        private long opStart;
+        private int nops;
+        private int[] opnums = new int[16];
+        private int[] statuses = new int[16];
+        private long[] durations = new long[16];
+        private long[] vfsTimes = new long[16];
+
+        private void ensureCapacity() {
+            if (nops == opnums.length) {
+                int size = opnums.length * 2;
+                opnums = Arrays.copyOf(opnums, size);
+                statuses = Arrays.copyOf(statuses, size);
+                durations = Arrays.copyOf(durations, size);
+                vfsTimes = Arrays.copyOf(vfsTimes, size);
+            }
+        }
+
+        private void closeOp(int status, long now) {
+            statuses[nops] = status;
+            durations[nops] = now - opStart;
+            nops++;
+            opActive = false;
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final AtomicReferenceArray<CompoundTrace> ring;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    private volatile long threshold;
+
+    private final ObjectName mxBeanName;
+
+    public CompoundTracer(String name) {
+        this(name, DEFAULT_THRESHOLD, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new tracer.
+     *
+     * @param name the name used to register the JMX bean.
+     * @param threshold minimal duration of captured compounds.
+     * @param capacity number of kept captures, rounded up to a power of two.
+     */
+    public CompoundTracer(String name, Duration threshold, int capacity) {
+        checkArgument(capacity > 0, "Capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        this.threshold = threshold.toNanos();
+        mxBeanName = MXBeans.register(this, getClass().getPackage().getName(), "CompoundTracer", name);
+    }
+
+    /**
+     * Start tracing of a new compound in the current thread.
+     */
+    public void begin() {
+        Scratch s = scratch.get();
+        s.active = true;
+        s.opActive = false;
+        s.nops = 0;
+        s.start = System.nanoTime();
+    }
+
+    /**
+     * Start tracing of an operation of the current compound.
+     *
+     * @param opnum operation number.
+     */
+    public void opBegin(int opnum) {
+        Scratch s = scratch.get();
+        if (!s.active) {
+            return;
+        }
+        s.ensureCapacity();
+        s.opnums[s.nops] = opnum;
+        s.vfsTimes[s.nops] = 0;
+        s.opActive = true;
+        s.opStart = System.nanoTime();
+    }
+
+    /**
+     * Complete tracing of the operation in progress.
+     *
+     * @param status the operation status.
+     */
+    public void opEnd(int status) {
+        Scratch s = scratch.get();
+        if (s.opActive) {
+            s.closeOp(status, System.nanoTime());
+        }
+    }
+
+    /**
+     * Complete tracing of the current compound. The compound is captured, if its
+     * processing time exceeds the threshold.
+     *
+     * @param call the RPC call of the compound.
+     * @param args the compound arguments.
+     * @param status the compound status.
+     */
+    public void end(RpcCall call, COMPOUND4args args, int status) {
+        Scratch s = scratch.get();
+        if (!s.active) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        s.active = false;
+        if (s.opActive) {
+            // the operation has thrown an exception
+            s.closeOp(status, now);
+        }
+
+        long duration = now - s.start;
+        if (duration >= threshold) {
+            capture(s, call, args, status, duration);
+        }
+    }
+
+    private void capture(Scratch s, RpcCall call, COMPOUND4args args, int status, long duration) {
+
+        List<CompoundTrace.OpTrace> ops = new ArrayList<>(s.nops);
+        for (int i = 0; i < s.nops; i++) {
+            ops.add(new CompoundTrace.OpTrace(s.opnums[i], s.statuses[i], s.durations[i], s.vfsTimes[i]));
+        }
+
+        String session = null;
+        int slot = -1;
+        int sequence = -1;
+        if (args.argarray != null && args.argarray.length > 0
+                && args.argarray[0].argop == nfs_opnum4.OP_SEQUENCE && args.argarray[0].opsequence != null) {
+            SEQUENCE4args sequenceArgs = args.argarray[0].opsequence;
+            session = sequenceArgs.sa_sessionid.toString();
+            slot = sequenceArgs.sa_slotid.value;
+            sequence = sequenceArgs.sa_sequenceid.value;
+        }
+
+        CompoundTrace trace = new CompoundTrace(Instant.now(), String.valueOf(args.tag),
+                String.valueOf(call.getTransport().getRemoteSocketAddress()),
+                session, slot, sequence, status, duration, ops);
+
+        ring.set((int) (next.getAndIncrement() & mask), trace);
+        LOGGER.debug("Slow compound: {}", trace);
+    }
+
+    @Override
+    public void vfsCall(String method, long duration, boolean failed) {
+        Scratch s = scratch.get();
+        if (s.opActive) {
+            s.vfsTimes[s.nops] += duration;
+        }
+    }
+
+    /**
+     * Get kept captures, oldest first.
+     *
+     * @return list of captured compounds.
+     */
+    public List<CompoundTrace> traces() {
+        long last = next.get();
+        long first = Math.max(0, last - ring.length());
+        List<CompoundTrace> traces = new ArrayList<>((int) (last - first));
+        for (long i = first; i < last; i++) {
+            CompoundTrace trace = ring.get((int) (i & mask));
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    @Override
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    @Override
+    public void setThreshold(long millis) {
+        threshold = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    @Override
+    public long getCaptured() {
+        return next.get();
+    }
+
+    @Override
+    public String[] dump() {
+        return traces().stream()
+                .map(CompoundTrace::toString)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+    }
+
+    /**
+     * Unregister JMX bean of this tracer.
+     */
+    public void close() {
+        MXBeans.unregister(mxBeanName);
+    }
+}
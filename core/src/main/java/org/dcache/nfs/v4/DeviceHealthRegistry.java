@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.LeaseClock;
+import org.dcache.nfs.v4.ff.ff_ioerr4;
+import org.dcache.nfs.v4.ff.ff_layoutreturn4;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.device_error4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Registry of data server health, fed by errors reported by clients with
+ * LAYOUTERROR or on flex files LAYOUTRETURN.
+ *
+ * <p>A device with a reported I/O error is marked as degraded for a backoff period,
+ * which doubles on each subsequent error up to the maximal backoff. When the backoff
+ * expires, the device becomes available again. Errors reported more than the maximal
+ * backoff after the previous one start a new backoff sequence. Only errors, which
+ * indicate a data server failure, like NFS4ERR_IO or NFS4ERR_NXIO, which clients
+ * report when a data server is not reachable, degrade a device. Errors specific to
+ * a file or a client, like NFS4ERR_ACCESS, NFS4ERR_DQUOT or NFS4ERR_DELAY, don't.
+ *
+ * <p>Device managers should {@link #filter} the devices used for new layouts.
+ * Registered listeners are notified asynchronously when a device becomes degraded,
+ * e.g. to recall layouts referencing it.
+ */
+public class DeviceHealthRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceHealthRegistry.class);
+
+    /**
+     * Errors, which indicate a data server failure.
+     */
+    private static final Set<Integer> DEVICE_ERRORS = Set.of(
+            nfsstat.NFSERR_IO,
+            nfsstat.NFSERR_NXIO,
+            nfsstat.NFSERR_NOSPC,
+            nfsstat.NFSERR_SERVERFAULT
+    );
+
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final LeaseClock clock;
+    private final Executor notifier;
+
+    private final Map<deviceid4, DeviceHealth> devices = new ConcurrentHashMap<>();
+    private final List<Consumer<deviceid4>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Health state of a single device.
+     */
+    private static class DeviceHealth {
+
+        private int failures;
+        private long lastError;
+        private long degradedUntil;
+    }
+
+    /**
+     * Create new registry with default backoff of ten seconds up to ten minutes.
+     *
+     * @param notifier executor used to notify listeners.
+     */
+    public DeviceHealthRegistry(Executor notifier) {
+        this(Duration.ofSeconds(10), Duration.ofMinutes(10), LeaseClock.coarse(), notifier);
+    }
+
+    /**
+     * Create new registry, which notifies listeners in the reporting thread.
+     *
+     * @param initialBackoff time a device is degraded after the first error.
+     * @param maxBackoff maximal time a device is degraded.
+     * @param clock time source.
+     */
+    public DeviceHealthRegistry(Duration initialBackoff, Duration maxBackoff, LeaseClock clock) {
+        this(initialBackoff, maxBackoff, clock, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Create new registry.
+     *
+     * @param initialBackoff time a device is degraded after the first error.
+     * @param maxBackoff maximal time a device is degraded.
+     * @param clock time source.
+     * @param notifier executor used to notify listeners.
+     */
+    public DeviceHealthRegistry(Duration initialBackoff, Duration maxBackoff, LeaseClock clock, Executor notifier) {
+        checkArgument(!initialBackoff.isNegative() && !initialBackoff.isZero(), "backoff must be positive");
+        checkArgument(maxBackoff.compareTo(initialBackoff) >= 0, "max backoff must not be smaller than initial backoff");
+        this.initialBackoff = initialBackoff.toNanos();
+        this.maxBackoff = maxBackoff.toNanos();
+        this.clock = clock;
+        this.notifier = notifier;
+    }
+
+    /**
+     * Register a listener, which is notified when a device becomes degraded.
+     * Listeners are called by the notifier executor, not by the thread, which
+     * reports the error.
+     *
+     * @param listener the listener.
+     */
+    public void addDegradationListener(Consumer<deviceid4> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Account errors provided by LAYOUTERROR.
+     *
+     * @param args layout error operation arguments.
+     */
+    public void layoutError(LAYOUTERROR4args args) {
+        reportErrors(args.lea_errors);
+    }
+
+    /**
+     * Account errors provided with flex files LAYOUTRETURN.
+     *
+     * @param layoutReturn flex files specific layout return data.
+     */
+    public void layoutReturn(ff_layoutreturn4 layoutReturn) {
+        if (layoutReturn.fflr_ioerr_report != null) {
+            for (ff_ioerr4 ioerr : layoutReturn.fflr_ioerr_report) {
+                reportErrors(ioerr.ffie_errors);
+            }
+        }
+    }
+
+    /**
+     * Report an error on a device.
+     *
+     * @param deviceid the device.
+     * @param status nfs status of the failed operation.
+     */
+    public void reportError(deviceid4 deviceid, int status) {
+
+        if (!DEVICE_ERRORS.contains(status)) {
+            return;
+        }
+
+        long now = clock.nanoTime();
+        boolean degraded;
+        DeviceHealth health = devices.computeIfAbsent(deviceid, d -> new DeviceHealth());
+        synchronized (health) {
+            degraded = now >= health.degradedUntil;
+            if (health.failures > 0 && now - health.lastError > maxBackoff) {
+                health.failures = 0;
+            }
+            health.failures++;
+            health.lastError = now;
+            health.degradedUntil = now + backoff(health.failures);
+        }
+
+        if (degraded) {
+            LOGGER.warn("Device {} degraded: {}", deviceid, nfsstat.toString(status));
+            try {
+                notifier.execute(() -> listeners.forEach(l -> l.accept(deviceid)));
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Degradation of device {} not propagated: shutting down", deviceid);
+            }
+        }
+    }
+
+    /**
+     * Check whatever a device can be used for new layouts.
+     *
+     * @param deviceid the device.
+     * @return true if the device is not degraded.
+     */
+    public boolean isAvailable(deviceid4 deviceid) {
+        DeviceHealth health = devices.get(deviceid);
+        if (health == null) {
+            return true;
+        }
+        synchronized (health) {
+            return clock.nanoTime() >= health.degradedUntil;
+        }
+    }
+
+    /**
+     * Get devices, which can be used for new layouts. If all provided devices
+     * are degraded, then all of them are returned, as a degraded data server is
+     * preferable to no layout at all.
+     *
+     * @param deviceids candidate devices.
+     * @return available devices.
+     */
+    public deviceid4[] filter(deviceid4... deviceids) {
+        List<deviceid4> available = new ArrayList<>(deviceids.length);
+        for (deviceid4 deviceid : deviceids) {
+            if (isAvailable(deviceid)) {
+                available.add(deviceid);
+            }
+        }
+        return available.isEmpty() ? deviceids : available.toArray(deviceid4[]::new);
+    }
+
+    private void reportErrors(device_error4[] errors) {
+        if (errors == null) {
+            return;
+        }
+        for (device_error4 error : errors) {
+            reportError(error.de_deviceid, error.de_status);
+        }
+    }
+
+    private long backoff(int failures) {
+        long backoff = initialBackoff;
+        for (int i = 1; i < failures && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoff);
+    }
+}
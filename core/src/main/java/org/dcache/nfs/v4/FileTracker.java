@@ -20,10 +20,8 @@
 package org.dcache.nfs.v4;
 
 import com.google.common.util.concurrent.Striped;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
@@ -36,6 +34,11 @@ import org.dcache.nfs.v4.xdr.stateid4;
 import org.dcache.nfs.vfs.Inode;
 import org.dcache.nfs.util.Opaque;
 
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_ACCESS_READ;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_ACCESS_WRITE;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_DENY_READ;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_DENY_WRITE;
+
 /**
  * A class which tracks open files.
  */
@@ -52,7 +55,26 @@ public class FileTracker {
      * FIXME: get number of threads from RPC service.
      */
     private final Striped<Lock> filesLock = Striped.lock(Runtime.getRuntime().availableProcessors()*4);
-    private final Map<Opaque, List<OpenState>> files = new ConcurrentHashMap<>();
+    private final Map<Opaque, OpenFile> files = new ConcurrentHashMap<>();
+
+    /**
+     * Store to record files with states, to allow targeted reclaim after reboot.
+     */
+    private final ClientRecoveryStore clientStore;
+
+    public FileTracker() {
+        this(new EphemeralClientRecoveryStore());
+    }
+
+    /**
+     * Create a file tracker, which records in provided {@code clientStore}
+     * which clients hold opens on which files.
+     *
+     * @param clientStore store to record client's open files.
+     */
+    public FileTracker(ClientRecoveryStore clientStore) {
+        this.clientStore = clientStore;
+    }
 
     private static class OpenState {
 
@@ -89,6 +111,138 @@ public class FileTracker {
         public NFS4Client getClient() {
             return client;
         }
+
+        /**
+         * Check whatever this open conflicts with requested share reservation.
+         */
+        boolean conflictsWith(int access, int deny) {
+            return (access & shareDeny) != 0 || (deny & shareAccess) != 0;
+        }
+    }
+
+    /**
+     * The key to identify an open by client and open-owner.
+     */
+    private record OwnerKey(NFS4Client client, StateOwner owner) {
+    }
+
+    /**
+     * All opens of a single file. The opens are indexed by stateid and by
+     * client/owner pair. Additionally, number of opens holding each share_access
+     * and share_deny bit is maintained to detect share reservation conflicts
+     * without iterating over all opens.
+     *
+     * Must be accessed only while holding the file's stripe lock.
+     */
+    private static class OpenFile {
+
+        /*
+         * initialize maps with a small capacity, as majority of files are opened
+         * by a single client.
+         */
+        private final Map<stateid4, OpenState> byStateid = new HashMap<>(2);
+        private final Map<OwnerKey, OpenState> byOwner = new HashMap<>(2);
+        private final Map<NFS4Client, Integer> byClient = new HashMap<>(2);
+
+        private int readAccess;
+        private int writeAccess;
+        private int readDeny;
+        private int writeDeny;
+
+        OpenState get(stateid4 stateid) {
+            return byStateid.get(stateid);
+        }
+
+        OpenState get(NFS4Client client, StateOwner owner) {
+            return byOwner.get(new OwnerKey(client, owner));
+        }
+
+        /**
+         * Add a new open.
+         *
+         * @return true if this is the first open of the client on this file.
+         */
+        boolean add(OpenState os) {
+            byStateid.put(os.getStateid(), os);
+            byOwner.put(new OwnerKey(os.getClient(), os.getOwner()), os);
+            account(os.getShareAccess(), os.getShareDeny(), 1);
+            return byClient.merge(os.getClient(), 1, Integer::sum) == 1;
+        }
+
+        /**
+         * Remove an open.
+         *
+         * @return removed open or null, if there are no open with given stateid.
+         */
+        OpenState remove(stateid4 stateid) {
+            OpenState os = byStateid.remove(stateid);
+            if (os != null) {
+                byOwner.remove(new OwnerKey(os.getClient(), os.getOwner()));
+                account(os.getShareAccess(), os.getShareDeny(), -1);
+                byClient.computeIfPresent(os.getClient(), (c, n) -> n == 1 ? null : n - 1);
+            }
+            return os;
+        }
+
+        boolean hasOpens(NFS4Client client) {
+            return byClient.containsKey(client);
+        }
+
+        /**
+         * Replace share reservation of an existing open.
+         */
+        void update(OpenState os, int shareAccess, int shareDeny) {
+            account(os.getShareAccess(), os.getShareDeny(), -1);
+            os.shareAccess = shareAccess;
+            os.shareDeny = shareDeny;
+            account(shareAccess, shareDeny, 1);
+        }
+
+        private void account(int shareAccess, int shareDeny, int delta) {
+            if ((shareAccess & OPEN4_SHARE_ACCESS_READ) != 0) {
+                readAccess += delta;
+            }
+            if ((shareAccess & OPEN4_SHARE_ACCESS_WRITE) != 0) {
+                writeAccess += delta;
+            }
+            if ((shareDeny & OPEN4_SHARE_DENY_READ) != 0) {
+                readDeny += delta;
+            }
+            if ((shareDeny & OPEN4_SHARE_DENY_WRITE) != 0) {
+                writeDeny += delta;
+            }
+        }
+
+        /**
+         * Check requested share reservation against aggregated share modes of
+         * all opens, including opens of expired clients.
+         *
+         * @return true if requested share reservation may conflict with an existing open.
+         */
+        boolean mayConflict(int shareAccess, int shareDeny) {
+            int deniedMask = (readDeny > 0 ? OPEN4_SHARE_DENY_READ : 0) | (writeDeny > 0 ? OPEN4_SHARE_DENY_WRITE : 0);
+            int accessMask = (readAccess > 0 ? OPEN4_SHARE_ACCESS_READ : 0) | (writeAccess > 0 ? OPEN4_SHARE_ACCESS_WRITE : 0);
+            return (shareAccess & deniedMask) != 0 || (shareDeny & accessMask) != 0;
+        }
+
+        /**
+         * Check requested share reservation against opens of not expired clients.
+         * This is a slow path, which is used only if {@link #mayConflict} signals
+         * a possible conflict.
+         */
+        boolean hasConflict(int shareAccess, int shareDeny) {
+            return byStateid.values().stream()
+                    .filter(o -> o.getClient().isLeaseValid())
+                    .anyMatch(o -> o.conflictsWith(shareAccess, shareDeny));
+        }
+
+        boolean isEmpty() {
+            return byStateid.isEmpty();
+        }
+
+        Collection<OpenState> opens() {
+            return byStateid.values();
+        }
     }
 
     /**
@@ -112,37 +266,35 @@ public class FileTracker {
         try {
             /*
              * check for existing opens on that file
-             * initialize new array with size of one, as this is what the majority of cases will be
              */
-            final List<OpenState> opens = files.computeIfAbsent(fileId, x -> new ArrayList<>(1));
+            final OpenFile openFile = files.computeIfAbsent(fileId, x -> new OpenFile());
 
             stateid4 stateid;
             // check for a conflicting open from not expired client (we need to check
             // client as session GC may not been active yet
-            if (opens.stream()
-                    .filter(o -> o.client.isLeaseValid())
-                    .anyMatch(o -> (shareAccess & o.getShareDeny()) != 0|| (shareDeny & o.getShareAccess()) != 0)) {
-                    throw new ShareDeniedException("Conflicting share");
+            // a conflict requires an existing open, thus a new, empty entry never conflicts
+            if (openFile.mayConflict(shareAccess, shareDeny) && openFile.hasConflict(shareAccess, shareDeny)) {
+                throw new ShareDeniedException("Conflicting share");
             }
 
             // if there is another open from the same client we must merge
             // access mode and return the same stateid as required by rfc5661#18.16.3
 
-            for (OpenState os : opens) {
-                if (os.client.getId() == client.getId() &&
-                        os.getOwner().equals(owner)) {
-                        os.shareAccess |= shareAccess;
-                        os.shareDeny |= shareDeny;
-                        os.stateid.seqid++;
-                        //we need to return copy to avoid modification by concurrent opens
-                        return new stateid4(os.stateid.other, os.stateid.seqid);
-                }
+            OpenState os = openFile.get(client, owner);
+            if (os != null) {
+                openFile.update(os, os.getShareAccess() | shareAccess, os.getShareDeny() | shareDeny);
+                os.stateid.seqid++;
+                //we need to return copy to avoid modification by concurrent opens
+                return new stateid4(os.stateid.other, os.stateid.seqid);
             }
 
             NFS4State state = client.createState(owner);
             stateid = state.stateid();
             OpenState openState = new OpenState(client, owner, stateid, shareAccess, shareDeny);
-            opens.add(openState);
+            // recorded under the file lock to keep records of the file in order, the store doesn't block
+            if (openFile.add(openState)) {
+                clientStore.addState(client.getOwnerId(), inode.getFileId());
+            }
             state.addDisposeListener(s -> removeOpen(inode, stateid));
             stateid.seqid++;
             //we need to return copy to avoid modification by concurrent opens
@@ -169,13 +321,7 @@ public class FileTracker {
         Lock lock = filesLock.get(fileId);
         lock.lock();
         try {
-            final List<OpenState> opens = files.get(fileId);
-
-            OpenState os = opens.stream()
-                    .filter(s -> client.getId() == s.client.getId())
-                    .filter(s -> s.stateid.equals(stateid))
-                    .findFirst()
-                    .orElseThrow(BadStateidException::new);
+            OpenState os = getOpenState(client, fileId, stateid);
 
             if ((os.shareAccess & shareAccess) != shareAccess) {
                 throw new InvalException("downgrading to not owned share_access mode");
@@ -185,8 +331,7 @@ public class FileTracker {
                 throw new InvalException("downgrading to not owned share_deny mode");
             }
 
-            os.shareAccess = shareAccess;
-            os.shareDeny = shareDeny;
+            files.get(fileId).update(os, shareAccess, shareDeny);
 
             os.stateid.seqid++;
             //we need to return copy to avoid modification by concurrent opens
@@ -207,22 +352,18 @@ public class FileTracker {
         Lock lock = filesLock.get(fileId);
         lock.lock();
         try {
-            final List<OpenState> opens = files.get(fileId);
-
-            if (opens != null) {
-                Iterator<OpenState> osi = opens.iterator();
-                while(osi.hasNext()) {
-                    OpenState os = osi.next();
-                    if (os.stateid.equals(stateid)) {
-                        osi.remove();
-                        break;
-                    }
+            final OpenFile openFile = files.get(fileId);
+
+            if (openFile != null) {
+                OpenState os = openFile.remove(stateid);
+                if (os != null && !openFile.hasOpens(os.getClient())) {
+                    clientStore.removeState(os.getClient().getOwnerId(), inode.getFileId());
                 }
 
                 /**
                  * As we hold the lock, nobody else have added something into it.
                  */
-                if (opens.isEmpty()) {
+                if (openFile.isEmpty()) {
                     files.remove(fileId);
                 }
             }
@@ -245,23 +386,32 @@ public class FileTracker {
         Lock lock = filesLock.get(fileId);
         lock.lock();
         try {
-            final List<OpenState> opens = files.get(fileId);
-
-            if (opens == null) {
-                throw new BadStateidException("no matching open");
-            }
-
-            return opens.stream()
-                    .filter(s -> client.getId() == s.client.getId())
-                    .filter(s -> s.stateid.equals(stateid))
-                    .map(OpenState::getShareAccess)
-                    .findFirst()
-                    .orElseThrow(BadStateidException::new);
+            return getOpenState(client, fileId, stateid).getShareAccess();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Get open state of the given client associated with provided stateid.
+     * The caller must hold the file's stripe lock.
+     *
+     * @throws BadStateidException if no open file associated with provided state id.
+     */
+    private OpenState getOpenState(NFS4Client client, Opaque fileId, stateid4 stateid) throws BadStateidException {
+
+        final OpenFile openFile = files.get(fileId);
+        if (openFile == null) {
+            throw new BadStateidException("no matching open");
+        }
+
+        OpenState os = openFile.get(stateid);
+        if (os == null || client.getId() != os.getClient().getId()) {
+            throw new BadStateidException();
+        }
+        return os;
+    }
+
     /**
      * Get all currently open files with associated clients. The resulting map contains file's inodes
      * as key and collection of nfs clients that have this file opened as a value.
@@ -272,7 +422,7 @@ public class FileTracker {
         return files.entrySet().stream()
               .collect(Collectors.toMap(
                     e -> Inode.forFile(e.getKey().getOpaque()),
-                    e -> e.getValue().stream().map(OpenState::getClient).collect(Collectors.toSet()))
+                    e -> e.getValue().opens().stream().map(OpenState::getClient).collect(Collectors.toSet()))
               );
     }
 }
@@ -91,6 +91,11 @@ public class FlexFileLayoutDriver implements LayoutDriver {
      */
     private final uint32_t ioBufferSize;
 
+    /**
+     * Selector used to order mirrors by data server load, or {@code null}.
+     */
+    private final LoadAwareDeviceSelector deviceSelector;
+
     /**
      * Create new FlexFile layout driver with. The @code nfsVersion} and
      * {@code nfsMinorVersion} represent the protocol to be used to access the
@@ -108,6 +113,29 @@ public class FlexFileLayoutDriver implements LayoutDriver {
     public FlexFileLayoutDriver(int nfsVersion, int nfsMinorVersion, int flags, int ioBufferSize,
             utf8str_mixed userPrincipal, utf8str_mixed groupPrincipal,
             BiConsumer<CompoundContext, ff_layoutreturn4> layoutReturnConsumer) {
+        this(nfsVersion, nfsMinorVersion, flags, ioBufferSize, userPrincipal, groupPrincipal,
+                layoutReturnConsumer, null);
+    }
+
+    /**
+     * Create new FlexFile layout driver, which orders mirrors by data server load.
+     * The least loaded data server is offered as the first mirror with the highest
+     * efficiency. The I/O statistics and errors provided on layout return are passed
+     * to the {@code deviceSelector} before {@code layoutReturnConsumer} is called.
+     *
+     * @param nfsVersion nfs version to use
+     * @param nfsMinorVersion nfs minor version to use.
+     * @param flags layout flags.
+     * @param ioBufferSize the data transfer buffer size used for READ or WRITE.
+     * @param userPrincipal user principal to be used by client
+     * @param groupPrincipal group principal to be used by client
+     * @param layoutReturnConsumer consumer which accepts data provided on layout return.
+     * @param deviceSelector selector used to order mirrors, or {@code null}.
+     */
+    public FlexFileLayoutDriver(int nfsVersion, int nfsMinorVersion, int flags, int ioBufferSize,
+            utf8str_mixed userPrincipal, utf8str_mixed groupPrincipal,
+            BiConsumer<CompoundContext, ff_layoutreturn4> layoutReturnConsumer,
+            LoadAwareDeviceSelector deviceSelector) {
 
         checkArgument((flags & ~flex_files_prot.FF_FLAGS_MASK) == 0, "Invalid flex files layout flag");
         this.nfsVersion = nfsVersion;
@@ -117,6 +145,7 @@ public class FlexFileLayoutDriver implements LayoutDriver {
         this.layoutReturnConsumer = layoutReturnConsumer;
         this.ioBufferSize = new uint32_t(ioBufferSize);
         this.layoutFlags = new uint32_t(flags);
+        this.deviceSelector = deviceSelector;
     }
 
 
@@ -168,7 +197,9 @@ public class FlexFileLayoutDriver implements LayoutDriver {
         ff_layout4 layout = new ff_layout4();
 
         layout.ffl_stripe_unit = new length4(0);
-        layout.ffl_mirrors = createMirrors(deviceids, 0, stateid, fh);
+        layout.ffl_mirrors = deviceSelector == null
+                ? createMirrors(deviceids, stateid, fh)
+                : createOrderedMirrors(deviceSelector.order(deviceids), stateid, fh);
         layout.ffl_flags4 = layoutFlags;
         layout.ffl_stats_collect_hint = new uint32_t(0);
 
@@ -199,16 +230,33 @@ public class FlexFileLayoutDriver implements LayoutDriver {
         return ds;
     }
 
-    private ff_mirror4[] createMirrors(deviceid4[] deviceids, int efficiency, stateid4 stateid, nfs_fh4 fileHandle) {
+    private ff_mirror4[] createMirrors(deviceid4[] deviceids, stateid4 stateid, nfs_fh4 fileHandle) {
+        ff_mirror4[] mirrors = new ff_mirror4[deviceids.length];
+        for (int i = 0; i < deviceids.length; i++) {
+            mirrors[i] = createMirror(deviceids[i], 0, stateid, fileHandle);
+        }
+        return mirrors;
+    }
+
+    /**
+     * Create mirrors for devices ordered best first. The efficiency of the first
+     * mirror is the highest, the last mirror has efficiency one.
+     */
+    private ff_mirror4[] createOrderedMirrors(deviceid4[] deviceids, stateid4 stateid, nfs_fh4 fileHandle) {
         ff_mirror4[] mirrors = new ff_mirror4[deviceids.length];
         for (int i = 0; i < deviceids.length; i++) {
-            mirrors[i] = new ff_mirror4();
-            mirrors[i].ffm_data_servers = new ff_data_server4[1];
-            mirrors[i].ffm_data_servers[0] = createDataserver(deviceids[i], efficiency, stateid, fileHandle);
+            mirrors[i] = createMirror(deviceids[i], deviceids.length - i, stateid, fileHandle);
         }
         return mirrors;
     }
 
+    private ff_mirror4 createMirror(deviceid4 deviceid, int efficiency, stateid4 stateid, nfs_fh4 fileHandle) {
+        ff_mirror4 mirror = new ff_mirror4();
+        mirror.ffm_data_servers = new ff_data_server4[1];
+        mirror.ffm_data_servers[0] = createDataserver(deviceid, efficiency, stateid, fileHandle);
+        return mirror;
+    }
+
     /**
      * Consumes flexfiles specific data provided on layout return. The
      * must be xdr encoded ff_layoutreturn4 object.
@@ -228,6 +276,10 @@ public class FlexFileLayoutDriver implements LayoutDriver {
                 xdr.endDecoding();
             }
 
+            context.getStateHandler().getDeviceHealth().layoutReturn(lr);
+            if (deviceSelector != null) {
+                deviceSelector.layoutReturn(lr);
+            }
             layoutReturnConsumer.accept(context, lr);
         } catch (IOException e) {
             throw new BadXdrException("invalid data", e);
@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.LatencyHistogram;
+import org.dcache.nfs.util.MXBeans;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.dcache.oncrpc4j.rpc.OncRpcException;
+
+/**
+ * An {@link OperationExecutor} which collects execution statistics of the
+ * operations executed by the wrapped executor.
+ *
+ * <p>For every operation the number of requests, the number of failed requests
+ * and the latency distribution are recorded. Additionally, failures are counted
+ * per {@link nfsstat} error. Recording takes no locks and doesn't allocate. The
+ * statistics are published as JMX bean and are available for other exporters
+ * by {@link #snapshot()} and {@link #errorSnapshot()}.
+ *
+ * <p>The statistics are enabled by wrapping the executor passed to
+ * {@link NFSServerV41.Builder#withOperationExecutor}. The JMX bean is unregistered
+ * by {@link #close()}.
+ *
+ * <pre>
+ *     NFSServerV41 server = new NFSServerV41.Builder()
+ *             .withOperationExecutor(new InstrumentedOperationExecutor("mds", new MDSOperationExecutor()))
+ *             ...
+ *             .build();
+ * </pre>
+ */
+public class InstrumentedOperationExecutor implements OperationExecutor, OperationFactoryMXBean, Closeable {
+
+    /**
+     * Slot used for all operations with unknown opnum, including OP_ILLEGAL.
+     */
+    private static final int ILLEGAL_SLOT = nfs_opnum4.OP_REMOVEXATTR + 1;
+    private static final int SLOTS = ILLEGAL_SLOT + 1;
+
+    /**
+     * Error slots: NFSv3 errors (below {@code NFS4ERR_BASE}), followed by NFSv4 errors
+     * and an overflow slot for all other values.
+     */
+    private static final int NFS4ERR_BASE = 10000;
+    private static final int V4_ERROR_SLOTS = 200;
+    private static final int OTHER_ERROR_SLOT = 100 + V4_ERROR_SLOTS;
+    private static final int ERROR_SLOTS = OTHER_ERROR_SLOT + 1;
+
+    /**
+     * The status under which all errors outside of known ranges are reported.
+     */
+    public static final int OTHER_ERROR = -1;
+
+    private final OperationExecutor inner;
+
+    private final LongAdder[] requests = new LongAdder[SLOTS];
+    private final LongAdder[] failures = new LongAdder[SLOTS];
+
+    /**
+     * Latency histograms, created on first use of the corresponding operation.
+     */
+    private final AtomicReferenceArray<LatencyHistogram> latencies = new AtomicReferenceArray<>(SLOTS);
+
+    private final LongAdder[] errors = new LongAdder[ERROR_SLOTS];
+
+    private final ObjectName mxBeanName;
+
+    /**
+     * Create a new instrumented executor.
+     *
+     * @param name the name used to register the JMX bean.
+     * @param inner executor which executes the operations.
+     */
+    public InstrumentedOperationExecutor(String name, OperationExecutor inner) {
+        this.inner = inner;
+        for (int i = 0; i < SLOTS; i++) {
+            requests[i] = new LongAdder();
+            failures[i] = new LongAdder();
+        }
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            errors[i] = new LongAdder();
+        }
+        mxBeanName = MXBeans.register(this, getClass().getPackage().getName(), "OperationExecutor", name);
+    }
+
+    @Override
+    public nfs_resop4 execute(CompoundContext context, nfs_argop4 args) throws IOException, OncRpcException {
+
+        int slot = slotOf(args.argop);
+        long start = System.nanoTime();
+        int status = nfsstat.NFSERR_SERVERFAULT;
+        try {
+            nfs_resop4 opResult = inner.execute(context, args);
+            status = opResult.getStatus();
+            return opResult;
+        } catch (ChimeraNFSException e) {
+            status = e.getStatus();
+            throw e;
+        } finally {
+            record(slot, status, System.nanoTime() - start);
+        }
+    }
+
+    private void record(int slot, int status, long latency) {
+        requests[slot].increment();
+        histogramOf(slot).record(latency);
+        if (status != nfsstat.NFS_OK) {
+            failures[slot].increment();
+            errors[errorSlotOf(status)].increment();
+        }
+    }
+
+    private LatencyHistogram histogramOf(int slot) {
+        LatencyHistogram histogram = latencies.get(slot);
+        if (histogram == null) {
+            latencies.compareAndSet(slot, null, new LatencyHistogram());
+            histogram = latencies.get(slot);
+        }
+        return histogram;
+    }
+
+    private static int slotOf(int opnum) {
+        // opnums 0, 1 and 2 are not used by the protocol
+        return opnum >= nfs_opnum4.OP_ACCESS && opnum < ILLEGAL_SLOT ? opnum : ILLEGAL_SLOT;
+    }
+
+    private static int opnumOf(int slot) {
+        return slot == ILLEGAL_SLOT ? nfs_opnum4.OP_ILLEGAL : slot;
+    }
+
+    private static int errorSlotOf(int status) {
+        if (status > 0 && status < 100) {
+            return status;
+        }
+        if (status > NFS4ERR_BASE && status < NFS4ERR_BASE + V4_ERROR_SLOTS) {
+            return 100 + status - NFS4ERR_BASE;
+        }
+        return OTHER_ERROR_SLOT;
+    }
+
+    private static int statusOf(int errorSlot) {
+        if (errorSlot < 100) {
+            return errorSlot;
+        }
+        return errorSlot == OTHER_ERROR_SLOT ? OTHER_ERROR : errorSlot - 100 + NFS4ERR_BASE;
+    }
+
+    private long count(int opnum) {
+        return requests[slotOf(opnum)].sum();
+    }
+
+    /**
+     * Get statistics of all operations executed so far.
+     *
+     * @return list of operation statistics ordered by opnum.
+     */
+    public List<OperationStatistics> snapshot() {
+        List<OperationStatistics> stats = new ArrayList<>();
+        for (int i = 0; i < SLOTS; i++) {
+            LatencyHistogram histogram = latencies.get(i);
+            if (histogram != null) {
+                stats.add(new OperationStatistics(opnumOf(i), requests[i].sum(), failures[i].sum(),
+                        histogram.snapshot()));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Get number of failed operations per error.
+     *
+     * @return map of {@link nfsstat} error to number of operations failed with it.
+     *         Unexpected status values are counted as {@link #OTHER_ERROR}.
+     */
+    public Map<Integer, Long> errorSnapshot() {
+        Map<Integer, Long> snapshot = new TreeMap<>();
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            long count = errors[i].sum();
+            if (count > 0) {
+                snapshot.put(statusOf(i), count);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> byName = new TreeMap<>();
+        errorSnapshot().forEach((status, count) -> byName.put(nfsstat.toString(status), count));
+        return byName;
+    }
+
+    @Override
+    public String[] getLatencies() {
+        return snapshot().stream()
+                .map(s -> String.format("%s: count=%d, errors=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d",
+                        s.name(), s.count(), s.errors(),
+                        s.latency().getMean() / 1000,
+                        TimeUnit.NANOSECONDS.toMicros(s.latency().getValueAtPercentile(50)),
+                        TimeUnit.NANOSECONDS.toMicros(s.latency().getValueAtPercentile(90)),
+                        TimeUnit.NANOSECONDS.toMicros(s.latency().getValueAtPercentile(99)),
+                        TimeUnit.NANOSECONDS.toMicros(s.latency().getMax())))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < SLOTS; i++) {
+            requests[i].reset();
+            failures[i].reset();
+            LatencyHistogram histogram = latencies.get(i);
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+        for (int i = 0; i < ERROR_SLOTS; i++) {
+            errors[i].reset();
+        }
+    }
+
+    @Override
+    public long getAccess() {
+        return count(nfs_opnum4.OP_ACCESS);
+    }
+
+    @Override
+    public long getClose() {
+        return count(nfs_opnum4.OP_CLOSE);
+    }
+
+    @Override
+    public long getCommit() {
+        return count(nfs_opnum4.OP_COMMIT);
+    }
+
+    @Override
+    public long getCreate() {
+        return count(nfs_opnum4.OP_CREATE);
+    }
+
+    @Override
+    public long getDelegpurge() {
+        return count(nfs_opnum4.OP_DELEGPURGE);
+    }
+
+    @Override
+    public long getDelegreturn() {
+        return count(nfs_opnum4.OP_DELEGRETURN);
+    }
+
+    @Override
+    public long getGetattr() {
+        return count(nfs_opnum4.OP_GETATTR);
+    }
+
+    @Override
+    public long getGetfh() {
+        return count(nfs_opnum4.OP_GETFH);
+    }
+
+    @Override
+    public long getLink() {
+        return count(nfs_opnum4.OP_LINK);
+    }
+
+    @Override
+    public long getLock() {
+        return count(nfs_opnum4.OP_LOCK);
+    }
+
+    @Override
+    public long getLockt() {
+        return count(nfs_opnum4.OP_LOCKT);
+    }
+
+    @Override
+    public long getLocku() {
+        return count(nfs_opnum4.OP_LOCKU);
+    }
+
+    @Override
+    public long getLookup() {
+        return count(nfs_opnum4.OP_LOOKUP);
+    }
+
+    @Override
+    public long getLookupp() {
+        return count(nfs_opnum4.OP_LOOKUPP);
+    }
+
+    @Override
+    public long getNverify() {
+        return count(nfs_opnum4.OP_NVERIFY);
+    }
+
+    @Override
+    public long getOpen() {
+        return count(nfs_opnum4.OP_OPEN);
+    }
+
+    @Override
+    public long getOpenattr() {
+        return count(nfs_opnum4.OP_OPENATTR);
+    }
+
+    @Override
+    public long getOpenConfirm() {
+        return count(nfs_opnum4.OP_OPEN_CONFIRM);
+    }
+
+    @Override
+    public long getOpenDowngrade() {
+        return count(nfs_opnum4.OP_OPEN_DOWNGRADE);
+    }
+
+    @Override
+    public long getPutfh() {
+        return count(nfs_opnum4.OP_PUTFH);
+    }
+
+    @Override
+    public long getPutpubfh() {
+        return count(nfs_opnum4.OP_PUTPUBFH);
+    }
+
+    @Override
+    public long getPutrootfh() {
+        return count(nfs_opnum4.OP_PUTROOTFH);
+    }
+
+    @Override
+    public long getRead() {
+        return count(nfs_opnum4.OP_READ);
+    }
+
+    @Override
+    public long getReaddir() {
+        return count(nfs_opnum4.OP_READDIR);
+    }
+
+    @Override
+    public long getReadlink() {
+        return count(nfs_opnum4.OP_READLINK);
+    }
+
+    @Override
+    public long getRemove() {
+        return count(nfs_opnum4.OP_REMOVE);
+    }
+
+    @Override
+    public long getRename() {
+        return count(nfs_opnum4.OP_RENAME);
+    }
+
+    @Override
+    public long getRenew() {
+        return count(nfs_opnum4.OP_RENEW);
+    }
+
+    @Override
+    public long getRestorefh() {
+        return count(nfs_opnum4.OP_RESTOREFH);
+    }
+
+    @Override
+    public long getSavefh() {
+        return count(nfs_opnum4.OP_SAVEFH);
+    }
+
+    @Override
+    public long getSecinfo() {
+        return count(nfs_opnum4.OP_SECINFO);
+    }
+
+    @Override
+    public long getSetattr() {
+        return count(nfs_opnum4.OP_SETATTR);
+    }
+
+    @Override
+    public long getSetclientid() {
+        return count(nfs_opnum4.OP_SETCLIENTID);
+    }
+
+    @Override
+    public long getSetclientidConfirm() {
+        return count(nfs_opnum4.OP_SETCLIENTID_CONFIRM);
+    }
+
+    @Override
+    public long getVerify() {
+        return count(nfs_opnum4.OP_VERIFY);
+    }
+
+    @Override
+    public long getWrite() {
+        return count(nfs_opnum4.OP_WRITE);
+    }
+
+    @Override
+    public long getReleaseLockowner() {
+        return count(nfs_opnum4.OP_RELEASE_LOCKOWNER);
+    }
+
+    @Override
+    public long getBackchannelCtl() {
+        return count(nfs_opnum4.OP_BACKCHANNEL_CTL);
+    }
+
+    @Override
+    public long getBindConnToSession() {
+        return count(nfs_opnum4.OP_BIND_CONN_TO_SESSION);
+    }
+
+    @Override
+    public long getExchangeId() {
+        return count(nfs_opnum4.OP_EXCHANGE_ID);
+    }
+
+    @Override
+    public long getCreateSession() {
+        return count(nfs_opnum4.OP_CREATE_SESSION);
+    }
+
+    @Override
+    public long getDestroySession() {
+        return count(nfs_opnum4.OP_DESTROY_SESSION);
+    }
+
+    @Override
+    public long getFreeStateid() {
+        return count(nfs_opnum4.OP_FREE_STATEID);
+    }
+
+    @Override
+    public long getGetDirDelegation() {
+        return count(nfs_opnum4.OP_GET_DIR_DELEGATION);
+    }
+
+    @Override
+    public long getGetdeviceinfo() {
+        return count(nfs_opnum4.OP_GETDEVICEINFO);
+    }
+
+    @Override
+    public long getGetdevicelist() {
+        return count(nfs_opnum4.OP_GETDEVICELIST);
+    }
+
+    @Override
+    public long getLayoutcommit() {
+        return count(nfs_opnum4.OP_LAYOUTCOMMIT);
+    }
+
+    @Override
+    public long getLayoutget() {
+        return count(nfs_opnum4.OP_LAYOUTGET);
+    }
+
+    @Override
+    public long getLayoutreturn() {
+        return count(nfs_opnum4.OP_LAYOUTRETURN);
+    }
+
+    @Override
+    public long getSecinfoNoName() {
+        return count(nfs_opnum4.OP_SECINFO_NO_NAME);
+    }
+
+    @Override
+    public long getSequence() {
+        return count(nfs_opnum4.OP_SEQUENCE);
+    }
+
+    @Override
+    public long getSetSsv() {
+        return count(nfs_opnum4.OP_SET_SSV);
+    }
+
+    @Override
+    public long getTestStateid() {
+        return count(nfs_opnum4.OP_TEST_STATEID);
+    }
+
+    @Override
+    public long getWantDelegation() {
+        return count(nfs_opnum4.OP_WANT_DELEGATION);
+    }
+
+    @Override
+    public long getDestroyClientid() {
+        return count(nfs_opnum4.OP_DESTROY_CLIENTID);
+    }
+
+    @Override
+    public long getReclaimComplete() {
+        return count(nfs_opnum4.OP_RECLAIM_COMPLETE);
+    }
+
+    @Override
+    public long getIllegal() {
+        return count(nfs_opnum4.OP_ILLEGAL);
+    }
+
+    /**
+     * Unregister JMX bean of this executor.
+     */
+    @Override
+    public void close() {
+        MXBeans.unregister(mxBeanName);
+    }
+}
@@ -0,0 +1,977 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import org.dcache.nfs.status.NoGraceException;
+import org.dcache.nfs.status.ReclaimBadException;
+import org.dcache.nfs.util.Opaque;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An implementation of {@link ClientRecoveryStore} which keeps client records
+ * in an append-only, memory-mapped journal.
+ *
+ * <p> Client records are appended to the journal under a short lock, which only
+ * copies the record into the mapped region. The record is made durable outside
+ * of that lock with group commit: the first writer which finds its record not
+ * yet on disk forces all records appended so far, while concurrent writers
+ * wait for and share the result of that single sync. Thus, a storm of
+ * concurrent EXCHANGE_IDs results in a few syncs instead of one per client.
+ * State records don't wait for the sync. They are forced to disk in batches by
+ * a background flusher, as callers hold per-file locks on the OPEN path.
+ *
+ * <p> The journal is compacted in the background, when the number of records
+ * grows well beyond the number of live clients. The snapshot of live records is
+ * written without blocking appends, only the records appended in the meantime
+ * are copied over while appends are suspended. On start, the previously existing
+ * records are replayed into a recovery snapshot and a fresh journal is started for
+ * new clients. After recover is complete, due to grace period expiry or when all
+ * known clients have complete the recovery, the snapshot is removed. This gives
+ * the same reclaim semantic as {@link BerkeleyDBClientStore}.
+ *
+ * <p> Additionally, the journal records on which files clients hold states. After
+ * reboot, only clients which held states are waited for, and only the files they
+ * have to reclaim are protected from new states during grace period. The recovery
+ * ends as soon as all such states are reclaimed.
+ *
+ * <p> As state records are synced asynchronously, the most recent of them can be
+ * lost on a crash. Therefore, on clean shutdown, a marker record is appended to
+ * the journal. If the marker is missing after reboot, the recorded files are
+ * incomplete and all files are protected until every client from before reboot
+ * has reclaimed or grace period is over.
+ *
+ * @since 0.27
+ */
+public class JournalClientStore implements ClientRecoveryStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalClientStore.class);
+
+    /**
+     * Journal with actual client records.
+     */
+    private static final String CLIENT_JOURNAL = "nfs-client.journal";
+
+    /**
+     * Snapshot of client records from before reboot.
+     */
+    private static final String CLIENT_RECOVERY = "nfs-client.recover";
+
+    private static final int MAGIC = 0x4e46434a; // NFCJ
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /*
+     * Record types. Zero marks the end of the journal, as not-yet-written
+     * parts of the mapped region are zero filled.
+     */
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_STATE_ADD = 3;
+    private static final byte RECORD_STATE_REMOVE = 4;
+
+    /**
+     * Last record of a journal on clean shutdown. Has an empty payload.
+     */
+    private static final byte RECORD_CLEAN = 5;
+
+    /**
+     * type + creation time + payload length + checksum. The payload of client
+     * records is the client's id, the payload of state records is client's id
+     * length, client's id and file id.
+     */
+    private static final int RECORD_OVERHEAD = 1 + Long.BYTES + Short.BYTES + Integer.BYTES;
+
+    /**
+     * Default size of a journal region mapped into memory.
+     */
+    public static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default minimal number of journal records before compaction is considered.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 64 * 1024;
+
+    private final Path dir;
+    private final int regionSize;
+    private final int compactionThreshold;
+
+    /**
+     * Lock to serialize appends to the journal.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Lock held by the group commit leader.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private FileChannel journal;
+
+    /**
+     * Currently mapped journal region.
+     */
+    private MappedByteBuffer region;
+
+    /**
+     * Journal file offset of the {@link #region}.
+     */
+    private long regionOffset;
+
+    /**
+     * Position in the {@link #region} up to which data is known to be on disk.
+     */
+    private int regionSynced;
+
+    /**
+     * Previously mapped regions, which are not yet forced to disk.
+     */
+    private final List<MappedByteBuffer> retiredRegions = new ArrayList<>();
+
+    /**
+     * Journal file offset of the next record.
+     */
+    private long writePosition;
+
+    /**
+     * Number of records in the journal.
+     */
+    private long journalRecords;
+
+    /**
+     * Total number of bytes ever appended. Unlike {@link #writePosition}, this
+     * value is not reset by compaction and is used to track durability.
+     */
+    private long appended;
+
+    /**
+     * Number of appended bytes known to be on disk.
+     */
+    private volatile long durable;
+
+    /**
+     * Live client records with their creation times.
+     */
+    private final Map<Opaque, Long> clients = new HashMap<>();
+
+    /**
+     * Files on which live clients hold states.
+     */
+    private final Map<Opaque, Set<Opaque>> clientFiles = new HashMap<>();
+
+    /**
+     * Records from before reboot. Null, when recovery is complete.
+     */
+    private Map<Opaque, Long> recoveryClients;
+
+    /**
+     * Files on which clients from before reboot have to reclaim states.
+     */
+    private Map<Opaque, Set<Opaque>> recoveryFiles;
+
+    /**
+     * Number of clients from before reboot, which have to reclaim states on a file.
+     */
+    private Map<Opaque, Integer> pendingFiles;
+
+    /**
+     * Whether the files recorded for clients from before reboot are complete,
+     * i.e. the server was shut down cleanly.
+     */
+    private final boolean statesComplete;
+
+    private final Instant bootTime = Instant.now();
+
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * Background sync of state records.
+     */
+    private final ExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a JournalClientStore with journal files located in the given directory.
+     * @param dir the directory where journal files are stored.
+     * @throws IOException if journal can't be read or created.
+     */
+    public JournalClientStore(Path dir) throws IOException {
+        this(dir, DEFAULT_REGION_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Create a JournalClientStore with journal files located in the given directory.
+     * @param dir the directory where journal files are stored.
+     * @param regionSize size of the journal region mapped into memory at once.
+     * @param compactionThreshold minimal number of journal records before compaction is considered.
+     * @throws IOException if journal can't be read or created.
+     */
+    public JournalClientStore(Path dir, int regionSize, int compactionThreshold) throws IOException {
+
+        if (regionSize < HEADER_SIZE) {
+            throw new IllegalArgumentException("Region size too small: " + regionSize);
+        }
+
+        this.dir = dir;
+        this.regionSize = regionSize;
+        this.compactionThreshold = compactionThreshold;
+
+        Files.createDirectories(dir);
+
+        /*
+         * If the journal exists, then it contains records either from before reboot
+         * or, if we hit a reboot during recovery, records of clients created during
+         * the recovery. Both sets are used for recovery.
+         */
+        Map<Opaque, Long> toRecover = new HashMap<>();
+        Map<Opaque, Set<Opaque>> filesToRecover = new HashMap<>();
+        boolean complete = replay(dir.resolve(CLIENT_RECOVERY), toRecover, filesToRecover);
+        complete &= replay(dir.resolve(CLIENT_JOURNAL), toRecover, filesToRecover);
+
+        toRecover.forEach((k, v) ->
+                LOGGER.info("NFS client record to recover: [{}], {}, files with states: {}",
+                        new String(k.getOpaque(), UTF_8), Instant.ofEpochMilli(v),
+                        filesToRecover.getOrDefault(k, Set.of()).size()));
+
+        if (!complete && !toRecover.isEmpty()) {
+            LOGGER.warn("Client journal was not closed cleanly, all files are protected until recovery is complete");
+        }
+
+        writeSnapshot(dir.resolve(CLIENT_RECOVERY), toRecover, filesToRecover, complete);
+        statesComplete = complete;
+        recoveryClients = toRecover;
+        recoveryFiles = filesToRecover;
+        pendingFiles = new HashMap<>();
+        recoveryFiles.values().forEach(files -> files.forEach(f -> pendingFiles.merge(f, 1, Integer::sum)));
+
+        long end = writeSnapshot(dir.resolve(CLIENT_JOURNAL), clients, clientFiles, false);
+        openJournal(end);
+
+        compactor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("nfs-client-journal-compactor")
+                        .setDaemon(true)
+                        .build()
+        );
+
+        flusher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("nfs-client-journal-flusher")
+                        .setDaemon(true)
+                        .build()
+        );
+    }
+
+    /**
+     * Add client record into recovery store. An existing record for provided
+     * {@code client} will be updated.
+     *
+     * @param client client's unique identifier.
+     */
+    @Override
+    public void addClient(byte[] client) {
+        Instant now = Instant.now();
+        LOGGER.debug("New client record [{}] at {}", new String(client, UTF_8), now);
+        sync(append(RECORD_ADD, client, null, now.toEpochMilli()));
+    }
+
+    /**
+     * Remove client record from recovery store. Called when client record is
+     * destroyed due to expiry or destroy (unmount).
+     *
+     * @param client client's unique identifier.
+     */
+    @Override
+    public void removeClient(byte[] client) {
+        sync(append(RECORD_REMOVE, client, null, 0L));
+        synchronized (this) {
+            if (recoveryClients != null) {
+                Opaque key = new Opaque(client);
+                recoveryClients.remove(key);
+                Set<Opaque> files = recoveryFiles.remove(key);
+                if (files != null) {
+                    files.forEach(this::reclaimed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a record that {@code client} holds a state on file identified by
+     * {@code fileId}. If the client had a state on that file before reboot, then
+     * the state is considered as reclaimed. The record is synced to disk
+     * asynchronously.
+     *
+     * @param client client's unique identifier.
+     * @param fileId file's unique identifier.
+     */
+    @Override
+    public void addState(byte[] client, byte[] fileId) {
+        syncLater(append(RECORD_STATE_ADD, client, fileId, 0L));
+        synchronized (this) {
+            if (recoveryFiles != null) {
+                Set<Opaque> files = recoveryFiles.get(new Opaque(client));
+                Opaque file = new Opaque(fileId);
+                if (files != null && files.remove(file)) {
+                    reclaimed(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a record that {@code client} holds a state on file identified
+     * by {@code fileId}. The record is synced to disk asynchronously.
+     *
+     * @param client client's unique identifier.
+     * @param fileId file's unique identifier.
+     */
+    @Override
+    public void removeState(byte[] client, byte[] fileId) {
+        syncLater(append(RECORD_STATE_REMOVE, client, fileId, 0L));
+    }
+
+    /**
+     * Checks this client store for a pending reclaim of states on file identified
+     * by {@code fileId}.
+     *
+     * If the recorded states are incomplete, then all files are protected as long
+     * as some client from before reboot has not reclaimed yet.
+     *
+     * @param fileId file's unique identifier.
+     * @return true if store expects reclaims of states on the given file.
+     */
+    @Override
+    public synchronized boolean waitingForReclaim(byte[] fileId) {
+        if (pendingFiles == null) {
+            return false;
+        }
+        return pendingFiles.containsKey(new Opaque(fileId)) || (!statesComplete && !recoveryClients.isEmpty());
+    }
+
+    /**
+     * Indicates that {@code owner} have finished reclaim procedure. This method
+     * is called by client even it there was no stated to reclaim.
+     *
+     * @param client client's unique identifier.
+     */
+    @Override
+    public synchronized void reclaimClient(byte[] client) {
+
+        if (recoveryClients == null) {
+            return;
+        }
+
+        LOGGER.debug("Removing recovery record for client [{}]", new String(client, UTF_8));
+        Opaque key = new Opaque(client);
+        recoveryClients.remove(key);
+        Set<Opaque> files = recoveryFiles.remove(key);
+        if (files != null) {
+            files.forEach(this::reclaimed);
+        }
+
+        // do lazy cleanup
+        if (recoveryClients.isEmpty()) {
+            LOGGER.debug("No more client to recover - ending grace period.");
+            reclaimComplete();
+        }
+    }
+
+    /**
+     * Check that client is eligible to reclaim states.
+     *
+     * @param client client's unique identifier.
+     *
+     * @throws NoGraceException is grace period is over
+     * @throws ReclaimBadException client's prevision state can't be detected.
+     */
+    @Override
+    public synchronized void wantReclaim(byte[] client) throws NoGraceException, ReclaimBadException {
+
+        if (recoveryClients == null) {
+            throw new NoGraceException("Grace period expired");
+        }
+
+        if (!recoveryClients.containsKey(new Opaque(client))) {
+            LOGGER.debug("No record for client [{}]", new String(client, UTF_8));
+            throw new ReclaimBadException("No pre-reboot record found");
+        }
+    }
+
+    /**
+     * Checks this client store for a pending reclaim. The does not expects any
+     * reclaims when grace period is expired or all previously existing clients
+     * have complete their reclaims. Clients, which didn't hold any state before
+     * reboot are not waited for, unless the recorded states are incomplete.
+     *
+     * @return true if store expects reclaims from previously existing clients.
+     */
+    @Override
+    public synchronized boolean waitingForReclaim() {
+
+        if (recoveryClients == null) {
+            return false;
+        }
+
+        if (!statesComplete) {
+            return recoveryClients.values().stream()
+                    .anyMatch(t -> Instant.ofEpochMilli(t).isBefore(bootTime));
+        }
+
+        return recoveryFiles.entrySet().stream()
+                .filter(e -> !e.getValue().isEmpty())
+                .map(e -> recoveryClients.get(e.getKey()))
+                .anyMatch(t -> t != null && Instant.ofEpochMilli(t).isBefore(bootTime));
+    }
+
+    /**
+     * Account reclaim (or drop) of a pre-reboot state on a file.
+     */
+    private void reclaimed(Opaque file) {
+        pendingFiles.computeIfPresent(file, (f, n) -> n == 1 ? null : n - 1);
+    }
+
+    /**
+     * Remove all record for client's that did not showed up during grace
+     * period. Drop recovery snapshot.
+     */
+    @Override
+    public synchronized void reclaimComplete() {
+
+        if (recoveryClients == null) {
+            return;
+        }
+
+        recoveryClients.forEach((k, v) ->
+                LOGGER.info("Dropping expired recovery record: [{}], {}", new String(k.getOpaque(), UTF_8), Instant.ofEpochMilli(v)));
+        recoveryClients = null;
+        recoveryFiles = null;
+        pendingFiles = null;
+
+        try {
+            Files.deleteIfExists(dir.resolve(CLIENT_RECOVERY));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove recovery snapshot", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        flusher.shutdown();
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            retiredRegions.forEach(MappedByteBuffer::force);
+            byte[] marker = encodeRecord(RECORD_CLEAN, new byte[0], null, 0L);
+            ensureCapacity(marker.length);
+            region.put((int) (writePosition - regionOffset), marker);
+            writePosition += marker.length;
+            region.force();
+            journal.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Append a record to the journal. The record is not yet on disk.
+     *
+     * @return the position to sync up to, to make the record durable, or zero
+     * if the record doesn't change anything.
+     */
+    private long append(byte type, byte[] client, byte[] fileId, long time) {
+
+        byte[] record = encodeRecord(type, client, fileId, time);
+        long end;
+
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Client store is closed");
+            }
+
+            if (!apply(type, new Opaque(client), fileId == null ? null : new Opaque(fileId), time, clients, clientFiles)) {
+                // nothing changed, nothing to sync
+                return 0L;
+            }
+
+            ensureCapacity(record.length);
+            region.put((int) (writePosition - regionOffset), record);
+            writePosition += record.length;
+            appended += record.length;
+            journalRecords++;
+            end = appended;
+
+            if (journalRecords > compactionThreshold && journalRecords > 2L * liveRecords()
+                    && compactionScheduled.compareAndSet(false, true)) {
+                compactor.execute(this::compact);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to update client journal", e);
+        } finally {
+            appendLock.unlock();
+        }
+
+        return end;
+    }
+
+    /**
+     * Schedule a sync of the journal up to {@code position}. All records
+     * appended until the flusher runs are synced with a single call.
+     */
+    private void syncLater(long position) {
+
+        if (durable >= position || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            flusher.execute(() -> {
+                // records appended after this point schedule a new flush
+                flushScheduled.set(false);
+                long upTo;
+                appendLock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+                    upTo = appended;
+                } finally {
+                    appendLock.unlock();
+                }
+                sync(upTo);
+            });
+        } catch (RejectedExecutionException e) {
+            // the store is closed, close syncs the journal
+        }
+    }
+
+    /**
+     * Ensure that data up to {@code position} is on disk. If some other thread
+     * is already syncing the journal, then wait for it and, if required, sync all
+     * records appended in the meantime with a single call.
+     */
+    private void sync(long position) {
+
+        if (durable >= position) {
+            return;
+        }
+
+        syncLock.lock();
+        try {
+            // some other thread might have already synced our record
+            if (durable >= position) {
+                return;
+            }
+
+            MappedByteBuffer toSync;
+            List<MappedByteBuffer> retired;
+            int from;
+            int to;
+            long upTo;
+
+            appendLock.lock();
+            try {
+                toSync = region;
+                retired = List.copyOf(retiredRegions);
+                from = regionSynced;
+                to = (int) (writePosition - regionOffset);
+                upTo = appended;
+            } finally {
+                appendLock.unlock();
+            }
+
+            // new records can be appended while we are syncing
+            retired.forEach(MappedByteBuffer::force);
+            toSync.force(from, to - from);
+
+            appendLock.lock();
+            try {
+                // regions are only added to the end, concurrent removal requires syncLock
+                retiredRegions.subList(0, retired.size()).clear();
+                if (toSync == region) {
+                    regionSynced = Math.max(regionSynced, to);
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            durable = upTo;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Map a new region if current one has not enough space for the next record.
+     * The caller must hold {@link #appendLock}.
+     */
+    private void ensureCapacity(int size) throws IOException {
+        if (writePosition - regionOffset + size <= region.capacity()) {
+            return;
+        }
+
+        // the previous region is forced by the next sync
+        retiredRegions.add(region);
+        mapRegion(writePosition, size);
+    }
+
+    private void mapRegion(long offset, int minSize) throws IOException {
+        region = journal.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(regionSize, minSize));
+        regionOffset = offset;
+        regionSynced = 0;
+    }
+
+    private void openJournal(long end) throws IOException {
+        journal = FileChannel.open(dir.resolve(CLIENT_JOURNAL), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writePosition = end;
+        journalRecords = liveRecords();
+        mapRegion(end, 0);
+    }
+
+    /**
+     * Number of records required to describe live clients.
+     * The caller must hold {@link #appendLock}.
+     */
+    private long liveRecords() {
+        return clients.size() + clientFiles.values().stream().mapToLong(Set::size).sum();
+    }
+
+    /**
+     * Replace journal with a snapshot of live records. The snapshot is written
+     * while appends continue, then records appended in the meantime are copied
+     * over and appends are switched to the new journal. Syncs are suspended until
+     * the new journal is on disk and has replaced the old one.
+     */
+    private void compact() {
+        Path tmp = dir.resolve(CLIENT_JOURNAL + ".compact");
+        FileChannel out = null;
+        boolean switched = false;
+        try {
+            Map<Opaque, Long> snapshot;
+            Map<Opaque, Set<Opaque>> snapshotFiles = new HashMap<>();
+            long mark;
+            long recordsBefore;
+
+            appendLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                snapshot = new HashMap<>(clients);
+                clientFiles.forEach((k, v) -> snapshotFiles.put(k, new HashSet<>(v)));
+                mark = writePosition;
+                recordsBefore = journalRecords;
+            } finally {
+                appendLock.unlock();
+            }
+
+            out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writeSnapshot(out, snapshot, snapshotFiles, false);
+            out.force(true);
+
+            syncLock.lock();
+            try {
+                long upTo;
+                appendLock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+
+                    // records appended since the snapshot was taken, still in page cache
+                    long tail = writePosition - mark;
+                    while (tail > 0) {
+                        tail -= journal.transferTo(writePosition - tail, tail, out);
+                    }
+
+                    journal.close();
+                    journal = out;
+                    switched = true;
+                    writePosition = out.position();
+                    journalRecords = liveRecords();
+                    retiredRegions.clear();
+                    mapRegion(writePosition, 0);
+                    upTo = appended;
+                } finally {
+                    appendLock.unlock();
+                }
+
+                // records appended from now on are synced into the new journal
+                out.force(true);
+                Files.move(tmp, dir.resolve(CLIENT_JOURNAL), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                durable = upTo;
+            } finally {
+                syncLock.unlock();
+            }
+            LOGGER.debug("Client journal compacted: {} -> {} records", recordsBefore, journalRecords);
+        } catch (IOException e) {
+            if (switched) {
+                // appends go into a file, which doesn't replace the journal
+                LOGGER.error("Failed to replace client journal, closing client store: {}", e.toString());
+                appendLock.lock();
+                try {
+                    closed = true;
+                    journal.close();
+                } catch (IOException ce) {
+                    LOGGER.warn("Failed to close client journal: {}", ce.toString());
+                } finally {
+                    appendLock.unlock();
+                }
+            } else {
+                LOGGER.error("Failed to compact client journal: {}", e.toString());
+            }
+        } finally {
+            if (!switched && out != null) {
+                try {
+                    out.close();
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to remove {}: {}", tmp, e.toString());
+                }
+            }
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Atomically replace the given file with a journal which contains only
+     * add records for provided clients and their states.
+     *
+     * @param clean whether to terminate the snapshot with clean shutdown marker.
+     * @return the size of the written journal.
+     */
+    private static long writeSnapshot(Path file, Map<Opaque, Long> records, Map<Opaque, Set<Opaque>> files,
+            boolean clean) throws IOException {
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            size = writeSnapshot(out, records, files, clean);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    /**
+     * Write journal header and add records for provided clients and their
+     * states into the given channel.
+     *
+     * @return the position after the last record.
+     */
+    private static long writeSnapshot(FileChannel out, Map<Opaque, Long> records, Map<Opaque, Set<Opaque>> files,
+            boolean clean) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        out.write(header);
+
+        for (Map.Entry<Opaque, Long> e : records.entrySet()) {
+            byte[] client = e.getKey().getOpaque();
+            write(out, encodeRecord(RECORD_ADD, client, null, e.getValue()));
+            for (Opaque fileId : files.getOrDefault(e.getKey(), Set.of())) {
+                write(out, encodeRecord(RECORD_STATE_ADD, client, fileId.getOpaque(), 0L));
+            }
+        }
+        if (clean) {
+            write(out, encodeRecord(RECORD_CLEAN, new byte[0], null, 0L));
+        }
+        return out.position();
+    }
+
+    private static void write(FileChannel out, byte[] data) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(data);
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+    }
+
+    /**
+     * Apply a record to the given client and state maps.
+     *
+     * @return true if maps were modified.
+     */
+    private static boolean apply(byte type, Opaque client, Opaque file, long time,
+            Map<Opaque, Long> records, Map<Opaque, Set<Opaque>> files) {
+
+        switch (type) {
+            case RECORD_ADD:
+                records.put(client, time);
+                return true;
+            case RECORD_REMOVE:
+                files.remove(client);
+                return records.remove(client) != null;
+            case RECORD_STATE_ADD:
+                return records.containsKey(client) && files.computeIfAbsent(client, c -> new HashSet<>()).add(file);
+            case RECORD_STATE_REMOVE:
+                Set<Opaque> clientFiles = files.get(client);
+                if (clientFiles == null || !clientFiles.remove(file)) {
+                    return false;
+                }
+                if (clientFiles.isEmpty()) {
+                    files.remove(client);
+                }
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown record type: " + type);
+        }
+    }
+
+    /**
+     * Read records from the given journal, if exists. The replay stops on the
+     * first incomplete or corrupted record.
+     *
+     * @return true if the journal doesn't exist or ends with clean shutdown marker.
+     */
+    private static boolean replay(Path file, Map<Opaque, Long> records, Map<Opaque, Set<Opaque>> files) throws IOException {
+
+        if (!Files.exists(file)) {
+            return true;
+        }
+
+        boolean clean = false;
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (in.size() < HEADER_SIZE) {
+                LOGGER.warn("Ignoring truncated client journal {}", file);
+                return false;
+            }
+
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int magic = buf.getInt();
+            int version = buf.getInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Not a client journal: " + file);
+            }
+
+            CRC32C crc = new CRC32C();
+            while (buf.remaining() >= RECORD_OVERHEAD) {
+                int start = buf.position();
+                byte type = buf.get();
+                if (type == RECORD_END) {
+                    break;
+                }
+
+                long time = buf.getLong();
+                int len = Short.toUnsignedInt(buf.getShort());
+                if (buf.remaining() < len + Integer.BYTES) {
+                    LOGGER.warn("Incomplete record in client journal {} at {}", file, start);
+                    clean = false;
+                    break;
+                }
+
+                byte[] payload = new byte[len];
+                buf.get(payload);
+
+                crc.reset();
+                crc.update(buf.duplicate().position(start).limit(buf.position()));
+                if ((int) crc.getValue() != buf.getInt()) {
+                    LOGGER.warn("Corrupted record in client journal {} at {}", file, start);
+                    clean = false;
+                    break;
+                }
+
+                clean = type == RECORD_CLEAN;
+                switch (type) {
+                    case RECORD_CLEAN:
+                        break;
+                    case RECORD_ADD:
+                    case RECORD_REMOVE:
+                        apply(type, new Opaque(payload), null, time, records, files);
+                        break;
+                    case RECORD_STATE_ADD:
+                    case RECORD_STATE_REMOVE:
+                        ByteBuffer state = ByteBuffer.wrap(payload);
+                        byte[] client = new byte[Short.toUnsignedInt(state.getShort())];
+                        state.get(client);
+                        byte[] fileId = new byte[state.remaining()];
+                        state.get(fileId);
+                        apply(type, new Opaque(client), new Opaque(fileId), time, records, files);
+                        break;
+                    default:
+                        LOGGER.warn("Unknown record type {} in client journal {} at {}", type, file, start);
+                }
+            }
+        }
+        return clean;
+    }
+
+    private static byte[] encodeRecord(byte type, byte[] client, byte[] fileId, long time) {
+
+        int len = fileId == null ? client.length : Short.BYTES + client.length + fileId.length;
+        if (len > 0xFFFF) {
+            throw new IllegalArgumentException("Record too long: " + len);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + len);
+        record.put(type)
+                .putLong(time)
+                .putShort((short) len);
+        if (fileId == null) {
+            record.put(client);
+        } else {
+            record.putShort((short) client.length)
+                    .put(client)
+                    .put(fileId);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+}
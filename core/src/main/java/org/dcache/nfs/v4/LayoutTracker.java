@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.util.Opaque;
+import org.dcache.nfs.v4.ff.ff_data_server4;
+import org.dcache.nfs.v4.ff.ff_layout4;
+import org.dcache.nfs.v4.ff.ff_mirror4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layout4;
+import org.dcache.nfs.v4.xdr.layoutiomode4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfsv4_1_file_layout4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A class which tracks layouts handed out to the clients. For each file the
+ * outstanding layouts are recorded with the encoded layout segments, thus a
+ * repeated LAYOUTGET of a client can be served without asking the device manager.
+ * When a file changes, the layouts can be recalled from the clients which hold
+ * them.
+ */
+public class LayoutTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LayoutTracker.class);
+
+    private final Map<Opaque, List<LayoutRecord>> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * Executor used to send layout recalls in parallel.
+     */
+    private final ExecutorService recallExecutor;
+
+    public LayoutTracker() {
+        this(Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("layout-recall-%d")
+                        .setDaemon(true)
+                        .build()));
+    }
+
+    /**
+     * Create a layout tracker, which uses provided {@code recallExecutor} to
+     * send layout recalls.
+     *
+     * @param recallExecutor executor used to send layout recalls.
+     */
+    public LayoutTracker(ExecutorService recallExecutor) {
+        this.recallExecutor = recallExecutor;
+    }
+
+    /**
+     * A layout held by a client.
+     */
+    private static class LayoutRecord {
+
+        private final NFS4Client client;
+        private final stateid4 stateid;
+        private final int layoutType;
+        private final nfs_fh4 fh;
+        private final int exportIndex;
+        private final Layout layout;
+        private final Set<deviceid4> devices;
+
+        LayoutRecord(NFS4Client client, int layoutType, Inode inode, Layout layout) {
+            this.client = client;
+            this.stateid = layout.getStateid();
+            this.layoutType = layoutType;
+            this.fh = new nfs_fh4(inode.toNfsHandle());
+            this.exportIndex = inode.exportIndex();
+            this.layout = layout;
+            this.devices = devicesOf(layout);
+        }
+
+        /**
+         * Check whatever any segment of this layout provides at least {@code minLength}
+         * bytes starting at {@code offset} with requested {@code iomode}.
+         */
+        boolean covers(int iomode, long offset, long minLength) {
+            for (layout4 segment : layout.getLayoutSegments()) {
+                if (segment.lo_iomode != iomode && segment.lo_iomode != layoutiomode4.LAYOUTIOMODE4_RW) {
+                    continue;
+                }
+                long start = segment.lo_offset.value;
+                long end = end(start, segment.lo_length.value);
+                if (start <= offset && end >= end(offset, minLength)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Check whatever any segment of this layout overlaps with the given
+         * {@code iomode} and byte range.
+         */
+        boolean overlaps(int iomode, long offset, long length) {
+            for (layout4 segment : layout.getLayoutSegments()) {
+                if (iomode != layoutiomode4.LAYOUTIOMODE4_ANY && segment.lo_iomode != iomode) {
+                    continue;
+                }
+                long start = segment.lo_offset.value;
+                if (start < end(offset, length) && offset < end(start, segment.lo_length.value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get a layout, which was handed out to the client earlier and covers the
+     * requested range. The seqid of the layout's stateid is incremented.
+     *
+     * @param client the client requesting the layout.
+     * @param inode the file.
+     * @param layoutType requested layout type.
+     * @param iomode requested iomode.
+     * @param offset requested offset.
+     * @param minLength minimal requested length.
+     * @return the cached layout or {@code null} if there is no matching layout.
+     */
+    public Layout getLayout(NFS4Client client, Inode inode, int layoutType, int iomode, long offset, long minLength) {
+
+        Opaque fileId = new Opaque(inode.getFileId());
+        List<LayoutRecord> records = layouts.get(fileId);
+        if (records == null) {
+            return null;
+        }
+
+        for (LayoutRecord record : records) {
+            if (record.client == client && record.layoutType == layoutType
+                    && record.covers(iomode, offset, minLength)) {
+                try {
+                    NFS4State state = client.state(record.stateid);
+                    state.bumpSeqid();
+                    return record.layout;
+                } catch (ChimeraNFSException e) {
+                    // layout state is gone
+                    remove(fileId, r -> r == record);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record a layout handed out to the client. The layout is forgotten when
+     * the layout state is disposed.
+     *
+     * @param client the client holding the layout.
+     * @param inode the file.
+     * @param layoutType type of the layout.
+     * @param layout the layout.
+     */
+    public void addLayout(NFS4Client client, Inode inode, int layoutType, Layout layout) {
+
+        NFS4State state;
+        try {
+            state = client.state(layout.getStateid());
+        } catch (ChimeraNFSException e) {
+            // we can't track layouts without state
+            LOGGER.debug("Layout without state: {}", e.getMessage());
+            return;
+        }
+
+        Opaque fileId = new Opaque(inode.getFileId());
+        LayoutRecord record = new LayoutRecord(client, layoutType, inode, layout);
+        boolean[] newState = new boolean[1];
+        layouts.compute(fileId, (k, v) -> {
+            List<LayoutRecord> records = new ArrayList<>();
+            newState[0] = true;
+            if (v != null) {
+                for (LayoutRecord r : v) {
+                    if (r.stateid.equals(record.stateid)) {
+                        newState[0] = false;
+                    }
+                    records.add(r);
+                }
+            }
+            records.add(record);
+            return records;
+        });
+
+        if (newState[0]) {
+            state.addDisposeListener(s -> remove(fileId, r -> r.stateid.equals(s.stateid())));
+        }
+    }
+
+    /**
+     * Forget client's layouts on a file, which overlap with the returned range.
+     *
+     * @param client the client returning the layout.
+     * @param inode the file.
+     * @param iomode returned iomode.
+     * @param offset offset of the returned range.
+     * @param length length of the returned range.
+     */
+    public void layoutReturn(NFS4Client client, Inode inode, int iomode, long offset, long length) {
+        remove(new Opaque(inode.getFileId()), r -> r.client == client && r.overlaps(iomode, offset, length));
+    }
+
+    /**
+     * Forget client's layouts on files of the file system, which contains the given
+     * file. The server reports the same {@code fsid} for all exports, thus files
+     * belong to the same file system if they are accessed through the same export.
+     *
+     * @param client the client returning the layouts.
+     * @param inode a file of the file system.
+     */
+    public void layoutReturnFs(NFS4Client client, Inode inode) {
+        int exportIndex = inode.exportIndex();
+        for (Opaque fileId : layouts.keySet()) {
+            remove(fileId, r -> r.client == client && r.exportIndex == exportIndex);
+        }
+    }
+
+    /**
+     * Forget all layouts of the client.
+     *
+     * @param client the client returning all layouts.
+     */
+    public void layoutReturn(NFS4Client client) {
+        for (Opaque fileId : layouts.keySet()) {
+            remove(fileId, r -> r.client == client);
+        }
+    }
+
+    /**
+     * Recall all layouts of the given file. The callbacks to different clients
+     * are sent in parallel. The layouts are forgotten immediately, thus
+     * subsequent LAYOUTGET requests are served by device manager.
+     *
+     * @param inode the file.
+     * @return a future, which completes when all clients have been notified.
+     */
+    public CompletableFuture<Void> recallFile(Inode inode) {
+
+        List<LayoutRecord> records = layouts.remove(new Opaque(inode.getFileId()));
+        if (records == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return recall(records);
+    }
+
+    /**
+     * Recall all layouts, which reference the given device. The callbacks to
+     * different clients are sent in parallel.
+     *
+     * @param deviceid the device.
+     * @return a future, which completes when all clients have been notified.
+     */
+    public CompletableFuture<Void> recallDevice(deviceid4 deviceid) {
+
+        List<LayoutRecord> toRecall = new ArrayList<>();
+        for (Opaque fileId : layouts.keySet()) {
+            layouts.computeIfPresent(fileId, (k, v) -> {
+                List<LayoutRecord> records = new ArrayList<>(v.size());
+                for (LayoutRecord r : v) {
+                    if (r.devices.contains(deviceid)) {
+                        toRecall.add(r);
+                    } else {
+                        records.add(r);
+                    }
+                }
+                return records.isEmpty() ? null : records;
+            });
+        }
+        return recall(toRecall);
+    }
+
+    /**
+     * Get number of layouts outstanding on the given file.
+     *
+     * @param inode the file.
+     * @return number of layouts.
+     */
+    public int getLayoutCount(Inode inode) {
+        List<LayoutRecord> records = layouts.get(new Opaque(inode.getFileId()));
+        return records == null ? 0 : records.size();
+    }
+
+    /**
+     * Stop recall executor.
+     */
+    public void shutdown() {
+        recallExecutor.shutdown();
+    }
+
+    private CompletableFuture<Void> recall(List<LayoutRecord> records) {
+        List<stateid4> recalled = new ArrayList<>();
+        List<CompletableFuture<Void>> recalls = new ArrayList<>();
+        for (LayoutRecord record : records) {
+            if (recalled.contains(record.stateid)) {
+                continue;
+            }
+            recalled.add(record.stateid);
+            recalls.add(CompletableFuture.runAsync(() -> recall(record), recallExecutor));
+        }
+        return CompletableFuture.allOf(recalls.toArray(CompletableFuture[]::new));
+    }
+
+    private void recall(LayoutRecord record) {
+        ClientCB cb = record.client.getCB();
+        if (cb == null) {
+            LOGGER.debug("No callback channel to recall layout from client {}", record.client);
+            return;
+        }
+        try {
+            NFS4State state = record.client.state(record.stateid);
+            state.bumpSeqid();
+            stateid4 stateid = new stateid4(state.stateid().other, state.stateid().seqid);
+            cb.cbLayoutRecallFile(record.fh, stateid, record.layoutType,
+                    layoutiomode4.LAYOUTIOMODE4_ANY, 0L, nfs4_prot.NFS4_UINT64_MAX);
+        } catch (ChimeraNFSException e) {
+            // state is already gone, nothing to recall
+            LOGGER.debug("Layout state is gone: {}", e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to recall layout from client {}: {}", record.client, e.getMessage());
+        }
+    }
+
+    private void remove(Opaque fileId, Predicate<LayoutRecord> filter) {
+        layouts.computeIfPresent(fileId, (k, v) -> {
+            List<LayoutRecord> records = new ArrayList<>(v);
+            records.removeIf(filter);
+            return records.isEmpty() ? null : records;
+        });
+    }
+
+    /**
+     * Get devices referenced by the layout. Only file and flex files layouts are decoded.
+     */
+    private static Set<deviceid4> devicesOf(Layout layout) {
+        Set<deviceid4> devices = new HashSet<>();
+        for (layout4 segment : layout.getLayoutSegments()) {
+            if (segment.lo_content.loc_body.length == 0) {
+                continue;
+            }
+            try (Xdr xdr = new Xdr(segment.lo_content.loc_body)) {
+                xdr.beginDecoding();
+                if (segment.lo_content.loc_type == layouttype4.LAYOUT4_FLEX_FILES.getValue()) {
+                    ff_layout4 ffLayout = new ff_layout4(xdr);
+                    for (ff_mirror4 mirror : ffLayout.ffl_mirrors) {
+                        for (ff_data_server4 ds : mirror.ffm_data_servers) {
+                            devices.add(ds.ffds_deviceid);
+                        }
+                    }
+                } else if (segment.lo_content.loc_type == layouttype4.LAYOUT4_NFSV4_1_FILES.getValue()) {
+                    devices.add(new nfsv4_1_file_layout4(xdr).nfl_deviceid);
+                }
+                xdr.endDecoding();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to decode layout body: {}", e.getMessage());
+            }
+        }
+        return devices;
+    }
+
+    private static long end(long offset, long length) {
+        if (length == nfs4_prot.NFS4_UINT64_MAX || offset + length < offset) {
+            return Long.MAX_VALUE;
+        }
+        return offset + length;
+    }
+}
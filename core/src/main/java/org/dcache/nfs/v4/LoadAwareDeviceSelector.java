@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.dcache.nfs.util.LeaseClock;
+import org.dcache.nfs.v4.ff.ff_io_latency4;
+import org.dcache.nfs.v4.ff.ff_ioerr4;
+import org.dcache.nfs.v4.ff.ff_iostats4;
+import org.dcache.nfs.v4.ff.ff_layoutreturn4;
+import org.dcache.nfs.v4.ff.ff_layoutupdate4;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.LAYOUTSTATS4args;
+import org.dcache.nfs.v4.xdr.device_error4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.layoutupdate4;
+import org.dcache.nfs.v4.xdr.nfstime4;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Load aware selection of data servers based on client reported I/O statistics.
+ *
+ * <p>Every device has a score, which is increased by reports from clients and
+ * halves every {@code halfLife}. A LAYOUTSTATS report (or I/O statistics returned
+ * with the flex files layout on LAYOUTRETURN) adds the mean completion time per
+ * operation in milliseconds, scaled by the device utilization. A LAYOUTERROR report
+ * (or I/O errors returned on LAYOUTRETURN) adds a fixed penalty per error. Thus, slow,
+ * busy and failing devices get a high score, and devices without recent reports
+ * drift back to zero.
+ *
+ * <p>{@link NFSv41DeviceManager} implementations should pass
+ * {@link NFSv41DeviceManager#layoutStats} and {@link NFSv41DeviceManager#layoutError}
+ * arguments to this class and use {@link #select} to pick the data servers for
+ * new layouts. With {@link FlexFileLayoutDriver} the mirrors are ordered best first.
+ */
+public class LoadAwareDeviceSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadAwareDeviceSelector.class);
+
+    /**
+     * Score added for each reported I/O error.
+     */
+    static final double ERROR_PENALTY = 1000.0;
+
+    private final long halfLife;
+    private final LeaseClock clock;
+
+    private final Map<deviceid4, DeviceScore> scores = new ConcurrentHashMap<>();
+
+    /**
+     * Decaying score of a single device.
+     */
+    private static class DeviceScore {
+
+        private double score;
+        private long lastUpdate;
+
+        DeviceScore(long now) {
+            lastUpdate = now;
+        }
+
+        synchronized double get(long now, long halfLife) {
+            decay(now, halfLife);
+            return score;
+        }
+
+        synchronized void add(double value, long now, long halfLife) {
+            decay(now, halfLife);
+            score += value;
+        }
+
+        private void decay(long now, long halfLife) {
+            long elapsed = now - lastUpdate;
+            if (elapsed > 0) {
+                score *= Math.pow(0.5, (double) elapsed / halfLife);
+                lastUpdate = now;
+            }
+        }
+    }
+
+    /**
+     * Create a new selector.
+     *
+     * @param halfLife time after which the contribution of a report is halved.
+     */
+    public LoadAwareDeviceSelector(Duration halfLife) {
+        this(halfLife, LeaseClock.coarse());
+    }
+
+    /**
+     * Create a new selector.
+     *
+     * @param halfLife time after which the contribution of a report is halved.
+     * @param clock time source.
+     */
+    public LoadAwareDeviceSelector(Duration halfLife, LeaseClock clock) {
+        checkArgument(!halfLife.isNegative() && !halfLife.isZero(), "half-life must be positive");
+        this.halfLife = halfLife.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Account I/O statistics provided by LAYOUTSTATS.
+     *
+     * @param args layout stats operation arguments.
+     */
+    public void layoutStats(LAYOUTSTATS4args args) {
+        layoutupdate4 update = args.lsa_layoutupdate;
+        if (update == null || update.lou_type != layouttype4.LAYOUT4_FLEX_FILES.getValue()
+                || update.lou_body == null || update.lou_body.length == 0) {
+            return;
+        }
+
+        try (Xdr xdr = new Xdr(update.lou_body)) {
+            xdr.beginDecoding();
+            ff_layoutupdate4 ffUpdate = new ff_layoutupdate4(xdr);
+            xdr.endDecoding();
+            accept(args.lsa_deviceid, ffUpdate);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to decode flex files layout update: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Account I/O errors provided by LAYOUTERROR.
+     *
+     * @param args layout error operation arguments.
+     */
+    public void layoutError(LAYOUTERROR4args args) {
+        accept(args.lea_errors);
+    }
+
+    /**
+     * Account I/O statistics and errors provided with flex files LAYOUTRETURN.
+     * Can be used as layout return consumer of {@link FlexFileLayoutDriver}.
+     *
+     * @param layoutReturn flex files specific layout return data.
+     */
+    public void layoutReturn(ff_layoutreturn4 layoutReturn) {
+        if (layoutReturn.fflr_ioerr_report != null) {
+            for (ff_ioerr4 ioerr : layoutReturn.fflr_ioerr_report) {
+                accept(ioerr.ffie_errors);
+            }
+        }
+        if (layoutReturn.fflr_iostats_report != null) {
+            for (ff_iostats4 iostats : layoutReturn.fflr_iostats_report) {
+                accept(iostats.ffis_deviceid, iostats.ffis_layoutupdate);
+            }
+        }
+    }
+
+    /**
+     * Get current score of a device. Lower score is better.
+     *
+     * @param deviceid device id.
+     * @return score of the device, zero if no recent reports are available.
+     */
+    public double score(deviceid4 deviceid) {
+        DeviceScore s = scores.get(deviceid);
+        return s == null ? 0.0 : s.get(clock.nanoTime(), halfLife);
+    }
+
+    /**
+     * Order devices by their score, best device first. Devices with equal score
+     * keep their relative order.
+     *
+     * @param deviceids candidate devices.
+     * @return new array of the devices ordered by score.
+     */
+    public deviceid4[] order(deviceid4... deviceids) {
+        long now = clock.nanoTime();
+        double[] s = new double[deviceids.length];
+        Integer[] idx = new Integer[deviceids.length];
+        for (int i = 0; i < deviceids.length; i++) {
+            DeviceScore score = scores.get(deviceids[i]);
+            s[i] = score == null ? 0.0 : score.get(now, halfLife);
+            idx[i] = i;
+        }
+        Arrays.sort(idx, Comparator.comparingDouble(i -> s[i]));
+
+        deviceid4[] ordered = new deviceid4[deviceids.length];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = deviceids[idx[i]];
+        }
+        return ordered;
+    }
+
+    /**
+     * Select {@code count} best devices.
+     *
+     * @param count number of devices to select.
+     * @param deviceids candidate devices.
+     * @return best devices, best first.
+     */
+    public deviceid4[] select(int count, deviceid4... deviceids) {
+        checkArgument(count > 0 && count <= deviceids.length, "Invalid number of devices to select");
+        return Arrays.copyOf(order(deviceids), count);
+    }
+
+    private void accept(device_error4[] errors) {
+        if (errors == null) {
+            return;
+        }
+        long now = clock.nanoTime();
+        for (device_error4 error : errors) {
+            scoreOf(error.de_deviceid, now).add(ERROR_PENALTY, now, halfLife);
+        }
+    }
+
+    private void accept(deviceid4 deviceid, ff_layoutupdate4 update) {
+        if (deviceid == null || update == null) {
+            return;
+        }
+
+        long ops = completedOps(update.ffl_read) + completedOps(update.ffl_write);
+        if (ops == 0) {
+            return;
+        }
+
+        double completionTime = millis(update.ffl_read.ffil_aggregate_completion_time)
+                + millis(update.ffl_write.ffil_aggregate_completion_time);
+        double busyTime = millis(update.ffl_read.ffil_total_busy_time)
+                + millis(update.ffl_write.ffil_total_busy_time);
+        double duration = millis(update.ffl_duration);
+        double utilization = duration > 0 ? Math.min(1.0, busyTime / duration) : 0.0;
+
+        long now = clock.nanoTime();
+        scoreOf(deviceid, now).add(completionTime / ops * (1.0 + utilization), now, halfLife);
+    }
+
+    private DeviceScore scoreOf(deviceid4 deviceid, long now) {
+        return scores.computeIfAbsent(deviceid, d -> new DeviceScore(now));
+    }
+
+    private static long completedOps(ff_io_latency4 latency) {
+        return latency == null || latency.ffil_ops_completed == null ? 0 : latency.ffil_ops_completed.value;
+    }
+
+    private static double millis(nfstime4 time) {
+        return time == null ? 0.0 : time.seconds * 1000.0 + time.nseconds / 1_000_000.0;
+    }
+}
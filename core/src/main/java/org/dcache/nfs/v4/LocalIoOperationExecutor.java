@@ -19,12 +19,18 @@
  */
 package org.dcache.nfs.v4;
 
+import java.io.IOException;
+import org.dcache.nfs.ChimeraNFSException;
 import org.dcache.nfs.v4.ds.DSOperationCOMMIT;
 import org.dcache.nfs.v4.ds.DSOperationREAD;
 import org.dcache.nfs.v4.ds.DSOperationWRITE;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
 import org.dcache.nfs.v4.xdr.nfs_argop4;
 import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
 import org.dcache.nfs.vfs.FsCache;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.oncrpc4j.rpc.OncRpcException;
 
 /**
  * NFS operation factory which uses Proxy IO adapter for read requests
@@ -46,9 +52,32 @@ public class LocalIoOperationExecutor extends MDSOperationExecutor {
 		return new DSOperationCOMMIT(op, _fs);
 	    case nfs_opnum4.OP_WRITE:
 		return new DSOperationWRITE(op, _fs);
+	    case nfs_opnum4.OP_SETATTR:
+		return new TruncatingSETATTR(op, _fs);
 	    default:
 		return super.getOperation(op);
 	}
     }
 
+    /**
+     * SETATTR, which truncates locally stored data when file size is changed.
+     */
+    private static class TruncatingSETATTR extends OperationSETATTR {
+
+	private final FsCache _fs;
+
+	TruncatingSETATTR(nfs_argop4 args, FsCache fs) {
+	    super(args);
+	    _fs = fs;
+	}
+
+	@Override
+	public void process(CompoundContext context, nfs_resop4 result) throws ChimeraNFSException, IOException, OncRpcException {
+	    super.process(context, result);
+	    if (_args.opsetattr.obj_attributes.attrmask.isSet(nfs4_prot.FATTR4_SIZE)) {
+		Inode inode = context.currentInode();
+		_fs.truncate(inode, context.getFs().getattr(inode).getSize());
+	    }
+	}
+    }
 }
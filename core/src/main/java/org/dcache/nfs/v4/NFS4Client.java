@@ -23,9 +23,7 @@ package org.dcache.nfs.v4;
  *  with great help of William A.(Andy) Adamson
  */
 import com.google.common.io.BaseEncoding;
-import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +52,7 @@ import org.dcache.nfs.v4.xdr.stateid4;
 import org.dcache.nfs.v4.xdr.sessionid4;
 import org.dcache.nfs.v4.xdr.state_owner4;
 import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.nfs.util.LeaseClock;
 import org.dcache.nfs.util.Opaque;
 
 public class NFS4Client {
@@ -128,7 +127,7 @@ public class NFS4Client {
     /**
      * The point in time of the last lease renewal.
      */
-    private volatile Instant _lastLeaseUpdate;
+    private volatile long _lastLeaseUpdate;
 
     /**
      * Open Owners associated with client.
@@ -165,9 +164,9 @@ public class NFS4Client {
     private ClientCB _cl_cb = null; /* callback info */
 
     /**
-     * Time duration of a valid lease.
+     * Time duration of a valid lease in nanoseconds.
      */
-    private final Duration _leaseTime;
+    private final long _leaseTime;
 
     /**
      * A flag to indicate that the client already have
@@ -191,15 +190,15 @@ public class NFS4Client {
     private final NFSv4StateHandler _stateHandler;
 
     /**
-     * Clock to use for all time related operations.
+     * Time source used for lease checks.
      */
-    private final Clock _clock;
+    private final LeaseClock _clock;
 
     public NFS4Client(NFSv4StateHandler stateHandler, clientid4 clientId, int minorVersion, InetSocketAddress clientAddress, InetSocketAddress localAddress,
             byte[] ownerID, verifier4 verifier, Principal principal, Duration leaseTime, boolean calbackNeeded) {
 
         _stateHandler = stateHandler;
-        _clock = _stateHandler.getClock();
+        _clock = _stateHandler.getLeaseClock();
         _ownerId = Arrays.copyOf(ownerID, ownerID.length);
         _verifier = verifier;
         _principal = principal;
@@ -207,8 +206,8 @@ public class NFS4Client {
 
         _clientAddress = clientAddress;
         _localAddress = localAddress;
-        _lastLeaseUpdate = _clock.instant();
-        _leaseTime = leaseTime;
+        _lastLeaseUpdate = _clock.nanoTime();
+        _leaseTime = LeaseClock.toNanos(leaseTime);
         _callbackNeeded = calbackNeeded;
         _minorVersion = minorVersion;
 	_reclaim_completed = _minorVersion == 0; // no reclaim for NFSv4.0 clients
@@ -267,7 +266,7 @@ public class NFS4Client {
     }
 
     public boolean isLeaseValid() {
-        return _lastLeaseUpdate.plus(_leaseTime).isAfter(_clock.instant());
+        return _clock.nanoTime() - _lastLeaseUpdate < _leaseTime;
     }
 
     /**
@@ -278,10 +277,10 @@ public class NFS4Client {
      */
     public void updateLeaseTime() throws ChimeraNFSException {
 
-        Instant curentTime = _clock.instant();
-        var delta = Duration.between(_lastLeaseUpdate, curentTime);
-        if (delta.compareTo(_leaseTime) > 0) {
-            throw new ExpiredException("lease time expired: (" + delta +"): " + BaseEncoding.base16().lowerCase().encode(_ownerId) +
+        long curentTime = _clock.nanoTime();
+        long delta = curentTime - _lastLeaseUpdate;
+        if (delta > _leaseTime) {
+            throw new ExpiredException("lease time expired: (" + Duration.ofNanos(delta) +"): " + BaseEncoding.base16().lowerCase().encode(_ownerId) +
                     " (" + _clientId + ").");
         }
         _lastLeaseUpdate = curentTime;
@@ -291,7 +290,7 @@ public class NFS4Client {
      * sets client lease time with current time
      */
     public void refreshLeaseTime() {
-        _lastLeaseUpdate = _clock.instant();
+        _lastLeaseUpdate = _clock.nanoTime();
     }
 
     /**
@@ -497,6 +496,25 @@ public class NFS4Client {
         drainStates();
     }
 
+    /**
+     * Release up to {@code maxStates} states held by this client. Derived
+     * states are released together with the state they are derived from.
+     *
+     * @param maxStates maximal number of states to release.
+     * @return number of released states.
+     */
+    public synchronized int disposeStates(int maxStates) {
+        int n = 0;
+        Iterator<NFS4State> i = _clientStates.values().iterator();
+        while (n < maxStates && i.hasNext()) {
+            NFS4State state = i.next();
+            state.disposeIgnoreFailures();
+            i.remove();
+            n++;
+        }
+        return n;
+    }
+
     /**
      * Indicates that client have reclaimed all states held before server reboot.
      * @throws ChimeraNFSException
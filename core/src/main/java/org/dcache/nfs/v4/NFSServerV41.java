@@ -34,6 +34,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.dcache.nfs.jfr.CompoundEvent;
+import org.dcache.nfs.jfr.TracingFileSystem;
+import org.dcache.nfs.replay.CallRecorder;
+import org.dcache.nfs.util.IoAccounting;
 import org.dcache.nfs.vfs.PseudoFs;
 import org.dcache.nfs.vfs.VirtualFileSystem;
 import org.dcache.nfs.status.MinorVersMismatchException;
@@ -58,6 +62,21 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
     private final LockManager _nlm;
     private final nfs_impl_id4 _implementationId;
 
+    /**
+     * Per client and per export I/O accounting, or null, if disabled.
+     */
+    private final IoAccounting _ioAccounting;
+
+    /**
+     * Tracer of slow compound requests, or null, if disabled.
+     */
+    private final CompoundTracer _tracer;
+
+    /**
+     * Recorder of processed compounds, or null, if disabled.
+     */
+    private final CallRecorder _recorder;
+
     /**
      * Verifier to indicate client that server is rebooted. Current currentTimeMillis
      * is good enough, unless server reboots within a millisecond.
@@ -66,11 +85,14 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
 
     private NFSServerV41(Builder builder) {
         _deviceManager = builder.deviceManager;
-        _fs = builder.vfs;
+        _tracer = builder.tracer;
+        _fs = builder.vfs == null || _tracer == null ? builder.vfs : new TracingFileSystem(builder.vfs, _tracer);
         _exportTable = builder.exportTable;
         _operationExecutor = builder.operationExecutor;
         _nlm = builder.nlm == null ? new SimpleLm() : builder.nlm;
         _statHandler = builder.stateHandler == null ? new NFSv4StateHandler() : builder.stateHandler;
+        _ioAccounting = builder.ioAccounting;
+        _recorder = builder.recorder;
 
         _implementationId = new nfs_impl_id4();
         _implementationId.nii_date = new nfstime4(builder.implementationDate.toEpochMilli());
@@ -85,11 +107,14 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
             ExportTable exportTable) {
 
         _deviceManager = deviceManager;
+        _tracer = null;
         _fs = fs;
         _exportTable = exportTable;
         _operationExecutor = operationExecutor;
         _nlm = new SimpleLm();
         _statHandler = new NFSv4StateHandler();
+        _ioAccounting = null;
+        _recorder = null;
 
         _implementationId = new nfs_impl_id4();
         _implementationId.nii_date = new nfstime4(NFSv4Defaults.NFS4_IMPLEMENTATION_DATE);
@@ -106,7 +131,19 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
     public COMPOUND4res NFSPROC4_COMPOUND_4(RpcCall call$, COMPOUND4args arg1) {
 
         COMPOUND4res res = new COMPOUND4res();
-
+        long start = System.nanoTime();
+        int executed = 0;
+        long bytesRead = 0;
+        long bytesWritten = 0;
+
+        // must be encoded before execution, which may consume WRITE buffers
+        byte[] recordedArgs = _recorder == null ? null : _recorder.encode(arg1);
+
+        CompoundEvent event = new CompoundEvent();
+        event.begin();
+        if (_tracer != null) {
+            _tracer.begin();
+        }
         try {
 
             /*
@@ -195,7 +232,26 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
                     }
                 }
 
+                long opStart = System.nanoTime();
+                if (_tracer != null) {
+                    _tracer.opBegin(op.argop);
+                }
                 nfs_resop4 opResult = _operationExecutor.execute(context, op);
+                if (_tracer != null) {
+                    _tracer.opEnd(opResult.getStatus());
+                }
+
+                if (_ioAccounting != null) {
+                    long read = bytesRead(opResult);
+                    long written = bytesWritten(opResult);
+                    if (context.hasCurrentInode()) {
+                        _ioAccounting.export(context.currentInode().exportIndex())
+                                .record(read, written, 1, System.nanoTime() - opStart);
+                    }
+                    bytesRead += read;
+                    bytesWritten += written;
+                    executed++;
+                }
 
                 res.resarray.add(opResult);
                 res.status = opResult.getStatus();
@@ -219,14 +275,55 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
             res.resarray = Collections.emptyList();
             res.status = nfsstat.NFSERR_SERVERFAULT;
         } finally {
+            if (_tracer != null) {
+                _tracer.end(call$, arg1, res.status);
+            }
+            if (_recorder != null) {
+                _recorder.recordCompound(call$, start, recordedArgs, arg1, res);
+            }
+            if (event.shouldCommit()) {
+                event.tag = String.valueOf(arg1.tag);
+                event.client = String.valueOf(call$.getTransport().getRemoteSocketAddress());
+                event.minorVersion = arg1.minorversion.value;
+                event.operations = arg1.argarray.length;
+                event.status = nfsstat.toString(res.status);
+                event.commit();
+            }
             MDC.remove(NfsMdc.TAG);
             MDC.remove(NfsMdc.CLIENT);
             MDC.remove(NfsMdc.SESSION);
         }
 
+        if (_ioAccounting != null) {
+            _ioAccounting.client(call$.getTransport().getRemoteSocketAddress().getAddress())
+                    .record(bytesRead, bytesWritten, executed, System.nanoTime() - start);
+        }
+
         return res;
     }
 
+    private static long bytesRead(nfs_resop4 opResult) {
+        if (opResult.resop == nfs_opnum4.OP_READ && opResult.getStatus() == nfsstat.NFS_OK) {
+            return opResult.opread.resok4.data.remaining();
+        }
+        return 0;
+    }
+
+    private static long bytesWritten(nfs_resop4 opResult) {
+        if (opResult.resop == nfs_opnum4.OP_WRITE && opResult.getStatus() == nfsstat.NFS_OK) {
+            return Integer.toUnsignedLong(opResult.opwrite.resok4.count.value);
+        }
+        return 0;
+    }
+
+    /**
+     * Get {@link CompoundTracer} used by this nfs server.
+     * @return compound tracer, or null, if tracing is disabled.
+     */
+    public CompoundTracer getCompoundTracer() {
+        return _tracer;
+    }
+
     /**
      * Get {@link NFSv4StateHandler} used by this nfs server.
      * @return state handler.
@@ -304,6 +401,9 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
         private String implementationName = NFSv4Defaults.NFS4_IMPLEMENTATION_ID;
         private String implementationDomain = NFSv4Defaults.NFS4_IMPLEMENTATION_DOMAIN;
         private Instant implementationDate = NFSv4Defaults.NFS4_IMPLEMENTATION_DATE;
+        private IoAccounting ioAccounting;
+        private CompoundTracer tracer;
+        private CallRecorder recorder;
 
         public Builder withDeviceManager(NFSv41DeviceManager deviceManager) {
             this.deviceManager = deviceManager;
@@ -356,6 +456,42 @@ public class NFSServerV41 extends nfs4_prot_NFS4_PROGRAM_ServerStub {
             return this;
         }
 
+        /**
+         * Enable per client and per export I/O accounting.
+         *
+         * @param ioAccounting accounting to update.
+         * @return this builder.
+         */
+        public Builder withIoAccounting(IoAccounting ioAccounting) {
+            this.ioAccounting = ioAccounting;
+            return this;
+        }
+
+        /**
+         * Enable tracing of slow compounds. The file system calls are observed
+         * through {@link TracingFileSystem}, which also emits JFR events. Tracing
+         * is disabled by default. The tracer is owned by the caller, who must
+         * {@link CompoundTracer#close() close} it to release its JMX bean.
+         *
+         * @param tracer compound tracer.
+         * @return this builder.
+         */
+        public Builder withCompoundTracer(CompoundTracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Record all processed compounds, for instance, to replay them later.
+         *
+         * @param recorder the call recorder.
+         * @return this builder.
+         */
+        public Builder withCallRecorder(CallRecorder recorder) {
+            this.recorder = recorder;
+            return this;
+        }
+
         public NFSServerV41 build() {
             return new NFSServerV41(this);
         }
@@ -50,7 +50,9 @@ import org.dcache.nfs.v4.xdr.stateid4;
 import org.dcache.nfs.v4.xdr.verifier4;
 import org.dcache.oncrpc4j.util.Bytes;
 import org.dcache.nfs.util.Cache;
+import org.dcache.nfs.util.LeaseClock;
 import org.dcache.nfs.util.NopCacheEventListener;
+import org.dcache.nfs.vfs.Inode;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -95,7 +97,11 @@ public class NFSv4StateHandler {
      */
     private final int _instanceId;
 
-    private final FileTracker _openFileTracker = new FileTracker();
+    private final FileTracker _openFileTracker;
+
+    private final LayoutTracker _layoutTracker;
+
+    private final DeviceHealthRegistry _deviceHealth;
 
     private final ClientRecoveryStore clientStore;
 
@@ -109,6 +115,17 @@ public class NFSv4StateHandler {
      */
     private final Clock _clock;
 
+    /**
+     * Monotonic time source used for client lease checks.
+     */
+    private final LeaseClock _leaseClock;
+
+    /**
+     * Background disposer of expired client's states. Null, if client cache is
+     * provided by the caller, as expired clients are handled by cache's listener.
+     */
+    private final StateReaper _stateReaper;
+
     public NFSv4StateHandler() {
         this(Duration.ofSeconds(NFSv4Defaults.NFS4_LEASE_TIME), 0, new EphemeralClientRecoveryStore());
     }
@@ -122,22 +139,37 @@ public class NFSv4StateHandler {
      * @param clientStore store used by state handler to keep track of valid clients.
      */
     public NFSv4StateHandler(Duration leaseTime, int instanceId, ClientRecoveryStore clientStore) {
-        this(leaseTime, instanceId, clientStore, new DefaultClientCache(leaseTime, new DeadClientCollector(clientStore)));
+        this(leaseTime, instanceId, clientStore, new StateReaper("nfs-state-reaper-" + instanceId));
+    }
+
+    private NFSv4StateHandler(Duration leaseTime, int instanceId, ClientRecoveryStore clientStore, StateReaper stateReaper) {
+        this(leaseTime, instanceId, clientStore,
+                new DefaultClientCache(leaseTime, new DeadClientCollector(clientStore, stateReaper)),
+                Clock.systemDefaultZone(), LeaseClock.coarse(), stateReaper);
     }
 
     public NFSv4StateHandler(Duration leaseTime, int instanceId, ClientRecoveryStore clientStore, ClientCache clientsByServerId) {
-        this(leaseTime, instanceId, clientStore, clientsByServerId, Clock.systemDefaultZone());
+        this(leaseTime, instanceId, clientStore, clientsByServerId, Clock.systemDefaultZone(), LeaseClock.coarse(), null);
     }
 
     @VisibleForTesting
     NFSv4StateHandler(Duration leaseTime, int instanceId, ClientRecoveryStore clientStore, ClientCache clientsByServerId, Clock clock) {
+        this(leaseTime, instanceId, clientStore, clientsByServerId, clock, LeaseClock.of(clock), null);
+    }
+
+    private NFSv4StateHandler(Duration leaseTime, int instanceId, ClientRecoveryStore clientStore, ClientCache clientsByServerId,
+            Clock clock, LeaseClock leaseClock, StateReaper stateReaper) {
         _leaseTime = leaseTime;
         _clientsByServerId = clientsByServerId;
         _clock = clock;
+        _leaseClock = leaseClock;
 
         _running = true;
         _instanceId = instanceId;
         this.clientStore = clientStore;
+        _openFileTracker = new FileTracker(clientStore);
+        _layoutTracker = new LayoutTracker();
+        _stateReaper = stateReaper;
 
         _cleanerScheduler = Executors.newSingleThreadScheduledExecutor(
                 new ThreadFactoryBuilder()
@@ -146,6 +178,10 @@ public class NFSv4StateHandler {
                         .build()
         );
 
+        // layouts with failed data servers are recalled, off the LAYOUTERROR path, to let clients get new ones
+        _deviceHealth = new DeviceHealthRegistry(_cleanerScheduler);
+        _deviceHealth.addDegradationListener(_layoutTracker::recallDevice);
+
         // periodic dead client scan
         _cleanerScheduler.scheduleAtFixedRate(() -> _clientsByServerId.cleanUp(),
                 _leaseTime.toSeconds() * 4, _leaseTime.toSeconds() * 4, TimeUnit.SECONDS);
@@ -335,6 +371,24 @@ public class NFSv4StateHandler {
         return _openFileTracker;
     }
 
+    /**
+     * Get tracker of layouts handed out by this state handler's clients.
+     *
+     * @return layout tracker.
+     */
+    public LayoutTracker getLayoutTracker() {
+        return _layoutTracker;
+    }
+
+    /**
+     * Get health registry of data servers used by this state handler's clients.
+     *
+     * @return data server health registry.
+     */
+    public DeviceHealthRegistry getDeviceHealth() {
+        return _deviceHealth;
+    }
+
     /**
      * Clock used to time related operations.
      * @return
@@ -343,18 +397,38 @@ public class NFSv4StateHandler {
         return _clock;
     }
 
+    /**
+     * Monotonic time source used by clients to check theirs leases.
+     * @return lease time source.
+     */
+    LeaseClock getLeaseClock() {
+        return _leaseClock;
+    }
+
+    /**
+     * Get the disposer of expired client's states.
+     * @return state reaper or null, if client cache is provided by the caller.
+     */
+    public StateReaperMXBean getStateReaper() {
+        return _stateReaper;
+    }
+
     private static final class DeadClientCollector extends NopCacheEventListener<clientid4, NFS4Client> {
         private final ClientRecoveryStore clientStore;
+        private final StateReaper stateReaper;
 
-        private DeadClientCollector(ClientRecoveryStore clientStore) {
+        private DeadClientCollector(ClientRecoveryStore clientStore, StateReaper stateReaper) {
             this.clientStore = clientStore;
+            this.stateReaper = stateReaper;
         }
 
         @Override
         public void notifyExpired(Cache<clientid4, NFS4Client> cache, NFS4Client client) {
             _log.info("Removing expired client: {}", client);
-            client.tryDispose();
+            // remove the record first, so that per-file records are dropped at once
             clientStore.removeClient(client.getOwnerId());
+            // dispose states in the background to keep the cleaner thread responsive
+            stateReaper.reap(client);
         }
     }
 
@@ -367,6 +441,19 @@ public class NFSv4StateHandler {
         return clientStore.waitingForReclaim();
     }
 
+    /**
+     * Check is the GRACE period for the given file expired. Unlike {@link #isGracePeriod()},
+     * this method returns false, if the client store knows, that no client
+     * have to reclaim states on this file.
+     *
+     * @param inode file to check.
+     * @return true, if server in grace period for the given file.
+     */
+    public boolean isGracePeriod(Inode inode) {
+        checkState(_running, "NFS state handler not running");
+        return clientStore.waitingForReclaim(inode.getFileId());
+    }
+
     /**
      * Indicate that given client complete state reclaims.
      * @param owner client
@@ -403,6 +490,10 @@ public class NFSv4StateHandler {
             _running = false;
             drainClients();
             _cleanerScheduler.shutdown();
+            _layoutTracker.shutdown();
+            if (_stateReaper != null) {
+                _stateReaper.close();
+            }
             clientStore.close();
         } finally {
             _writeLock.unlock();
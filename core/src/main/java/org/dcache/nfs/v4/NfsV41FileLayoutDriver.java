@@ -68,6 +68,44 @@ public class NfsV41FileLayoutDriver implements LayoutDriver {
         file_type.nflda_stripe_indices = new uint32_t[1];
         file_type.nflda_stripe_indices[0] = new uint32_t(0);
 
+        return toDeviceAddress(file_type);
+    }
+
+    /**
+     * Get device address of a device which stripes over multiple data servers.
+     * Each data server is published as a separate entry in the multipath list
+     * and {@code stripeIndices} defines the order in which stripe units are
+     * placed on them, as defined by {@link StripingPattern}.
+     *
+     * @param stripeIndices indexes into {@code dataServers} for each stripe unit.
+     * @param dataServers data servers addresses.
+     * @return device address.
+     */
+    public device_addr4 getDeviceAddress(uint32_t[] stripeIndices, InetSocketAddress... dataServers) {
+
+        checkArgument(stripeIndices.length > 0, "At least one stripe index required.");
+        for (uint32_t index : stripeIndices) {
+            checkArgument(index.value >= 0 && index.value < dataServers.length,
+                    "Stripe index %s out of range", index.value);
+        }
+
+        nfsv4_1_file_layout_ds_addr4 file_type = new nfsv4_1_file_layout_ds_addr4();
+
+        file_type.nflda_multipath_ds_list = new multipath_list4[dataServers.length];
+        for (int i = 0; i < dataServers.length; i++) {
+            file_type.nflda_multipath_ds_list[i] = new multipath_list4();
+            file_type.nflda_multipath_ds_list[i].value = new netaddr4[] {
+                new netaddr4(dataServers[i])
+            };
+        }
+
+        file_type.nflda_stripe_indices = stripeIndices;
+
+        return toDeviceAddress(file_type);
+    }
+
+    private static device_addr4 toDeviceAddress(nfsv4_1_file_layout_ds_addr4 file_type) {
+
         try(Xdr xdr = new Xdr(128)){
             xdr.beginEncoding();
             file_type.xdrEncode(xdr);
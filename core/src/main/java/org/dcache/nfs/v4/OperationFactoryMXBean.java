@@ -19,6 +19,8 @@
  */
 package org.dcache.nfs.v4;
 
+import java.util.Map;
+
 public interface OperationFactoryMXBean {
 
     long getAccess();
@@ -135,4 +137,18 @@ public interface OperationFactoryMXBean {
 
     long getIllegal();
 
+    /**
+     * Number of failed operations per error, keyed by the error name.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * Latency summary, in microseconds, for every executed operation.
+     */
+    String[] getLatencies();
+
+    /**
+     * Discard all collected statistics.
+     */
+    void reset();
 }
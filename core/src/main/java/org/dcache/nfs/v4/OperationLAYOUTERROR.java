@@ -42,6 +42,7 @@ public class OperationLAYOUTERROR extends AbstractNFSv4Operation {
                 .getDeviceManager()
                 .orElseThrow(() -> new NotSuppException("pNFS device manager not configured"));
 
+        context.getStateHandler().getDeviceHealth().layoutError(_args.oplayouterror);
         pnfsDeviceManager.layoutError(context, _args.oplayouterror);
 
         result.oplayouterror.status = nfsstat.NFS_OK;
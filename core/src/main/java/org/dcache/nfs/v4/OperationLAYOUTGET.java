@@ -100,13 +100,20 @@ public class OperationLAYOUTGET extends AbstractNFSv4Operation {
             throw new OpenModeException("can't provide RW layout for RO open");
         }
 
-        Layout ioLayout;
-        try {
-            ioLayout = pnfsDeviceManager.layoutGet(context, _args.oplayoutget);
-        } catch (NfsIoException e) {
-            // linux client can't handle EIO on layout get. force it to proxy IO to
-            // hit a different code path.
-            throw new LayoutUnavailableException("IO error on layout get", e);
+        LayoutTracker layoutTracker = context.getStateHandler().getLayoutTracker();
+        NFS4Client client = context.getSession().getClient();
+        Layout ioLayout = layoutTracker.getLayout(client, inode, _args.oplayoutget.loga_layout_type, ioMode,
+                _args.oplayoutget.loga_offset.value, _args.oplayoutget.loga_minlength.value);
+
+        if (ioLayout == null) {
+            try {
+                ioLayout = pnfsDeviceManager.layoutGet(context, _args.oplayoutget);
+            } catch (NfsIoException e) {
+                // linux client can't handle EIO on layout get. force it to proxy IO to
+                // hit a different code path.
+                throw new LayoutUnavailableException("IO error on layout get", e);
+            }
+            layoutTracker.addLayout(client, inode, _args.oplayoutget.loga_layout_type, ioLayout);
         }
 
         layout4[] layoutSegments = ioLayout.getLayoutSegments();
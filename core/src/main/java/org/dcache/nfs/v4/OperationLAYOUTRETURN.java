@@ -52,8 +52,17 @@ public class OperationLAYOUTRETURN extends AbstractNFSv4Operation {
         _log.debug("LAYOUTRETURN4args : return type: {}", _args.oplayoutreturn.lora_layoutreturn.lr_returntype);
         _log.debug("LAYOUTRETURN4args :     reclaim: {}", _args.oplayoutreturn.lora_reclaim);
 
+        LayoutTracker layoutTracker = context.getStateHandler().getLayoutTracker();
+        NFS4Client client = context.getSession().getClient();
         if (_args.oplayoutreturn.lora_layoutreturn.lr_returntype == layoutreturn_type4.LAYOUTRETURN4_FILE) {
             pnfsDeviceManager.layoutReturn(context, _args.oplayoutreturn);
+            layoutTracker.layoutReturn(client, context.currentInode(), _args.oplayoutreturn.lora_iomode,
+                    _args.oplayoutreturn.lora_layoutreturn.lr_layout.lrf_offset.value,
+                    _args.oplayoutreturn.lora_layoutreturn.lr_layout.lrf_length.value);
+        } else if (_args.oplayoutreturn.lora_layoutreturn.lr_returntype == layoutreturn_type4.LAYOUTRETURN4_FSID) {
+            layoutTracker.layoutReturnFs(client, context.currentInode());
+        } else {
+            layoutTracker.layoutReturn(client);
         }
 
         res.lorr_stateid = new layoutreturn_stateid();
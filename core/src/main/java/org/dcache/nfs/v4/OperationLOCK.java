@@ -21,6 +21,7 @@ package org.dcache.nfs.v4;
 
 import org.dcache.nfs.ChimeraNFSException;
 import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.status.GraceException;
 import org.dcache.nfs.status.InvalException;
 import org.dcache.nfs.status.OpenModeException;
 import org.dcache.nfs.status.ServerFaultException;
@@ -61,6 +62,10 @@ public class OperationLOCK extends AbstractNFSv4Operation {
 
         _args.oplock.offset.checkOverflow(_args.oplock.length, "offset + len overflow");
 
+        if (!_args.oplock.reclaim && context.getStateHandler().isGracePeriod(inode)) {
+            throw new GraceException();
+        }
+
         stateid4 oldStateid;
         NFS4Client client;
         NFS4State lock_state;
@@ -44,6 +44,7 @@ import org.dcache.nfs.status.ExistException;
 import org.dcache.nfs.status.GraceException;
 import org.dcache.nfs.status.InvalException;
 import org.dcache.nfs.status.IsDirException;
+import org.dcache.nfs.status.NoEntException;
 import org.dcache.nfs.status.NotDirException;
 import org.dcache.nfs.status.SymlinkException;
 import org.dcache.nfs.status.WrongTypeException;
@@ -93,7 +94,7 @@ public class OperationOPEN extends AbstractNFSv4Operation {
 
             case open_claim_type4.CLAIM_NULL:
 
-                if (client.needReclaim() || context.getStateHandler().isGracePeriod()) {
+                if (client.needReclaim()) {
                     throw new GraceException();
                 }
 
@@ -106,6 +107,10 @@ public class OperationOPEN extends AbstractNFSv4Operation {
                 String name = NameFilter.convertName(_args.opopen.claim.file.value);
                 _log.debug("regular open for : {}", name);
 
+                if (context.getStateHandler().isGracePeriod()) {
+                    checkGrace(context, parent, name);
+                }
+
                 Inode inode;
                 if (_args.opopen.openhow.opentype == opentype4.OPEN4_CREATE) {
 
@@ -278,6 +283,21 @@ public class OperationOPEN extends AbstractNFSv4Operation {
     }
 
 
+    /**
+     * Check that no client have to reclaim states on the file to be opened.
+     * A file which doesn't exist yet can't have any states to reclaim.
+     */
+    private void checkGrace(CompoundContext context, Inode parent, String name) throws IOException {
+        try {
+            Inode inode = context.getFs().lookup(parent, name);
+            if (context.getStateHandler().isGracePeriod(inode)) {
+                throw new GraceException();
+            }
+        } catch (NoEntException e) {
+            // new file, nothing to reclaim
+        }
+    }
+
     private void checkCanAccess(CompoundContext context, Inode inode, uint32_t share_access) throws IOException {
 
         int accessMode;
@@ -94,18 +94,33 @@ public class OperationSETATTR extends AbstractNFSv4Operation {
             }
         }
 
+        // outstanding layouts may refer to the truncated data
+        LayoutTracker layoutTracker = context.getStateHandler().getLayoutTracker();
+        boolean mayTruncate = _args.opsetattr.obj_attributes.attrmask.isSet(nfs4_prot.FATTR4_SIZE)
+                && layoutTracker.getLayoutCount(inode) > 0;
+        long currentSize = mayTruncate ? context.getFs().getattr(inode).getSize() : 0;
+
+        Stat stat = new Stat();
         res.status = nfsstat.NFS_OK;
-        res.attrsset = setAttributes(_args.opsetattr.obj_attributes, inode, context);
+        res.attrsset = setAttributes(_args.opsetattr.obj_attributes, inode, context, stat);
+
+        if (mayTruncate && stat.getSize() < currentSize) {
+            layoutTracker.recallFile(inode);
+        }
     }
 
     static bitmap4 setAttributes(fattr4 attributes, Inode inode, CompoundContext context) throws IOException, OncRpcException {
+        return setAttributes(attributes, inode, context, new Stat());
+    }
+
+    private static bitmap4 setAttributes(fattr4 attributes, Inode inode, CompoundContext context, Stat stat)
+            throws IOException, OncRpcException {
 
 
         /*
          * bitmap we send back. can't be uninitialized.
          */
         bitmap4 processedAttributes = new bitmap4();
-        Stat stat = new Stat();
         try (Xdr xdr = new Xdr(attributes.attr_vals.value)) {
             xdr.beginDecoding();
             try {
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import org.dcache.nfs.util.LatencyHistogram;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+
+/**
+ * Point-in-time statistics of a single NFSv4 operation.
+ *
+ * @param opnum the operation number as defined by {@link nfs_opnum4}.
+ * @param count number of executed operations.
+ * @param errors number of operations completed with a status other than NFS4_OK.
+ * @param latency distribution of operation execution time in nanoseconds.
+ */
+public record OperationStatistics(int opnum, long count, long errors, LatencyHistogram.Snapshot latency) {
+
+    /**
+     * @return the name of the operation.
+     */
+    public String name() {
+        return nfs_opnum4.toString(opnum);
+    }
+}
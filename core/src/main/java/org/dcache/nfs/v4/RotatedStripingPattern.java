@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.dcache.nfs.v4.xdr.uint32_t;
+
+/**
+ * Round robin striping pattern, which starts at a data server derived from the
+ * file id. Unlike {@link RoundRobinStripingPattern}, the first stripe of files
+ * is evenly distributed over all data servers, thus small files don't hit the
+ * same data server.
+ */
+public class RotatedStripingPattern<T> implements StripingPattern<T> {
+
+    private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+
+    @Override
+    public uint32_t[] getPattern(T[] data) {
+        return rotate(data.length, 0);
+    }
+
+    @Override
+    public uint32_t[] getPattern(byte[] fileId, T[] data) {
+        return rotate(data.length, Math.floorMod(HASH.hashBytes(fileId).asInt(), data.length));
+    }
+
+    private static uint32_t[] rotate(int n, int start) {
+        uint32_t[] stripeIndices = new uint32_t[n];
+        for (int i = 0; i < n; i++) {
+            stripeIndices[i] = new uint32_t((start + i) % n);
+        }
+        return stripeIndices;
+    }
+}
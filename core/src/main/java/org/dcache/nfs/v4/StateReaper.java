@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.dcache.nfs.util.MXBeans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disposes states of expired clients in the background.
+ *
+ * <p> States are disposed in batches of bounded size on a small thread pool.
+ * After each batch, the remaining work of a client is re-queued, thus clients
+ * with a huge number of states don't block the reaping of other clients and
+ * client's monitor is held only for the duration of a single batch.
+ */
+public class StateReaper implements StateReaperMXBean, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StateReaper.class);
+
+    /**
+     * Default maximal number of states disposed in a single batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Default number of reaper threads.
+     */
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 4);
+
+    private final ExecutorService executor;
+    private final int batchSize;
+
+    private final AtomicInteger pendingClients = new AtomicInteger();
+    private final LongAdder reapedClients = new LongAdder();
+    private final LongAdder reapedStates = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private final ObjectName mxBeanName;
+
+    public StateReaper(String name) {
+        this(name, DEFAULT_THREADS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a new state reaper.
+     *
+     * @param name the name used by reaper threads and JMX bean.
+     * @param threads number of threads used to dispose states.
+     * @param batchSize maximal number of states disposed in a single batch.
+     */
+    public StateReaper(String name, int threads, int batchSize) {
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-%d")
+                        .setDaemon(true)
+                        .build()
+        );
+
+        mxBeanName = MXBeans.register(this, getClass().getPackage().getName(), "StateReaper", name);
+    }
+
+    /**
+     * Schedule disposal of all states of the given client.
+     *
+     * @param client expired client.
+     */
+    public void reap(NFS4Client client) {
+        pendingClients.incrementAndGet();
+        submit(client);
+    }
+
+    private void submit(NFS4Client client) {
+        try {
+            executor.execute(() -> reapBatch(client));
+        } catch (RejectedExecutionException e) {
+            // the reaper is shutting down, dispose in the caller's thread.
+            LOGGER.debug("Reaper is closed, disposing states of {} in place", client);
+            client.tryDispose();
+            pendingClients.decrementAndGet();
+            reapedClients.increment();
+        }
+    }
+
+    private void reapBatch(NFS4Client client) {
+        try {
+            int n = client.disposeStates(batchSize);
+            reapedStates.add(n);
+            batches.increment();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to dispose states of {}: {}", client, e.toString());
+        }
+
+        if (client.hasState()) {
+            submit(client);
+        } else {
+            pendingClients.decrementAndGet();
+            reapedClients.increment();
+        }
+    }
+
+    @Override
+    public int getPendingClients() {
+        return pendingClients.get();
+    }
+
+    @Override
+    public long getReapedClients() {
+        return reapedClients.sum();
+    }
+
+    @Override
+    public long getReapedStates() {
+        return reapedStates.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Stop accepting new clients. Already queued clients will be reaped.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        MXBeans.unregister(mxBeanName);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+/**
+ * Progress metrics of {@link StateReaper}.
+ */
+public interface StateReaperMXBean {
+
+    /**
+     * Get number of expired clients, which states are not disposed yet.
+     */
+    int getPendingClients();
+
+    /**
+     * Get number of expired clients, which states are completely disposed.
+     */
+    long getReapedClients();
+
+    /**
+     * Get number of disposed states.
+     */
+    long getReapedStates();
+
+    /**
+     * Get number of processed batches.
+     */
+    long getBatches();
+
+    /**
+     * Get the maximal number of states disposed in a single batch.
+     */
+    int getBatchSize();
+}
@@ -41,4 +41,27 @@ public interface StripingPattern<T> {
      * @return an array of data server indeces.
      */
     uint32_t[] getPattern(T[] data);
+
+    /**
+     * Get stripping pattern of a given file for a given data type. Placement
+     * strategies which distribute files over data servers use {@code fileId} to
+     * select the data server for the first stripe.
+     *
+     * @param fileId file identifier, like {@link org.dcache.nfs.vfs.Inode#getFileId()}.
+     * @param data
+     * @return an array of data server indeces.
+     */
+    default uint32_t[] getPattern(byte[] fileId, T[] data) {
+        return getPattern(data);
+    }
+
+    /**
+     * Notify that a file is removed. Placement strategies which keep track of
+     * placed files release the file's slot. The default implementation does
+     * nothing.
+     *
+     * @param fileId file identifier, like {@link org.dcache.nfs.vfs.Inode#getFileId()}.
+     */
+    default void release(byte[] fileId) {
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import java.util.function.ToDoubleFunction;
+import org.dcache.nfs.FsExport;
+
+/**
+ * Factory of {@link StripingPattern}s for export specific placement strategies.
+ */
+public final class StripingPatterns {
+
+    /**
+     * Maximal load of a data server relative to average used by
+     * {@link FsExport.Placement#BOUNDED_LOAD} placement.
+     */
+    public static final double DEFAULT_LOAD_FACTOR = 1.25;
+
+    private StripingPatterns() {}
+
+    /**
+     * Create striping pattern for the given placement strategy. As bounded load
+     * placement keeps track of placed files, a single instance should be used
+     * for all files of an export.
+     *
+     * @param <T> data server type.
+     * @param placement placement strategy.
+     * @param weight function to get weight of a data server, used by weighted placement.
+     * @return striping pattern.
+     */
+    public static <T> StripingPattern<T> forPlacement(FsExport.Placement placement, ToDoubleFunction<T> weight) {
+        switch (placement) {
+            case ROUND_ROBIN:
+                return new RoundRobinStripingPattern<>();
+            case ROTATED:
+                return new RotatedStripingPattern<>();
+            case WEIGHTED:
+                return new WeightedStripingPattern<>(weight);
+            case BOUNDED_LOAD:
+                return new BoundedLoadStripingPattern<>(DEFAULT_LOAD_FACTOR);
+            default:
+                throw new IllegalArgumentException("Unsupported placement: " + placement);
+        }
+    }
+}
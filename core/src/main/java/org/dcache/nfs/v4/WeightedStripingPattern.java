@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToDoubleFunction;
+import org.dcache.nfs.v4.xdr.uint32_t;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Striping pattern, which places files on data servers proportional to their
+ * weight, e.g. capacity. Data servers are ordered by weighted rendezvous hashing
+ * of the file id: the probability of a data server to hold the first stripe of
+ * a file is proportional to its weight, and adding or removing a data server
+ * moves only files placed on it.
+ */
+public class WeightedStripingPattern<T> implements StripingPattern<T> {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Function to get weight of a data server.
+     */
+    private final ToDoubleFunction<T> weight;
+
+    /**
+     * Create striping pattern with the given data server weight function.
+     * Data servers with weight zero or less get the first stripe only if all
+     * data servers have no weight.
+     *
+     * @param weight function to get weight of a data server.
+     */
+    public WeightedStripingPattern(ToDoubleFunction<T> weight) {
+        this.weight = requireNonNull(weight);
+    }
+
+    @Override
+    public uint32_t[] getPattern(T[] data) {
+        return getPattern(new byte[0], data);
+    }
+
+    @Override
+    public uint32_t[] getPattern(byte[] fileId, T[] data) {
+
+        double[] scores = new double[data.length];
+        Integer[] order = new Integer[data.length];
+        for (int i = 0; i < data.length; i++) {
+            scores[i] = score(fileId, data[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        uint32_t[] stripeIndices = new uint32_t[data.length];
+        for (int i = 0; i < data.length; i++) {
+            stripeIndices[i] = new uint32_t(order[i]);
+        }
+        return stripeIndices;
+    }
+
+    private double score(byte[] fileId, T ds) {
+        double w = weight.applyAsDouble(ds);
+        if (w <= 0) {
+            return 0;
+        }
+
+        long hash = HASH.newHasher()
+                .putBytes(fileId)
+                .putInt(ds.hashCode())
+                .hash()
+                .asLong();
+
+        // uniform in (0, 1)
+        double u = ((hash >>> 11) + 0.5) / (1L << 53);
+        return w / -Math.log(u);
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.ds;
+
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.dcache.nfs.status.DelayException;
+import org.dcache.nfs.status.NfsIoException;
+import org.dcache.nfs.util.LatencyHistogram;
+import org.dcache.nfs.util.MXBeans;
+import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.nfs.vfs.Inode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent commits of data server files into batches.
+ *
+ * <p> A commit request is queued and the first request of a batch schedules
+ * a flush after a short window. On flush, all files committed in the window
+ * are forced on a dedicated thread pool, a single
+ * {@link FileChannel#force(boolean)} call per file, no matter how many
+ * requests were issued for it.
+ *
+ * <p> Commits are keyed by file and the file's channel is resolved at flush
+ * time. A channel, which was closed in the meantime, e.g. evicted from the cache
+ * of open files, is reopened, as closing the channel doesn't lose written data.
+ *
+ * <p> If forcing a file fails, then data written with UNSTABLE4 may be lost.
+ * To let clients detect it, the write verifier returned by
+ * {@link #getWriteVerifier(verifier4)} is changed, which forces clients to
+ * re-send all uncommitted writes.
+ */
+public class CommitScheduler implements CommitSchedulerMXBean, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommitScheduler.class);
+
+    /**
+     * Default time to wait for other commits before flushing a batch.
+     */
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(2);
+
+    /**
+     * Default number of threads used to force files.
+     */
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * Provides an open channel of a file.
+     */
+    @FunctionalInterface
+    public interface ChannelSupplier {
+
+        FileChannel get(Inode inode) throws IOException;
+    }
+
+    /**
+     * Commits of a single file in a batch.
+     */
+    private static class PendingForce {
+
+        private final Inode inode;
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        private final List<Long> startTimes = new ArrayList<>();
+        private boolean metaData;
+
+        PendingForce(Inode inode) {
+            this.inode = inode;
+        }
+
+        void add(CompletableFuture<Void> waiter, boolean metaData) {
+            waiters.add(waiter);
+            startTimes.add(System.nanoTime());
+            this.metaData |= metaData;
+        }
+    }
+
+    private final ChannelSupplier channels;
+    private final long windowNanos;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService forcePool;
+
+    private final Object lock = new Object();
+
+    // guarded by lock
+    private Map<Inode, PendingForce> pending = new HashMap<>();
+
+    // guarded by lock
+    private boolean flushScheduled;
+
+    private final AtomicLong verifierGeneration = new AtomicLong();
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final ObjectName mxBeanName;
+
+    public CommitScheduler(String name, ChannelSupplier channels) {
+        this(name, channels, DEFAULT_WINDOW, DEFAULT_THREADS);
+    }
+
+    /**
+     * Create a new commit scheduler.
+     *
+     * @param name the name used by scheduler threads and JMX bean.
+     * @param channels supplier of open file channels, typically {@code FsCache::get}.
+     * @param window time to wait for other commits before flushing a batch.
+     * @param threads number of threads used to force files.
+     */
+    public CommitScheduler(String name, ChannelSupplier channels, Duration window, int threads) {
+
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Commit window must not be negative: " + window);
+        }
+
+        this.channels = channels;
+        windowNanos = window.toNanos();
+        timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-timer")
+                        .setDaemon(true)
+                        .build()
+        );
+        forcePool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-%d")
+                        .setDaemon(true)
+                        .build()
+        );
+
+        mxBeanName = MXBeans.register(this, getClass().getPackage().getName(), "CommitScheduler", name);
+    }
+
+    /**
+     * Schedule commit of the file.
+     *
+     * @param inode file to commit.
+     * @param metaData whether file metadata, like file size, must be committed as well.
+     * @return future which completes when file is committed.
+     */
+    public CompletableFuture<Void> commit(Inode inode, boolean metaData) {
+
+        commits.increment();
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        PendingForce inPlace = null;
+        synchronized (lock) {
+            pending.computeIfAbsent(inode, PendingForce::new).add(waiter, metaData);
+            if (!flushScheduled) {
+                try {
+                    timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+                    flushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // the scheduler is closed, commit in the caller's thread.
+                    inPlace = pending.remove(inode);
+                }
+            }
+        }
+
+        if (inPlace != null) {
+            force(inPlace);
+        }
+        return waiter;
+    }
+
+    /**
+     * Commit the file and wait for completion.
+     *
+     * @param inode file to commit.
+     * @param metaData whether file metadata, like file size, must be committed as well.
+     * @throws NfsIoException if commit fails.
+     * @throws DelayException if the thread is interrupted while waiting.
+     */
+    public void sync(Inode inode, boolean metaData) throws IOException {
+        try {
+            commit(inode, metaData).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DelayException("Interrupted while waiting for commit", e);
+        } catch (ExecutionException e) {
+            throw new NfsIoException("Commit failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Get write verifier to be returned by WRITE and COMMIT. The verifier is
+     * derived from server's reboot verifier and changes every time a commit fails.
+     *
+     * @param rebootVerifier server's reboot verifier.
+     * @return write verifier.
+     */
+    public verifier4 getWriteVerifier(verifier4 rebootVerifier) {
+        long generation = verifierGeneration.get();
+        if (generation == 0) {
+            return rebootVerifier;
+        }
+
+        long value = Longs.fromByteArray(rebootVerifier.value) ^ generation;
+        return verifier4.valueOf(value);
+    }
+
+    private void flush() {
+
+        Map<Inode, PendingForce> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new HashMap<>();
+            flushScheduled = false;
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        batches.increment();
+        batchSizes.record(batch.values().stream().mapToLong(p -> p.waiters.size()).sum());
+
+        for (PendingForce force : batch.values()) {
+            try {
+                forcePool.execute(() -> force(force));
+            } catch (RejectedExecutionException e) {
+                force(force);
+            }
+        }
+    }
+
+    private void force(PendingForce force) {
+        FileChannel channel = open(force);
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            try {
+                channel.force(force.metaData);
+            } catch (ClosedChannelException e) {
+                // closed by eviction after lookup, the written data is still there
+                channel = open(force);
+                if (channel == null) {
+                    return;
+                }
+                channel.force(force.metaData);
+            }
+            forces.increment();
+            long now = System.nanoTime();
+            for (int i = 0; i < force.waiters.size(); i++) {
+                latency.record(TimeUnit.NANOSECONDS.toMicros(now - force.startTimes.get(i)));
+                force.waiters.get(i).complete(null);
+            }
+        } catch (ClosedChannelException e) {
+            // not a write-back error, the verifier stays
+            LOGGER.warn("File {} closed during commit", force.inode);
+            force.waiters.forEach(w -> w.completeExceptionally(e));
+        } catch (IOException | RuntimeException e) {
+            // must be visible before any client gets the error
+            verifierGeneration.incrementAndGet();
+            failures.increment();
+            LOGGER.error("Failed to commit file: {}", e.toString());
+            force.waiters.forEach(w -> w.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Get file's channel. On failure, waiters are completed exceptionally.
+     *
+     * @return file channel or null, if file can't be opened.
+     */
+    private FileChannel open(PendingForce force) {
+        try {
+            return channels.get(force.inode);
+        } catch (IOException | RuntimeException e) {
+            // nothing was written back, thus nothing is lost
+            LOGGER.error("Failed to open file {} for commit: {}", force.inode, e.toString());
+            force.waiters.forEach(w -> w.completeExceptionally(e));
+            return null;
+        }
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getForces() {
+        return forces.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getVerifierGeneration() {
+        return verifierGeneration.get();
+    }
+
+    @Override
+    public double getMeanBatchSize() {
+        return batchSizes.snapshot().getMean();
+    }
+
+    @Override
+    public long getMaxBatchSize() {
+        return batchSizes.snapshot().getMax();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        return latency.snapshot().getMean();
+    }
+
+    @Override
+    public long getLatency99() {
+        return latency.snapshot().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return latency.snapshot().getMax();
+    }
+
+    @Override
+    public void resetHistograms() {
+        batchSizes.reset();
+        latency.reset();
+    }
+
+    /**
+     * Stop accepting new commits. Already queued commits are flushed. Commits
+     * requested after close are executed in the caller's thread.
+     */
+    @Override
+    public void close() {
+        timer.shutdown();
+        flush();
+        forcePool.shutdown();
+        MXBeans.unregister(mxBeanName);
+    }
+}
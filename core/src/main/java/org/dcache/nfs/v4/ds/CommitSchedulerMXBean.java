@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.v4.ds;
+
+/**
+ * Metrics of {@link CommitScheduler}.
+ */
+public interface CommitSchedulerMXBean {
+
+    /**
+     * Get number of requested commits.
+     */
+    long getCommits();
+
+    /**
+     * Get number of flushed batches.
+     */
+    long getBatches();
+
+    /**
+     * Get number of {@link java.nio.channels.FileChannel#force(boolean)} calls.
+     * Concurrent commits of the same file in a batch are served by a single call.
+     */
+    long getForces();
+
+    /**
+     * Get number of failed {@link java.nio.channels.FileChannel#force(boolean)} calls.
+     */
+    long getFailures();
+
+    /**
+     * Get the number of times the write verifier was changed due to a failed commit.
+     */
+    long getVerifierGeneration();
+
+    /**
+     * Get the mean number of commits served by a single batch.
+     */
+    double getMeanBatchSize();
+
+    /**
+     * Get the maximal number of commits served by a single batch.
+     */
+    long getMaxBatchSize();
+
+    /**
+     * Get the mean commit latency, in microseconds.
+     */
+    double getMeanLatency();
+
+    /**
+     * Get the 99th percentile of commit latency, in microseconds.
+     */
+    long getLatency99();
+
+    /**
+     * Get the maximal commit latency, in microseconds.
+     */
+    long getMaxLatency();
+
+    /**
+     * Discard collected batch size and latency histograms.
+     */
+    void resetHistograms();
+}
@@ -40,15 +40,28 @@ import org.dcache.oncrpc4j.rpc.OncRpcException;
 public class DSOperationCOMMIT extends AbstractNFSv4Operation {
 
     private final FsCache _fsCache;
+    private final CommitScheduler _commitScheduler;
 
     public DSOperationCOMMIT(nfs_argop4 args, FsCache fsCache) {
+        this(args, fsCache, null);
+    }
+
+    /**
+     * Create COMMIT operation, which forces the data with {@code commitScheduler}.
+     * Without scheduler the data is not forced to the disk.
+     *
+     * @param args operation arguments.
+     * @param fsCache cache of open files.
+     * @param commitScheduler scheduler used to commit files, or {@code null}.
+     */
+    public DSOperationCOMMIT(nfs_argop4 args, FsCache fsCache, CommitScheduler commitScheduler) {
         super(args, nfs_opnum4.OP_COMMIT);
         _fsCache = fsCache;
+        _commitScheduler = commitScheduler;
     }
 
     @Override
     public void process(CompoundContext context, nfs_resop4 result) throws ChimeraNFSException, IOException, OncRpcException {
-        // FIXME: sync the data
 
         _args.opcommit.offset.checkOverflow(_args.opcommit.count.value, "offset + length overflow");
         final COMMIT4res res = result.opcommit;
@@ -65,6 +78,9 @@ public class DSOperationCOMMIT extends AbstractNFSv4Operation {
 	    }
 
             FileChannel out = _fsCache.get(inode);
+            if (_commitScheduler != null) {
+                _commitScheduler.sync(inode, true);
+            }
 
             Stat newStat = new Stat();
             newStat.setSize(out.size());
@@ -73,6 +89,8 @@ public class DSOperationCOMMIT extends AbstractNFSv4Operation {
 
         res.status = nfsstat.NFS_OK;
         res.resok4 = new COMMIT4resok();
-        res.resok4.writeverf = context.getRebootVerifier();
+        res.resok4.writeverf = _commitScheduler == null
+                ? context.getRebootVerifier()
+                : _commitScheduler.getWriteVerifier(context.getRebootVerifier());
     }
 }
@@ -39,9 +39,21 @@ import org.dcache.nfs.vfs.FsCache;
 public class DSOperationExecutor extends AbstractOperationExecutor {
 
     private final FsCache _fs;
+    private final CommitScheduler _commitScheduler;
 
     public DSOperationExecutor(FsCache fs) {
+        this(fs, null);
+    }
+
+    /**
+     * Create operation executor, which commits data with {@code commitScheduler}.
+     *
+     * @param fs cache of open files.
+     * @param commitScheduler scheduler used by COMMIT and stable WRITE, or {@code null}.
+     */
+    public DSOperationExecutor(FsCache fs, CommitScheduler commitScheduler) {
         _fs = fs;
+        _commitScheduler = commitScheduler;
     }
 
     @Override
@@ -49,7 +61,7 @@ public class DSOperationExecutor extends AbstractOperationExecutor {
 
         switch (op.argop) {
             case nfs_opnum4.OP_COMMIT:
-                return new DSOperationCOMMIT(op, _fs);
+                return new DSOperationCOMMIT(op, _fs, _commitScheduler);
             case nfs_opnum4.OP_GETATTR:
                 return new OperationGETATTR(op);
             case nfs_opnum4.OP_PUTFH:
@@ -59,7 +71,7 @@ public class DSOperationExecutor extends AbstractOperationExecutor {
             case nfs_opnum4.OP_READ:
                 return new DSOperationREAD(op, _fs);
             case nfs_opnum4.OP_WRITE:
-                return new DSOperationWRITE(op, _fs);
+                return new DSOperationWRITE(op, _fs, _commitScheduler);
             case nfs_opnum4.OP_EXCHANGE_ID:
                 return new OperationEXCHANGE_ID(op);
             case nfs_opnum4.OP_CREATE_SESSION:
@@ -21,7 +21,6 @@ package org.dcache.nfs.v4.ds;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 import org.dcache.nfs.v4.AbstractNFSv4Operation;
 import org.dcache.nfs.v4.CompoundContext;
@@ -81,18 +80,18 @@ public class DSOperationREAD extends AbstractNFSv4Operation {
         long offset = _args.opread.offset.value;
         int count = _args.opread.count.value;
 
-        ByteBuffer bb = ByteBuffer.allocateDirect(count);
-        FileChannel in = _fsCache.get(inode);
-
-        int bytesReaded = in.read(bb, offset);
-        if (bytesReaded < 0) {
+        ByteBuffer bb = _fsCache.read(inode, offset, count);
+        int bytesReaded;
+        if (bb == null) {
             eof = true;
             bytesReaded = 0;
+            bb = ByteBuffer.allocate(0);
+        } else {
+            bytesReaded = bb.remaining();
         }
 
         res.status = nfsstat.NFS_OK;
         res.resok4 = new READ4resok();
-        bb.flip();
         res.resok4.data = bb;
 
         if (offset + bytesReaded == stat.getSize()) {
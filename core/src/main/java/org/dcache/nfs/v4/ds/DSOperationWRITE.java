@@ -36,6 +36,7 @@ import org.dcache.nfs.status.IsDirException;
 import org.dcache.nfs.status.NfsIoException;
 import org.dcache.nfs.v4.Stateids;
 import org.dcache.nfs.v4.xdr.stable_how4;
+import org.dcache.nfs.v4.xdr.verifier4;
 import org.dcache.nfs.vfs.FsCache;
 import org.dcache.nfs.vfs.Inode;
 import org.dcache.nfs.vfs.Stat;
@@ -46,10 +47,23 @@ public class DSOperationWRITE extends AbstractNFSv4Operation {
 
     private static final Logger _log = LoggerFactory.getLogger(DSOperationWRITE.class);
     private final FsCache _fsCache;
+    private final CommitScheduler _commitScheduler;
 
     public DSOperationWRITE(nfs_argop4 args, FsCache fsCache) {
+        this(args, fsCache, null);
+    }
+
+    /**
+     * Create WRITE operation, which commits stable writes with {@code commitScheduler}.
+     *
+     * @param args operation arguments.
+     * @param fsCache cache of open files.
+     * @param commitScheduler scheduler used to commit stable writes, or {@code null}.
+     */
+    public DSOperationWRITE(nfs_argop4 args, FsCache fsCache, CommitScheduler commitScheduler) {
         super(args, nfs_opnum4.OP_WRITE);
         _fsCache = fsCache;
+        _commitScheduler = commitScheduler;
     }
 
     @Override
@@ -93,11 +107,19 @@ public class DSOperationWRITE extends AbstractNFSv4Operation {
             throw new NfsIoException("IO not allowed");
         }
 
+        verifier4 writeVerifier = context.getRebootVerifier();
+        if (_commitScheduler != null) {
+            if (_args.opwrite.stable != stable_how4.UNSTABLE4) {
+                _commitScheduler.sync(inode, _args.opwrite.stable == stable_how4.FILE_SYNC4);
+            }
+            writeVerifier = _commitScheduler.getWriteVerifier(writeVerifier);
+        }
+
         res.status = nfsstat.NFS_OK;
         res.resok4 = new WRITE4resok();
         res.resok4.count = new count4(bytesWritten);
         res.resok4.committed = _args.opwrite.stable;
-        res.resok4.writeverf = context.getRebootVerifier();
+        res.resok4.writeverf = writeVerifier;
 
         synchronized(out) {
             if ((_args.opwrite.stable != stable_how4.UNSTABLE4) && (offset + bytesWritten > lastSize)) {
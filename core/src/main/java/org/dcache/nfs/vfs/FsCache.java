@@ -19,13 +19,27 @@
  */
 package org.dcache.nfs.vfs;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.*;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Striped;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Consumer;
+import org.dcache.nfs.util.CacheMetrics;
+import org.dcache.nfs.util.GuavaCacheMXBeanImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,10 +47,16 @@ import org.slf4j.LoggerFactory;
  *
  * @author tigran
  */
-public class FsCache {
+public class FsCache implements Closeable {
 
     private final static Logger _log = LoggerFactory.getLogger(FsCache.class);
 
+    /**
+     * Rough estimate of heap footprint of an open {@link FileChannel} and it's
+     * key in bytes. Note, that each entry holds an open file descriptor as well.
+     */
+    private static final long ENTRY_SIZE = 256;
+
     private static class FileChannelSupplier extends CacheLoader<Inode, FileChannel> {
 
         private final File _base;
@@ -69,8 +89,15 @@ public class FsCache {
 
     private static class InodeGarbageCollector implements RemovalListener<Inode, FileChannel> {
 
+        private final Consumer<Inode> _onClose;
+
+        InodeGarbageCollector(Consumer<Inode> onClose) {
+            _onClose = onClose;
+        }
+
         @Override
         public void onRemoval(RemovalNotification<Inode, FileChannel> notification) {
+            _onClose.accept(notification.getKey());
             try {
                 notification.getValue().close();
             } catch (IOException e) {
@@ -79,10 +106,104 @@ public class FsCache {
             }
         }
     }
+    /**
+     * A window of a file mapped into memory. The window with index {@code n}
+     * starts at file offset {@code n * windowSize}.
+     */
+    private static class WindowKey {
+
+        private final Inode _inode;
+        private final long _index;
+
+        WindowKey(Inode inode, long index) {
+            _inode = inode;
+            _index = index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _inode.hashCode() + Long.hashCode(_index);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) obj;
+            return _index == other._index && _inode.equals(other._inode);
+        }
+
+        @Override
+        public String toString() {
+            return _inode + "@" + _index;
+        }
+    }
+
+    private class WindowMapper extends CacheLoader<WindowKey, MappedByteBuffer> {
+
+        @Override
+        public MappedByteBuffer load(WindowKey key) throws IOException {
+            FileChannel channel = get(key._inode);
+            long start = key._index * _mmapWindowSize;
+            long length = Math.min(_mmapWindowSize, channel.size() - start);
+            if (length <= 0) {
+                throw new IOException("Window " + key + " beyond end of file");
+            }
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            _windowsByInode.computeIfAbsent(key._inode, i -> ConcurrentHashMap.newKeySet()).add(key);
+            return window;
+        }
+    }
+
+    /**
+     * Removes evicted windows from the per-file index.
+     */
+    private class WindowUnindexer implements RemovalListener<WindowKey, MappedByteBuffer> {
+
+        @Override
+        public void onRemoval(RemovalNotification<WindowKey, MappedByteBuffer> notification) {
+            WindowKey key = notification.getKey();
+            // the window might be already mapped again
+            if (!_windows.asMap().containsKey(key)) {
+                _windowsByInode.computeIfPresent(key._inode, (i, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+
     private LoadingCache<Inode, FileChannel> _cache;
+    private GuavaCacheMXBeanImpl _mxBean;
     private int _maxSize;
     private int _lastAccess;
     private File _base;
+    private String _name = "fs-cache";
+
+    /**
+     * Mapped file windows, or {@code null} if memory mapped reads are disabled.
+     */
+    private LoadingCache<WindowKey, MappedByteBuffer> _windows;
+
+    /**
+     * Mapped windows of each file, to drop them without scanning all windows.
+     */
+    private final ConcurrentMap<Inode, Set<WindowKey>> _windowsByInode = new ConcurrentHashMap<>();
+    private GuavaCacheMXBeanImpl _mmapMxBean;
+    private long _mmapMaxSize;
+    private int _mmapWindowSize = 64 * 1024 * 1024;
+    private long _mmapMinFileSize = 1024 * 1024;
+    private long _mmapMaxFileSize = Long.MAX_VALUE;
+
+    /**
+     * Guards mapping of windows against concurrent truncation of the file.
+     */
+    private final Striped<ReadWriteLock> _truncateLocks =
+            Striped.readWriteLock(Runtime.getRuntime().availableProcessors() * 4);
 
     public void setBase(File base) {
         this._base = base;
@@ -95,16 +216,239 @@ public class FsCache {
     public void setLastAccess(int timeInSec) {
         _lastAccess = timeInSec;
     }
+
+    /**
+     * Set the name used to publish cache metrics.
+     *
+     * @param name cache name.
+     */
+    public void setName(String name) {
+        _name = name;
+    }
+
+    /**
+     * Set the max number of bytes mapped into memory for reads. Zero, the
+     * default, disables memory mapped reads.
+     *
+     * <p> Mapped reads return slices of the mapping, which are referenced by
+     * replies until they are sent. Thus, they should be enabled only if files
+     * are not truncated while being read, see {@link #truncate(Inode, long)}.
+     *
+     * @param maxSize max number of mapped bytes.
+     */
+    public void setMmapMaxSize(long maxSize) {
+        _mmapMaxSize = maxSize;
+    }
+
+    /**
+     * Set the size of a single mapped window of a file.
+     *
+     * @param windowSize window size in bytes.
+     */
+    public void setMmapWindowSize(int windowSize) {
+        _mmapWindowSize = windowSize;
+    }
+
+    /**
+     * Set the range of file sizes, which are read through memory mapping.
+     * Smaller and bigger files are read with {@link FileChannel#read}.
+     *
+     * @param minFileSize smallest file size to map, in bytes.
+     * @param maxFileSize biggest file size to map, in bytes.
+     */
+    public void setMmapFileSizeRange(long minFileSize, long maxFileSize) {
+        _mmapMinFileSize = minFileSize;
+        _mmapMaxFileSize = maxFileSize;
+    }
+
     public void init() {
+        CacheMetrics<Inode, FileChannel> metrics =
+                new CacheMetrics<>((k, v) -> ENTRY_SIZE + k.getFileId().length,
+                        new InodeGarbageCollector(this::invalidate));
         _cache = CacheBuilder.newBuilder()
                 .maximumSize(_maxSize)
                 .expireAfterAccess(_lastAccess, TimeUnit.SECONDS)
-                .removalListener(new InodeGarbageCollector())
-                .build(new FileChannelSupplier(_base));
+                .recordStats()
+                .removalListener(metrics)
+                .build(metrics.timed(new FileChannelSupplier(_base)));
+        _mxBean = new GuavaCacheMXBeanImpl(_name, _cache, metrics);
+
+        if (_mmapMaxSize > 0) {
+            if (_mmapWindowSize <= 0) {
+                throw new IllegalArgumentException("Invalid mmap window size: " + _mmapWindowSize);
+            }
+            CacheMetrics<WindowKey, MappedByteBuffer> mmapMetrics =
+                    new CacheMetrics<>((k, v) -> v.capacity(), new WindowUnindexer());
+            _windows = CacheBuilder.newBuilder()
+                    .maximumWeight(_mmapMaxSize)
+                    .weigher((WindowKey k, MappedByteBuffer v) -> v.capacity())
+                    .recordStats()
+                    .removalListener(mmapMetrics)
+                    .build(mmapMetrics.timed(new WindowMapper()));
+            _mmapMxBean = new GuavaCacheMXBeanImpl(_name + "-mmap", _windows, mmapMetrics);
+        }
+    }
+
+    /**
+     * Unregister cache metrics.
+     */
+    @Override
+    public void close() {
+        if (_mxBean != null) {
+            _mxBean.close();
+        }
+        if (_mmapMxBean != null) {
+            _mmapMxBean.close();
+        }
+        if (_windows != null) {
+            _windows.invalidateAll();
+        }
     }
 
     public FileChannel get(Inode inode) {
         return _cache.getUnchecked(inode);
     }
 
+    /**
+     * Read up to {@code count} bytes of the file starting at {@code offset}.
+     * If memory mapped reads are enabled and the file size is in the configured
+     * range, then returned buffer is a read-only slice of the mapped window,
+     * which covers requested range. Otherwise, data is read into a new buffer.
+     * The returned buffer contains less than {@code count} bytes only at the
+     * end of file.
+     *
+     * @param inode file to read.
+     * @param offset file offset to read from.
+     * @param count number of bytes to read.
+     * @return buffer with data, or {@code null} if offset is beyond end of file.
+     * @throws IOException if read fails.
+     */
+    public ByteBuffer read(Inode inode, long offset, int count) throws IOException {
+
+        FileChannel channel = get(inode);
+
+        if (_windows != null) {
+            Lock lock = _truncateLocks.get(inode).readLock();
+            lock.lock();
+            try {
+                long size = channel.size();
+                if (offset < size && size >= _mmapMinFileSize && size <= _mmapMaxFileSize) {
+                    ByteBuffer data = readMapped(inode, size, offset, count);
+                    if (data != null) {
+                        return data;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(count);
+        if (channel.read(bb, offset) < 0) {
+            return null;
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * Get a slice of the mapped window, or {@code null} if the requested range
+     * crosses window boundary. Must be called with truncate read lock held, so
+     * that {@code size} stays valid.
+     */
+    private ByteBuffer readMapped(Inode inode, long size, long offset, int count) throws IOException {
+
+        long index = offset / _mmapWindowSize;
+        long windowStart = index * _mmapWindowSize;
+        long end = Math.min(offset + count, size);
+
+        if (end > windowStart + _mmapWindowSize) {
+            return null;
+        }
+
+        WindowKey key = new WindowKey(inode, index);
+        MappedByteBuffer window = getWindow(key);
+
+        // the file has grown since the window was mapped, remap only if the read needs the new data
+        if (windowStart + window.capacity() < end && window.capacity() < _mmapWindowSize) {
+            _windows.invalidate(key);
+            window = getWindow(key);
+        }
+
+        if (windowStart + window.capacity() < end) {
+            return null;
+        }
+
+        return window.slice((int) (offset - windowStart), (int) (end - offset)).asReadOnlyBuffer();
+    }
+
+    private MappedByteBuffer getWindow(WindowKey key) throws IOException {
+        try {
+            return _windows.get(key);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Truncate the file to {@code size}, if it's bigger. Mapped windows of the
+     * file are dropped before truncation, while no new windows can be mapped.
+     * Files, which are read through this cache, must be truncated only with
+     * this method.
+     *
+     * <p> Dropping a window only removes it from the cache, the mapping stays
+     * valid as long as it's referenced. A reply in flight, which still references
+     * a slice of a dropped window beyond the new end of file, raises
+     * {@link InternalError}, caused by SIGBUS, on the I/O thread while the reply
+     * is encoded.
+     *
+     * @param inode file to truncate.
+     * @param size new file size.
+     * @throws IOException if truncate fails.
+     */
+    public void truncate(Inode inode, long size) throws IOException {
+        Lock lock = _truncateLocks.get(inode).writeLock();
+        lock.lock();
+        try {
+            invalidate(inode);
+            FileChannel channel = get(inode);
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop all mapped windows of the file. A mapping is released as soon as
+     * it's not referenced by replies in flight.
+     *
+     * @param inode file to invalidate.
+     */
+    public void invalidate(Inode inode) {
+        if (_windows != null) {
+            Set<WindowKey> keys = _windowsByInode.remove(inode);
+            if (keys != null) {
+                _windows.invalidateAll(keys);
+            }
+        }
+    }
+
+    /**
+     * Get number of currently mapped windows.
+     */
+    @VisibleForTesting
+    long mappedWindows() {
+        if (_windows == null) {
+            return 0;
+        }
+        _windows.cleanUp();
+        return _windows.size();
+    }
+
 }
@@ -0,0 +1,1016 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.vfs;
+
+import com.google.common.primitives.Longs;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.security.auth.Subject;
+import org.dcache.nfs.status.ExistException;
+import org.dcache.nfs.status.FBigException;
+import org.dcache.nfs.status.InvalException;
+import org.dcache.nfs.status.IsDirException;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.status.NoSpcException;
+import org.dcache.nfs.status.NoXattrException;
+import org.dcache.nfs.status.NotDirException;
+import org.dcache.nfs.status.NotEmptyException;
+import org.dcache.nfs.status.StaleException;
+import org.dcache.nfs.util.UnixSubjects;
+import org.dcache.nfs.v4.NfsIdMapping;
+import org.dcache.nfs.v4.SimpleIdMap;
+import org.dcache.nfs.v4.xdr.nfsace4;
+
+/**
+ * A {@link VirtualFileSystem} which keeps all objects in memory.
+ *
+ * <p>Inodes are kept in a concurrent table, directories are concurrent sorted maps
+ * and file content is stored in off-heap chunks, which are allocated on first write,
+ * thus sparse files consume only the space which has been written. Lookups, directory
+ * listing and attribute reads do not block each other. Modifications of a directory
+ * or of a file content are serialized per object.
+ *
+ * <p>The file system supports hard and symbolic links, extended attributes and
+ * {@link #copyFileRange}. An artificial latency can be configured for metadata and
+ * for IO operations independently to mimic a remote backend. The total amount of
+ * data can be limited to make the file system usable as a scratch tier.
+ *
+ * @since 0.27
+ */
+public class MemoryFileSystem implements VirtualFileSystem {
+
+    /**
+     * Default size of a data chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Max supported file size.
+     */
+    public static final long MAX_FILE_SIZE = Long.MAX_VALUE;
+
+    /**
+     * First cookie which can be assigned to a directory entry. The values below
+     * are reserved.
+     */
+    private static final long FIRST_COOKIE = 3;
+
+    private static final long ROOT_ID = 1;
+
+    private final ConcurrentMap<Long, Node> _nodes = new ConcurrentHashMap<>();
+    private final AtomicLong _nextId = new AtomicLong(ROOT_ID);
+    private final NfsIdMapping _idMapper = new SimpleIdMap();
+
+    private final int _chunkSize;
+    private final long _capacity;
+    private final AtomicLong _usedSpace = new AtomicLong();
+
+    private volatile long _metadataLatency;
+    private volatile long _ioLatency;
+
+    /**
+     * Create an unbounded file system with default chunk size.
+     */
+    public MemoryFileSystem() {
+        this(Long.MAX_VALUE, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a file system.
+     *
+     * @param capacity the max number of bytes of file content.
+     * @param chunkSize the size of a single data chunk in bytes.
+     */
+    public MemoryFileSystem(long capacity, int chunkSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        }
+        _capacity = capacity;
+        _chunkSize = chunkSize;
+
+        Subject root = UnixSubjects.toSubject(0, 0);
+        Node node = newNode(Stat.Type.DIRECTORY, 0755, root, null);
+        node.parent = node.id;
+    }
+
+    /**
+     * Set an artificial latency added to every metadata operation.
+     *
+     * @param latency the latency to add.
+     */
+    public void setMetadataLatency(Duration latency) {
+        _metadataLatency = latency.toNanos();
+    }
+
+    /**
+     * Set an artificial latency added to every read, write, commit and copy.
+     *
+     * @param latency the latency to add.
+     */
+    public void setIoLatency(Duration latency) {
+        _ioLatency = latency.toNanos();
+    }
+
+    private static void delay(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    /**
+     * Get number of bytes used by file content.
+     *
+     * @return number of bytes in allocated chunks.
+     */
+    public long getUsedSpace() {
+        return _usedSpace.get();
+    }
+
+    /*
+     * inode table
+     */
+    private Node newNode(Stat.Type type, int mode, Subject subject, String link) {
+
+        long id = _nextId.getAndIncrement();
+        long now = System.currentTimeMillis();
+
+        Stat stat = new Stat();
+        stat.setMode(type.toMode() | (mode & 07777));
+        stat.setNlink(type == Stat.Type.DIRECTORY ? 2 : 1);
+        stat.setUid((int) UnixSubjects.getUid(subject));
+        stat.setGid((int) UnixSubjects.getPrimaryGid(subject));
+        stat.setDev(17);
+        stat.setRdev(17);
+        stat.setIno(id);
+        stat.setSize(link == null ? 0 : link.length());
+        stat.setATime(now);
+        stat.setMTime(now);
+        stat.setCTime(now);
+        stat.setBTime(now);
+        stat.setGeneration(0);
+
+        Node node = new Node(id, stat, link);
+        _nodes.put(id, node);
+        return node;
+    }
+
+    private static Inode toInode(Node node) {
+        return Inode.forFile(Longs.toByteArray(node.id));
+    }
+
+    private Node toNode(Inode inode) throws StaleException {
+        byte[] fileId = inode.getFileId();
+        if (fileId.length != Long.BYTES) {
+            throw new StaleException("Invalid file id");
+        }
+        Node node = _nodes.get(Longs.fromByteArray(fileId));
+        if (node == null) {
+            throw new StaleException("Object does not exist");
+        }
+        return node;
+    }
+
+    private Node toDirectory(Inode inode) throws IOException {
+        Node node = toNode(inode);
+        if (node.children == null) {
+            throw new NotDirException();
+        }
+        return node;
+    }
+
+    private Node toFile(Inode inode) throws IOException {
+        Node node = toNode(inode);
+        if (node.data == null) {
+            throw node.children == null ? new InvalException("Not a regular file") : new IsDirException();
+        }
+        return node;
+    }
+
+    /**
+     * Release the object if it's not referenced by any directory. Must be called with
+     * object's write lock held.
+     */
+    private void releaseIfUnlinked(Node node) {
+        int nlink = node.stat.getNlink();
+        if ((node.children == null && nlink == 0) || (node.children != null && nlink <= 1)) {
+            _nodes.remove(node.id);
+            if (node.data != null) {
+                node.data.release();
+            }
+        }
+    }
+
+    private Inode createEntry(Inode parent, Stat.Type type, String name, Subject subject, int mode, String link) throws IOException {
+        delay(_metadataLatency);
+        Node dir = toDirectory(parent);
+        Node node = newNode(type, mode, subject, link);
+        node.parent = dir.id;
+
+        Lock lock = dir.lock.writeLock();
+        lock.lock();
+        try {
+            if (!_nodes.containsKey(dir.id)) {
+                _nodes.remove(node.id);
+                throw new StaleException("Directory removed");
+            }
+            if (dir.children.containsKey(name)) {
+                _nodes.remove(node.id);
+                throw new ExistException("Entry " + name + " exists");
+            }
+            dir.add(name, node.id);
+            if (type == Stat.Type.DIRECTORY) {
+                dir.stat.setNlink(dir.stat.getNlink() + 1);
+            }
+            dir.touch();
+        } finally {
+            lock.unlock();
+        }
+        return toInode(node);
+    }
+
+    @Override
+    public int access(Subject subject, Inode inode, int mode) throws IOException {
+        return mode;
+    }
+
+    @Override
+    public Inode create(Inode parent, Stat.Type type, String name, Subject subject, int mode) throws IOException {
+        return createEntry(parent, type, name, subject, mode, null);
+    }
+
+    @Override
+    public FsStat getFsStat() throws IOException {
+        return new FsStat(_capacity, Long.MAX_VALUE, _usedSpace.get(), _nodes.size());
+    }
+
+    @Override
+    public Inode getRootInode() throws IOException {
+        return toInode(_nodes.get(ROOT_ID));
+    }
+
+    @Override
+    public Inode lookup(Inode parent, String name) throws IOException {
+        delay(_metadataLatency);
+        Node dir = toDirectory(parent);
+        switch (name) {
+            case ".":
+                return parent;
+            case "..":
+                return toInode(_nodes.getOrDefault(dir.parent, dir));
+            default:
+                DirEntry entry = dir.children.get(name);
+                if (entry == null) {
+                    throw new NoEntException("Path " + name + " does not exist");
+                }
+                Node node = _nodes.get(entry.id);
+                if (node == null) {
+                    throw new NoEntException("Path " + name + " does not exist");
+                }
+                return toInode(node);
+        }
+    }
+
+    @Override
+    public Inode link(Inode parent, Inode link, String name, Subject subject) throws IOException {
+        delay(_metadataLatency);
+        Node dir = toDirectory(parent);
+        Node node = toNode(link);
+        if (node.children != null) {
+            throw new IsDirException("Hard links to directories are not allowed");
+        }
+
+        Lock dirLock = dir.lock.writeLock();
+        dirLock.lock();
+        try {
+            if (dir.children.containsKey(name)) {
+                throw new ExistException("Entry " + name + " exists");
+            }
+            Lock nodeLock = node.lock.writeLock();
+            nodeLock.lock();
+            try {
+                if (node.stat.getNlink() == 0) {
+                    throw new StaleException("Object removed");
+                }
+                node.stat.setNlink(node.stat.getNlink() + 1);
+                node.parent = dir.id;
+                node.touchAttributes();
+            } finally {
+                nodeLock.unlock();
+            }
+            dir.add(name, node.id);
+            dir.touch();
+        } finally {
+            dirLock.unlock();
+        }
+        return link;
+    }
+
+    @Override
+    public DirectoryStream list(Inode inode, byte[] verifier, long cookie) throws IOException {
+        delay(_metadataLatency);
+        Node dir = toDirectory(inode);
+        List<DirectoryEntry> list = new ArrayList<>();
+        for (Map.Entry<Long, String> e : dir.cookies.tailMap(cookie, false).entrySet()) {
+            DirEntry entry = dir.children.get(e.getValue());
+            if (entry == null || entry.cookie != e.getKey()) {
+                // removed or replaced concurrently
+                continue;
+            }
+            Node node = _nodes.get(entry.id);
+            if (node != null) {
+                list.add(new DirectoryEntry(e.getValue(), toInode(node), node.statCopy(), e.getKey()));
+            }
+        }
+        return new DirectoryStream(dir.verifier, list);
+    }
+
+    @Override
+    public byte[] directoryVerifier(Inode inode) throws IOException {
+        return toDirectory(inode).verifier;
+    }
+
+    @Override
+    public Inode mkdir(Inode parent, String name, Subject subject, int mode) throws IOException {
+        return createEntry(parent, Stat.Type.DIRECTORY, name, subject, mode, null);
+    }
+
+    @Override
+    public boolean move(Inode src, String oldName, Inode dest, String newName) throws IOException {
+        delay(_metadataLatency);
+        Node srcDir = toDirectory(src);
+        Node destDir = toDirectory(dest);
+
+        // lock ordering by id to avoid deadlocks
+        Node first = srcDir.id <= destDir.id ? srcDir : destDir;
+        Node second = first == srcDir ? destDir : srcDir;
+        first.lock.writeLock().lock();
+        second.lock.writeLock().lock();
+        try {
+            DirEntry entry = srcDir.children.get(oldName);
+            if (entry == null) {
+                throw new NoEntException("Path " + oldName + " does not exist");
+            }
+            Node node = _nodes.get(entry.id);
+            if (node == null) {
+                throw new NoEntException("Path " + oldName + " does not exist");
+            }
+
+            // validate everything before modifying any directory
+            DirEntry existing = destDir.children.get(newName);
+            Node target = null;
+            if (existing != null) {
+                if (existing.id == entry.id) {
+                    return false;
+                }
+                target = _nodes.get(existing.id);
+                if (target != null) {
+                    if ((target.children == null) != (node.children == null)) {
+                        throw target.children == null ? new NotDirException() : new IsDirException();
+                    }
+                    if (target.children != null && !target.children.isEmpty()) {
+                        throw new NotEmptyException();
+                    }
+                }
+            }
+
+            if (node.children != null && isAncestor(node, destDir)) {
+                throw new InvalException("Can't move directory into itself");
+            }
+
+            if (target != null) {
+                unlink(destDir, newName, target);
+            }
+
+            srcDir.remove(oldName);
+            destDir.add(newName, node.id);
+            if (node.children != null && srcDir != destDir) {
+                srcDir.stat.setNlink(srcDir.stat.getNlink() - 1);
+                destDir.stat.setNlink(destDir.stat.getNlink() + 1);
+            }
+            node.parent = destDir.id;
+            srcDir.touch();
+            destDir.touch();
+            return true;
+        } finally {
+            second.lock.writeLock().unlock();
+            first.lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isAncestor(Node dir, Node node) {
+        Node n = node;
+        while (true) {
+            if (n.id == dir.id) {
+                return true;
+            }
+            if (n.id == ROOT_ID) {
+                return false;
+            }
+            n = _nodes.get(n.parent);
+            if (n == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Remove entry {@code name} pointing to {@code node} from directory. Must be
+     * called with directory's write lock held.
+     */
+    private void unlink(Node dir, String name, Node node) {
+        dir.remove(name);
+        if (node.children != null) {
+            dir.stat.setNlink(dir.stat.getNlink() - 1);
+        }
+        Lock lock = node.lock.writeLock();
+        lock.lock();
+        try {
+            node.stat.setNlink(node.stat.getNlink() - 1);
+            node.touchAttributes();
+            releaseIfUnlinked(node);
+        } finally {
+            lock.unlock();
+        }
+        dir.touch();
+    }
+
+    @Override
+    public Inode parentOf(Inode inode) throws IOException {
+        Node node = toNode(inode);
+        return toInode(_nodes.getOrDefault(node.parent, node));
+    }
+
+    @Override
+    public int read(Inode inode, byte[] data, long offset, int count) throws IOException {
+        return read(inode, ByteBuffer.wrap(data, 0, count), offset);
+    }
+
+    @Override
+    public int read(Inode inode, ByteBuffer data, long offset) throws IOException {
+        delay(_ioLatency);
+        Node node = toFile(inode);
+        Lock lock = node.lock.readLock();
+        lock.lock();
+        try {
+            return node.data.read(data, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String readlink(Inode inode) throws IOException {
+        delay(_metadataLatency);
+        Node node = toNode(inode);
+        if (node.link == null) {
+            throw new InvalException("Not a symbolic link");
+        }
+        return node.link;
+    }
+
+    @Override
+    public void remove(Inode parent, String name) throws IOException {
+        delay(_metadataLatency);
+        Node dir = toDirectory(parent);
+        Lock lock = dir.lock.writeLock();
+        lock.lock();
+        try {
+            DirEntry entry = dir.children.get(name);
+            if (entry == null) {
+                throw new NoEntException("Path " + name + " does not exist");
+            }
+            Node node = _nodes.get(entry.id);
+            if (node == null) {
+                dir.remove(name);
+                return;
+            }
+            if (node.children != null && !node.children.isEmpty()) {
+                throw new NotEmptyException();
+            }
+            unlink(dir, name, node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Inode symlink(Inode parent, String name, String link, Subject subject, int mode) throws IOException {
+        return createEntry(parent, Stat.Type.SYMLINK, name, subject, mode, link);
+    }
+
+    @Override
+    public WriteResult write(Inode inode, byte[] data, long offset, int count, StabilityLevel stabilityLevel) throws IOException {
+        return write(inode, ByteBuffer.wrap(data, 0, count), offset, stabilityLevel);
+    }
+
+    @Override
+    public WriteResult write(Inode inode, ByteBuffer data, long offset, StabilityLevel stabilityLevel) throws IOException {
+        delay(_ioLatency);
+        Node node = toFile(inode);
+        Lock lock = node.lock.writeLock();
+        lock.lock();
+        try {
+            int n = node.data.write(data, offset);
+            node.stat.setSize(node.data.size());
+            node.touch();
+            // memory is as stable as it gets
+            return new WriteResult(StabilityLevel.FILE_SYNC, n);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void commit(Inode inode, long offset, int count) throws IOException {
+        delay(_ioLatency);
+        toNode(inode);
+    }
+
+    @Override
+    public Stat getattr(Inode inode) throws IOException {
+        delay(_metadataLatency);
+        return toNode(inode).statCopy();
+    }
+
+    @Override
+    public void setattr(Inode inode, Stat stat) throws IOException {
+        delay(_metadataLatency);
+        Node node = toNode(inode);
+        Lock lock = node.lock.writeLock();
+        lock.lock();
+        try {
+            if (stat.isDefined(Stat.StatAttribute.SIZE)) {
+                if (node.data == null) {
+                    throw node.children == null ? new InvalException("Not a regular file") : new IsDirException();
+                }
+                node.data.truncate(stat.getSize());
+                node.stat.setSize(stat.getSize());
+                node.stat.setMTime(System.currentTimeMillis());
+            }
+            if (stat.isDefined(Stat.StatAttribute.MODE)) {
+                node.stat.setMode((node.stat.getMode() & ~07777) | (stat.getMode() & 07777));
+            }
+            if (stat.isDefined(Stat.StatAttribute.OWNER)) {
+                node.stat.setUid(stat.getUid());
+            }
+            if (stat.isDefined(Stat.StatAttribute.GROUP)) {
+                node.stat.setGid(stat.getGid());
+            }
+            if (stat.isDefined(Stat.StatAttribute.ATIME)) {
+                node.stat.setATime(stat.getATime());
+            }
+            if (stat.isDefined(Stat.StatAttribute.MTIME)) {
+                node.stat.setMTime(stat.getMTime());
+            }
+            node.touchAttributes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public nfsace4[] getAcl(Inode inode) throws IOException {
+        return new nfsace4[0];
+    }
+
+    @Override
+    public void setAcl(Inode inode, nfsace4[] acl) throws IOException {
+        // NOP
+    }
+
+    @Override
+    public boolean hasIOLayout(Inode inode) throws IOException {
+        return false;
+    }
+
+    @Override
+    public AclCheckable getAclCheckable() {
+        return AclCheckable.UNDEFINED_ALL;
+    }
+
+    @Override
+    public NfsIdMapping getIdMapper() {
+        return _idMapper;
+    }
+
+    @Override
+    public boolean getCaseInsensitive() {
+        return false;
+    }
+
+    @Override
+    public boolean getCasePreserving() {
+        return true;
+    }
+
+    @Override
+    public byte[] getXattr(Inode inode, String attr) throws IOException {
+        delay(_metadataLatency);
+        byte[] value = toNode(inode).xattrs.get(attr);
+        if (value == null) {
+            throw new NoXattrException("Attribute " + attr + " not set");
+        }
+        return value.clone();
+    }
+
+    @Override
+    public void setXattr(Inode inode, String attr, byte[] value, SetXattrMode mode) throws IOException {
+        delay(_metadataLatency);
+        Node node = toNode(inode);
+        byte[] copy = value.clone();
+        switch (mode) {
+            case CREATE:
+                if (node.xattrs.putIfAbsent(attr, copy) != null) {
+                    throw new ExistException("Attribute " + attr + " exists");
+                }
+                break;
+            case REPLACE:
+                if (node.xattrs.replace(attr, copy) == null) {
+                    throw new NoXattrException("Attribute " + attr + " not set");
+                }
+                break;
+            case EITHER:
+                node.xattrs.put(attr, copy);
+                break;
+        }
+        touchAttributes(node);
+    }
+
+    @Override
+    public String[] listXattrs(Inode inode) throws IOException {
+        delay(_metadataLatency);
+        return toNode(inode).xattrs.keySet().toArray(String[]::new);
+    }
+
+    @Override
+    public void removeXattr(Inode inode, String attr) throws IOException {
+        delay(_metadataLatency);
+        Node node = toNode(inode);
+        if (node.xattrs.remove(attr) == null) {
+            throw new NoXattrException("Attribute " + attr + " not set");
+        }
+        touchAttributes(node);
+    }
+
+    private static void touchAttributes(Node node) {
+        Lock lock = node.lock.writeLock();
+        lock.lock();
+        try {
+            node.touchAttributes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The copy is performed synchronously between off-heap chunks. A {@code len}
+     * of zero copies all data up to the end of the source file.
+     */
+    @Override
+    public CompletableFuture<Long> copyFileRange(Inode src, long srcPos, Inode dst, long dstPos, long len) {
+        try {
+            delay(_ioLatency);
+            Node from = toFile(src);
+            Node to = toFile(dst);
+
+            // lock ordering by id to avoid deadlocks
+            Lock first;
+            Lock second;
+            if (from == to) {
+                first = from.lock.writeLock();
+                second = null;
+            } else if (from.id < to.id) {
+                first = from.lock.readLock();
+                second = to.lock.writeLock();
+            } else {
+                first = to.lock.writeLock();
+                second = from.lock.readLock();
+            }
+
+            first.lock();
+            try {
+                if (second != null) {
+                    second.lock();
+                }
+                try {
+                    long available = Math.max(0, from.data.size() - srcPos);
+                    long toCopy = len == 0 ? available : Math.min(len, available);
+                    ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(_chunkSize, Math.max(toCopy, 1)));
+
+                    // overlapping ranges within the same file must be copied from the end
+                    boolean backward = from == to && dstPos > srcPos;
+                    long copied = 0;
+                    while (copied < toCopy) {
+                        int chunk = (int) Math.min(buf.capacity(), toCopy - copied);
+                        long pos = backward ? toCopy - copied - chunk : copied;
+                        buf.clear();
+                        buf.limit(chunk);
+                        int n = from.data.read(buf, srcPos + pos);
+                        if (n <= 0) {
+                            break;
+                        }
+                        buf.flip();
+                        to.data.write(buf, dstPos + pos);
+                        copied += n;
+                    }
+                    to.stat.setSize(to.data.size());
+                    to.touch();
+                    return CompletableFuture.completedFuture(copied);
+                } finally {
+                    if (second != null) {
+                        second.unlock();
+                    }
+                }
+            } finally {
+                first.unlock();
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * A directory entry.
+     */
+    private static class DirEntry {
+
+        private final long id;
+        private final long cookie;
+
+        DirEntry(long id, long cookie) {
+            this.id = id;
+            this.cookie = cookie;
+        }
+    }
+
+    /**
+     * A file system object.
+     */
+    private class Node {
+
+        private final long id;
+        private final Stat stat;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, byte[]> xattrs = new ConcurrentHashMap<>();
+
+        /**
+         * Parent directory. For files with multiple hard links, the most recent one.
+         */
+        private volatile long parent;
+
+        /**
+         * Directory entries sorted by name, {@code null} if not a directory.
+         */
+        private final ConcurrentNavigableMap<String, DirEntry> children;
+
+        /**
+         * Entry names sorted by their cookie. Cookies are never reused, thus directory
+         * listing can be continued after concurrent modifications.
+         */
+        private final ConcurrentNavigableMap<Long, String> cookies;
+        private long nextCookie = FIRST_COOKIE;
+        private final byte[] verifier;
+
+        /**
+         * File content, {@code null} if not a regular file.
+         */
+        private final FileData data;
+
+        /**
+         * Symbolic link target, {@code null} if not a symbolic link.
+         */
+        private final String link;
+
+        Node(long id, Stat stat, String link) {
+            this.id = id;
+            this.stat = stat;
+            this.link = link;
+            Stat.Type type = stat.type();
+            if (type == Stat.Type.DIRECTORY) {
+                children = new ConcurrentSkipListMap<>();
+                cookies = new ConcurrentSkipListMap<>();
+                verifier = Arrays.copyOf(Longs.toByteArray(id), DirectoryStream.ZERO_VERIFIER.length);
+            } else {
+                children = null;
+                cookies = null;
+                verifier = null;
+            }
+            data = type == Stat.Type.REGULAR ? new FileData() : null;
+        }
+
+        Stat statCopy() {
+            Lock l = lock.readLock();
+            l.lock();
+            try {
+                return stat.clone();
+            } finally {
+                l.unlock();
+            }
+        }
+
+        /**
+         * Add directory entry. Must be called with write lock held.
+         */
+        void add(String name, long child) {
+            long cookie = nextCookie++;
+            children.put(name, new DirEntry(child, cookie));
+            cookies.put(cookie, name);
+        }
+
+        /**
+         * Remove directory entry. Must be called with write lock held.
+         */
+        void remove(String name) {
+            DirEntry entry = children.remove(name);
+            if (entry != null) {
+                cookies.remove(entry.cookie);
+            }
+        }
+
+        /**
+         * Update modification time and change id. Must be called with write lock held.
+         */
+        void touch() {
+            long now = System.currentTimeMillis();
+            stat.setMTime(now);
+            stat.setCTime(now);
+            stat.setGeneration(stat.getGeneration() + 1);
+        }
+
+        /**
+         * Update attribute change time and change id. Must be called with write lock held.
+         */
+        void touchAttributes() {
+            stat.setCTime(System.currentTimeMillis());
+            stat.setGeneration(stat.getGeneration() + 1);
+        }
+    }
+
+    /**
+     * File content stored in off-heap chunks indexed by their position in the file.
+     * Chunks are allocated on first write and released on truncate, holes don't
+     * consume any memory. Not thread safe, the access is guarded by the file lock.
+     */
+    private class FileData {
+
+        private final NavigableMap<Long, ByteBuffer> chunks = new TreeMap<>();
+        private long size;
+
+        long size() {
+            return size;
+        }
+
+        int read(ByteBuffer dst, long offset) {
+            if (offset >= size) {
+                return dst.hasRemaining() ? -1 : 0;
+            }
+
+            int count = (int) Math.min(dst.remaining(), size - offset);
+            int done = 0;
+            while (done < count) {
+                long pos = offset + done;
+                int inChunk = (int) (pos % _chunkSize);
+                int n = Math.min(count - done, _chunkSize - inChunk);
+                ByteBuffer chunk = chunks.get(pos / _chunkSize);
+                if (chunk == null) {
+                    // a hole
+                    for (int i = 0; i < n; i++) {
+                        dst.put((byte) 0);
+                    }
+                } else {
+                    dst.put(chunk.duplicate().position(inChunk).limit(inChunk + n));
+                }
+                done += n;
+            }
+            return count;
+        }
+
+        int write(ByteBuffer src, long offset) throws FBigException, NoSpcException {
+            int count = src.remaining();
+            // negative offsets are unsigned values beyond the max file size
+            if (offset < 0 || offset > MAX_FILE_SIZE - count) {
+                throw new FBigException("Write beyond max file size");
+            }
+
+            long end = offset + count;
+            if (count > 0) {
+                // allocate all missing chunks first, so that a full file system leaves the file unchanged
+                long firstChunk = offset / _chunkSize;
+                long lastChunk = (end - 1) / _chunkSize;
+                List<Long> allocated = new ArrayList<>();
+                for (long i = firstChunk; i <= lastChunk; i++) {
+                    if (!chunks.containsKey(i)) {
+                        try {
+                            chunks.put(i, allocateChunk());
+                            allocated.add(i);
+                        } catch (NoSpcException e) {
+                            allocated.forEach(chunks::remove);
+                            _usedSpace.addAndGet(-(long) allocated.size() * _chunkSize);
+                            throw e;
+                        }
+                    }
+                }
+            }
+
+            int done = 0;
+            while (done < count) {
+                long pos = offset + done;
+                int inChunk = (int) (pos % _chunkSize);
+                int n = Math.min(count - done, _chunkSize - inChunk);
+                ByteBuffer chunk = chunks.get(pos / _chunkSize);
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + n);
+                chunk.duplicate().position(inChunk).put(slice);
+                src.position(src.position() + n);
+                done += n;
+            }
+
+            size = Math.max(size, end);
+            return count;
+        }
+
+        void truncate(long newSize) throws FBigException {
+            // negative sizes are unsigned values beyond the max file size
+            if (newSize < 0) {
+                throw new FBigException("Size beyond max file size");
+            }
+
+            // release every chunk past the new end, even if it's beyond the current size
+            long keep = newSize / _chunkSize + (newSize % _chunkSize == 0 ? 0 : 1);
+            NavigableMap<Long, ByteBuffer> released = chunks.tailMap(keep, true);
+            _usedSpace.addAndGet(-(long) released.size() * _chunkSize);
+            released.clear();
+
+            if (newSize < size) {
+                // zero the tail of the last chunk, as it might become visible after extending the file
+                int inChunk = (int) (newSize % _chunkSize);
+                ByteBuffer last = inChunk == 0 ? null : chunks.get(keep - 1);
+                if (last != null) {
+                    ByteBuffer chunk = last.duplicate();
+                    chunk.position(inChunk);
+                    while (chunk.hasRemaining()) {
+                        chunk.put((byte) 0);
+                    }
+                }
+            }
+            size = newSize;
+        }
+
+        /**
+         * Release all chunks.
+         */
+        void release() {
+            _usedSpace.addAndGet(-(long) chunks.size() * _chunkSize);
+            chunks.clear();
+            size = 0;
+        }
+
+        private ByteBuffer allocateChunk() throws NoSpcException {
+            long used = _usedSpace.addAndGet(_chunkSize);
+            if (used > _capacity) {
+                _usedSpace.addAndGet(-_chunkSize);
+                throw new NoSpcException("File system is full");
+            }
+            return ByteBuffer.allocateDirect(_chunkSize);
+        }
+    }
+}
@@ -26,12 +26,14 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import javax.security.auth.Subject;
+import org.dcache.nfs.util.CacheMetrics;
 import org.dcache.nfs.util.GuavaCacheMXBeanImpl;
 import org.dcache.nfs.util.Opaque;
 
@@ -40,7 +42,17 @@ import static java.util.Objects.requireNonNull;
 /**
  * Caching decorator.
  */
-public class VfsCache extends ForwardingFileSystem {
+public class VfsCache extends ForwardingFileSystem implements Closeable {
+
+    /**
+     * Rough estimate of a {@link Stat} footprint in bytes.
+     */
+    private static final long STAT_SIZE = 160;
+
+    /**
+     * Rough estimate of the object overhead of an {@link Inode} or a cache key in bytes.
+     */
+    private static final long OBJECT_SIZE = 48;
 
     private final LoadingCache<CacheKey, Inode> _lookupCache;
     private final Cache<Opaque, Stat> _statCache;
@@ -51,20 +63,36 @@ public class VfsCache extends ForwardingFileSystem {
 
     private final VirtualFileSystem _inner;
 
+    private final CacheMetrics<CacheKey, Inode> _lookupMetrics;
+    private final CacheMetrics<Opaque, Stat> _statMetrics;
+    private final CacheMetrics<Inode, Inode> _parentMetrics;
+    private final CacheMetrics<InodeCacheEntry, DirectoryStream> _readdirMetrics;
+
+    private final GuavaCacheMXBeanImpl[] _mxBeans;
+
     public VfsCache(VirtualFileSystem inner, VfsCacheConfig cacheConfig) {
         _inner = inner;
+
+        _lookupMetrics = new CacheMetrics<>((k, v) -> 2 * OBJECT_SIZE + 2L * k.getName().length()
+                + sizeOf(k.getParent()) + sizeOf(v));
+        _statMetrics = new CacheMetrics<>((k, v) -> OBJECT_SIZE + k.getOpaque().length + STAT_SIZE);
+        _parentMetrics = new CacheMetrics<>((k, v) -> sizeOf(k) + sizeOf(v));
+        _readdirMetrics = new CacheMetrics<>((k, v) -> sizeOf(k._inode) + k._verifier.length + sizeOf(v));
+
 	_lookupCache = CacheBuilder.newBuilder()
 		.maximumSize(cacheConfig.getMaxEntries())
 		.expireAfterWrite(cacheConfig.getLifeTime(), cacheConfig.getTimeUnit())
 		.softValues()
                 .recordStats()
-		.build(new LoockupLoader());
+                .removalListener(_lookupMetrics)
+		.build(_lookupMetrics.timed(new LoockupLoader()));
 
 	_statCache = CacheBuilder.newBuilder()
 		.maximumSize(cacheConfig.getMaxEntries())
 		.expireAfterWrite(cacheConfig.getLifeTime(), cacheConfig.getTimeUnit())
 		.softValues()
                 .recordStats()
+                .removalListener(_statMetrics)
 		.build();
 
         _parentCache = CacheBuilder.newBuilder()
@@ -72,23 +100,53 @@ public class VfsCache extends ForwardingFileSystem {
                 .expireAfterWrite(100, TimeUnit.MILLISECONDS)
                 .softValues()
                 .recordStats()
-                .build(new ParentLoader());
+                .removalListener(_parentMetrics)
+                .build(_parentMetrics.timed(new ParentLoader()));
 
         _readdirCache = CacheBuilder.newBuilder()
                 .maximumSize(cacheConfig.getReaddirMaxEntries())
                 .expireAfterWrite(cacheConfig.getReaddirLifeTime(), cacheConfig.getReaddirLifeTimeUnit())
                 .softValues()
                 .recordStats()
+                .removalListener(_readdirMetrics)
                 .build();
 
         _fsStatSupplier = cacheConfig.getFsStatLifeTime() > 0 ?
                 Suppliers.memoizeWithExpiration(new FsStatSupplier(), cacheConfig.getFsStatLifeTime(), cacheConfig.getFsSataTimeUnit()) :
                 new FsStatSupplier();
 
-        new GuavaCacheMXBeanImpl("vfs-stat", _statCache);
-        new GuavaCacheMXBeanImpl("vfs-parent", _parentCache);
-        new GuavaCacheMXBeanImpl("vfs-lookup", _lookupCache);
-        new GuavaCacheMXBeanImpl("vfs-readdir", _readdirCache);
+        String name = cacheConfig.getName();
+        _mxBeans = new GuavaCacheMXBeanImpl[] {
+            new GuavaCacheMXBeanImpl(name + "-stat", _statCache, _statMetrics),
+            new GuavaCacheMXBeanImpl(name + "-parent", _parentCache, _parentMetrics),
+            new GuavaCacheMXBeanImpl(name + "-lookup", _lookupCache, _lookupMetrics),
+            new GuavaCacheMXBeanImpl(name + "-readdir", _readdirCache, _readdirMetrics)
+        };
+    }
+
+    /**
+     * Unregister cache metrics of this instance.
+     */
+    @Override
+    public void close() {
+        for (GuavaCacheMXBeanImpl mxBean : _mxBeans) {
+            mxBean.close();
+        }
+    }
+
+    private static long sizeOf(Inode inode) {
+        return OBJECT_SIZE + inode.getFileId().length;
+    }
+
+    private static long sizeOf(DirectoryStream directoryStream) {
+        long size = OBJECT_SIZE;
+        for (DirectoryEntry entry : directoryStream) {
+            size += OBJECT_SIZE + 2L * entry.getName().length() + sizeOf(entry.getInode());
+            if (entry.getStat() != null) {
+                size += STAT_SIZE;
+            }
+        }
+        return size;
     }
 
     @Override
@@ -244,7 +302,14 @@ public class VfsCache extends ForwardingFileSystem {
 
     private Stat statFromCacheOrLoad(final Inode inode) throws IOException {
 	try {
-	    return _statCache.get(new Opaque(inode.getFileId()), () -> _inner.getattr(inode));
+	    return _statCache.get(new Opaque(inode.getFileId()), () -> {
+                long start = System.nanoTime();
+                try {
+                    return _inner.getattr(inode);
+                } finally {
+                    _statMetrics.recordLoad(System.nanoTime() - start);
+                }
+            });
 	} catch (ExecutionException e) {
 	    Throwable t = e.getCause();
 	    Throwables.throwIfInstanceOf(t, IOException.class);
@@ -374,7 +439,9 @@ public class VfsCache extends ForwardingFileSystem {
         DirectoryStream directoryStream = _readdirCache.getIfPresent(cacheKey);
         if (directoryStream == null) {
             // ask always for list from the beginning
+            long start = System.nanoTime();
             directoryStream = delegate().list(inode, DirectoryStream.ZERO_VERIFIER, 0L);
+            _readdirMetrics.recordLoad(System.nanoTime() - start);
             cacheKey = new InodeCacheEntry(inode, directoryStream.getVerifier());
             _readdirCache.put(cacheKey, directoryStream);
         }
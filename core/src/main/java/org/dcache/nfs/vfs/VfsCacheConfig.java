@@ -26,6 +26,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class VfsCacheConfig {
 
+    private String name = "vfs";
     private int maxEntries = 0;
     private long lifeTime = 0;
     private TimeUnit timeUnit = TimeUnit.SECONDS;
@@ -36,6 +37,14 @@ public class VfsCacheConfig {
     private TimeUnit readdirLifeTimeUnit = TimeUnit.SECONDS;
     private int readdirMaxEntries;
 
+    /**
+     * Get the name used to publish cache metrics.
+     * @return cache name
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * Get maximal number of entries in the cache.
      * @return maximal number of entries
@@ -102,6 +111,15 @@ public class VfsCacheConfig {
         return readdirMaxEntries;
     }
 
+    /**
+     * Set the name used to publish cache metrics. Caches of different
+     * {@link VfsCache} instances should use different names.
+     * @param name
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
     /**
      * Set maximal number of entries in the cache.
      * @param maxEntries
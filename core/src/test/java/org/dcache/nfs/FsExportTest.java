@@ -261,6 +261,21 @@ public class FsExportTest {
         assertTrue("No layout types expected", export.getLayoutTypes().isEmpty());
     }
 
+    @Test
+    public void testPlacementOption() throws Exception {
+        FsExport export = _exportFile.getExport("/placement", InetAddress.getByName("172.16.1.1"));
+        assertEquals(FsExport.Placement.ROTATED, export.getPlacement());
+
+        export = _exportFile.getExport("/placement", InetAddress.getByName("172.16.2.1"));
+        assertEquals(FsExport.Placement.BOUNDED_LOAD, export.getPlacement());
+    }
+
+    @Test
+    public void testDefaultPlacement() throws Exception {
+        FsExport export = _exportFile.getExport("/placement", InetAddress.getByName("172.16.3.1"));
+        assertEquals(FsExport.Placement.ROUND_ROBIN, export.getPlacement());
+    }
+
     @Test
     public void testMultipleMatchOrder() throws IOException {
 
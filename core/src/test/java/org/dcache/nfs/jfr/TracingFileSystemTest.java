@@ -0,0 +1,105 @@
+package org.dcache.nfs.jfr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class TracingFileSystemTest {
+
+    private VirtualFileSystem vfs;
+    private Inode inode;
+
+    @Before
+    public void setUp() {
+        vfs = mock(VirtualFileSystem.class);
+        inode = Inode.forFile(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void shouldEmitVfsEvents() throws Exception {
+
+        given(vfs.lookup(any(), eq("missing"))).willThrow(new NoEntException());
+        VirtualFileSystem tracing = new TracingFileSystem(vfs);
+
+        List<RecordedEvent> events = record(() -> {
+            tracing.getattr(inode);
+            try {
+                tracing.lookup(inode, "missing");
+                fail("exception not propagated");
+            } catch (NoEntException e) {
+                // expected
+            }
+        });
+
+        assertEquals(2, events.size());
+        assertEquals("getattr", events.get(0).getString("method"));
+        assertFalse(events.get(0).getBoolean("failed"));
+        assertEquals("lookup", events.get(1).getString("method"));
+        assertTrue(events.get(1).getBoolean("failed"));
+    }
+
+    @Test
+    public void shouldReportCallsToListener() throws Exception {
+
+        given(vfs.lookup(any(), eq("missing"))).willThrow(new NoEntException());
+        List<String> calls = new ArrayList<>();
+        VirtualFileSystem tracing = new TracingFileSystem(vfs,
+                (method, duration, failed) -> calls.add(method + ":" + failed));
+
+        tracing.getattr(inode);
+        try {
+            tracing.lookup(inode, "missing");
+            fail("exception not propagated");
+        } catch (NoEntException e) {
+            // expected
+        }
+
+        assertEquals(List.of("getattr:false", "lookup:true"), calls);
+    }
+
+    @Test
+    public void shouldProvideSettingsProfile() throws Exception {
+        Configuration configuration = NfsJfrSettings.getConfiguration();
+        assertEquals("true", configuration.getSettings().get("org.dcache.nfs.Compound#enabled"));
+        assertEquals("true", configuration.getSettings().get("org.dcache.nfs.VfsCall#enabled"));
+    }
+
+    private interface VfsCalls {
+        void run() throws IOException;
+    }
+
+    private static List<RecordedEvent> record(VfsCalls calls) throws IOException {
+        Path file = Files.createTempFile("nfs4j", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(VfsCallEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            calls.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("org.dcache.nfs.VfsCall"))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.dcache.nfs.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.CompoundBuilder;
+import org.dcache.nfs.v4.Stateids;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.COMPOUND4res;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.dcache.nfs.v4.NfsTestUtils.generateFileHandle;
+import static org.dcache.nfs.v4.NfsTestUtils.generateRpcCall;
+import static org.junit.Assert.*;
+
+public class CallRecorderTest {
+
+    private ByteArrayOutputStream out;
+    private CallRecorder recorder;
+    private RpcCall call;
+
+    @Before
+    public void setUp() throws IOException {
+        out = new ByteArrayOutputStream();
+        recorder = new CallRecorder(out, 16);
+        call = generateRpcCall();
+    }
+
+    @Test
+    public void testEncodeKeepsWriteBuffer() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        COMPOUND4args args = new CompoundBuilder()
+                .withPutfh(generateFileHandle())
+                .withWrite(0, data, Stateids.ZeroStateId())
+                .build();
+
+        assertNotNull(recorder.encode(args));
+        assertEquals(4, args.argarray[1].opwrite.data.remaining());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        sessionid4 session = new sessionid4(new byte[nfs4_prot.NFS4_SESSIONID_SIZE]);
+        session.value[0] = 7;
+
+        COMPOUND4args args = new CompoundBuilder()
+                .withSequence(false, session, 0, 0, 0)
+                .withPutfh(generateFileHandle())
+                .withGetattr(nfs4_prot.FATTR4_SIZE)
+                .build();
+
+        COMPOUND4res res = new COMPOUND4res();
+        res.status = nfsstat.NFSERR_NOENT;
+        res.resarray = new ArrayList<>();
+
+        long start = System.nanoTime();
+        recorder.recordCompound(call, start, recorder.encode(args), args, res);
+        recorder.close();
+
+        assertEquals(1, recorder.getRecorded());
+        assertEquals(0, recorder.getDropped());
+
+        try (CallLogReader reader = new CallLogReader(new ByteArrayInputStream(out.toByteArray()))) {
+            CallRecord record = reader.next();
+            assertNotNull(record);
+            assertEquals(nfs4_prot.NFS4_PROGRAM, record.getProgram());
+            assertEquals(nfs4_prot.NFSPROC4_COMPOUND_4, record.getProcedure());
+            assertEquals(nfsstat.NFSERR_NOENT, record.getStatus());
+            assertArrayEquals(session.value, record.getSession());
+            assertEquals(String.valueOf(call.getTransport().getRemoteSocketAddress()), record.getClient());
+            assertEquals(0, record.getStateids().length);
+
+            COMPOUND4args decoded = new COMPOUND4args();
+            try (Xdr xdr = new Xdr(record.getArgs())) {
+                xdr.beginDecoding();
+                decoded.xdrDecode(xdr);
+            }
+            assertEquals(3, decoded.argarray.length);
+            assertEquals(nfs_opnum4.OP_GETATTR, decoded.argarray[2].argop);
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testStateids() throws IOException {
+        stateid4 stateid = new stateid4(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, 3);
+        recorder.record(call, System.nanoTime(), CallRecord.UNKNOWN_STATUS, null, new stateid4[]{stateid}, new byte[]{0, 0, 0, 0});
+        recorder.close();
+
+        try (CallLogReader reader = new CallLogReader(new ByteArrayInputStream(out.toByteArray()))) {
+            CallRecord record = reader.next();
+            assertEquals(CallRecord.UNKNOWN_STATUS, record.getStatus());
+            assertEquals(0, record.getSession().length);
+            assertEquals(1, record.getStateids().length);
+            assertTrue(stateid.equalsWithSeq(record.getStateids()[0]));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotALog() throws IOException {
+        new CallLogReader(new ByteArrayInputStream(new byte[16]));
+    }
+}
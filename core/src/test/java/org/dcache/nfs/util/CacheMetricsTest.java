@@ -0,0 +1,68 @@
+package org.dcache.nfs.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheMetricsTest {
+
+    private CacheMetrics<String, String> metrics;
+    private LoadingCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        metrics = new CacheMetrics<>((k, v) -> k.length() + v.length());
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(2)
+                .recordStats()
+                .removalListener(metrics)
+                .build(metrics.timed(CacheLoader.from(String::toUpperCase)));
+    }
+
+    @Test
+    public void shouldRecordLoadLatency() {
+        cache.getUnchecked("a");
+        cache.getUnchecked("a");
+        cache.getUnchecked("b");
+
+        assertEquals(2, metrics.getLoadLatency().getCount());
+    }
+
+    @Test
+    public void shouldCountRemovalsByCause() {
+        cache.getUnchecked("a");
+        cache.getUnchecked("b");
+        cache.getUnchecked("c");
+        cache.invalidate("c");
+
+        assertEquals(1, metrics.getRemovals(RemovalCause.SIZE));
+        assertEquals(1, metrics.getRemovals(RemovalCause.EXPLICIT));
+        assertEquals(1L, (long) metrics.getRemovals().get("SIZE"));
+    }
+
+    @Test
+    public void shouldEstimateSize() {
+        assertEquals(0, metrics.estimateSize(cache));
+        cache.getUnchecked("ab");
+        cache.getUnchecked("cd");
+        assertEquals(8, metrics.estimateSize(cache));
+    }
+
+    @Test
+    public void shouldRegisterEachInstance() {
+        GuavaCacheMXBeanImpl first = new GuavaCacheMXBeanImpl("test-cache", cache, metrics);
+        GuavaCacheMXBeanImpl second = new GuavaCacheMXBeanImpl("test-cache", cache, metrics);
+        try {
+            assertEquals("test-cache", first.getName());
+            assertEquals("test-cache-2", second.getName());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
@@ -119,6 +119,14 @@ public class CacheTest {
         assertNotNull("Expected Entry expired", _cache.get("key1"));
     }
 
+    @Test
+    public void testLastCleanFollowsClock() {
+        _clock.advance(10, TimeUnit.SECONDS);
+        _cache.cleanUp();
+        _clock.advance(3, TimeUnit.SECONDS);
+        assertEquals(Instant.ofEpochSecond(10), _cache.lastClean());
+    }
+
     @Test
     public void testClear() {
         _cache.put("key1", "value1");
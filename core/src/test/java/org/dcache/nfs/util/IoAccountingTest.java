@@ -0,0 +1,120 @@
+package org.dcache.nfs.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IoAccountingTest {
+
+    private ManualClock clock;
+    private IoAccounting accounting;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        accounting = new IoAccounting("test", Duration.ofMinutes(1), 3, LeaseClock.of(clock));
+    }
+
+    @After
+    public void tearDown() {
+        accounting.close();
+    }
+
+    @Test
+    public void shouldAccumulatePerClient() throws UnknownHostException {
+        accounting.client(address(1)).record(100, 0, 1, 10);
+        accounting.client(address(1)).record(0, 50, 2, 20);
+
+        List<IoAccounting.UsageSnapshot> top = accounting.topClients(IoAccounting.Metric.OPS, 10);
+        assertEquals(1, top.size());
+        assertEquals("10.0.0.1", top.get(0).name());
+        assertEquals(100, top.get(0).bytesRead());
+        assertEquals(50, top.get(0).bytesWritten());
+        assertEquals(3, top.get(0).ops());
+        assertEquals(30, top.get(0).serviceTime());
+    }
+
+    @Test
+    public void shouldRankByMetric() throws UnknownHostException {
+        accounting.client(address(1)).record(100, 0, 10, 0);
+        accounting.client(address(2)).record(0, 500, 1, 0);
+        accounting.client(address(3)).record(300, 0, 5, 0);
+
+        List<IoAccounting.UsageSnapshot> byRead = accounting.topClients(IoAccounting.Metric.BYTES_READ, 2);
+        assertEquals(2, byRead.size());
+        assertEquals("10.0.0.3", byRead.get(0).name());
+        assertEquals("10.0.0.1", byRead.get(1).name());
+
+        assertEquals("10.0.0.2", accounting.topClients(IoAccounting.Metric.BYTES, 1).get(0).name());
+        assertEquals("10.0.0.1", accounting.topClients(IoAccounting.Metric.OPS, 1).get(0).name());
+    }
+
+    @Test
+    public void shouldAccumulatePerExport() {
+        accounting.export(1).record(10, 0, 1, 0);
+        accounting.export(2).record(0, 20, 1, 0);
+        accounting.export(1).record(10, 0, 1, 0);
+
+        List<IoAccounting.UsageSnapshot> top = accounting.topExports(IoAccounting.Metric.OPS, 10);
+        assertEquals(2, top.size());
+        assertEquals("1", top.get(0).name());
+        assertEquals(20, top.get(0).bytesRead());
+    }
+
+    @Test
+    public void shouldEvictIdleClients() throws UnknownHostException {
+        accounting.client(address(1));
+        accounting.client(address(2));
+        clock.advance(30, TimeUnit.SECONDS);
+        accounting.client(address(2));
+        clock.advance(45, TimeUnit.SECONDS);
+
+        accounting.client(address(3));
+
+        assertEquals(2, accounting.getClientCount());
+        assertEquals(1, accounting.getEvictedClients());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyActiveWhenFull() throws UnknownHostException {
+        for (int i = 1; i <= 3; i++) {
+            accounting.client(address(i));
+            clock.advance(1, TimeUnit.SECONDS);
+        }
+        accounting.client(address(1));
+        accounting.client(address(4));
+
+        assertEquals(3, accounting.getClientCount());
+        List<IoAccounting.UsageSnapshot> clients = accounting.topClients(IoAccounting.Metric.OPS, 10);
+        assertTrue(clients.stream().noneMatch(u -> u.name().equals("10.0.0.2")));
+    }
+
+    @Test
+    public void shouldStayBoundedOnManyNewClients() throws UnknownHostException {
+        for (int i = 0; i < 1000; i++) {
+            accounting.client(InetAddress.getByAddress(new byte[]{10, 1, (byte) (i >> 8), (byte) i}));
+        }
+
+        assertEquals(3, accounting.getClientCount());
+        assertEquals(997, accounting.getEvictedClients());
+    }
+
+    @Test
+    public void shouldReportOverJmx() throws UnknownHostException {
+        accounting.client(address(1)).record(100, 0, 1, 0);
+        String[] top = accounting.topClients("BYTES_READ", 5);
+        assertEquals(1, top.length);
+        assertTrue(top[0].startsWith("10.0.0.1"));
+    }
+
+    private static InetAddress address(int i) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) i});
+    }
+}
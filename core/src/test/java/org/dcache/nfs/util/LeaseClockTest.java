@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026 Deutsches Elektronen-Synchroton,
+ * Member of the Helmholtz Association, (DESY), HAMBURG, GERMANY
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.nfs.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LeaseClockTest {
+
+    @Test
+    public void testCoarseClockAdvances() throws InterruptedException {
+        LeaseClock clock = LeaseClock.coarse();
+        long start = clock.nanoTime();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertTrue(clock.nanoTime() > start);
+    }
+
+    @Test
+    public void testCoarseClockShared() {
+        assertSame(LeaseClock.coarse(), LeaseClock.coarse());
+    }
+
+    @Test
+    public void testFollowsClock() {
+        ManualClock manualClock = new ManualClock();
+        LeaseClock clock = LeaseClock.of(manualClock);
+        long start = clock.nanoTime();
+        manualClock.advance(3, TimeUnit.SECONDS);
+        assertEquals(TimeUnit.SECONDS.toNanos(3), clock.nanoTime() - start);
+    }
+
+    @Test
+    public void testToNanos() {
+        assertEquals(TimeUnit.SECONDS.toNanos(90), LeaseClock.toNanos(Duration.ofSeconds(90)));
+    }
+
+    @Test
+    public void testToNanosOverflow() {
+        assertEquals(Long.MAX_VALUE, LeaseClock.toNanos(Duration.ofSeconds(Long.MAX_VALUE)));
+        assertEquals(Long.MIN_VALUE, LeaseClock.toNanos(Duration.ofSeconds(Long.MIN_VALUE)));
+    }
+}
@@ -0,0 +1,55 @@
+package org.dcache.nfs.util;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MXBeansTest {
+
+    public interface DummyMXBean {
+        int getValue();
+    }
+
+    public static class Dummy implements DummyMXBean {
+
+        @Override
+        public int getValue() {
+            return 1;
+        }
+    }
+
+    @Test
+    public void testRegister() {
+        ObjectName name = MXBeans.register(new Dummy(), "org.dcache.nfs.test", "Dummy", "register");
+        try {
+            assertEquals("register", name.getKeyProperty("name"));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        } finally {
+            MXBeans.unregister(name);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testUniqueName() {
+        ObjectName first = MXBeans.register(new Dummy(), "org.dcache.nfs.test", "Dummy", "unique");
+        ObjectName second = MXBeans.register(new Dummy(), "org.dcache.nfs.test", "Dummy", "unique");
+        try {
+            assertNotEquals(first, second);
+            assertEquals("unique-2", second.getKeyProperty("name"));
+        } finally {
+            MXBeans.unregister(first);
+            MXBeans.unregister(second);
+        }
+    }
+
+    @Test
+    public void testUnregisterNull() {
+        MXBeans.unregister(null);
+    }
+}
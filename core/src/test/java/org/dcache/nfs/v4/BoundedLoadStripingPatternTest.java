@@ -0,0 +1,123 @@
+package org.dcache.nfs.v4;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedLoadStripingPatternTest {
+
+    private final String[] dataServers = {"ds1", "ds2", "ds3", "ds4"};
+    private BoundedLoadStripingPattern<String> pattern;
+
+    @Before
+    public void setUp() {
+        pattern = new BoundedLoadStripingPattern<>(1.25);
+    }
+
+    @Test
+    public void testPatternIsPermutation() {
+        uint32_t[] indices = pattern.getPattern(fileId(1), dataServers);
+
+        assertEquals(dataServers.length, indices.length);
+        Set<Integer> unique = new HashSet<>();
+        for (uint32_t i : indices) {
+            unique.add(i.value);
+        }
+        assertEquals(dataServers.length, unique.size());
+    }
+
+    @Test
+    public void testLoadBounded() {
+        int files = 1000;
+        for (int i = 0; i < files; i++) {
+            pattern.getPattern(fileId(i), dataServers);
+        }
+
+        long max = (long) Math.ceil(1.25 * files / dataServers.length);
+        long total = 0;
+        for (String ds : dataServers) {
+            assertTrue("data server overloaded", pattern.getLoad(ds) <= max);
+            total += pattern.getLoad(ds);
+        }
+        assertEquals(files, total);
+    }
+
+    @Test
+    public void testRelease() {
+        uint32_t[] indices = pattern.getPattern(fileId(1), dataServers);
+        String ds = dataServers[indices[0].value];
+
+        assertEquals(1, pattern.getLoad(ds));
+        pattern.release(fileId(1));
+        assertEquals(0, pattern.getLoad(ds));
+    }
+
+    @Test
+    public void testSameFileSamePattern() {
+        uint32_t[] first = pattern.getPattern(fileId(1), dataServers);
+        uint32_t[] second = pattern.getPattern(fileId(1), dataServers);
+
+        assertArrayEquals(values(first), values(second));
+    }
+
+    @Test
+    public void testFileCountedOnce() {
+        for (int i = 0; i < 10; i++) {
+            pattern.getPattern(fileId(1), dataServers);
+        }
+
+        long total = 0;
+        for (String ds : dataServers) {
+            total += pattern.getLoad(ds);
+        }
+        assertEquals(1, total);
+    }
+
+    @Test
+    public void testPlacementSurvivesLoadChange() {
+        uint32_t[] first = pattern.getPattern(fileId(1), dataServers);
+        for (int i = 2; i < 100; i++) {
+            pattern.getPattern(fileId(i), dataServers);
+        }
+
+        assertArrayEquals(values(first), values(pattern.getPattern(fileId(1), dataServers)));
+    }
+
+    @Test
+    public void testReleaseUnknownFile() {
+        pattern.getPattern(fileId(1), dataServers);
+        pattern.release(fileId(2));
+
+        long total = 0;
+        for (String ds : dataServers) {
+            total += pattern.getLoad(ds);
+        }
+        assertEquals(1, total);
+    }
+
+    @Test
+    public void testSameFileSamePlacementWhenNotLoaded() {
+        BoundedLoadStripingPattern<String> other = new BoundedLoadStripingPattern<>(1.25);
+        assertArrayEquals(values(pattern.getPattern(fileId(7), dataServers)),
+                values(other.getPattern(fileId(7), dataServers)));
+    }
+
+    private static int[] values(uint32_t[] indices) {
+        int[] values = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            values[i] = indices[i].value;
+        }
+        return values;
+    }
+
+    private static byte[] fileId(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+}
@@ -0,0 +1,75 @@
+package org.dcache.nfs.v4;
+
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.sessionid4;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClientSessionTest {
+
+    @Test
+    public void testPollAllSlots() {
+        ClientSession session = new ClientSession(new sessionid4(new byte[16]), 2);
+
+        assertNotNull(session.pollSlot());
+        assertNotNull(session.pollSlot());
+        assertNull(session.pollSlot());
+    }
+
+    @Test
+    public void testPollReleasedSlot() {
+        ClientSession session = new ClientSession(new sessionid4(new byte[16]), 1);
+
+        ClientSession.SessionSlot slot = session.pollSlot();
+        assertNull(session.pollSlot());
+
+        session.releaseSlot(slot);
+        assertSame(slot, session.pollSlot());
+    }
+
+    @Test
+    public void testSequenceAdvancesSlot() {
+        ClientSession session = new ClientSession(new sessionid4(new byte[16]), 2);
+        ClientSession.SessionSlot slot = session.pollSlot();
+
+        nfs_argop4 first = session.sequence(slot);
+        nfs_argop4 second = session.sequence(slot);
+
+        assertEquals(nfs_opnum4.OP_SEQUENCE, first.argop);
+        assertEquals(slot.getId(), first.opsequence.sa_slotid);
+        assertEquals(1, first.opsequence.sa_highest_slotid.value);
+        assertEquals(first.opsequence.sa_sequenceid.value + 1, second.opsequence.sa_sequenceid.value);
+    }
+
+    @Test
+    public void testPrependSequence() {
+        COMPOUND4args args = new CompoundBuilder()
+                .withPutrootfh()
+                .withGetfh()
+                .withTag("test")
+                .build();
+
+        COMPOUND4args compound = ClientSession.prependSequence(args);
+
+        assertEquals(3, compound.argarray.length);
+        assertNull(compound.argarray[0]);
+        assertSame(args.argarray[0], compound.argarray[1]);
+        assertSame(args.argarray[1], compound.argarray[2]);
+        assertEquals(2, args.argarray.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrependSequenceTwice() {
+        ClientSession session = new ClientSession(new sessionid4(new byte[16]), 1);
+        COMPOUND4args compound = ClientSession.prependSequence(new CompoundBuilder()
+                .withPutrootfh()
+                .withTag("test")
+                .build());
+        compound.argarray[0] = session.sequence(session.pollSlot());
+
+        ClientSession.prependSequence(compound);
+    }
+}
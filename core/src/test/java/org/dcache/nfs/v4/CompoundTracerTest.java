@@ -0,0 +1,141 @@
+package org.dcache.nfs.v4;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.v4.xdr.COMPOUND4args;
+import org.dcache.nfs.jfr.TracingFileSystem;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.vfs.Inode;
+import org.dcache.nfs.vfs.Stat;
+import org.dcache.nfs.vfs.VirtualFileSystem;
+import org.dcache.oncrpc4j.rpc.RpcCall;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.dcache.nfs.v4.NfsTestUtils.generateRpcCall;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class CompoundTracerTest {
+
+    private CompoundTracer tracer;
+    private RpcCall call;
+    private COMPOUND4args args;
+
+    @Before
+    public void setUp() {
+        tracer = new CompoundTracer("test", Duration.ZERO, 4);
+        call = generateRpcCall();
+        args = new CompoundBuilder()
+                .withTag("tracer test")
+                .withPutrootfh()
+                .withGetattr()
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        tracer.close();
+    }
+
+    @Test
+    public void shouldCaptureOpsOfSlowCompound() {
+
+        tracer.begin();
+        tracer.opBegin(nfs_opnum4.OP_PUTROOTFH);
+        tracer.opEnd(nfsstat.NFS_OK);
+        tracer.opBegin(nfs_opnum4.OP_GETATTR);
+        tracer.opEnd(nfsstat.NFSERR_ACCESS);
+        tracer.end(call, args, nfsstat.NFSERR_ACCESS);
+
+        List<CompoundTrace> traces = tracer.traces();
+        assertEquals(1, traces.size());
+
+        CompoundTrace trace = traces.get(0);
+        assertEquals("tracer test", trace.tag());
+        assertEquals(nfsstat.NFSERR_ACCESS, trace.status());
+        assertEquals(2, trace.ops().size());
+        assertEquals(nfs_opnum4.OP_PUTROOTFH, trace.ops().get(0).opnum());
+        assertEquals(nfsstat.NFSERR_ACCESS, trace.ops().get(1).status());
+        assertNull(trace.session());
+        assertEquals(-1, trace.slot());
+    }
+
+    @Test
+    public void shouldIgnoreFastCompound() {
+        tracer.setThreshold(TimeUnit.MINUTES.toMillis(1));
+
+        tracer.begin();
+        tracer.opBegin(nfs_opnum4.OP_PUTROOTFH);
+        tracer.opEnd(nfsstat.NFS_OK);
+        tracer.end(call, args, nfsstat.NFS_OK);
+
+        assertTrue(tracer.traces().isEmpty());
+        assertEquals(0, tracer.getCaptured());
+    }
+
+    @Test
+    public void shouldRecordOpInProgressOnFailure() {
+
+        tracer.begin();
+        tracer.opBegin(nfs_opnum4.OP_PUTROOTFH);
+        tracer.end(call, args, nfsstat.NFSERR_SERVERFAULT);
+
+        CompoundTrace trace = tracer.traces().get(0);
+        assertEquals(1, trace.ops().size());
+        assertEquals(nfsstat.NFSERR_SERVERFAULT, trace.ops().get(0).status());
+    }
+
+    @Test
+    public void shouldKeepOnlyLatestCaptures() {
+
+        for (int i = 0; i < 10; i++) {
+            tracer.begin();
+            tracer.opBegin(i);
+            tracer.opEnd(nfsstat.NFS_OK);
+            tracer.end(call, args, nfsstat.NFS_OK);
+        }
+
+        List<CompoundTrace> traces = tracer.traces();
+        assertEquals(4, traces.size());
+        assertEquals(6, traces.get(0).ops().get(0).opnum());
+        assertEquals(9, traces.get(3).ops().get(0).opnum());
+        assertEquals(10, tracer.getCaptured());
+        assertEquals(4, tracer.dump().length);
+    }
+
+    @Test
+    public void shouldAccountVfsTime() throws Exception {
+
+        VirtualFileSystem vfs = mock(VirtualFileSystem.class);
+        given(vfs.getattr(any())).willAnswer(i -> {
+            TimeUnit.MILLISECONDS.sleep(20);
+            return new Stat();
+        });
+        VirtualFileSystem timed = new TracingFileSystem(vfs, tracer);
+
+        tracer.begin();
+        tracer.opBegin(nfs_opnum4.OP_GETATTR);
+        timed.getattr(Inode.forFile(new byte[] {1}));
+        tracer.opEnd(nfsstat.NFS_OK);
+        tracer.end(call, args, nfsstat.NFS_OK);
+
+        CompoundTrace.OpTrace op = tracer.traces().get(0).ops().get(0);
+        assertTrue(op.vfsTime() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(op.duration() >= op.vfsTime());
+    }
+
+    @Test
+    public void shouldNotAccountVfsTimeOutsideOfCompound() throws Exception {
+
+        VirtualFileSystem vfs = mock(VirtualFileSystem.class);
+        new TracingFileSystem(vfs, tracer).getattr(Inode.forFile(new byte[] {1}));
+
+        assertTrue(tracer.traces().isEmpty());
+    }
+}
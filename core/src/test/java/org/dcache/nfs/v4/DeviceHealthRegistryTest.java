@@ -0,0 +1,153 @@
+package org.dcache.nfs.v4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.LeaseClock;
+import org.dcache.nfs.util.ManualClock;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.device_error4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceHealthRegistryTest {
+
+    private final deviceid4 ds1 = new deviceid4(new byte[]{0x1});
+    private final deviceid4 ds2 = new deviceid4(new byte[]{0x2});
+
+    private ManualClock clock;
+    private DeviceHealthRegistry registry;
+    private List<deviceid4> degraded;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        registry = new DeviceHealthRegistry(Duration.ofSeconds(10), Duration.ofSeconds(60), LeaseClock.of(clock));
+        degraded = new ArrayList<>();
+        registry.addDegradationListener(degraded::add);
+    }
+
+    @Test
+    public void testDegradedOnError() {
+        registry.layoutError(error(ds1, nfsstat.NFSERR_NXIO));
+
+        assertFalse(registry.isAvailable(ds1));
+        assertTrue(registry.isAvailable(ds2));
+        assertEquals(List.of(ds1), degraded);
+    }
+
+    @Test
+    public void testAvailableAfterBackoff() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+
+        clock.advance(11, TimeUnit.SECONDS);
+        assertTrue(registry.isAvailable(ds1));
+    }
+
+    @Test
+    public void testBackoffDoubles() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+        clock.advance(11, TimeUnit.SECONDS);
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+
+        clock.advance(11, TimeUnit.SECONDS);
+        assertFalse(registry.isAvailable(ds1));
+
+        clock.advance(10, TimeUnit.SECONDS);
+        assertTrue(registry.isAvailable(ds1));
+        assertEquals("listener must be notified on each degradation", 2, degraded.size());
+    }
+
+    @Test
+    public void testBackoffResetAfterQuietPeriod() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+        clock.advance(11, TimeUnit.SECONDS);
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+
+        clock.advance(2, TimeUnit.MINUTES);
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+
+        clock.advance(11, TimeUnit.SECONDS);
+        assertTrue(registry.isAvailable(ds1));
+    }
+
+    @Test
+    public void testNoListenerCallWhileDegraded() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+
+        assertEquals(1, degraded.size());
+    }
+
+    @Test
+    public void testIgnoreNonDeviceErrors() {
+        registry.reportError(ds1, nfsstat.NFSERR_ACCESS);
+        registry.reportError(ds1, nfsstat.NFSERR_STALE);
+
+        assertTrue(registry.isAvailable(ds1));
+        assertTrue(degraded.isEmpty());
+    }
+
+    @Test
+    public void testIgnoreClientAndFileErrors() {
+        registry.reportError(ds1, nfsstat.NFSERR_DQUOT);
+        registry.reportError(ds1, nfsstat.NFSERR_FBIG);
+        registry.reportError(ds1, nfsstat.NFSERR_OPENMODE);
+        registry.reportError(ds1, nfsstat.NFSERR_EXPIRED);
+        registry.reportError(ds1, nfsstat.NFSERR_ADMIN_REVOKED);
+        registry.reportError(ds1, nfsstat.NFSERR_DELAY);
+        registry.reportError(ds1, nfsstat.NFSERR_GRACE);
+        registry.reportError(ds1, nfsstat.NFSERR_ISDIR);
+        registry.reportError(ds1, nfsstat.NFSERR_INVAL);
+
+        assertTrue(registry.isAvailable(ds1));
+        assertTrue(degraded.isEmpty());
+    }
+
+    @Test
+    public void testNotifyListenersWithExecutor() {
+        List<Runnable> tasks = new ArrayList<>();
+        DeviceHealthRegistry async = new DeviceHealthRegistry(Duration.ofSeconds(10), Duration.ofSeconds(60),
+                LeaseClock.of(clock), tasks::add);
+        List<deviceid4> notified = new ArrayList<>();
+        async.addDegradationListener(notified::add);
+
+        async.reportError(ds1, nfsstat.NFSERR_IO);
+        assertTrue(notified.isEmpty());
+
+        tasks.forEach(Runnable::run);
+        assertEquals(List.of(ds1), notified);
+    }
+
+    @Test
+    public void testFilter() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+        assertArrayEquals(new deviceid4[]{ds2}, registry.filter(ds1, ds2));
+    }
+
+    @Test
+    public void testFilterAllDegraded() {
+        registry.reportError(ds1, nfsstat.NFSERR_IO);
+        registry.reportError(ds2, nfsstat.NFSERR_IO);
+        assertArrayEquals(new deviceid4[]{ds1, ds2}, registry.filter(ds1, ds2));
+    }
+
+    private static LAYOUTERROR4args error(deviceid4 deviceid, int status) {
+        LAYOUTERROR4args args = new LAYOUTERROR4args();
+        args.lea_errors = new device_error4[1];
+        args.lea_errors[0] = new device_error4();
+        args.lea_errors[0].de_deviceid = deviceid;
+        args.lea_errors[0].de_status = status;
+        args.lea_errors[0].de_opnum = nfs_opnum4.OP_WRITE;
+        return args;
+    }
+}
@@ -20,6 +20,9 @@
 package org.dcache.nfs.v4;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import org.dcache.nfs.status.BadStateidException;
 import org.dcache.nfs.status.InvalException;
 import org.dcache.nfs.status.ShareDeniedException;
@@ -37,6 +40,9 @@ import static org.dcache.nfs.v4.NfsTestUtils.generateFileHandle;
 import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_ACCESS_READ;
 import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_ACCESS_WRITE;
 import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_ACCESS_BOTH;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_DENY_BOTH;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_DENY_READ;
+import static org.dcache.nfs.v4.xdr.nfs4_prot.OPEN4_SHARE_DENY_WRITE;
 import org.dcache.nfs.v4.xdr.seqid4;
 
 public class FileTrackerTest {
@@ -184,6 +190,117 @@ public class FileTrackerTest {
         tracker.addOpen(client1, stateOwner1, inode, OPEN4_SHARE_ACCESS_WRITE, OPEN4_SHARE_ACCESS_READ);
     }
 
+    @Test
+    public void shouldCheckShareDenyOfOtherClients() throws Exception {
+
+        NFS4Client client1 = createClient(sh);
+        StateOwner stateOwner1 = client1.getOrCreateOwner("client1".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        NFS4Client client2 = createClient(sh);
+        StateOwner stateOwner2 = client2.getOrCreateOwner("client2".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+
+        nfs_fh4 fh = generateFileHandle();
+        Inode inode = Inode.forFile(fh.value);
+
+        tracker.addOpen(client1, stateOwner1, inode, OPEN4_SHARE_ACCESS_READ, OPEN4_SHARE_DENY_WRITE);
+
+        // access denied by the existing open
+        assertShareDenied(client2, stateOwner2, inode, OPEN4_SHARE_ACCESS_WRITE, 0);
+        // deny of the access held by the existing open
+        assertShareDenied(client2, stateOwner2, inode, OPEN4_SHARE_ACCESS_READ, OPEN4_SHARE_DENY_READ);
+
+        tracker.addOpen(client2, stateOwner2, inode, OPEN4_SHARE_ACCESS_READ, OPEN4_SHARE_DENY_WRITE);
+        assertEquals(Set.of(client1, client2), Set.copyOf(tracker.getOpenFiles().get(inode)));
+    }
+
+    @Test
+    public void shouldAllowAccessAfterDowngradeOfDeny() throws Exception {
+
+        NFS4Client client1 = createClient(sh);
+        StateOwner stateOwner1 = client1.getOrCreateOwner("client1".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        NFS4Client client2 = createClient(sh);
+        StateOwner stateOwner2 = client2.getOrCreateOwner("client2".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+
+        nfs_fh4 fh = generateFileHandle();
+        Inode inode = Inode.forFile(fh.value);
+
+        stateid4 s = tracker.addOpen(client1, stateOwner1, inode, OPEN4_SHARE_ACCESS_BOTH, OPEN4_SHARE_DENY_BOTH);
+        assertShareDenied(client2, stateOwner2, inode, OPEN4_SHARE_ACCESS_READ, 0);
+
+        tracker.downgradeOpen(client1, s, inode, OPEN4_SHARE_ACCESS_READ, 0);
+        tracker.addOpen(client2, stateOwner2, inode, OPEN4_SHARE_ACCESS_WRITE, 0);
+    }
+
+    @Test
+    public void shouldKeepShareReservationsPerFile() throws Exception {
+
+        NFS4Client client1 = createClient(sh);
+        StateOwner stateOwner1 = client1.getOrCreateOwner("client1".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        NFS4Client client2 = createClient(sh);
+        StateOwner stateOwner2 = client2.getOrCreateOwner("client2".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+
+        // more files than lock stripes, thus some files share a stripe
+        int nfiles = 2 * Runtime.getRuntime().availableProcessors() * 4 + 1;
+        List<Inode> inodes = new ArrayList<>();
+        for (int i = 0; i < nfiles; i++) {
+            Inode inode = Inode.forFile(generateFileHandle().value);
+            inodes.add(inode);
+            if (i % 2 == 0) {
+                tracker.addOpen(client1, stateOwner1, inode, OPEN4_SHARE_ACCESS_BOTH, OPEN4_SHARE_DENY_BOTH);
+            }
+        }
+
+        for (int i = 0; i < nfiles; i++) {
+            if (i % 2 == 0) {
+                assertShareDenied(client2, stateOwner2, inodes.get(i), OPEN4_SHARE_ACCESS_READ, 0);
+            } else {
+                tracker.addOpen(client2, stateOwner2, inodes.get(i), OPEN4_SHARE_ACCESS_BOTH, OPEN4_SHARE_DENY_BOTH);
+            }
+        }
+        assertEquals(nfiles, tracker.getOpenFiles().size());
+    }
+
+    @Test
+    public void shouldForgetFileWhenLastOpenerRemoved() throws Exception {
+
+        List<String> states = new ArrayList<>();
+        tracker = new FileTracker(new EphemeralClientRecoveryStore() {
+            @Override
+            public void addState(byte[] client, byte[] fileId) {
+                states.add("add");
+            }
+
+            @Override
+            public void removeState(byte[] client, byte[] fileId) {
+                states.add("remove");
+            }
+        });
+
+        NFS4Client client1 = createClient(sh);
+        StateOwner stateOwner1 = client1.getOrCreateOwner("client1".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        StateOwner stateOwner2 = client1.getOrCreateOwner("client2".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        NFS4Client client2 = createClient(sh);
+        StateOwner stateOwner3 = client2.getOrCreateOwner("client3".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+
+        nfs_fh4 fh = generateFileHandle();
+        Inode inode = Inode.forFile(fh.value);
+
+        stateid4 s1 = tracker.addOpen(client1, stateOwner1, inode, OPEN4_SHARE_ACCESS_READ, 0);
+        stateid4 s2 = tracker.addOpen(client1, stateOwner2, inode, OPEN4_SHARE_ACCESS_READ, 0);
+        stateid4 s3 = tracker.addOpen(client2, stateOwner3, inode, OPEN4_SHARE_ACCESS_READ, OPEN4_SHARE_DENY_WRITE);
+
+        tracker.removeOpen(inode, s1);
+        tracker.removeOpen(inode, s3);
+        assertEquals(Set.of(client1), Set.copyOf(tracker.getOpenFiles().get(inode)));
+        assertEquals(List.of("add", "add", "remove"), states);
+
+        tracker.removeOpen(inode, s2);
+        assertTrue(tracker.getOpenFiles().isEmpty());
+        assertEquals(List.of("add", "add", "remove", "remove"), states);
+
+        // the deny of the removed open is gone
+        tracker.addOpen(client2, stateOwner3, inode, OPEN4_SHARE_ACCESS_WRITE, 0);
+    }
+
     @Test(expected = BadStateidException.class)
     public void shouldFailToGetAccessModeWithBadStateid() throws Exception {
 
@@ -197,4 +314,13 @@ public class FileTrackerTest {
         tracker.getShareAccess(client1, inode, client1.createState(stateOwner1).stateid());
     }
 
+    private void assertShareDenied(NFS4Client client, StateOwner owner, Inode inode, int shareAccess, int shareDeny)
+            throws Exception {
+        try {
+            tracker.addOpen(client, owner, inode, shareAccess, shareDeny);
+            fail("conflicting open accepted");
+        } catch (ShareDeniedException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package org.dcache.nfs.v4;
+
+import java.util.List;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.v4.xdr.nfs_argop4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfs_resop4;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedOperationExecutorTest {
+
+    private InstrumentedOperationExecutor executor;
+    private int status;
+
+    @Before
+    public void setUp() {
+        status = nfsstat.NFS_OK;
+        executor = new InstrumentedOperationExecutor("test", (context, args) -> {
+            nfs_resop4 res = nfs_resop4.resopFor(args.argop);
+            res.setStatus(status);
+            return res;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    public void shouldCountOperations() throws Exception {
+        executor.execute(null, argop(nfs_opnum4.OP_GETATTR));
+        executor.execute(null, argop(nfs_opnum4.OP_GETATTR));
+        executor.execute(null, argop(nfs_opnum4.OP_SEQUENCE));
+
+        assertEquals(2, executor.getGetattr());
+        assertEquals(1, executor.getSequence());
+        assertEquals(0, executor.getRead());
+    }
+
+    @Test
+    public void shouldCountErrorsPerStatus() throws Exception {
+        status = nfsstat.NFSERR_NOENT;
+        executor.execute(null, argop(nfs_opnum4.OP_LOOKUP));
+        status = nfsstat.NFSERR_ACCESS;
+        executor.execute(null, argop(nfs_opnum4.OP_LOOKUP));
+        status = nfsstat.NFS_OK;
+        executor.execute(null, argop(nfs_opnum4.OP_LOOKUP));
+
+        assertEquals(1L, (long) executor.errorSnapshot().get(nfsstat.NFSERR_NOENT));
+        assertEquals(1L, (long) executor.errorSnapshot().get(nfsstat.NFSERR_ACCESS));
+
+        List<OperationStatistics> stats = executor.snapshot();
+        assertEquals(1, stats.size());
+        assertEquals(nfs_opnum4.OP_LOOKUP, stats.get(0).opnum());
+        assertEquals(3, stats.get(0).count());
+        assertEquals(2, stats.get(0).errors());
+        assertEquals(3, stats.get(0).latency().getCount());
+    }
+
+    @Test
+    public void shouldCountNfs4AndUnknownErrors() throws Exception {
+        status = nfsstat.NFSERR_BADSESSION;
+        executor.execute(null, argop(nfs_opnum4.OP_SEQUENCE));
+        status = nfsstat.NFSERR_NOXATTR;
+        executor.execute(null, argop(nfs_opnum4.OP_GETXATTR));
+        status = 12345;
+        executor.execute(null, argop(nfs_opnum4.OP_GETATTR));
+
+        assertEquals(1L, (long) executor.errorSnapshot().get(nfsstat.NFSERR_BADSESSION));
+        assertEquals(1L, (long) executor.errorSnapshot().get(nfsstat.NFSERR_NOXATTR));
+        assertEquals(1L, (long) executor.errorSnapshot().get(InstrumentedOperationExecutor.OTHER_ERROR));
+        assertEquals(3, executor.errorSnapshot().size());
+    }
+
+    @Test
+    public void shouldCountThrownErrors() throws Exception {
+        InstrumentedOperationExecutor failing = new InstrumentedOperationExecutor("test-failing", (context, args) -> {
+            throw new NoEntException();
+        });
+        try {
+            failing.execute(null, argop(nfs_opnum4.OP_REMOVE));
+            fail("exception not propagated");
+        } catch (NoEntException e) {
+            // expected
+        } finally {
+            failing.close();
+        }
+
+        assertEquals(1, failing.getRemove());
+        assertEquals(1L, (long) failing.errorSnapshot().get(nfsstat.NFSERR_NOENT));
+    }
+
+    @Test
+    public void shouldCountUnknownAsIllegal() throws Exception {
+        executor.execute(null, argop(nfs_opnum4.OP_ILLEGAL));
+        executor.execute(null, argop(1));
+
+        assertEquals(2, executor.getIllegal());
+        assertEquals(nfs_opnum4.OP_ILLEGAL, executor.snapshot().get(0).opnum());
+    }
+
+    @Test
+    public void shouldReset() throws Exception {
+        status = nfsstat.NFSERR_NOENT;
+        executor.execute(null, argop(nfs_opnum4.OP_LOOKUP));
+        executor.reset();
+
+        assertEquals(0, executor.getLookup());
+        assertTrue(executor.getErrors().isEmpty());
+    }
+
+    private static nfs_argop4 argop(int opnum) {
+        nfs_argop4 args = new nfs_argop4();
+        args.argop = opnum;
+        return args;
+    }
+}
@@ -0,0 +1,312 @@
+package org.dcache.nfs.v4;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Before;
+
+import org.dcache.nfs.status.ReclaimBadException;
+import org.dcache.nfs.status.NoGraceException;
+
+import static org.junit.Assert.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JournalClientStoreTest {
+
+    private JournalClientStore clientRecoveryStore;
+    private Path storeDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("nfs-client-store");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clientRecoveryStore.close();
+        Files.list(storeDirectory).forEach(f -> {
+            try {
+            Files.delete(f);
+            } catch (IOException e) {
+                // as we fail to delete, directory remove will fail as well
+            }
+        });
+        Files.delete(storeDirectory);
+    }
+
+    @Test
+    public void shouldNotWaitForClientsOnFirstStart() throws Exception {
+        givenServer();
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+    }
+
+    @Test
+    public void shouldCloseReclaimWindowOnComplete() throws Exception {
+        givenServer();
+        clientRecoveryStore.reclaimComplete();
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+    }
+
+    @Test
+    public void shouldWaitForClientsAfterRestart() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim());
+    }
+
+    @Test
+    public void shouldNotWaitForClientsWithoutStates() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        clientRecoveryStore.removeState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test
+    public void shouldWaitOnlyForFilesWithStates() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+        assertFalse(clientRecoveryStore.waitingForReclaim("file2".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldEndGraceWhenAllStatesReclaimed() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addClient("client2".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+
+        assertFalse(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+    }
+
+    @Test
+    public void shouldKeepStatesOnRebootDuringRecovery() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+        reboot();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldProtectAllFilesAfterCrash() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        crash();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim());
+        assertTrue(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+        assertTrue(clientRecoveryStore.waitingForReclaim("file2".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldWaitForClientsWithoutStatesAfterCrash() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        crash();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim());
+        assertTrue(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+
+        clientRecoveryStore.reclaimClient("client1".getBytes(UTF_8));
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+        assertFalse(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldProtectAllFilesOnRebootAfterCrash() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        crash();
+        reboot();
+
+        assertTrue(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+    }
+
+    @Test(expected = ReclaimBadException.class)
+    public void shouldFailWhenNewClientWantReclaim() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test
+    public void shouldReclaimAfterReboot() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        reboot();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test(expected = ReclaimBadException.class)
+    public void shouldFailReclaimAfterRemove() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.removeClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test(expected = NoGraceException.class)
+    public void shouldFailOnLateReclaim() throws Exception {
+        givenServer();
+        clientRecoveryStore.reclaimComplete();
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test
+    public void shouldKeepRecordsOnRebootDuringRecovery() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        reboot();
+        clientRecoveryStore.addClient("client2".getBytes(UTF_8));
+        reboot();
+
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+        clientRecoveryStore.wantReclaim("client2".getBytes(UTF_8));
+    }
+
+    @Test(expected = ReclaimBadException.class)
+    public void shouldNotRecoverRemovedClientAfterReboot() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.removeClient("client1".getBytes(UTF_8));
+        reboot();
+        clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+    }
+
+    @Test
+    public void shouldEndGraceWhenAllClientsReclaimed() throws Exception {
+        givenServer();
+        clientRecoveryStore.addClient("client1".getBytes(UTF_8));
+        clientRecoveryStore.addState("client1".getBytes(UTF_8), "file1".getBytes(UTF_8));
+        reboot();
+        clientRecoveryStore.reclaimClient("client1".getBytes(UTF_8));
+
+        assertFalse(clientRecoveryStore.waitingForReclaim());
+    }
+
+    @Test
+    public void shouldSurviveRegionSwitchAndCompaction() throws Exception {
+        clientRecoveryStore = new JournalClientStore(storeDirectory, 128, 16);
+        for (int i = 0; i < 1000; i++) {
+            clientRecoveryStore.addClient(("client" + i).getBytes(UTF_8));
+            clientRecoveryStore.addState(("client" + i).getBytes(UTF_8), ("file" + i).getBytes(UTF_8));
+            if (i % 2 == 1) {
+                clientRecoveryStore.removeClient(("client" + i).getBytes(UTF_8));
+            }
+        }
+        reboot();
+
+        for (int i = 0; i < 1000; i += 2) {
+            clientRecoveryStore.wantReclaim(("client" + i).getBytes(UTF_8));
+            assertTrue(clientRecoveryStore.waitingForReclaim(("file" + i).getBytes(UTF_8)));
+        }
+        assertFalse(clientRecoveryStore.waitingForReclaim("file1".getBytes(UTF_8)));
+
+        try {
+            clientRecoveryStore.wantReclaim("client1".getBytes(UTF_8));
+            fail("Removed client is eligible to reclaim");
+        } catch (ReclaimBadException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldRecoverConcurrentlyAddedClients() throws Exception {
+        givenServer();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> adds = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                byte[] client = ("client" + i).getBytes(UTF_8);
+                adds.add(CompletableFuture.runAsync(() -> clientRecoveryStore.addClient(client), executor));
+            }
+            CompletableFuture.allOf(adds.toArray(CompletableFuture[]::new)).get();
+        } finally {
+            executor.shutdown();
+        }
+        reboot();
+
+        for (int i = 0; i < 1000; i++) {
+            clientRecoveryStore.wantReclaim(("client" + i).getBytes(UTF_8));
+        }
+    }
+
+    @Test
+    public void shouldKeepRecordsAppendedDuringCompaction() throws Exception {
+        clientRecoveryStore = new JournalClientStore(storeDirectory, 256, 16);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> adds = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                byte[] client = ("client" + i).getBytes(UTF_8);
+                byte[] file = ("file" + i).getBytes(UTF_8);
+                adds.add(CompletableFuture.runAsync(() -> {
+                    clientRecoveryStore.addClient(client);
+                    clientRecoveryStore.addState(client, file);
+                    for (int j = 0; j < 4; j++) {
+                        clientRecoveryStore.removeState(client, file);
+                        clientRecoveryStore.addState(client, file);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(adds.toArray(CompletableFuture[]::new)).get();
+        } finally {
+            executor.shutdown();
+        }
+        reboot();
+
+        for (int i = 0; i < 1000; i++) {
+            clientRecoveryStore.wantReclaim(("client" + i).getBytes(UTF_8));
+            assertTrue(clientRecoveryStore.waitingForReclaim(("file" + i).getBytes(UTF_8)));
+        }
+    }
+
+    private void givenServer() throws IOException {
+        clientRecoveryStore = new JournalClientStore(storeDirectory);
+    }
+
+    /**
+     * Start a new store on the same journal without closing the running one.
+     */
+    private void crash() throws Exception {
+        JournalClientStore crashed = clientRecoveryStore;
+        clientRecoveryStore = new JournalClientStore(storeDirectory);
+        // release resources only; the journal has been replaced by the new store
+        crashed.close();
+    }
+
+    private void reboot() throws Exception {
+        clientRecoveryStore.close();
+        clientRecoveryStore = new JournalClientStore(storeDirectory);
+    }
+}
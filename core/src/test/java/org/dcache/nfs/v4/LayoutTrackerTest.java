@@ -0,0 +1,201 @@
+package org.dcache.nfs.v4;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.charset.StandardCharsets;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layout4;
+import org.dcache.nfs.v4.xdr.layout_content4;
+import org.dcache.nfs.v4.xdr.layoutiomode4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.length4;
+import org.dcache.nfs.v4.xdr.nfs4_prot;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.offset4;
+import org.dcache.nfs.v4.xdr.seqid4;
+import org.dcache.nfs.v4.xdr.stateid4;
+import org.dcache.nfs.v4.xdr.utf8str_mixed;
+import org.dcache.nfs.vfs.FileHandle;
+import org.dcache.nfs.vfs.Inode;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.dcache.nfs.v4.NfsTestUtils.createClient;
+import static org.dcache.nfs.v4.NfsTestUtils.generateFileHandle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class LayoutTrackerTest {
+
+    private static final int FLEX_FILES = layouttype4.LAYOUT4_FLEX_FILES.getValue();
+
+    private NFSv4StateHandler sh;
+    private LayoutTracker tracker;
+    private Inode inode;
+
+    @Before
+    public void setUp() {
+        sh = new NFSv4StateHandler();
+        tracker = new LayoutTracker(MoreExecutors.newDirectExecutorService());
+        nfs_fh4 fh = generateFileHandle();
+        inode = Inode.forFile(fh.value);
+    }
+
+    @Test
+    public void shouldReturnCachedLayout() throws Exception {
+        NFS4Client client = createClient(sh);
+        Layout layout = newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX);
+
+        tracker.addLayout(client, inode, FLEX_FILES, layout);
+        int seqid = layout.getStateid().seqid;
+
+        assertSame(layout, tracker.getLayout(client, inode, FLEX_FILES, layoutiomode4.LAYOUTIOMODE4_READ, 4096, 4096));
+        assertEquals("layout seqid not incremented", seqid + 1, layout.getStateid().seqid);
+    }
+
+    @Test
+    public void shouldNotReturnLayoutOfOtherClient() throws Exception {
+        NFS4Client client1 = createClient(sh);
+        NFS4Client client2 = createClient(sh);
+
+        tracker.addLayout(client1, inode, FLEX_FILES, newLayout(client1, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        assertNull(tracker.getLayout(client2, inode, FLEX_FILES, layoutiomode4.LAYOUTIOMODE4_RW, 0, 1));
+    }
+
+    @Test
+    public void shouldNotReturnReadLayoutForWrite() throws Exception {
+        NFS4Client client = createClient(sh);
+
+        tracker.addLayout(client, inode, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_READ, 0, nfs4_prot.NFS4_UINT64_MAX));
+        assertNull(tracker.getLayout(client, inode, FLEX_FILES, layoutiomode4.LAYOUTIOMODE4_RW, 0, 1));
+    }
+
+    @Test
+    public void shouldNotReturnLayoutNotCoveringRange() throws Exception {
+        NFS4Client client = createClient(sh);
+
+        tracker.addLayout(client, inode, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_READ, 0, 4096));
+        assertNull(tracker.getLayout(client, inode, FLEX_FILES, layoutiomode4.LAYOUTIOMODE4_READ, 4096, 1));
+    }
+
+    @Test
+    public void shouldForgetReturnedLayout() throws Exception {
+        NFS4Client client = createClient(sh);
+
+        tracker.addLayout(client, inode, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        tracker.layoutReturn(client, inode, layoutiomode4.LAYOUTIOMODE4_ANY, 0, nfs4_prot.NFS4_UINT64_MAX);
+
+        assertEquals(0, tracker.getLayoutCount(inode));
+    }
+
+    @Test
+    public void shouldForgetLayoutOnStateDispose() throws Exception {
+        NFS4Client client = createClient(sh);
+        Layout layout = newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX);
+
+        tracker.addLayout(client, inode, FLEX_FILES, layout);
+        client.releaseState(layout.getStateid());
+
+        assertEquals(0, tracker.getLayoutCount(inode));
+    }
+
+    @Test
+    public void shouldRecallFromAllClients() throws Exception {
+        NFS4Client client1 = createClient(sh);
+        NFS4Client client2 = createClient(sh);
+        ClientCB cb1 = mock(ClientCB.class);
+        ClientCB cb2 = mock(ClientCB.class);
+        client1.setCB(cb1);
+        client2.setCB(cb2);
+
+        tracker.addLayout(client1, inode, FLEX_FILES, newLayout(client1, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        tracker.addLayout(client2, inode, FLEX_FILES, newLayout(client2, layoutiomode4.LAYOUTIOMODE4_READ, 0, nfs4_prot.NFS4_UINT64_MAX));
+
+        tracker.recallFile(inode).get();
+
+        verify(cb1).cbLayoutRecallFile(any(), any(), eq(FLEX_FILES), anyInt(), anyLong(), anyLong());
+        verify(cb2).cbLayoutRecallFile(any(), any(), eq(FLEX_FILES), anyInt(), anyLong(), anyLong());
+        assertEquals(0, tracker.getLayoutCount(inode));
+    }
+
+    @Test
+    public void shouldNotRecallReturnedLayout() throws Exception {
+        NFS4Client client = createClient(sh);
+        ClientCB cb = mock(ClientCB.class);
+        client.setCB(cb);
+
+        tracker.addLayout(client, inode, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        tracker.layoutReturn(client);
+        tracker.recallFile(inode).get();
+
+        verify(cb, never()).cbLayoutRecallFile(any(), any(), anyInt(), anyInt(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void shouldReturnLayoutsOfFileSystemOnly() throws Exception {
+        NFS4Client client = createClient(sh);
+        Inode other = new Inode(new FileHandle(0, 1, 0, generateFileHandle().value));
+
+        tracker.addLayout(client, inode, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        tracker.addLayout(client, other, FLEX_FILES, newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX));
+        tracker.layoutReturnFs(client, other);
+
+        assertEquals(1, tracker.getLayoutCount(inode));
+        assertEquals(0, tracker.getLayoutCount(other));
+    }
+
+    @Test
+    public void shouldRecallLayoutsWithDevice() throws Exception {
+        NFS4Client client1 = createClient(sh);
+        NFS4Client client2 = createClient(sh);
+        ClientCB cb1 = mock(ClientCB.class);
+        ClientCB cb2 = mock(ClientCB.class);
+        client1.setCB(cb1);
+        client2.setCB(cb2);
+
+        deviceid4 ds1 = new deviceid4(new byte[]{0x1});
+        deviceid4 ds2 = new deviceid4(new byte[]{0x2});
+
+        tracker.addLayout(client1, inode, FLEX_FILES, newFlexFileLayout(client1, ds1));
+        tracker.addLayout(client2, inode, FLEX_FILES, newFlexFileLayout(client2, ds2));
+
+        tracker.recallDevice(ds1).get();
+
+        verify(cb1).cbLayoutRecallFile(any(), any(), eq(FLEX_FILES), anyInt(), anyLong(), anyLong());
+        verify(cb2, never()).cbLayoutRecallFile(any(), any(), anyInt(), anyInt(), anyLong(), anyLong());
+        assertEquals(1, tracker.getLayoutCount(inode));
+    }
+
+    private static Layout newFlexFileLayout(NFS4Client client, deviceid4 deviceid) throws Exception {
+        Layout layout = newLayout(client, layoutiomode4.LAYOUTIOMODE4_RW, 0, nfs4_prot.NFS4_UINT64_MAX);
+        FlexFileLayoutDriver driver = new FlexFileLayoutDriver(4, 1, 0, 1024 * 1024,
+                new utf8str_mixed("17"), new utf8str_mixed("17"), (c, r) -> {});
+
+        layout.getLayoutSegments()[0].lo_content = driver.getLayoutContent(layout.getStateid(), 0,
+                new nfs_fh4(new byte[]{0x1}), deviceid);
+        return layout;
+    }
+
+    private static Layout newLayout(NFS4Client client, int iomode, long offset, long length) throws Exception {
+        StateOwner owner = client.getOrCreateOwner("owner".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        NFS4State openState = client.createState(owner);
+        stateid4 stateid = client.createState(owner, openState).stateid();
+
+        layout4 segment = new layout4();
+        segment.lo_iomode = iomode;
+        segment.lo_offset = new offset4(offset);
+        segment.lo_length = new length4(length);
+        segment.lo_content = new layout_content4();
+        segment.lo_content.loc_type = FLEX_FILES;
+        segment.lo_content.loc_body = new byte[0];
+
+        return new Layout(true, stateid, new layout4[]{segment});
+    }
+}
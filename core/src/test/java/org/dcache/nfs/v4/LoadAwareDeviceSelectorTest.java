@@ -0,0 +1,141 @@
+package org.dcache.nfs.v4;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.dcache.nfs.nfsstat;
+import org.dcache.nfs.util.LeaseClock;
+import org.dcache.nfs.util.ManualClock;
+import org.dcache.nfs.v4.ff.ff_io_latency4;
+import org.dcache.nfs.v4.ff.ff_layoutupdate4;
+import org.dcache.nfs.v4.xdr.LAYOUTERROR4args;
+import org.dcache.nfs.v4.xdr.LAYOUTSTATS4args;
+import org.dcache.nfs.v4.xdr.device_error4;
+import org.dcache.nfs.v4.xdr.deviceid4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.layoutupdate4;
+import org.dcache.nfs.v4.xdr.netaddr4;
+import org.dcache.nfs.v4.xdr.nfs_fh4;
+import org.dcache.nfs.v4.xdr.nfs_opnum4;
+import org.dcache.nfs.v4.xdr.nfstime4;
+import org.dcache.nfs.v4.xdr.uint64_t;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadAwareDeviceSelectorTest {
+
+    private final deviceid4 ds1 = new deviceid4(new byte[]{0x1});
+    private final deviceid4 ds2 = new deviceid4(new byte[]{0x2});
+    private final deviceid4 ds3 = new deviceid4(new byte[]{0x3});
+
+    private ManualClock clock;
+    private LoadAwareDeviceSelector selector;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        selector = new LoadAwareDeviceSelector(Duration.ofMinutes(1), LeaseClock.of(clock));
+    }
+
+    @Test
+    public void testUnknownDevicesKeepOrder() {
+        assertArrayEquals(new deviceid4[]{ds1, ds2, ds3}, selector.order(ds1, ds2, ds3));
+    }
+
+    @Test
+    public void testSlowDeviceLast() throws IOException {
+        selector.layoutStats(stats(ds1, 100, 5000));
+        selector.layoutStats(stats(ds2, 100, 500));
+
+        assertArrayEquals(new deviceid4[]{ds3, ds2, ds1}, selector.order(ds1, ds2, ds3));
+        assertArrayEquals(new deviceid4[]{ds3, ds2}, selector.select(2, ds1, ds2, ds3));
+    }
+
+    @Test
+    public void testErrorPenalty() throws IOException {
+        selector.layoutStats(stats(ds1, 100, 5000));
+        selector.layoutError(error(ds2));
+
+        assertArrayEquals(new deviceid4[]{ds1, ds2}, selector.order(ds1, ds2));
+    }
+
+    @Test
+    public void testScoreDecay() {
+        selector.layoutError(error(ds1));
+        double score = selector.score(ds1);
+
+        clock.advance(1, TimeUnit.MINUTES);
+        assertEquals(score / 2, selector.score(ds1), 0.001);
+    }
+
+    @Test
+    public void testNonFlexFilesStatsIgnored() {
+        LAYOUTSTATS4args args = new LAYOUTSTATS4args();
+        args.lsa_deviceid = ds1;
+        args.lsa_layoutupdate = new layoutupdate4();
+        args.lsa_layoutupdate.lou_type = layouttype4.LAYOUT4_NFSV4_1_FILES.getValue();
+        args.lsa_layoutupdate.lou_body = new byte[0];
+
+        selector.layoutStats(args);
+        assertEquals(0.0, selector.score(ds1), 0.0);
+    }
+
+    @Test
+    public void testIdleDeviceScoresLessThanBusy() throws IOException {
+        selector.layoutStats(stats(ds1, 100, 1000));
+        selector.layoutStats(stats(ds2, 100, 1000));
+        selector.layoutStats(stats(ds2, 100, 1000));
+
+        assertTrue(selector.score(ds1) < selector.score(ds2));
+    }
+
+    private static LAYOUTERROR4args error(deviceid4 deviceid) {
+        LAYOUTERROR4args args = new LAYOUTERROR4args();
+        args.lea_errors = new device_error4[1];
+        args.lea_errors[0] = new device_error4();
+        args.lea_errors[0].de_deviceid = deviceid;
+        args.lea_errors[0].de_status = nfsstat.NFSERR_IO;
+        args.lea_errors[0].de_opnum = nfs_opnum4.OP_READ;
+        return args;
+    }
+
+    private static LAYOUTSTATS4args stats(deviceid4 deviceid, long ops, long completionTimeMillis) throws IOException {
+        ff_layoutupdate4 update = new ff_layoutupdate4();
+        update.ffl_addr = new netaddr4(new InetSocketAddress("127.0.0.1", 2049));
+        update.ffl_fhandle = new nfs_fh4(new byte[]{0x1});
+        update.ffl_read = latency(ops, completionTimeMillis);
+        update.ffl_write = latency(0, 0);
+        update.ffl_duration = new nfstime4(10_000);
+        update.ffl_local = false;
+
+        LAYOUTSTATS4args args = new LAYOUTSTATS4args();
+        args.lsa_deviceid = deviceid;
+        args.lsa_layoutupdate = new layoutupdate4();
+        args.lsa_layoutupdate.lou_type = layouttype4.LAYOUT4_FLEX_FILES.getValue();
+        try (Xdr xdr = new Xdr(512)) {
+            xdr.beginEncoding();
+            update.xdrEncode(xdr);
+            xdr.endEncoding();
+            args.lsa_layoutupdate.lou_body = xdr.getBytes();
+        }
+        return args;
+    }
+
+    private static ff_io_latency4 latency(long ops, long completionTimeMillis) {
+        ff_io_latency4 latency = new ff_io_latency4();
+        latency.ffil_ops_requested = new uint64_t(ops);
+        latency.ffil_bytes_requested = new uint64_t(ops * 4096);
+        latency.ffil_ops_completed = new uint64_t(ops);
+        latency.ffil_bytes_completed = new uint64_t(ops * 4096);
+        latency.ffil_bytes_not_delivered = new uint64_t(0);
+        latency.ffil_total_busy_time = new nfstime4(completionTimeMillis);
+        latency.ffil_aggregate_completion_time = new nfstime4(completionTimeMillis);
+        return latency;
+    }
+}
@@ -34,6 +34,7 @@ import org.dcache.nfs.status.BadSeqidException;
 import org.dcache.nfs.status.BadSessionException;
 import org.dcache.nfs.status.BadStateidException;
 import org.dcache.nfs.status.StaleClientidException;
+import org.dcache.nfs.util.NopCacheEventListener;
 import org.dcache.nfs.v4.xdr.seqid4;
 
 import static org.dcache.nfs.v4.NfsTestUtils.createClient;
@@ -119,6 +120,18 @@ public class NFSv4StateHandlerTest {
         }
     }
 
+    @Test
+    public void testNoStateReaperWithProvidedClientCache() throws Exception {
+        Duration leaseTime = Duration.ofSeconds(2);
+        NFSv4StateHandler stateHandler = new NFSv4StateHandler(leaseTime, 1, new EphemeralClientRecoveryStore(),
+                new DefaultClientCache(leaseTime, new NopCacheEventListener<>()));
+        try {
+            assertNull(stateHandler.getStateReaper());
+        } finally {
+            stateHandler.shutdown();
+        }
+    }
+
     @Test
     public void testInstanceIdByStateid() throws UnknownHostException, ChimeraNFSException, Exception {
         int instanceId = 117;
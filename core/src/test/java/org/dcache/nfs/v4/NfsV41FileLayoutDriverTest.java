@@ -0,0 +1,68 @@
+package org.dcache.nfs.v4;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import org.dcache.nfs.v4.xdr.device_addr4;
+import org.dcache.nfs.v4.xdr.layouttype4;
+import org.dcache.nfs.v4.xdr.nfsv4_1_file_layout_ds_addr4;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.dcache.oncrpc4j.xdr.Xdr;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NfsV41FileLayoutDriverTest {
+
+    private final NfsV41FileLayoutDriver driver = new NfsV41FileLayoutDriver();
+
+    @Test
+    public void shouldPublishSingleStripeForMultipathAddress() throws IOException {
+
+        device_addr4 addr = driver.getDeviceAddress(
+                new InetSocketAddress("127.0.0.1", 2049),
+                new InetSocketAddress("127.0.0.2", 2049));
+
+        nfsv4_1_file_layout_ds_addr4 dsAddr = decode(addr);
+        assertEquals(1, dsAddr.nflda_multipath_ds_list.length);
+        assertEquals(2, dsAddr.nflda_multipath_ds_list[0].value.length);
+        assertEquals(1, dsAddr.nflda_stripe_indices.length);
+    }
+
+    @Test
+    public void shouldPublishDataServerPerStripe() throws IOException {
+
+        uint32_t[] pattern = new uint32_t[] {
+            new uint32_t(1), new uint32_t(2), new uint32_t(0)
+        };
+
+        device_addr4 addr = driver.getDeviceAddress(pattern,
+                new InetSocketAddress("127.0.0.1", 2049),
+                new InetSocketAddress("127.0.0.2", 2049),
+                new InetSocketAddress("127.0.0.3", 2049));
+
+        assertEquals(layouttype4.LAYOUT4_NFSV4_1_FILES.getValue(), addr.da_layout_type);
+
+        nfsv4_1_file_layout_ds_addr4 dsAddr = decode(addr);
+        assertEquals(3, dsAddr.nflda_multipath_ds_list.length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, dsAddr.nflda_multipath_ds_list[i].value.length);
+        }
+        assertEquals(3, dsAddr.nflda_stripe_indices.length);
+        assertEquals(1, dsAddr.nflda_stripe_indices[0].value);
+        assertEquals(2, dsAddr.nflda_stripe_indices[1].value);
+        assertEquals(0, dsAddr.nflda_stripe_indices[2].value);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectStripeIndexOutOfRange() {
+        driver.getDeviceAddress(new uint32_t[] {new uint32_t(1)},
+                new InetSocketAddress("127.0.0.1", 2049));
+    }
+
+    private static nfsv4_1_file_layout_ds_addr4 decode(device_addr4 addr) throws IOException {
+        try (Xdr xdr = new Xdr(addr.da_addr_body)) {
+            xdr.beginDecoding();
+            return new nfsv4_1_file_layout_ds_addr4(xdr);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.dcache.nfs.v4;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.OptionalLong;
 import org.dcache.nfs.status.BadLayoutException;
 import org.dcache.nfs.status.GraceException;
@@ -31,6 +32,7 @@ import org.dcache.nfs.vfs.Stat;
 
 import javax.security.auth.Subject;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -70,6 +72,52 @@ public class OperationOPENTest {
         execute(context, openArgs);
     }
 
+    @Test(expected = GraceException.class)
+    public void testRejectOpenOfFileToReclaim() throws Exception {
+
+        Inode inode = vfs.create(fsRoot, Stat.Type.REGULAR, "file", new Subject(), 0644);
+        givenStateHandlerInGrace(inode);
+
+        COMPOUND4args openArgs = new CompoundBuilder()
+                .withSequence(false, session.id(), 0, 0, 1)
+                .withPutfh(new nfs_fh4(fsRoot.toNfsHandle()))
+                .withOpen("file", 1, client.getId(), OPEN4_SHARE_ACCESS_READ)
+                .build();
+
+        CompoundContext context = new CompoundContextBuilder()
+                .withStateHandler(sh)
+                .withFs(vfs)
+                .withMinorversion(1)
+                .withCall(generateRpcCall())
+                .build();
+
+        execute(context, openArgs);
+    }
+
+    @Test
+    public void testAllowOpenOfFileWithoutStatesDuringGrace() throws Exception {
+
+        Inode toReclaim = vfs.create(fsRoot, Stat.Type.REGULAR, "other-file", new Subject(), 0644);
+        givenStateHandlerInGrace(toReclaim);
+
+        COMPOUND4args openArgs = new CompoundBuilder()
+                .withSequence(false, session.id(), 0, 0, 1)
+                .withPutfh(new nfs_fh4(fsRoot.toNfsHandle()))
+                .withOpenCreate("file", 1, client.getId(), OPEN4_SHARE_ACCESS_READ)
+                .withGetfh()
+                .build();
+
+        CompoundContext context = new CompoundContextBuilder()
+                .withStateHandler(sh)
+                .withFs(vfs)
+                .withMinorversion(1)
+                .withCall(generateRpcCall())
+                .build();
+
+        COMPOUND4res res = execute(context, openArgs);
+        assertTrue("bad file handle", res.resarray.get(3).opgetfh.resok4.object.value.length > 0);
+    }
+
     @Test
     public void testReturnFhOnOpen() throws Exception {
 
@@ -117,4 +165,16 @@ public class OperationOPENTest {
         COMPOUND4res res = execute(context, openArgs);
         assertTrue("bad file handle", res.resarray.get(3).opgetfh.resok4.object.value.length > 0);
     }
+
+    private void givenStateHandlerInGrace(Inode toReclaim) throws Exception {
+        ClientRecoveryStore clientStore = mock(ClientRecoveryStore.class);
+        when(clientStore.waitingForReclaim()).thenReturn(true);
+        when(clientStore.waitingForReclaim(any())).thenReturn(false);
+        when(clientStore.waitingForReclaim(toReclaim.getFileId())).thenReturn(true);
+
+        sh = new NFSv4StateHandler(Duration.ofSeconds(2), 0, clientStore);
+        client = createClient(sh);
+        session = client.createSession(1, 8196, 8192, 128, 16);
+        client.reclaimComplete();
+    }
 }
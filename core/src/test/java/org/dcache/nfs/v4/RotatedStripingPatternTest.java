@@ -0,0 +1,46 @@
+package org.dcache.nfs.v4;
+
+import java.nio.ByteBuffer;
+import org.dcache.nfs.v4.xdr.uint32_t;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RotatedStripingPatternTest {
+
+    private final String[] dataServers = {"ds1", "ds2", "ds3", "ds4"};
+    private final RotatedStripingPattern<String> pattern = new RotatedStripingPattern<>();
+
+    @Test
+    public void testConsecutiveIndices() {
+        uint32_t[] indices = pattern.getPattern(fileId(42), dataServers);
+
+        assertEquals(dataServers.length, indices.length);
+        for (int i = 1; i < indices.length; i++) {
+            assertEquals((indices[i - 1].value + 1) % dataServers.length, indices[i].value);
+        }
+    }
+
+    @Test
+    public void testFirstStripeSpread() {
+        int[] firstStripe = new int[dataServers.length];
+        for (int i = 0; i < 1000; i++) {
+            firstStripe[pattern.getPattern(fileId(i), dataServers)[0].value]++;
+        }
+
+        for (int count : firstStripe) {
+            assertTrue("data server never selected", count > 0);
+        }
+    }
+
+    @Test
+    public void testWithoutFileId() {
+        uint32_t[] indices = pattern.getPattern(dataServers);
+        assertEquals(0, indices[0].value);
+    }
+
+    private static byte[] fileId(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+}
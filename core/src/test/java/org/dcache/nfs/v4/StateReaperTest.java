@@ -0,0 +1,87 @@
+package org.dcache.nfs.v4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dcache.nfs.v4.xdr.seqid4;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.dcache.nfs.v4.NfsTestUtils.createClient;
+import static org.junit.Assert.*;
+
+public class StateReaperTest {
+
+    private NFSv4StateHandler sh;
+    private StateReaper reaper;
+
+    @Before
+    public void setUp() {
+        sh = new NFSv4StateHandler();
+        reaper = new StateReaper("test-state-reaper", 2, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reaper.close();
+        sh.shutdown();
+    }
+
+    @Test
+    public void shouldDisposeAllStatesInBatches() throws Exception {
+
+        NFS4Client client = createClient(sh);
+        StateOwner owner = client.getOrCreateOwner("owner".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+
+        AtomicInteger disposed = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            client.createState(owner).addDisposeListener(s -> disposed.incrementAndGet());
+        }
+
+        reaper.reap(client);
+        awaitReaped();
+
+        assertFalse("client has states after reaping", client.hasState());
+        assertEquals(1000, disposed.get());
+        assertEquals(1000, reaper.getReapedStates());
+        assertEquals(1, reaper.getReapedClients());
+        assertTrue("states not disposed in batches", reaper.getBatches() >= 100);
+    }
+
+    @Test
+    public void shouldReapClientWithoutStates() throws Exception {
+
+        NFS4Client client = createClient(sh);
+
+        reaper.reap(client);
+        awaitReaped();
+
+        assertEquals(1, reaper.getReapedClients());
+        assertEquals(0, reaper.getReapedStates());
+    }
+
+    @Test
+    public void shouldDisposeInPlaceWhenClosed() throws Exception {
+
+        NFS4Client client = createClient(sh);
+        StateOwner owner = client.getOrCreateOwner("owner".getBytes(StandardCharsets.UTF_8), new seqid4(0));
+        client.createState(owner);
+
+        reaper.close();
+        reaper.reap(client);
+
+        assertFalse("client has states after reaping", client.hasState());
+        assertEquals(0, reaper.getPendingClients());
+    }
+
+    private void awaitReaped() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reaper.getPendingClients() > 0) {
+            if (System.nanoTime() > deadline) {
+                fail("States are not reaped in time");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.dcache.nfs.v4;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedStripingPatternTest {
+
+    private final String[] dataServers = {"small", "large", "empty"};
+    private final Map<String, Double> capacity = Map.of("small", 1.0, "large", 3.0, "empty", 0.0);
+    private final WeightedStripingPattern<String> pattern = new WeightedStripingPattern<>(capacity::get);
+
+    @Test
+    public void testProportionalToWeight() {
+        int[] firstStripe = new int[dataServers.length];
+        int files = 10_000;
+        for (int i = 0; i < files; i++) {
+            firstStripe[pattern.getPattern(fileId(i), dataServers)[0].value]++;
+        }
+
+        assertEquals(0, firstStripe[2]);
+        double ratio = (double) firstStripe[1] / firstStripe[0];
+        assertTrue("unexpected ratio " + ratio, ratio > 2.5 && ratio < 3.5);
+    }
+
+    @Test
+    public void testZeroWeightLast() {
+        assertEquals(2, pattern.getPattern(fileId(1), dataServers)[2].value);
+    }
+
+    private static byte[] fileId(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+}
@@ -0,0 +1,173 @@
+package org.dcache.nfs.v4.ds;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.dcache.nfs.status.NfsIoException;
+import org.dcache.nfs.v4.xdr.verifier4;
+import org.dcache.nfs.vfs.Inode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CommitSchedulerTest {
+
+    private static final verifier4 REBOOT_VERIFIER = new verifier4(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    private static final Inode FILE1 = Inode.forFile(new byte[]{1});
+    private static final Inode FILE2 = Inode.forFile(new byte[]{2});
+
+    private final Map<Inode, FileChannel> channels = new HashMap<>();
+    private CommitScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new CommitScheduler("commit-scheduler-test", this::open, Duration.ofMillis(50), 2);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.close();
+    }
+
+    @Test
+    public void shouldForceFileOncePerBatch() throws IOException {
+        FileChannel channel = givenFile(FILE1);
+
+        CompletableFuture<Void> c1 = scheduler.commit(FILE1, false);
+        CompletableFuture<Void> c2 = scheduler.commit(FILE1, true);
+        c1.join();
+        c2.join();
+
+        verify(channel, times(1)).force(true);
+        assertEquals(1, scheduler.getBatches());
+        assertEquals(1, scheduler.getForces());
+        assertEquals(2, scheduler.getCommits());
+        assertEquals(2, scheduler.getMaxBatchSize());
+    }
+
+    @Test
+    public void shouldForceEveryFileInBatch() throws IOException {
+        FileChannel channel1 = givenFile(FILE1);
+        FileChannel channel2 = givenFile(FILE2);
+
+        CompletableFuture<Void> c1 = scheduler.commit(FILE1, false);
+        CompletableFuture<Void> c2 = scheduler.commit(FILE2, false);
+        c1.join();
+        c2.join();
+
+        verify(channel1).force(false);
+        verify(channel2).force(false);
+        assertEquals(1, scheduler.getBatches());
+        assertEquals(2, scheduler.getForces());
+    }
+
+    @Test
+    public void shouldKeepVerifierOnSuccess() throws IOException {
+        FileChannel channel = givenFile(FILE1);
+
+        scheduler.sync(FILE1, true);
+
+        assertSame(REBOOT_VERIFIER, scheduler.getWriteVerifier(REBOOT_VERIFIER));
+    }
+
+    @Test
+    public void shouldChangeVerifierOnFailure() throws IOException {
+        FileChannel channel = givenFile(FILE1);
+        doThrow(new IOException("disk on fire")).when(channel).force(anyBoolean());
+
+        try {
+            scheduler.sync(FILE1, true);
+            fail("Commit must fail");
+        } catch (NfsIoException e) {
+            // expected
+        }
+
+        assertEquals(1, scheduler.getFailures());
+        assertEquals(1, scheduler.getVerifierGeneration());
+        assertNotEquals(REBOOT_VERIFIER, scheduler.getWriteVerifier(REBOOT_VERIFIER));
+    }
+
+    @Test(expected = NfsIoException.class)
+    public void shouldFailSyncOnForceError() throws IOException {
+        FileChannel channel = givenFile(FILE1);
+        doThrow(new IOException("disk on fire")).when(channel).force(anyBoolean());
+
+        scheduler.sync(FILE1, false);
+    }
+
+    @Test
+    public void shouldReopenClosedChannel() throws IOException {
+        FileChannel closed = mock(FileChannel.class);
+        doThrow(new ClosedChannelException()).when(closed).force(anyBoolean());
+        FileChannel reopened = mock(FileChannel.class);
+        Iterator<FileChannel> opened = List.of(closed, reopened).iterator();
+
+        try (CommitScheduler s = new CommitScheduler("commit-scheduler-reopen", inode -> opened.next(),
+                Duration.ofMillis(50), 2)) {
+            s.sync(FILE1, true);
+
+            verify(reopened).force(true);
+            assertEquals(0, s.getFailures());
+            assertSame(REBOOT_VERIFIER, s.getWriteVerifier(REBOOT_VERIFIER));
+        }
+    }
+
+    @Test
+    public void shouldKeepVerifierIfFileCantBeOpened() throws IOException {
+        try {
+            scheduler.sync(FILE1, true);
+            fail("Commit must fail");
+        } catch (NfsIoException e) {
+            // expected
+        }
+
+        assertEquals(0, scheduler.getVerifierGeneration());
+        assertSame(REBOOT_VERIFIER, scheduler.getWriteVerifier(REBOOT_VERIFIER));
+    }
+
+    @Test
+    public void shouldCommitInPlaceAfterClose() throws IOException {
+        FileChannel channel = givenFile(FILE1);
+        CommitScheduler closed = new CommitScheduler("commit-scheduler-closed", this::open, Duration.ofMillis(50), 2);
+        closed.close();
+
+        CompletableFuture<Void> commit = closed.commit(FILE1, true);
+
+        assertTrue(commit.isDone());
+        assertFalse(commit.isCompletedExceptionally());
+        verify(channel).force(true);
+    }
+
+    private FileChannel open(Inode inode) throws IOException {
+        FileChannel channel = channels.get(inode);
+        if (channel == null) {
+            throw new FileNotFoundException(inode.toString());
+        }
+        return channel;
+    }
+
+    private FileChannel givenFile(Inode inode) {
+        FileChannel channel = mock(FileChannel.class);
+        channels.put(inode, channel);
+        return channel;
+    }
+}
@@ -0,0 +1,235 @@
+package org.dcache.nfs.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FsCacheTest {
+
+    private static final int WINDOW_SIZE = 4096;
+
+    private Path base;
+    private FsCache fsCache;
+    private Inode inode;
+
+    @Before
+    public void setUp() throws IOException {
+        base = Files.createTempDirectory("fs-cache");
+        inode = Inode.forFile(new byte[]{0, 0, 0, 0, 0, 0, 0, 1});
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fsCache.close();
+        try (Stream<Path> files = Files.walk(base)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void shouldReadFromMappedWindow() throws IOException {
+        givenCache(0);
+        byte[] data = givenFile(10000);
+
+        ByteBuffer bb = fsCache.read(inode, 4200, 100);
+
+        assertTrue(bb.isReadOnly());
+        assertContent(data, 4200, bb);
+    }
+
+    @Test
+    public void shouldReadAcrossWindowBoundary() throws IOException {
+        givenCache(0);
+        byte[] data = givenFile(10000);
+
+        ByteBuffer bb = fsCache.read(inode, WINDOW_SIZE - 10, 20);
+
+        assertFalse(bb.isReadOnly());
+        assertContent(data, WINDOW_SIZE - 10, bb);
+    }
+
+    @Test
+    public void shouldReturnShortReadAtEndOfFile() throws IOException {
+        givenCache(0);
+        byte[] data = givenFile(1000);
+
+        ByteBuffer bb = fsCache.read(inode, 900, 500);
+
+        assertEquals(100, bb.remaining());
+        assertContent(data, 900, bb);
+    }
+
+    @Test
+    public void shouldReturnNullBeyondEndOfFile() throws IOException {
+        givenCache(0);
+        givenFile(1000);
+
+        assertNull(fsCache.read(inode, 1000, 100));
+    }
+
+    @Test
+    public void shouldRemapWindowWhenFileGrows() throws IOException {
+        givenCache(0);
+        givenFile(1000);
+        fsCache.read(inode, 0, 100);
+
+        byte[] data = givenFile(3000);
+        ByteBuffer bb = fsCache.read(inode, 2000, 100);
+
+        assertTrue(bb.isReadOnly());
+        assertContent(data, 2000, bb);
+    }
+
+    @Test
+    public void shouldReadMappedRangeAfterFileGrows() throws IOException {
+        givenCache(0);
+        givenFile(1000);
+        fsCache.read(inode, 0, 100);
+
+        byte[] data = givenFile(3000);
+        ByteBuffer bb = fsCache.read(inode, 500, 100);
+
+        assertTrue(bb.isReadOnly());
+        assertContent(data, 500, bb);
+        assertEquals(1, fsCache.mappedWindows());
+    }
+
+    @Test
+    public void shouldNotMapSmallFiles() throws IOException {
+        givenCache(8192);
+        byte[] data = givenFile(1000);
+
+        ByteBuffer bb = fsCache.read(inode, 0, 100);
+
+        assertFalse(bb.isReadOnly());
+        assertContent(data, 0, bb);
+    }
+
+    @Test
+    public void shouldReadWithoutMmap() throws IOException {
+        fsCache = newCache();
+        fsCache.init();
+        byte[] data = givenFile(1000);
+
+        ByteBuffer bb = fsCache.read(inode, 10, 100);
+
+        assertFalse(bb.isReadOnly());
+        assertContent(data, 10, bb);
+    }
+
+    @Test
+    public void shouldTruncateMappedFile() throws IOException {
+        givenCache(0);
+        byte[] data = givenFile(10000);
+        fsCache.read(inode, 8000, 100);
+
+        fsCache.truncate(inode, 5000);
+
+        assertEquals(0, fsCache.mappedWindows());
+        assertNull(fsCache.read(inode, 8000, 100));
+        ByteBuffer bb = fsCache.read(inode, 4900, 500);
+        assertEquals(100, bb.remaining());
+        assertContent(data, 4900, bb);
+    }
+
+    @Test
+    public void shouldNotGrowOnTruncate() throws IOException {
+        givenCache(0);
+        givenFile(1000);
+
+        fsCache.truncate(inode, 2000);
+
+        assertEquals(1000, fsCache.get(inode).size());
+    }
+
+    @Test
+    public void shouldInvalidateOnlyWindowsOfFile() throws IOException {
+        givenCache(0);
+        givenFile(10000);
+        Inode other = Inode.forFile(new byte[]{0, 0, 0, 0, 0, 0, 0, 2});
+        fsCache.get(other).write(ByteBuffer.wrap(new byte[1000]), 0);
+        fsCache.read(inode, 0, 100);
+        fsCache.read(inode, 5000, 100);
+        fsCache.read(other, 0, 100);
+
+        fsCache.invalidate(inode);
+
+        assertEquals(1, fsCache.mappedWindows());
+    }
+
+    @Test
+    public void shouldEvictWindowsOverMaxSize() throws IOException {
+        givenCache(0);
+        byte[] data = givenFile(20 * WINDOW_SIZE);
+
+        for (int i = 0; i < 20; i++) {
+            assertContent(data, i * WINDOW_SIZE, fsCache.read(inode, i * WINDOW_SIZE, 100));
+        }
+
+        assertTrue(fsCache.mappedWindows() <= 16);
+    }
+
+    @Test
+    public void shouldDropWindowsOfClosedFile() throws IOException {
+        fsCache = newCache();
+        fsCache.setMaxSize(1);
+        fsCache.setMmapMaxSize(16 * WINDOW_SIZE);
+        fsCache.setMmapWindowSize(WINDOW_SIZE);
+        fsCache.setMmapFileSizeRange(0, Long.MAX_VALUE);
+        fsCache.init();
+        givenFile(1000);
+        fsCache.read(inode, 0, 100);
+
+        // evicts open file of the inode
+        fsCache.get(Inode.forFile(new byte[]{0, 0, 0, 0, 0, 0, 0, 2}));
+
+        assertEquals(0, fsCache.mappedWindows());
+    }
+
+    private FsCache newCache() {
+        FsCache cache = new FsCache();
+        cache.setBase(base.toFile());
+        cache.setMaxSize(16);
+        cache.setLastAccess(60);
+        cache.setName("fs-cache-test");
+        return cache;
+    }
+
+    private void givenCache(long minFileSize) {
+        fsCache = newCache();
+        fsCache.setMmapMaxSize(16 * WINDOW_SIZE);
+        fsCache.setMmapWindowSize(WINDOW_SIZE);
+        fsCache.setMmapFileSizeRange(minFileSize, Long.MAX_VALUE);
+        fsCache.init();
+    }
+
+    private byte[] givenFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        fsCache.get(inode).write(ByteBuffer.wrap(data), 0);
+        return data;
+    }
+
+    private static void assertContent(byte[] expected, int offset, ByteBuffer bb) {
+        byte[] actual = new byte[bb.remaining()];
+        bb.get(actual);
+        byte[] slice = new byte[actual.length];
+        System.arraycopy(expected, offset, slice, 0, slice.length);
+        assertArrayEquals(slice, actual);
+    }
+}
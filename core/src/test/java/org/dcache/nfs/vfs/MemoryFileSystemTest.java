@@ -0,0 +1,318 @@
+package org.dcache.nfs.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.security.auth.Subject;
+import org.dcache.nfs.status.ExistException;
+import org.dcache.nfs.status.FBigException;
+import org.dcache.nfs.status.InvalException;
+import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.status.NoSpcException;
+import org.dcache.nfs.status.NoXattrException;
+import org.dcache.nfs.status.NotEmptyException;
+import org.dcache.nfs.status.StaleException;
+import org.dcache.nfs.util.UnixSubjects;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MemoryFileSystemTest {
+
+    private final Subject subject = UnixSubjects.toSubject(1, 1);
+
+    private MemoryFileSystem fs;
+    private Inode root;
+
+    @Before
+    public void setUp() throws IOException {
+        fs = new MemoryFileSystem(1024 * 1024, 1024);
+        root = fs.getRootInode();
+    }
+
+    @Test
+    public void testCreateLookup() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        assertEquals(inode, fs.lookup(root, "file"));
+        assertEquals(root, fs.parentOf(inode));
+
+        Stat stat = fs.getattr(inode);
+        assertEquals(Stat.Type.REGULAR, stat.type());
+        assertEquals(1, stat.getUid());
+    }
+
+    @Test(expected = ExistException.class)
+    public void testCreateExisting() throws IOException {
+        fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+    }
+
+    @Test
+    public void testSparseReadWrite() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        byte[] data = "hello".getBytes(StandardCharsets.US_ASCII);
+
+        // cross chunk boundary
+        fs.write(inode, ByteBuffer.wrap(data), 4094, VirtualFileSystem.StabilityLevel.UNSTABLE);
+        assertEquals(4099, fs.getattr(inode).getSize());
+        assertEquals(2048, fs.getUsedSpace());
+
+        ByteBuffer buf = ByteBuffer.allocate(10);
+        assertEquals(9, fs.read(inode, buf, 4090));
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 'h', 'e', 'l', 'l', 'o', 0}, buf.array());
+    }
+
+    @Test
+    public void testReadBeyondEof() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        assertEquals(-1, fs.read(inode, ByteBuffer.allocate(10), 0));
+    }
+
+    @Test
+    public void testTruncateReleasesSpace() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.allocate(4096), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        Stat stat = new Stat();
+        stat.setSize(10);
+        fs.setattr(inode, stat);
+
+        assertEquals(10, fs.getattr(inode).getSize());
+        assertEquals(1024, fs.getUsedSpace());
+    }
+
+    @Test(expected = NoSpcException.class)
+    public void testCapacity() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.allocate(2 * 1024 * 1024), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+    }
+
+    @Test
+    public void testFailedWriteReleasesSpace() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.allocate(1024), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        try {
+            fs.write(inode, ByteBuffer.allocate(2 * 1024 * 1024), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+            fail();
+        } catch (NoSpcException e) {
+            // expected
+        }
+
+        assertEquals(1024, fs.getUsedSpace());
+        assertEquals(1024, fs.getattr(inode).getSize());
+
+        fs.remove(root, "file");
+        assertEquals(0, fs.getUsedSpace());
+    }
+
+    @Test
+    public void testRemoveReleasesSpace() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.allocate(4096), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+        fs.remove(root, "file");
+        assertEquals(0, fs.getUsedSpace());
+    }
+
+    @Test(expected = StaleException.class)
+    public void testStaleAfterRemove() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.remove(root, "file");
+        fs.getattr(inode);
+    }
+
+    @Test
+    public void testHardLink() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.link(root, inode, "link", subject);
+        assertEquals(2, fs.getattr(inode).getNlink());
+
+        fs.remove(root, "file");
+        assertEquals(1, fs.getattr(inode).getNlink());
+        assertEquals(inode, fs.lookup(root, "link"));
+    }
+
+    @Test
+    public void testSymlink() throws IOException {
+        Inode inode = fs.symlink(root, "link", "/some/where", subject, 0777);
+        assertEquals("/some/where", fs.readlink(inode));
+        assertEquals(Stat.Type.SYMLINK, fs.getattr(inode).type());
+    }
+
+    @Test(expected = NotEmptyException.class)
+    public void testRemoveNonEmptyDir() throws IOException {
+        Inode dir = fs.mkdir(root, "dir", subject, 0755);
+        fs.create(dir, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.remove(root, "dir");
+    }
+
+    @Test
+    public void testMoveIntoItselfKeepsTarget() throws IOException {
+        Inode dir = fs.mkdir(root, "dir", subject, 0755);
+        Inode subdir = fs.mkdir(dir, "subdir", subject, 0755);
+        Inode target = fs.mkdir(subdir, "target", subject, 0755);
+
+        try {
+            fs.move(root, "dir", subdir, "target");
+            fail();
+        } catch (InvalException e) {
+            // expected
+        }
+
+        assertEquals(target, fs.lookup(subdir, "target"));
+        assertEquals(dir, fs.lookup(root, "dir"));
+    }
+
+    @Test
+    public void testMoveReplace() throws IOException {
+        Inode dir = fs.mkdir(root, "dir", subject, 0755);
+        Inode file1 = fs.create(root, Stat.Type.REGULAR, "file1", subject, 0644);
+        fs.create(dir, Stat.Type.REGULAR, "file2", subject, 0644);
+
+        assertTrue(fs.move(root, "file1", dir, "file2"));
+        assertEquals(file1, fs.lookup(dir, "file2"));
+        assertEquals(dir, fs.parentOf(file1));
+
+        try {
+            fs.lookup(root, "file1");
+            fail();
+        } catch (NoEntException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testListIsResumable() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            fs.create(root, Stat.Type.REGULAR, "file-" + i, subject, 0644);
+        }
+
+        List<DirectoryEntry> entries = new ArrayList<>();
+        fs.list(root, null, 0).forEach(entries::add);
+        assertEquals(10, entries.size());
+
+        long cookie = entries.get(4).getCookie();
+        fs.remove(root, entries.get(2).getName());
+        fs.create(root, Stat.Type.REGULAR, "a-new-file", subject, 0644);
+
+        List<String> tail = new ArrayList<>();
+        fs.list(root, null, cookie).forEach(e -> tail.add(e.getName()));
+        assertEquals(6, tail.size());
+        assertEquals(entries.get(5).getName(), tail.get(0));
+        assertEquals("a-new-file", tail.get(5));
+    }
+
+    @Test
+    public void testChangeIdUpdated() throws IOException {
+        Stat before = fs.getattr(root);
+        fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        assertNotEquals(before.getGeneration(), fs.getattr(root).getGeneration());
+    }
+
+    @Test
+    public void testXattr() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.setXattr(inode, "key", new byte[]{1}, VirtualFileSystem.SetXattrMode.CREATE);
+        assertArrayEquals(new byte[]{1}, fs.getXattr(inode, "key"));
+        assertArrayEquals(new String[]{"key"}, fs.listXattrs(inode));
+
+        try {
+            fs.setXattr(inode, "key", new byte[]{2}, VirtualFileSystem.SetXattrMode.CREATE);
+            fail();
+        } catch (ExistException e) {
+            // expected
+        }
+
+        fs.removeXattr(inode, "key");
+        try {
+            fs.setXattr(inode, "key", new byte[]{2}, VirtualFileSystem.SetXattrMode.REPLACE);
+            fail();
+        } catch (NoXattrException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCopyFileRange() throws IOException, InterruptedException, ExecutionException {
+        Inode src = fs.create(root, Stat.Type.REGULAR, "src", subject, 0644);
+        Inode dst = fs.create(root, Stat.Type.REGULAR, "dst", subject, 0644);
+
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        fs.write(src, ByteBuffer.wrap(data), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        assertEquals(3000L, fs.copyFileRange(src, 0, dst, 0, 0).get().longValue());
+
+        ByteBuffer buf = ByteBuffer.allocate(3000);
+        fs.read(dst, buf, 0);
+        assertArrayEquals(data, buf.array());
+    }
+
+    @Test
+    public void testCopyFileRangeOverlapping() throws IOException, InterruptedException, ExecutionException {
+        Inode file = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        fs.write(file, ByteBuffer.wrap(data), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        assertEquals(3000L, fs.copyFileRange(file, 0, file, 100, 3000).get().longValue());
+
+        ByteBuffer buf = ByteBuffer.allocate(3000);
+        fs.read(file, buf, 100);
+        assertArrayEquals(data, buf.array());
+    }
+
+    @Test
+    public void testTruncateToHugeSizeKeepsData() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.wrap(new byte[]{1, 2, 3}), 0, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        Stat stat = new Stat();
+        stat.setSize(1L << 50);
+        fs.setattr(inode, stat);
+
+        assertEquals(1L << 50, fs.getattr(inode).getSize());
+        assertEquals(1024, fs.getUsedSpace());
+
+        ByteBuffer buf = ByteBuffer.allocate(3);
+        fs.read(inode, buf, 0);
+        assertArrayEquals(new byte[]{1, 2, 3}, buf.array());
+    }
+
+    @Test
+    public void testWriteAtHugeOffset() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.wrap(new byte[]{1, 2, 3}), 1L << 47, VirtualFileSystem.StabilityLevel.UNSTABLE);
+
+        assertEquals((1L << 47) + 3, fs.getattr(inode).getSize());
+        assertEquals(1024, fs.getUsedSpace());
+
+        ByteBuffer buf = ByteBuffer.allocate(3);
+        fs.read(inode, buf, 1L << 47);
+        assertArrayEquals(new byte[]{1, 2, 3}, buf.array());
+    }
+
+    @Test(expected = FBigException.class)
+    public void testTruncateBeyondMaxSize() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+
+        Stat stat = new Stat();
+        stat.setSize(-1);
+        fs.setattr(inode, stat);
+    }
+
+    @Test(expected = FBigException.class)
+    public void testWriteBeyondMaxSize() throws IOException {
+        Inode inode = fs.create(root, Stat.Type.REGULAR, "file", subject, 0644);
+        fs.write(inode, ByteBuffer.allocate(10), Long.MAX_VALUE - 5, VirtualFileSystem.StabilityLevel.UNSTABLE);
+    }
+}